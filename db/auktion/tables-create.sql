@@ -17,6 +17,13 @@ create table Gebot
     constraint fk_angebot foreign key (AID) references Angebot
 );
 
+create table ID_Block
+(
+    Name           varchar2(61) not null,
+    Naechster_Wert number(19)   not null,
+    constraint pk_id_block primary key (Name)
+);
+
 
 
 
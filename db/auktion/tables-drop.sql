@@ -1,3 +1,4 @@
+drop table ID_Block;
 drop table Gebot;
 drop table Angebot;
 
@@ -281,6 +281,32 @@ create table ZAHLTYP  (
                           constraint PK_ZAHLTYP primary key (ZTYP_ID)
 );
 
+/*==============================================================*/
+/* Table: ID_BLOCK                                              */
+/* naechster freier Schluessel je TABELLE.SPALTE (Hi/Lo)        */
+/*==============================================================*/
+create table ID_BLOCK  (
+                           NAME                 VARCHAR2(61)                    not null,
+                           NAECHSTER_WERT       NUMBER(19)                      not null,
+                           constraint PK_ID_BLOCK primary key (NAME)
+);
+
+/*==============================================================*/
+/* Table: OFFENER_SALDO                                         */
+/* Summe und Anzahl der nicht abgerechneten Mauterhebungen je   */
+/* Nutzer und Fahrzeuggeraet, der Saldo eines Nutzers ist die   */
+/* Summe seiner Zeilen; ohne Fremdschluessel, da DbUnit NUTZER  */
+/* leert                                                        */
+/*==============================================================*/
+create table OFFENER_SALDO  (
+                                NUTZER_ID            NUMBER                          not null,
+                                FZG_ID               NUMBER(10)                      not null,
+                                SUMME                NUMBER(12,2)                    not null,
+                                ANZAHL               NUMBER(10)                      not null,
+                                constraint PK_OFFENER_SALDO primary key (NUTZER_ID, FZG_ID)
+)
+organization index;
+
 alter table BUCHUNG
     add constraint FK_BUCHUNG_BEINHALTE_MAUTABSC foreign key (ABSCHNITTS_ID)
         references MAUTABSCHNITT (ABSCHNITTS_ID);
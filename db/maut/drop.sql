@@ -103,3 +103,7 @@ drop index ZAHLT_MIT_FK;
 drop table ZAHLART cascade constraints;
 
 drop table ZAHLTYP cascade constraints;
+
+drop table ID_BLOCK cascade constraints;
+
+drop table OFFENER_SALDO cascade constraints;
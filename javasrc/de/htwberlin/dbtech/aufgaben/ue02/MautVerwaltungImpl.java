@@ -6,9 +6,19 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Locale;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import de.htwberlin.dbtech.aufgaben.ue03.cache.AbschnittKatalog;
+import de.htwberlin.dbtech.aufgaben.ue03.cache.FahrzeugCache;
+import de.htwberlin.dbtech.aufgaben.ue03.tdg.MautabschnittTdg;
 import de.htwberlin.dbtech.exceptions.DataException;
+import de.htwberlin.dbtech.utils.CursorStream;
+import de.htwberlin.dbtech.utils.IdAllocator;
+import de.htwberlin.dbtech.utils.JdbcUtils;
+import de.htwberlin.dbtech.utils.StatementCache;
 
 /**
  * Die Klasse realisiert die Mautverwaltung.
@@ -18,11 +28,22 @@ import de.htwberlin.dbtech.exceptions.DataException;
 public class MautVerwaltungImpl implements IMautVerwaltung {
 
 	private static final Logger L = LoggerFactory.getLogger(MautVerwaltungImpl.class);
+	private static final IdAllocator FZG_IDS = IdAllocator.fuer("FAHRZEUGGERAT", "FZG_ID");
+	/** Standard-Fetchsize fuer {@link #streamTrackInformations(String)} */
+	public static final int FETCH_SIZE = 500;
+	/** Spalten, die {@link #streamTrackInformations(String, int, String...)} lesen kann */
+	public static final List<String> ABSCHNITT_SPALTEN = List.of("ABSCHNITTS_ID", "LAENGE", "START_KOORDINATE",
+			"ZIEL_KOORDINATE", "NAME", "ABSCHNITTSTYP");
 	private Connection connection;
+	private StatementCache statements;
 
 	@Override
 	public void setConnection(Connection connection) {
 		this.connection = connection;
+		this.statements = connection != null ? StatementCache.fuer(connection) : null;
+		if (connection != null) {
+			abschnittKatalog();
+		}
 	}
 
 	private Connection getConnection() {
@@ -32,22 +53,36 @@ public class MautVerwaltungImpl implements IMautVerwaltung {
 		return connection;
 	}
 
+	private StatementCache statements() {
+		getConnection();
+		return statements;
+	}
+
+	/**
+	 * Invalidiert den Fahrzeugcache sofort und noch einmal nach dem Commit:
+	 * bis dahin koennen andere Verbindungen den alten Stand lesen und wieder
+	 * in den Cache legen. Committet der Aufrufer direkt auf der Verbindung,
+	 * begrenzt die TTL des Caches die Dauer des alten Stands.
+	 */
+	private void invalidiere(Consumer<FahrzeugCache> invalidierung) {
+		FahrzeugCache cache = FahrzeugCache.get();
+		invalidierung.accept(cache);
+		JdbcUtils.nachAbschluss(getConnection(), () -> invalidierung.accept(cache));
+	}
+
 	@Override
 	public String getStatusForOnBoardUnit(long fzg_id) {
 
-		PreparedStatement ps = null;
-		ResultSet rs = null;
 		String query = "SELECT status FROM Fahrzeuggerat f WHERE f.FZG_ID = ?";
 		String result = "";
 
-		try {
-			ps = getConnection().prepareStatement(query);
+		try (PreparedStatement ps = statements().prepareStatement(query)) {
 			ps.setLong(1, fzg_id);
-			rs = ps.executeQuery();
-
-			if(rs.next()) {
 
-				result = rs.getString("status");
+			try (ResultSet rs = ps.executeQuery()) {
+				if (rs.next()) {
+					result = rs.getString("status");
+				}
 			}
 		} catch (SQLException e) {
 			throw new RuntimeException(e);
@@ -63,7 +98,7 @@ public class MautVerwaltungImpl implements IMautVerwaltung {
 		final String sql =
 				"SELECT f.NUTZER_ID FROM MAUTERHEBUNG m JOIN FAHRZEUGGERAT g ON m.FZG_ID = g.FZG_ID JOIN FAHRZEUG f ON g.FZ_ID = f.FZ_ID WHERE m.MAUT_ID = ?";
 
-		try (PreparedStatement ps = getConnection().prepareStatement(sql)) {
+		try (PreparedStatement ps = statements().prepareStatement(sql)) {
 			ps.setInt(1, maut_id);
 			try (ResultSet rs = ps.executeQuery()) {
 				if (rs.next()) {
@@ -84,10 +119,10 @@ public class MautVerwaltungImpl implements IMautVerwaltung {
 				+ "VALUES (?, ?, ?, ?, ?, ?, ?, ?, CURRENT_DATE)";
 
 		final String insertDevice = "INSERT INTO FAHRZEUGGERAT (FZG_ID, FZ_ID, STATUS, EINBAUDATUM) " +
-		"VALUES ((SELECT COALESCE(MAX(FZG_ID),0)+1 FROM FAHRZEUGGERAT), ?, 'aktiv', CURRENT_DATE)";
+		"VALUES (?, ?, 'aktiv', CURRENT_DATE)";
 
-		try (PreparedStatement ps1 = getConnection().prepareStatement(sql);
-			 PreparedStatement ps2 = getConnection().prepareStatement(insertDevice)) {
+		try (PreparedStatement ps1 = statements().prepareStatement(sql);
+			 PreparedStatement ps2 = statements().prepareStatement(insertDevice)) {
 			ps1.setLong(1, fz_id);
 			ps1.setInt(2, sskl_id);
 			ps1.setInt(3, nutzer_id);
@@ -102,9 +137,12 @@ public class MautVerwaltungImpl implements IMautVerwaltung {
 				throw new DataException("Kein Datensatz eingefügt für FZ_ID=" + fz_id);
 			}
 
-			ps2.setLong(1, fz_id);
+			ps2.setLong(1, FZG_IDS.naechsteId(getConnection()));
+			ps2.setLong(2, fz_id);
 			ps2.executeUpdate();
 
+			invalidiere(c -> c.invalidiereKennzeichen(kennzeichen));
+
 			L.info("Fahrzeug {} erfolgreich registriert.", fz_id);
 		} catch (SQLException e) {
 			L.error("Fehler beim Registrieren des Fahrzeugs mit FZ_ID={}", fz_id, e);
@@ -118,7 +156,7 @@ public class MautVerwaltungImpl implements IMautVerwaltung {
 
 		String sql = "UPDATE FAHRZEUGGERAT SET STATUS = ? WHERE FZG_ID = ?";
 
-		try (PreparedStatement ps = getConnection().prepareStatement(sql)) {
+		try (PreparedStatement ps = statements().prepareStatement(sql)) {
 
 			ps.setString(1, status);
 			ps.setLong(2, fzg_id);
@@ -127,6 +165,7 @@ public class MautVerwaltungImpl implements IMautVerwaltung {
 			if (affected == 0) {
 				L.warn("Kein Gerät mit FZG_ID {} gefunden.", fzg_id);
 			}
+			invalidiere(c -> c.invalidiereGeraet(fzg_id));
 
 		} catch (SQLException e) {
 			L.error("Fehler beim Aktualisieren des Status für FZG_ID {}", fzg_id, e);
@@ -138,9 +177,10 @@ public class MautVerwaltungImpl implements IMautVerwaltung {
 	public void deleteVehicle(long fz_id) {
 		String sql = "DELETE FROM FAHRZEUG WHERE FZ_ID = ?";
 
-		try (var preparedStatement = getConnection().prepareStatement(sql)) {
+		try (var preparedStatement = statements().prepareStatement(sql)) {
 			preparedStatement.setLong(1, fz_id);
 			int rowsAffected = preparedStatement.executeUpdate();
+			invalidiere(c -> c.invalidiereFahrzeug(fz_id));
 
 			if (rowsAffected == 0) {
 				L.warn("Kein Fahrzeug mit FZ_ID = {} gefunden.", fz_id);
@@ -157,38 +197,91 @@ public class MautVerwaltungImpl implements IMautVerwaltung {
 
 	@Override
 	public List<Mautabschnitt> getTrackInformations(String abschnittstyp) {
-		String sql = """
-        SELECT ABSCHNITTS_ID, LAENGE, START_KOORDINATE, ZIEL_KOORDINATE, NAME, ABSCHNITTSTYP
-        FROM MAUTABSCHNITT
-        WHERE ABSCHNITTSTYP = ?
-        ORDER BY ABSCHNITTS_ID
-        """;
+		return abschnittKatalog().abschnitte(abschnittstyp);
+	}
 
-		List<Mautabschnitt> result = new ArrayList<>();
+	/**
+	 * Liefert die Mautabschnitte eines Abschnittstyps als Stream ueber einen
+	 * offenen Cursor, ohne sie vorher in eine Liste zu laden. Ein Typ mit *
+	 * am Ende waehlt alle Typen mit diesem Anfang, z.B. A* alle Autobahnen.
+	 * Der Stream muss geschlossen werden, siehe {@link CursorStream}.
+	 *
+	 * @param fetchSize Zeilen je Roundtrip zur Datenbank
+	 * @param spalten   zu lesende Spalten aus {@link #ABSCHNITT_SPALTEN};
+	 *                  ohne Angabe alle, nicht gelesene Felder bleiben 0 bzw. null
+	 */
+	public Stream<Mautabschnitt> streamTrackInformations(String abschnittstyp, int fetchSize, String... spalten) {
+		if (fetchSize < 1) {
+			throw new IllegalArgumentException("fetchSize muss positiv sein: " + fetchSize);
+		}
+		List<String> auswahl = new ArrayList<>();
+		for (String spalte : spalten.length == 0 ? ABSCHNITT_SPALTEN.toArray(new String[0]) : spalten) {
+			String s = spalte.strip().toUpperCase(Locale.ROOT);
+			if (!ABSCHNITT_SPALTEN.contains(s)) {
+				throw new IllegalArgumentException("unbekannte Spalte " + spalte + ", erlaubt: " + ABSCHNITT_SPALTEN);
+			}
+			auswahl.add(s);
+		}
+		boolean praefix = abschnittstyp.endsWith("*");
+		String sql = "SELECT " + String.join(", ", auswahl) + " FROM MAUTABSCHNITT WHERE ABSCHNITTSTYP "
+				+ (praefix ? "LIKE ? ESCAPE '\\'" : "= ?");
+		String typ = praefix
+				? abschnittstyp.substring(0, abschnittstyp.length() - 1).replaceAll("([\\\\%_])", "\\\\$1") + "%"
+				: abschnittstyp;
+		String[] felder = auswahl.toArray(new String[0]);
+		return CursorStream.oeffne(getConnection(), sql, fetchSize, ps -> ps.setString(1, typ),
+				rs -> abschnitt(rs, felder));
+	}
 
-		try (PreparedStatement ps = getConnection().prepareStatement(sql)) {
-			ps.setString(1, abschnittstyp);
+	/** wie {@link #streamTrackInformations(String, int, String...)} mit allen Spalten */
+	public Stream<Mautabschnitt> streamTrackInformations(String abschnittstyp) {
+		return streamTrackInformations(abschnittstyp, FETCH_SIZE);
+	}
 
-			try (ResultSet rs = ps.executeQuery()) {
-				while (rs.next()) {
-					Mautabschnitt abschnitt = new Mautabschnitt(
-							rs.getInt("ABSCHNITTS_ID"),
-							rs.getInt("LAENGE"),
-							rs.getString("START_KOORDINATE"),
-							rs.getString("ZIEL_KOORDINATE"),
-							rs.getString("NAME"),
-							rs.getString("ABSCHNITTSTYP")
-					);
-					result.add(abschnitt);
-				}
-			}
-		} catch (SQLException e) {
-			L.error("Fehler beim Abfragen der Mautabschnitte für Typ = {}", abschnittstyp, e);
-			throw new DataException("Fehler beim Abfragen der Mautabschnitte: " + e.getMessage(), e);
+	/**
+	 * Uebergibt die Mautabschnitte eines Abschnittstyps einzeln an die Aktion
+	 * und schliesst den Cursor danach; liefert die Anzahl.
+	 */
+	public long forEachTrackInformation(String abschnittstyp, int fetchSize, Consumer<? super Mautabschnitt> aktion,
+			String... spalten) {
+		long[] anzahl = {0};
+		try (Stream<Mautabschnitt> abschnitte = streamTrackInformations(abschnittstyp, fetchSize, spalten)) {
+			abschnitte.forEach(a -> {
+				aktion.accept(a);
+				anzahl[0]++;
+			});
 		}
+		return anzahl[0];
+	}
 
-		return result;
+	private static Mautabschnitt abschnitt(ResultSet rs, String[] felder) throws SQLException {
+		Mautabschnitt a = new Mautabschnitt();
+		for (int i = 0; i < felder.length; i++) {
+			switch (felder[i]) {
+			case "ABSCHNITTS_ID":
+				a.setAbschnitts_id(rs.getInt(i + 1));
+				break;
+			case "LAENGE":
+				a.setLaenge(rs.getInt(i + 1));
+				break;
+			case "START_KOORDINATE":
+				a.setStart_koordinate(rs.getString(i + 1));
+				break;
+			case "ZIEL_KOORDINATE":
+				a.setZiel_koordinate(rs.getString(i + 1));
+				break;
+			case "NAME":
+				a.setName(rs.getString(i + 1));
+				break;
+			default:
+				a.setAbschnittstyp(rs.getString(i + 1));
+			}
+		}
+		return a;
 	}
 
+	private AbschnittKatalog abschnittKatalog() {
+		return AbschnittKatalog.aktuell(() -> new MautabschnittTdg(getConnection()).ermittleAbschnitte());
+	}
 
 }
@@ -1,5 +1,6 @@
 package de.htwberlin.dbtech.aufgaben.ue02;
 
+import de.htwberlin.dbtech.aufgaben.ue03.cache.Stammdaten;
 import de.htwberlin.dbtech.exceptions.DataException;
 import de.htwberlin.dbtech.utils.DbCred;
 import de.htwberlin.dbtech.utils.DbUnitUtils;
@@ -17,6 +18,8 @@ import org.slf4j.LoggerFactory;
 import java.io.File;
 import java.sql.*;
 import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import org.junit.AfterClass;
 import org.junit.Assert;
@@ -47,6 +50,7 @@ public class MautVerwaltungTest {
             IDataSet pre = new CsvDataSet(new File("test-data/ue02"));
             dbTester.setDataSet(pre);
             DatabaseOperation.CLEAN_INSERT.execute(dbTesterCon, pre);
+            Stammdaten.verwerfen();
             maut.setConnection(dbTesterCon.getConnection());
         } catch (Exception e) {
             DbUnitUtils.closeDbUnitConnectionQuietly(dbTesterCon);
@@ -100,6 +104,35 @@ public class MautVerwaltungTest {
         Assert.assertEquals("Die Anzahl der geladenen Mautabschnittsobjekt stimmt nicht ueberein!", 3, m.size());
     }
 
+    /**
+     * Der Testfall testet das Streamen von Mautabschnitten ueber einen Cursor
+     * mit Spaltenauswahl und Typ-Praefix.
+     */
+    @org.junit.Test
+    public void testMautverwaltung_3a() {
+        MautVerwaltungImpl impl = (MautVerwaltungImpl) maut;
+        try (Stream<Mautabschnitt> m = impl.streamTrackInformations("B13", 1, "abschnitts_id", "LAENGE")) {
+            List<Mautabschnitt> abschnitte = m.collect(Collectors.toList());
+            Assert.assertEquals(3, abschnitte.size());
+            Assert.assertTrue(abschnitte.get(0).getLaenge() > 0);
+            Assert.assertNull(abschnitte.get(0).getName());
+        }
+        Assert.assertEquals(3, impl.forEachTrackInformation("B*", 2,
+                a -> Assert.assertEquals("B13", a.getAbschnittstyp())));
+        try (Stream<Mautabschnitt> m = impl.streamTrackInformations("B%")) {
+            Assert.assertEquals(0, m.count());
+        }
+    }
+
+    /**
+     * Der Testfall testet im Fehlerfall das Streamen von Mautabschnitten mit
+     * einem Spaltennamen, der keine Spalte der Tabelle ist.
+     */
+    @org.junit.Test(expected = IllegalArgumentException.class)
+    public void testMautverwaltung_3b() {
+        ((MautVerwaltungImpl) maut).streamTrackInformations("B13", 10, "NAME FROM DUAL --");
+    }
+
     /**
      * Der Testfall testet im Erfolgfall, ob ein Fahrzeug korrekt in die Tabelle
      * Fahrzeug eingefügt und gespeichert worden ist.
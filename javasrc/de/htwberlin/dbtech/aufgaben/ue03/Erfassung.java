@@ -0,0 +1,35 @@
+package de.htwberlin.dbtech.aufgaben.ue03;
+
+/**
+ * Eine Erfassung eines Fahrzeugs durch ein Kontrollsystem, wie sie an
+ * {@link IMautService#berechneMaut(int, int, String)} uebergeben wird.
+ */
+public final class Erfassung {
+
+    private final int mautAbschnitt;
+    private final int achszahl;
+    private final String kennzeichen;
+
+    public Erfassung(int mautAbschnitt, int achszahl, String kennzeichen) {
+        this.mautAbschnitt = mautAbschnitt;
+        this.achszahl = achszahl;
+        this.kennzeichen = kennzeichen;
+    }
+
+    public int getMautAbschnitt() {
+        return mautAbschnitt;
+    }
+
+    public int getAchszahl() {
+        return achszahl;
+    }
+
+    public String getKennzeichen() {
+        return kennzeichen;
+    }
+
+    @Override
+    public String toString() {
+        return "Erfassung[" + mautAbschnitt + ", " + achszahl + ", " + kennzeichen + "]";
+    }
+}
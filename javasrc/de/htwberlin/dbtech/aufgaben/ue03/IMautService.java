@@ -5,6 +5,8 @@ import de.htwberlin.dbtech.exceptions.InvalidVehicleDataException;
 import de.htwberlin.dbtech.exceptions.UnkownVehicleException;
 
 import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Die Schnittstelle enthaelt die Services fuer die Mauterhebung.
@@ -54,6 +56,39 @@ public interface IMautService {
 	void berechneMaut(int mautAbschnitt, int achszahl, String kennzeichen)
 			throws UnkownVehicleException, InvalidVehicleDataException,
 			AlreadyCruisedException;
+
+	/**
+	 * Verarbeitet mehrere Erfassungen in einem Aufruf. Die Daten aller
+	 * Fahrzeuge, Buchungen und Abschnitte werden mengenorientiert gelesen,
+	 * die Mauterhebungen und Buchungsabschluesse als JDBC-Batch geschrieben.
+	 *
+	 * Die Erfassungen werden in der uebergebenen Reihenfolge ausgewertet; eine
+	 * zweite Erfassung derselben Buchung im Batch ist eine Doppelbefahrung.
+	 * Die Implementierungen mit Datenbank schreiben den Batch in einer
+	 * Transaktion: Bei einer Exception ist keine Erfassung gespeichert.
+	 * Die Standardimplementierung ruft berechneMaut je Erfassung auf und
+	 * meldet jeden Erfolgsfall als {@link Mautergebnis#BERECHNET}.
+	 *
+	 * @param erfassungen
+	 *            - die Erfassungen der Kontrollsysteme
+	 * @return je Erfassung das Ergebnis, in derselben Reihenfolge
+	 */
+	default List<Mautergebnis> berechneMautBatch(List<Erfassung> erfassungen) {
+		List<Mautergebnis> result = new ArrayList<>(erfassungen.size());
+		for (Erfassung e : erfassungen) {
+			try {
+				berechneMaut(e.getMautAbschnitt(), e.getAchszahl(), e.getKennzeichen());
+				result.add(Mautergebnis.BERECHNET);
+			} catch (UnkownVehicleException ex) {
+				result.add(Mautergebnis.UNBEKANNT);
+			} catch (InvalidVehicleDataException ex) {
+				result.add(Mautergebnis.ACHSZAHL_UNGUELTIG);
+			} catch (AlreadyCruisedException ex) {
+				result.add(Mautergebnis.BEREITS_BEFAHREN);
+			}
+		}
+		return result;
+	}
 	
 	 /**
 	   * Speichert die uebergebene Datenbankverbindung in einer Instanzvariablen.
@@ -0,0 +1,195 @@
+package de.htwberlin.dbtech.aufgaben.ue03;
+
+import de.htwberlin.dbtech.aufgaben.ue03.cache.FahrzeugCache;
+import de.htwberlin.dbtech.aufgaben.ue03.cache.TarifTabelle;
+import de.htwberlin.dbtech.aufgaben.ue03.tdg.AktivesFahrzeug;
+import de.htwberlin.dbtech.aufgaben.ue03.tdg.Buchungsstand;
+import de.htwberlin.dbtech.aufgaben.ue03.tdg.Mauterhebung;
+import de.htwberlin.dbtech.aufgaben.ue03.tdg.Tarif;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.IntSupplier;
+
+/**
+ * Wertet eine Menge von Erfassungen gegen vorab geladene Daten aus.
+ * Die Entscheidungen entsprechen denen von berechneMaut; statt Exceptions
+ * wird je Erfassung ein {@link Mautergebnis} geliefert. Die zu schreibenden
+ * Mauterhebungen und abzuschliessenden Buchungen werden gesammelt, damit
+ * der Aufrufer sie als JDBC-Batch speichern kann.
+ *
+ * Nur offene Buchungen (B_ID 1) werden abgeschlossen, abgeschlossene und
+ * stornierte gelten wie bei berechneMaut als bereits befahren. War eine
+ * Buchung beim Schreiben nicht mehr offen, meldet der Aufrufer das ueber
+ * {@link #bestaetigeAbschluesse(boolean[])}.
+ */
+final class MautBatch {
+
+    private final Map<String, AktivesFahrzeug> fahrzeuge;
+    private final Map<String, Buchungsstand> buchungen = new HashMap<>();
+    private final Map<Integer, Long> laengen;
+    private final TarifTabelle tarife;
+    private final IntSupplier mautIds;
+    private final LocalDate datum = LocalDate.now();
+
+    private final Set<String> abgeschlossen = new HashSet<>();
+    private final List<Buchungsstand> abgeschlosseneBuchungen = new ArrayList<>();
+    /** je abgeschlossener Buchung die Position der Erfassung */
+    private final List<Integer> abschlussPositionen = new ArrayList<>();
+    private final List<Mauterhebung> mauterhebungen = new ArrayList<>();
+    /** je Mauterhebung die Position der Erfassung */
+    private final List<Integer> erhebungPositionen = new ArrayList<>();
+    private List<Mautergebnis> ergebnisse = List.of();
+
+    /**
+     * @param buchungen aufsteigend nach BUCHUNG_ID; je Abschnitt und Kennzeichen zaehlt die offene,
+     *                  sonst die erste
+     * @param mautIds   liefert die MAUT_ID fuer jede neue Mauterhebung
+     */
+    MautBatch(Map<String, AktivesFahrzeug> fahrzeuge, List<Buchungsstand> buchungen,
+              Map<Integer, Long> laengen, TarifTabelle tarife, IntSupplier mautIds) {
+        this.fahrzeuge = fahrzeuge;
+        this.laengen = laengen;
+        this.tarife = tarife;
+        this.mautIds = mautIds;
+        for (Buchungsstand b : buchungen) {
+            String k = schluessel(b.getMautAbschnitt(), b.getKennzeichen());
+            if (b.getBId() == 1) {
+                Buchungsstand vorher = this.buchungen.get(k);
+                if (vorher == null || vorher.getBId() != 1) {
+                    this.buchungen.put(k, b);
+                }
+            } else {
+                this.buchungen.putIfAbsent(k, b);
+            }
+        }
+    }
+
+    /**
+     * Wertet die Erfassungen aus. Die gelieferte Liste wird von
+     * {@link #bestaetigeAbschluesse(boolean[])} noch angepasst.
+     */
+    List<Mautergebnis> werteAus(List<Erfassung> erfassungen) {
+        ergebnisse = new ArrayList<>(erfassungen.size());
+        for (Erfassung e : erfassungen) {
+            ergebnisse.add(werteAus(e, ergebnisse.size()));
+        }
+        return ergebnisse;
+    }
+
+    /**
+     * Uebernimmt das Ergebnis des bedingten Abschlusses je Buchung aus
+     * {@link #getAbgeschlosseneBuchungen()}. War eine Buchung nicht mehr
+     * offen, ist die Erfassung eine Doppelbefahrung: Ihr Ergebnis wird
+     * BEREITS_BEFAHREN und ihre Mauterhebung entfaellt.
+     */
+    void bestaetigeAbschluesse(boolean[] geschlossen) {
+        Set<Integer> befahren = new HashSet<>();
+        for (int i = 0; i < geschlossen.length; i++) {
+            if (!geschlossen[i]) {
+                int position = abschlussPositionen.get(i);
+                ergebnisse.set(position, Mautergebnis.BEREITS_BEFAHREN);
+                befahren.add(position);
+            }
+        }
+        if (befahren.isEmpty()) {
+            return;
+        }
+        for (int i = mauterhebungen.size() - 1; i >= 0; i--) {
+            if (befahren.contains(erhebungPositionen.get(i))) {
+                mauterhebungen.remove(i);
+                erhebungPositionen.remove(i);
+            }
+        }
+    }
+
+    private Mautergebnis werteAus(Erfassung e, int position) {
+        String schluessel = schluessel(e.getMautAbschnitt(), e.getKennzeichen());
+        AktivesFahrzeug fahrzeug = fahrzeuge.get(e.getKennzeichen());
+        Buchungsstand buchung = buchungen.get(schluessel);
+
+        if (fahrzeug == null && buchung == null) {
+            return Mautergebnis.UNBEKANNT;
+        }
+
+        boolean istAchszahlRichtig = fahrzeug != null
+                ? fahrzeug.getAchsen() == e.getAchszahl()
+                : buchung.getAchszahlRegel() != null
+                && TarifTabelle.passtZurAchszahl(buchung.getAchszahlRegel(), e.getAchszahl());
+
+        if (!istAchszahlRichtig) {
+            return Mautergebnis.ACHSZAHL_UNGUELTIG;
+        }
+
+        Mautergebnis ergebnis = null;
+        if (buchung != null) {
+            if (buchung.getBId() != 1 || abgeschlossen.contains(schluessel)) {
+                return Mautergebnis.BEREITS_BEFAHREN;
+            }
+            abgeschlossen.add(schluessel);
+            abgeschlosseneBuchungen.add(buchung);
+            abschlussPositionen.add(position);
+            ergebnis = Mautergebnis.BUCHUNG_ABGESCHLOSSEN;
+        }
+
+        if (fahrzeug != null) {
+            int kategorie = 0;
+            BigDecimal preis = BigDecimal.ZERO;
+            Tarif t = tarife.finde(fahrzeug.getSsklId(), e.getAchszahl());
+            if (t != null) {
+                kategorie = t.getKategorieId();
+                preis = TarifTabelle.berechnePreis(laengen.getOrDefault(e.getMautAbschnitt(), 0L),
+                        t.getMautsatzJeKm());
+            }
+            mauterhebungen.add(new Mauterhebung(mautIds.getAsInt(), e.getMautAbschnitt(),
+                    fahrzeug.getFzgId(), kategorie, datum, preis));
+            erhebungPositionen.add(position);
+            ergebnis = Mautergebnis.BERECHNET;
+        }
+        return ergebnis;
+    }
+
+    List<Buchungsstand> getAbgeschlosseneBuchungen() {
+        return abgeschlosseneBuchungen;
+    }
+
+    List<Mauterhebung> getMauterhebungen() {
+        return mauterhebungen;
+    }
+
+    static List<String> kennzeichen(List<Erfassung> erfassungen) {
+        Set<String> result = new LinkedHashSet<>();
+        for (Erfassung e : erfassungen) {
+            result.add(e.getKennzeichen());
+        }
+        return new ArrayList<>(result);
+    }
+
+    /** normalisierte Kennzeichen, z.B. als Schluessel der Sperre */
+    static List<String> normalisiert(List<String> kennzeichen) {
+        List<String> result = new ArrayList<>(kennzeichen.size());
+        for (String k : kennzeichen) {
+            result.add(FahrzeugCache.normalisiere(k));
+        }
+        return result;
+    }
+
+    static List<Integer> abschnitte(List<Erfassung> erfassungen) {
+        Set<Integer> result = new LinkedHashSet<>();
+        for (Erfassung e : erfassungen) {
+            result.add(e.getMautAbschnitt());
+        }
+        return new ArrayList<>(result);
+    }
+
+    private static String schluessel(int mautAbschnitt, String kennzeichen) {
+        return mautAbschnitt + "|" + kennzeichen;
+    }
+}
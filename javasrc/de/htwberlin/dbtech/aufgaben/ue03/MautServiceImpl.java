@@ -1,16 +1,37 @@
 package de.htwberlin.dbtech.aufgaben.ue03;
 
 import java.math.BigDecimal;
-import java.math.RoundingMode;
 import java.sql.*;
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import de.htwberlin.dbtech.aufgaben.ue03.cache.AbschnittKatalog;
+import de.htwberlin.dbtech.aufgaben.ue03.cache.FahrzeugCache;
+import de.htwberlin.dbtech.aufgaben.ue03.cache.PreisMatrix;
+import de.htwberlin.dbtech.aufgaben.ue03.cache.TarifTabelle;
+import de.htwberlin.dbtech.aufgaben.ue03.tdg.AktivesFahrzeug;
+import de.htwberlin.dbtech.aufgaben.ue03.tdg.Buchungsstand;
+import de.htwberlin.dbtech.aufgaben.ue03.tdg.FahrzeugStammdaten;
+import de.htwberlin.dbtech.aufgaben.ue03.tdg.FahrzeugTdg;
+import de.htwberlin.dbtech.aufgaben.ue03.tdg.Mauterhebung;
+import de.htwberlin.dbtech.aufgaben.ue03.tdg.MautabschnittTdg;
+import de.htwberlin.dbtech.aufgaben.ue03.tdg.MautkategorieTdg;
+import de.htwberlin.dbtech.aufgaben.ue03.tdg.SaldoTdg;
+import de.htwberlin.dbtech.aufgaben.ue03.tdg.Tarif;
 import de.htwberlin.dbtech.exceptions.DataException;
 import de.htwberlin.dbtech.exceptions.AlreadyCruisedException;
 import de.htwberlin.dbtech.exceptions.InvalidVehicleDataException;
 import de.htwberlin.dbtech.exceptions.UnkownVehicleException;
+import de.htwberlin.dbtech.utils.IdAllocator;
+import de.htwberlin.dbtech.utils.JdbcUtils;
+import de.htwberlin.dbtech.utils.StatementCache;
+import de.htwberlin.dbtech.utils.StreifenSperre;
 
 /**
  * Die Klasse realisiert den AusleiheService.
@@ -20,10 +41,75 @@ import de.htwberlin.dbtech.exceptions.UnkownVehicleException;
 public class MautServiceImpl implements IMautService {
 
 	private static final Logger L = LoggerFactory.getLogger(MautServiceImpl.class);
+
+	/**
+	 * Legt fest, wie die Fahrzeug-, Buchungs- und Tarifdaten einer Erfassung
+	 * aus der Datenbank ermittelt werden.
+	 */
+	public enum Aufloesung {
+		/** je Pruefung eine eigene Abfrage */
+		EINZELABFRAGEN,
+		/** Fahrzeug, Fahrzeuggeraet, Buchung und Abschnitt in einer Abfrage, Tarif aus der {@link TarifTabelle} */
+		VERBUNDABFRAGE
+	}
+
+	/** je Abschnitt und Kennzeichen zaehlt die offene Buchung, sonst die erste */
+	private static final String SQL_OFFENE_ZUERST = "CASE WHEN b.B_ID = 1 THEN 0 ELSE 1 END";
+
+	private static final String SQL_ERFASSUNGSDATEN =
+			"SELECT a.LAENGE, f.FZ_ID, f.ACHSEN, f.SSKL_ID, fg.FZG_ID, fg.STATUS AS FZG_STATUS, " +
+					"b.BUCHUNG_ID, b.B_ID, b.KATEGORIE_ID AS BUCHUNG_KATEGORIE " +
+					"FROM DUAL " +
+					"LEFT JOIN MAUTABSCHNITT a ON a.ABSCHNITTS_ID = ? " +
+					"LEFT JOIN FAHRZEUG f ON f.KENNZEICHEN = ? AND f.ABMELDEDATUM IS NULL " +
+					"LEFT JOIN FAHRZEUGGERAT fg ON fg.FZ_ID = f.FZ_ID " +
+					"LEFT JOIN BUCHUNG b ON b.ABSCHNITTS_ID = ? AND b.KENNZEICHEN = ? " +
+					"ORDER BY " + SQL_OFFENE_ZUERST + ", b.BUCHUNG_ID";
+
+	private static final String SQL_MAUTERHEBUNG =
+			"INSERT INTO MAUTERHEBUNG " +
+					"(MAUT_ID, ABSCHNITTS_ID, FZG_ID, KATEGORIE_ID, BEFAHRUNGSDATUM, KOSTEN) " +
+					"VALUES (?, ?, ?, ?, ?, ?)";
+
+	private static final IdAllocator MAUT_IDS = IdAllocator.fuer("MAUTERHEBUNG", "MAUT_ID");
+
 	private Connection connection;
+	private StatementCache statements;
+	private Aufloesung aufloesung = Aufloesung.EINZELABFRAGEN;
+	private StreifenSperre sperre = StreifenSperre.get();
 
 	@Override
 	public void setConnection(Connection connection) {this.connection = connection;
+		this.statements = connection != null ? StatementCache.fuer(connection) : null;
+		if (connection != null) {
+			abschnittKatalog();
+		}
+	}
+
+	/**
+	 * Waehlt das Verfahren, mit dem die Daten einer Erfassung ermittelt werden.
+	 * Mit {@link Aufloesung#VERBUNDABFRAGE} kostet jede Erfassung genau einen
+	 * lesenden Datenbankzugriff; geschrieben werden die Buchung bzw. die
+	 * Mauterhebung und der Saldo des Nutzers.
+	 */
+	public void setAufloesung(Aufloesung aufloesung) {
+		this.aufloesung = aufloesung;
+	}
+
+	/**
+	 * Setzt die Sperre, ueber die Aufrufe desselben Kennzeichens
+	 * nacheinander verarbeitet werden; Standard ist
+	 * {@link StreifenSperre#get()}, null schaltet sie ab. Ein Batch sperrt
+	 * alle seine Kennzeichen.
+	 *
+	 * Die Streifen bleiben bis zum Ende der Transaktion gesperrt, siehe
+	 * {@link StreifenSperre#inTransaction}: mit autoCommit laeuft jeder
+	 * Aufruf in einer eigenen Transaktion, sonst folgt die Freigabe auf den
+	 * Commit oder Rollback des Aufrufers ueber {@link JdbcUtils#commit} bzw.
+	 * {@link JdbcUtils#rollback}, wie in der ServiceFabrik.
+	 */
+	public void setSperre(StreifenSperre sperre) {
+		this.sperre = sperre;
 	}
 
 	private Connection getConnection() {
@@ -33,10 +119,32 @@ public class MautServiceImpl implements IMautService {
 		return connection;
 	}
 
+	private StatementCache statements() {
+		getConnection();
+		return statements;
+	}
+
 	@Override
 	public void berechneMaut(int mautAbschnitt, int achszahl, String kennzeichen)
 			throws UnkownVehicleException, InvalidVehicleDataException, AlreadyCruisedException {
 
+		if (sperre == null) {
+			pruefeUndBerechne(mautAbschnitt, achszahl, kennzeichen);
+			return;
+		}
+		sperre.inTransaction(Collections.singletonList(FahrzeugCache.normalisiere(kennzeichen)), getConnection(),
+				() -> {
+					pruefeUndBerechne(mautAbschnitt, achszahl, kennzeichen);
+					return null;
+				});
+	}
+
+	private void pruefeUndBerechne(int mautAbschnitt, int achszahl, String kennzeichen) {
+		if (aufloesung == Aufloesung.VERBUNDABFRAGE) {
+			berechneMautVerbund(mautAbschnitt, achszahl, kennzeichen);
+			return;
+		}
+
 		boolean istAutomatisch = istAutoRegistriert(kennzeichen);
 		boolean istManuell = istManuellRegistriert(mautAbschnitt, kennzeichen);
 
@@ -46,17 +154,13 @@ public class MautServiceImpl implements IMautService {
 
 		boolean istAchszahlRichtig = istAchszahlRichtig(mautAbschnitt, achszahl, kennzeichen,
 				istAutomatisch, istManuell);
-		boolean istBuchungAbgeschlossen = istBuchungAbgeschlossen(mautAbschnitt, kennzeichen);
 
 		if (!istAchszahlRichtig) {
 			throw new InvalidVehicleDataException("Fahrzeugdaten (Achszahl) sind nicht korrekt");
 		}
 
-		if (istManuell) {
-			if (istBuchungAbgeschlossen) {
-				throw new AlreadyCruisedException("Strecke wurde bereits befahren");
-			}
-			buchungsStatusAbgeschlossen(kennzeichen, mautAbschnitt);
+		if (istManuell && !schliesseOffeneBuchungAb(kennzeichen, mautAbschnitt)) {
+			throw new AlreadyCruisedException("Strecke wurde bereits befahren");
 		}
 
 		if (istAutomatisch) {
@@ -64,205 +168,393 @@ public class MautServiceImpl implements IMautService {
 		}
 	}
 
-	private boolean istManuellRegistriert(int mautAbschnitt, String kennzeichen) {
-		try (PreparedStatement s = connection.prepareStatement(
-				"SELECT * FROM BUCHUNG b WHERE KENNZEICHEN = ? AND ABSCHNITTS_ID = ?")) {
-
-			s.setString(1, kennzeichen);
-			s.setInt(2, mautAbschnitt);
-			ResultSet r = s.executeQuery();
-			return r.next();
-		} catch (SQLException e) {
-			throw new DataException(e);
-		}
-	}
-
-	private boolean istAutoRegistriert(String kennzeichen) {
-		try (PreparedStatement s = connection.prepareStatement(
-				"SELECT * FROM FAHRZEUG WHERE KENNZEICHEN = ? AND ABMELDEDATUM IS NULL")) {
-
-			s.setString(1, kennzeichen);
-			ResultSet r = s.executeQuery();
-			return r.next();
-		} catch (SQLException e) {
-			throw new DataException(e);
+	@Override
+	public List<Mautergebnis> berechneMautBatch(List<Erfassung> erfassungen) {
+		List<String> kennzeichen = MautBatch.kennzeichen(erfassungen);
+		if (sperre == null) {
+			return JdbcUtils.inTransaction(getConnection(), () -> werteBatchAus(erfassungen, kennzeichen));
 		}
+		return sperre.inTransaction(MautBatch.normalisiert(kennzeichen), getConnection(),
+				() -> werteBatchAus(erfassungen, kennzeichen));
 	}
 
-	private boolean istAchszahlRichtig(int mautAbschnitt, int achszahl, String kennzeichen,
-									   boolean istAutomatisch, boolean istManuell) {
+	private List<Mautergebnis> werteBatchAus(List<Erfassung> erfassungen, List<String> kennzeichen) {
+		MautBatch batch = new MautBatch(
+				ladeAktiveFahrzeuge(kennzeichen),
+				ladeBuchungen(kennzeichen),
+				ladeLaengen(MautBatch.abschnitte(erfassungen)),
+				tarifTabelle(),
+				this::naechsteMautId);
 
-		if (istAutomatisch) {
-			try (PreparedStatement s = connection.prepareStatement(
-					"SELECT 1 FROM FAHRZEUG " +
-							"WHERE KENNZEICHEN = ? AND ACHSEN = ? AND ABMELDEDATUM IS NULL")) {
+		List<Mautergebnis> ergebnisse = batch.werteAus(erfassungen);
 
-				s.setString(1, kennzeichen);
-				s.setInt(2, achszahl);
-				return s.executeQuery().next();
+		batch.bestaetigeAbschluesse(schliesseBuchungenAb(batch.getAbgeschlosseneBuchungen()));
+		fuegeMauterhebungenEin(batch.getMauterhebungen());
+		return ergebnisse;
+	}
 
+	private Map<String, AktivesFahrzeug> ladeAktiveFahrzeuge(List<String> kennzeichen) {
+		Map<String, AktivesFahrzeug> result = new HashMap<>();
+		for (List<String> teil : JdbcUtils.partition(kennzeichen, JdbcUtils.MAX_IN_LIST)) {
+			try (PreparedStatement s = getConnection().prepareStatement(
+					"SELECT f.KENNZEICHEN, f.ACHSEN, f.SSKL_ID, fg.FZG_ID, fg.STATUS " +
+							"FROM FAHRZEUG f " +
+							"LEFT JOIN FAHRZEUGGERAT fg ON fg.FZ_ID = f.FZ_ID " +
+							"WHERE f.ABMELDEDATUM IS NULL " +
+							"AND f.KENNZEICHEN IN (" + JdbcUtils.placeholders(teil.size()) + ")")) {
+
+				for (int i = 0; i < teil.size(); i++) {
+					s.setString(i + 1, teil.get(i));
+				}
+				try (ResultSet r = s.executeQuery()) {
+					while (r.next()) {
+						String k = r.getString("KENNZEICHEN");
+						if (!result.containsKey(k) || "active".equals(r.getString("STATUS"))) {
+							result.put(k, new AktivesFahrzeug(k, r.getInt("ACHSEN"), r.getInt("SSKL_ID"),
+									r.getLong("FZG_ID")));
+						}
+					}
+				}
 			} catch (SQLException e) {
 				throw new DataException(e);
 			}
 		}
+		return result;
+	}
 
-		if (istManuell) {
-			try (PreparedStatement s = connection.prepareStatement(
-					"SELECT MK.ACHSZAHL " +
+	private List<Buchungsstand> ladeBuchungen(List<String> kennzeichen) {
+		List<Buchungsstand> result = new ArrayList<>();
+		for (List<String> teil : JdbcUtils.partition(kennzeichen, JdbcUtils.MAX_IN_LIST)) {
+			try (PreparedStatement s = getConnection().prepareStatement(
+					"SELECT B.BUCHUNG_ID, B.B_ID, B.ABSCHNITTS_ID, B.KENNZEICHEN, MK.ACHSZAHL " +
 							"FROM BUCHUNG B " +
 							"JOIN MAUTKATEGORIE MK ON B.KATEGORIE_ID = MK.KATEGORIE_ID " +
-							"WHERE B.ABSCHNITTS_ID = ? AND B.KENNZEICHEN = ?")) {
-
-				s.setInt(1, mautAbschnitt);
-				s.setString(2, kennzeichen);
-				ResultSet r = s.executeQuery();
+							"WHERE B.KENNZEICHEN IN (" + JdbcUtils.placeholders(teil.size()) + ") " +
+							"ORDER BY B.BUCHUNG_ID")) {
 
-				if (r.next()) {
-					String regel = r.getString("ACHSZAHL");
-					return passtZurAchszahl(regel, achszahl);
+				for (int i = 0; i < teil.size(); i++) {
+					s.setString(i + 1, teil.get(i));
 				}
-				return false;
+				try (ResultSet r = s.executeQuery()) {
+					while (r.next()) {
+						result.add(new Buchungsstand(r.getLong("BUCHUNG_ID"), r.getInt("B_ID"),
+								r.getInt("ABSCHNITTS_ID"), r.getString("KENNZEICHEN"), r.getString("ACHSZAHL")));
+					}
+				}
+			} catch (SQLException e) {
+				throw new DataException(e);
+			}
+		}
+		return result;
+	}
+
+	private Map<Integer, Long> ladeLaengen(List<Integer> abschnitte) {
+		Map<Integer, Long> result = new HashMap<>();
+		for (List<Integer> teil : JdbcUtils.partition(abschnitte, JdbcUtils.MAX_IN_LIST)) {
+			try (PreparedStatement s = getConnection().prepareStatement(
+					"SELECT ABSCHNITTS_ID, LAENGE FROM MAUTABSCHNITT " +
+							"WHERE ABSCHNITTS_ID IN (" + JdbcUtils.placeholders(teil.size()) + ")")) {
 
+				for (int i = 0; i < teil.size(); i++) {
+					s.setInt(i + 1, teil.get(i));
+				}
+				try (ResultSet r = s.executeQuery()) {
+					while (r.next()) {
+						result.put(r.getInt("ABSCHNITTS_ID"), r.getLong("LAENGE"));
+					}
+				}
 			} catch (SQLException e) {
 				throw new DataException(e);
 			}
 		}
-		return false;
+		return result;
 	}
 
-	private boolean istBuchungAbgeschlossen(int mautAbschnitt, String kennzeichen) {
-		try (PreparedStatement s = connection.prepareStatement(
-				"SELECT B_ID FROM BUCHUNG WHERE ABSCHNITTS_ID = ? AND KENNZEICHEN = ?")) {
+	private TarifTabelle tarifTabelle() {
+		return TarifTabelle.aktuell(() -> new MautkategorieTdg(getConnection()).ermittleTarife());
+	}
 
-			s.setInt(1, mautAbschnitt);
-			s.setString(2, kennzeichen);
-			ResultSet r = s.executeQuery();
+	private PreisMatrix preisMatrix() {
+		return PreisMatrix.aktuell(tarifTabelle(), abschnittKatalog());
+	}
 
-			if (r.next()) {
-				int status = r.getInt("B_ID");
-				return status == 3;
-			}
-			return false;
+	private AbschnittKatalog abschnittKatalog() {
+		return AbschnittKatalog.aktuell(() -> new MautabschnittTdg(getConnection()).ermittleAbschnitte());
+	}
 
+	private long ladeLaenge(int mautAbschnitt) {
+		try (PreparedStatement s = statements().prepareStatement(
+				"SELECT LAENGE FROM MAUTABSCHNITT WHERE ABSCHNITTS_ID = ?")) {
+
+			s.setInt(1, mautAbschnitt);
+			try (ResultSet r = s.executeQuery()) {
+				return r.next() ? r.getLong("LAENGE") : 0L;
+			}
 		} catch (SQLException e) {
 			throw new DataException(e);
 		}
 	}
 
-	private void buchungsStatusAbgeschlossen(String kennzeichen, int mautAbschnitt){
-		try (PreparedStatement s = connection.prepareStatement("Update buchung set b_id = 3, befahrungsdatum = ? where abschnitts_id = ? AND kennzeichen = ?")) {
-			s.setDate(1, Date.valueOf(LocalDate.now()));
-			s.setInt(2, mautAbschnitt);
-			s.setString(3, kennzeichen);
+	private SaldoTdg salden() {
+		return new SaldoTdg(getConnection());
+	}
 
-			s.executeUpdate();
+	private int naechsteMautId() {
+		return (int) MAUT_IDS.naechsteId(getConnection());
+	}
 
+	/**
+	 * Schliesst die Buchungen ueber ihre BUCHUNG_ID ab, sofern sie noch offen
+	 * sind. Liefert je Buchung false, wenn sie es nicht mehr war.
+	 */
+	private boolean[] schliesseBuchungenAb(List<Buchungsstand> buchungen) {
+		if (buchungen.isEmpty()) {
+			return new boolean[0];
+		}
+		try (PreparedStatement s = statements().prepareStatement(
+				"UPDATE BUCHUNG SET B_ID = 3, BEFAHRUNGSDATUM = ? WHERE BUCHUNG_ID = ? AND B_ID = 1")) {
+
+			Date heute = Date.valueOf(LocalDate.now());
+			for (Buchungsstand b : buchungen) {
+				s.setDate(1, heute);
+				s.setLong(2, b.getBuchungId());
+				s.addBatch();
+			}
+			return JdbcUtils.geaendert(s.executeBatch());
 		} catch (SQLException e) {
 			throw new DataException(e);
 		}
 	}
 
-	private void autoMautberechnung(int achszahl, String kennzeichen, int mautAbschnitt) {
-		long laengeMeter = 0L;
-		int SSKL_ID = 0;
-		BigDecimal preis = BigDecimal.ZERO;
-		int kategorie = 0;
-		long fzg = 0;
-		int maut = 0;
+	private void fuegeMauterhebungenEin(List<Mauterhebung> erhebungen) {
+		if (erhebungen.isEmpty()) {
+			return;
+		}
+		try (PreparedStatement s = statements().prepareStatement(SQL_MAUTERHEBUNG)) {
+
+			for (Mauterhebung m : erhebungen) {
+				s.setInt(1, m.getMautId());
+				s.setInt(2, m.getMautAbschnitt());
+				s.setLong(3, m.getFzgId());
+				s.setInt(4, m.getKategorieId());
+				s.setDate(5, Date.valueOf(m.getDatum()));
+				s.setBigDecimal(6, m.getKosten());
+				s.addBatch();
+			}
+			s.executeBatch();
+		} catch (SQLException e) {
+			throw new DataException(e);
+		}
+		salden().bucheMauterhebungen(erhebungen);
+	}
 
-		try (PreparedStatement s = connection.prepareStatement(
-				"SELECT LAENGE FROM MAUTABSCHNITT WHERE ABSCHNITTS_ID = ?")) {
+	private void berechneMautVerbund(int mautAbschnitt, int achszahl, String kennzeichen) {
+		Erfassungsdaten d = ladeErfassungsdaten(mautAbschnitt, kennzeichen);
 
-			s.setInt(1, mautAbschnitt);
-			ResultSet r = s.executeQuery();
-			if (r.next()) {
-				laengeMeter = r.getLong("LAENGE");
+		if (!d.istAutomatisch() && !d.istManuell()) {
+			throw new UnkownVehicleException("Fahrzeug nicht registriert");
+		}
+
+		TarifTabelle tarife = tarifTabelle();
+		boolean istAchszahlRichtig = d.istAutomatisch()
+				? d.achsen == achszahl
+				: tarife.passt(d.buchungsKategorie, achszahl);
+
+		if (!istAchszahlRichtig) {
+			throw new InvalidVehicleDataException("Fahrzeugdaten (Achszahl) sind nicht korrekt");
+		}
+
+		if (d.istManuell()) {
+			// der gelesene Status spart nur das UPDATE, entschieden wird ueber die Zeilenzahl
+			if (d.buchungsStatus == 3 || !schliesseOffeneBuchungAb(kennzeichen, mautAbschnitt)) {
+				throw new AlreadyCruisedException("Strecke wurde bereits befahren");
 			}
-		} catch (SQLException e) {
-			throw new RuntimeException(e);
 		}
 
-		try (PreparedStatement s = connection.prepareStatement(
-				"SELECT SSKL_ID FROM FAHRZEUG WHERE ACHSEN = ? AND KENNZEICHEN = ?")) {
+		if (d.istAutomatisch()) {
+			int kategorie = 0;
+			BigDecimal preis = BigDecimal.ZERO;
+			Tarif tarif = tarife.finde(d.ssklId, achszahl);
+			if (tarif != null) {
+				kategorie = tarif.getKategorieId();
+				preis = TarifTabelle.berechnePreis(d.laengeMeter, tarif.getMautsatzJeKm());
+			}
+			fuegeMauterhebungEin(mautAbschnitt, d.fzgId, kategorie, preis);
+		}
+	}
+
+	/**
+	 * Liest alle Daten, die fuer die Pruefung und Abrechnung einer Erfassung
+	 * benoetigt werden, mit einer einzigen Abfrage. Die Ergebniszeilen sind das
+	 * Kreuzprodukt aus Fahrzeuggeraeten und Buchungen des Fahrzeugs. Wie bei
+	 * den Einzelabfragen zaehlt die offene Buchung, sonst die erste.
+	 */
+	private Erfassungsdaten ladeErfassungsdaten(int mautAbschnitt, String kennzeichen) {
+		Erfassungsdaten d = new Erfassungsdaten();
 
-			s.setInt(1, achszahl);
+		try (PreparedStatement s = statements().prepareStatement(SQL_ERFASSUNGSDATEN)) {
+			s.setInt(1, mautAbschnitt);
 			s.setString(2, kennzeichen);
-			ResultSet r = s.executeQuery();
-			if (r.next()) {
-				SSKL_ID = r.getInt("SSKL_ID");
+			s.setInt(3, mautAbschnitt);
+			s.setString(4, kennzeichen);
+
+			try (ResultSet r = s.executeQuery()) {
+				while (r.next()) {
+					d.laengeMeter = r.getLong("LAENGE");
+
+					r.getLong("FZ_ID");
+					if (!r.wasNull()) {
+						d.fahrzeugAktiv = true;
+						d.achsen = r.getInt("ACHSEN");
+						d.ssklId = r.getInt("SSKL_ID");
+					}
+
+					long fzgId = r.getLong("FZG_ID");
+					if (!r.wasNull() && (d.fzgId == 0 || "active".equals(r.getString("FZG_STATUS")))) {
+						d.fzgId = fzgId;
+					}
+
+					int buchungId = r.getInt("BUCHUNG_ID");
+					if (!r.wasNull() && d.buchungId == 0) {
+						d.buchungId = buchungId;
+						d.buchungsStatus = r.getInt("B_ID");
+						d.buchungsKategorie = r.getInt("BUCHUNG_KATEGORIE");
+					}
+				}
 			}
 		} catch (SQLException e) {
-			throw new RuntimeException(e);
+			throw new DataException(e);
 		}
+		return d;
+	}
 
-		try (PreparedStatement s = connection.prepareStatement(
-				"SELECT KATEGORIE_ID, ACHSZAHL, MAUTSATZ_JE_KM " +
-						"FROM MAUTKATEGORIE WHERE SSKL_ID = ?")) {
+	private void fuegeMauterhebungEin(int mautAbschnitt, long fzgId, int kategorie, BigDecimal preis) {
+		try (PreparedStatement s = statements().prepareStatement(SQL_MAUTERHEBUNG)) {
+			s.setInt(1, naechsteMautId());
+			s.setInt(2, mautAbschnitt);
+			s.setLong(3, fzgId);
+			s.setInt(4, kategorie);
+			s.setDate(5, Date.valueOf(LocalDate.now()));
+			s.setBigDecimal(6, preis);
 
-			s.setInt(1, SSKL_ID);
-			ResultSet r = s.executeQuery();
+			s.executeUpdate();
+		} catch (SQLException e) {
+			throw new DataException(e);
+		}
+		salden().bucheMauterhebung(fzgId, preis);
+	}
 
-			while (r.next()) {
-				String regel = r.getString("ACHSZAHL");
+	private boolean istManuellRegistriert(int mautAbschnitt, String kennzeichen) {
+		try (PreparedStatement s = statements().prepareStatement(
+				"SELECT * FROM BUCHUNG b WHERE KENNZEICHEN = ? AND ABSCHNITTS_ID = ?")) {
 
-				if (passtZurAchszahl(regel, achszahl)) {
-					BigDecimal mautsatzJeKm = r.getBigDecimal("MAUTSATZ_JE_KM");
-					kategorie = r.getInt("KATEGORIE_ID");
+			s.setString(1, kennzeichen);
+			s.setInt(2, mautAbschnitt);
+			ResultSet r = s.executeQuery();
+			return r.next();
+		} catch (SQLException e) {
+			throw new DataException(e);
+		}
+	}
 
-					BigDecimal lengthKm = BigDecimal.valueOf(laengeMeter)
-							.divide(BigDecimal.valueOf(1000), 3, RoundingMode.HALF_UP);
+	private boolean istAutoRegistriert(String kennzeichen) {
+		return fahrzeug(kennzeichen).istAngemeldet();
+	}
 
-					preis = mautsatzJeKm
-							.divide(BigDecimal.valueOf(100), 4, RoundingMode.HALF_UP)
-							.multiply(lengthKm);
+	private FahrzeugCache.Eintrag fahrzeug(String kennzeichen) {
+		return FahrzeugCache.get().get(kennzeichen, this::ladeStammdaten);
+	}
 
-					preis = preis.setScale(2, RoundingMode.HALF_UP);
+	private List<FahrzeugStammdaten> ladeStammdaten(String kennzeichen) {
+		try (PreparedStatement s = statements().prepareStatement(
+				"SELECT f.FZ_ID, f.SSKL_ID, f.ACHSEN, f.ABMELDEDATUM, fg.FZG_ID, fg.STATUS " +
+						"FROM FAHRZEUG f " +
+						"LEFT JOIN FAHRZEUGGERAT fg ON fg.FZ_ID = f.FZ_ID " +
+						"WHERE f.KENNZEICHEN = ? " +
+						"ORDER BY f.FZ_ID, fg.FZG_ID")) {
 
-					break;
-				}
+			s.setString(1, kennzeichen);
+			try (ResultSet r = s.executeQuery()) {
+				return FahrzeugTdg.leseStammdaten(r);
 			}
 		} catch (SQLException e) {
-			throw new RuntimeException(e);
+			throw new DataException(e);
 		}
+	}
 
-		try (PreparedStatement s = connection.prepareStatement(
-				"SELECT fg.FZG_ID " +
-						"FROM FAHRZEUGGERAT fg " +
-						"JOIN FAHRZEUG f ON fg.FZ_ID = f.FZ_ID " +
-						"WHERE f.SSKL_ID = ? " +
-						"  AND f.KENNZEICHEN = ? " +
-						"  AND f.ACHSEN = ?")) {
+	private boolean istAchszahlRichtig(int mautAbschnitt, int achszahl, String kennzeichen,
+									   boolean istAutomatisch, boolean istManuell) {
 
-			s.setInt(1, SSKL_ID);
-			s.setString(2, kennzeichen);
-			s.setInt(3, achszahl);
-			ResultSet r = s.executeQuery();
-			if (r.next()) {
-				fzg = r.getLong("FZG_ID");
-			}
-		} catch (SQLException e) {
-			throw new RuntimeException(e);
+		if (istAutomatisch) {
+			return fahrzeug(kennzeichen).istAngemeldet(achszahl);
 		}
 
-		try (PreparedStatement s = connection.prepareStatement(
-				"SELECT COALESCE(MAX(MAUT_ID), 0) AS MAX_ID FROM MAUTERHEBUNG")) {
+		if (istManuell) {
+			try (PreparedStatement s = statements().prepareStatement(
+					"SELECT MK.ACHSZAHL " +
+							"FROM BUCHUNG B " +
+							"JOIN MAUTKATEGORIE MK ON B.KATEGORIE_ID = MK.KATEGORIE_ID " +
+							"WHERE B.ABSCHNITTS_ID = ? AND B.KENNZEICHEN = ? " +
+							"ORDER BY " + SQL_OFFENE_ZUERST + ", B.BUCHUNG_ID")) {
 
-			ResultSet r = s.executeQuery();
-			if (r.next()) {
-				maut = (int) (r.getLong("MAX_ID") + 1);
-			} else {
-				maut = 1;
+				s.setInt(1, mautAbschnitt);
+				s.setString(2, kennzeichen);
+				ResultSet r = s.executeQuery();
+
+				if (r.next()) {
+					String regel = r.getString("ACHSZAHL");
+					return TarifTabelle.passtZurAchszahl(regel, achszahl);
+				}
+				return false;
+
+			} catch (SQLException e) {
+				throw new DataException(e);
 			}
+		}
+		return false;
+	}
+
+	/**
+	 * Schliesst die offenen Buchungen zu Abschnitt und Kennzeichen ab.
+	 * Liefert false, wenn keine offene Buchung mehr vorlag.
+	 */
+	private boolean schliesseOffeneBuchungAb(String kennzeichen, int mautAbschnitt) {
+		try (PreparedStatement s = statements().prepareStatement(
+				"UPDATE BUCHUNG SET B_ID = 3, BEFAHRUNGSDATUM = ? WHERE ABSCHNITTS_ID = ? AND KENNZEICHEN = ? AND B_ID = 1")) {
+			s.setDate(1, Date.valueOf(LocalDate.now()));
+			s.setInt(2, mautAbschnitt);
+			s.setString(3, kennzeichen);
+
+			return s.executeUpdate() > 0;
+
 		} catch (SQLException e) {
-			throw new RuntimeException(e);
+			throw new DataException(e);
+		}
+	}
+
+	private void autoMautberechnung(int achszahl, String kennzeichen, int mautAbschnitt) {
+		BigDecimal preis = BigDecimal.ZERO;
+		int kategorie = 0;
+
+		FahrzeugCache.Eintrag fahrzeug = fahrzeug(kennzeichen);
+		int SSKL_ID = fahrzeug.ermittleSchadstoffklasseId(achszahl);
+		long fzg = fahrzeug.ermittleFzgId(achszahl, SSKL_ID);
+
+		PreisMatrix matrix = preisMatrix();
+		int t = matrix.getTarife().index(SSKL_ID, achszahl);
+		if (t >= 0) {
+			Tarif tarif = matrix.getTarife().get(t);
+			kategorie = tarif.getKategorieId();
+			long cent = matrix.preisInCent(mautAbschnitt, t);
+			preis = cent >= 0
+					? PreisMatrix.alsEuro(cent)
+					// Abschnitt juenger als die Matrix
+					: TarifTabelle.berechnePreis(ladeLaenge(mautAbschnitt), tarif.getMautsatzJeKm());
 		}
 
-		try (PreparedStatement s = connection.prepareStatement(
-				"INSERT INTO MAUTERHEBUNG " +
-						"(MAUT_ID, ABSCHNITTS_ID, FZG_ID, KATEGORIE_ID, BEFAHRUNGSDATUM, KOSTEN) " +
-						"VALUES (?, ?, ?, ?, ?, ?)")) {
+		try (PreparedStatement s = statements().prepareStatement(SQL_MAUTERHEBUNG)) {
 
-			s.setInt(1, maut);
+			s.setInt(1, naechsteMautId());
 			s.setInt(2, mautAbschnitt);
 			s.setLong(3, fzg);
 			s.setInt(4, kategorie);
@@ -273,21 +565,26 @@ public class MautServiceImpl implements IMautService {
 		} catch (SQLException e) {
 			throw new RuntimeException(e);
 		}
+		salden().bucheMauterhebung(fzg, preis);
 	}
 
-	private boolean passtZurAchszahl(String regel, int achsen) {
-		regel = regel.trim();
-
-		if (regel.startsWith("=")) {
-			int val = Integer.parseInt(regel.substring(1).trim());
-			return achsen == val;
+	/** Ergebnis der Verbundabfrage fuer eine Erfassung. */
+	private static final class Erfassungsdaten {
+		long laengeMeter;
+		boolean fahrzeugAktiv;
+		int achsen;
+		int ssklId;
+		long fzgId;
+		int buchungId;
+		int buchungsStatus;
+		int buchungsKategorie;
+
+		boolean istAutomatisch() {
+			return fahrzeugAktiv;
 		}
 
-		if (regel.startsWith(">=")) {
-			int val = Integer.parseInt(regel.substring(2).trim());
-			return achsen >= val;
+		boolean istManuell() {
+			return buchungId != 0;
 		}
-
-		throw new IllegalArgumentException("Unbekannte Regel in ACHSZAHL: " + regel);
 	}
 }
@@ -1,46 +1,147 @@
 package de.htwberlin.dbtech.aufgaben.ue03;
 
+import de.htwberlin.dbtech.aufgaben.ue03.cache.FahrzeugCache;
+import de.htwberlin.dbtech.aufgaben.ue03.cache.TarifTabelle;
 import de.htwberlin.dbtech.aufgaben.ue03.tdg.*;
 import de.htwberlin.dbtech.exceptions.*;
+import de.htwberlin.dbtech.utils.JdbcUtils;
+import de.htwberlin.dbtech.utils.StreifenSperre;
 
 import java.math.BigDecimal;
 import java.sql.Connection;
 import java.time.LocalDate;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 
 public class MautServiceImplDao implements IMautService {
 
     private Connection connection;
+    private Datenbestand datenbestand;
 
     private FahrzeugDao fahrzeugDao;
     private BuchungDao buchungDao;
     private MautabschnittDao mautabschnittDao;
     private MautkategorieDao mautkategorieDao;
     private MauterhebungDao mauterhebungDao;
+    private MauterhebungPuffer schreibpuffer;
+    private DaoMetriken metriken;
+    private StreifenSperre sperre = StreifenSperre.get();
 
     @Override
     public void setConnection(Connection connection) {
         this.connection = connection;
-        this.fahrzeugDao = new FahrzeugTdg(connection);
-        this.buchungDao = new BuchungTdg(connection);
-        this.mautabschnittDao = new MautabschnittTdg(connection);
-        this.mautkategorieDao = new MautkategorieTdg(connection);
-        this.mauterhebungDao = new MauterhebungTdg(connection);
+        this.datenbestand = null;
+        if (connection == null) {
+            // geloest, z.B. von der ServiceFabrik nach einem Aufruf
+            this.fahrzeugDao = null;
+            this.buchungDao = null;
+            this.mautabschnittDao = null;
+            this.mautkategorieDao = null;
+            this.mauterhebungDao = null;
+            return;
+        }
+        setzeDaos(new FahrzeugTdg(connection), new BuchungTdg(connection),
+                new MautabschnittTdg(connection), new MautkategorieTdg(connection));
     }
 
-    private Connection getConnection() {
-        if (connection == null) {
+    /**
+     * Arbeitet statt mit einer Verbindung mit einem Datenbestand im Speicher,
+     * z.B. aus {@link Datenbestand#ladeCsv}. Ein Schreibpuffer wird dabei nicht
+     * benutzt.
+     */
+    public void setDatenbestand(Datenbestand datenbestand) {
+        this.connection = null;
+        this.datenbestand = datenbestand;
+        setzeDaos(datenbestand.fahrzeugDao(), datenbestand.buchungDao(),
+                datenbestand.mautabschnittDao(), datenbestand.mautkategorieDao());
+    }
+
+    private void setzeDaos(FahrzeugDao fahrzeugDao, BuchungDao buchungDao,
+                           MautabschnittDao mautabschnittDao, MautkategorieDao mautkategorieDao) {
+        this.fahrzeugDao = fahrzeugDao;
+        this.buchungDao = buchungDao;
+        this.mautabschnittDao = mautabschnittDao;
+        this.mautkategorieDao = mautkategorieDao;
+        if (metriken != null) {
+            this.fahrzeugDao = new FahrzeugDaoMessung(fahrzeugDao, metriken);
+            this.buchungDao = new BuchungDaoMessung(buchungDao, metriken);
+            this.mautabschnittDao = new MautabschnittDaoMessung(mautabschnittDao, metriken);
+            this.mautkategorieDao = new MautkategorieDaoMessung(mautkategorieDao, metriken);
+        }
+        this.mauterhebungDao = erzeugeMauterhebungDao();
+    }
+
+    /**
+     * Misst alle DAO-Aufrufe in den uebergebenen Metriken, z.B.
+     * {@link DaoMetriken#get()}; null schaltet die Messung ab. Wirkt ab dem
+     * naechsten setConnection.
+     */
+    public void setMetriken(DaoMetriken metriken) {
+        this.metriken = metriken;
+    }
+
+    /**
+     * Leitet das Einfuegen von Mauterhebungen ueber einen Schreibpuffer, der
+     * mehrere Zeilen mit einem Commit schreibt; null schreibt wieder direkt.
+     * Die Mauterhebungen sind dann nicht Teil der Transaktion von
+     * {@link #berechneMautBatch(List)}.
+     */
+    public void setSchreibpuffer(MauterhebungPuffer schreibpuffer) {
+        this.schreibpuffer = schreibpuffer;
+        if (connection != null) {
+            this.mauterhebungDao = erzeugeMauterhebungDao();
+        }
+    }
+
+    /**
+     * Setzt die Sperre, ueber die Aufrufe desselben Kennzeichens
+     * nacheinander verarbeitet werden; Standard ist
+     * {@link StreifenSperre#get()}, null schaltet sie ab. Die Streifen
+     * bleiben bis zum Ende der Transaktion gesperrt, siehe
+     * {@link MautServiceImpl#setSperre}; mit einem Datenbestand fuer die
+     * Dauer des Aufrufs.
+     */
+    public void setSperre(StreifenSperre sperre) {
+        this.sperre = sperre;
+    }
+
+    private MauterhebungDao erzeugeMauterhebungDao() {
+        MauterhebungDao dao;
+        if (datenbestand != null) {
+            dao = datenbestand.mauterhebungDao();
+        } else {
+            MauterhebungDao direkt = new MauterhebungTdg(connection);
+            dao = schreibpuffer != null ? schreibpuffer.fuer(direkt) : direkt;
+        }
+        return metriken != null ? new MauterhebungDaoMessung(dao, metriken) : dao;
+    }
+
+    /** Prueft, ob eine Verbindung oder ein Datenbestand gesetzt ist. */
+    private void pruefeVerbindung() {
+        if (connection == null && datenbestand == null) {
             throw new DataException("Connection not set");
         }
-        return connection;
     }
 
     @Override
     public void berechneMaut(int mautAbschnitt, int achszahl, String kennzeichen)
             throws UnkownVehicleException, InvalidVehicleDataException, AlreadyCruisedException {
 
-        getConnection();
+        pruefeVerbindung();
 
+        if (sperre == null) {
+            pruefeUndBerechne(mautAbschnitt, achszahl, kennzeichen);
+            return;
+        }
+        sperre.inTransaction(Collections.singletonList(FahrzeugCache.normalisiere(kennzeichen)), connection,
+                () -> {
+                    pruefeUndBerechne(mautAbschnitt, achszahl, kennzeichen);
+                    return null;
+                });
+    }
+
+    private void pruefeUndBerechne(int mautAbschnitt, int achszahl, String kennzeichen) {
         boolean istAutomatisch = fahrzeugDao.istAutoRegistriert(kennzeichen);
         boolean istManuell = buchungDao.istManuellRegistriert(mautAbschnitt, kennzeichen);
 
@@ -51,18 +152,12 @@ public class MautServiceImplDao implements IMautService {
         boolean istAchszahlRichtig = pruefeAchszahl(mautAbschnitt, achszahl, kennzeichen,
                 istAutomatisch, istManuell);
 
-        boolean istBuchungAbgeschlossen =
-                buchungDao.istBuchungAbgeschlossen(mautAbschnitt, kennzeichen);
-
         if (!istAchszahlRichtig) {
             throw new InvalidVehicleDataException("Fahrzeugdaten (Achszahl) sind nicht korrekt");
         }
 
-        if (istManuell) {
-            if (istBuchungAbgeschlossen) {
-                throw new AlreadyCruisedException("Strecke wurde bereits befahren");
-            }
-            buchungDao.setzeBuchungAbgeschlossen(kennzeichen, mautAbschnitt);
+        if (istManuell && !buchungDao.schliesseOffeneBuchungAb(kennzeichen, mautAbschnitt)) {
+            throw new AlreadyCruisedException("Strecke wurde bereits befahren");
         }
 
         if (istAutomatisch) {
@@ -70,6 +165,36 @@ public class MautServiceImplDao implements IMautService {
         }
     }
 
+    @Override
+    public List<Mautergebnis> berechneMautBatch(List<Erfassung> erfassungen) {
+        pruefeVerbindung();
+
+        List<String> kennzeichen = MautBatch.kennzeichen(erfassungen);
+        if (sperre != null) {
+            return sperre.inTransaction(MautBatch.normalisiert(kennzeichen), connection,
+                    () -> werteBatchAus(erfassungen, kennzeichen));
+        }
+        if (connection == null) {
+            return werteBatchAus(erfassungen, kennzeichen);
+        }
+        return JdbcUtils.inTransaction(connection, () -> werteBatchAus(erfassungen, kennzeichen));
+    }
+
+    private List<Mautergebnis> werteBatchAus(List<Erfassung> erfassungen, List<String> kennzeichen) {
+        MautBatch batch = new MautBatch(
+                fahrzeugDao.ermittleAktiveFahrzeuge(kennzeichen),
+                buchungDao.ermittleBuchungen(kennzeichen),
+                mautabschnittDao.ermittleLaengenInMetern(MautBatch.abschnitte(erfassungen)),
+                TarifTabelle.aktuell(mautkategorieDao::ermittleTarife),
+                mauterhebungDao::ermittleNaechsteMautId);
+
+        List<Mautergebnis> ergebnisse = batch.werteAus(erfassungen);
+
+        batch.bestaetigeAbschluesse(buchungDao.schliesseOffeneBuchungenAb(batch.getAbgeschlosseneBuchungen()));
+        mauterhebungDao.fuegeMauterhebungenEin(batch.getMauterhebungen());
+        return ergebnisse;
+    }
+
     private boolean pruefeAchszahl(int mautAbschnitt, int achszahl, String kennzeichen,
                                    boolean istAutomatisch, boolean istManuell) {
 
@@ -80,7 +205,7 @@ public class MautServiceImplDao implements IMautService {
 
         if (istManuell) {
             String regel = buchungDao.ermittleAchszahlRegel(mautAbschnitt, kennzeichen);
-            return regel != null && passtZurAchszahl(regel, achszahl);
+            return regel != null && TarifTabelle.passtZurAchszahl(regel, achszahl);
         }
 
         return false;
@@ -88,12 +213,10 @@ public class MautServiceImplDao implements IMautService {
 
     private void autoMautberechnung(int achszahl, String kennzeichen, int mautAbschnitt) {
 
-        long laengeMeter = mautabschnittDao.ermittleLaengeInMetern(mautAbschnitt);
-
         int ssklId = fahrzeugDao.ermittleSchadstoffklasseId(kennzeichen, achszahl);
 
         Map.Entry<Integer, BigDecimal> mp =
-                mautkategorieDao.berechneMautpreisFuerFahrzeug(ssklId, achszahl, laengeMeter);
+                mautkategorieDao.berechneMautpreisFuerAbschnitt(ssklId, achszahl, mautAbschnitt);
 
         int kategorieId = mp.getKey();
         BigDecimal preis = mp.getValue();
@@ -111,17 +234,4 @@ public class MautServiceImplDao implements IMautService {
                 preis
         );
     }
-
-    public static boolean passtZurAchszahl(String regel, int achsen) {
-        regel = regel.trim();
-        if (regel.startsWith(">=")) {
-            int val = Integer.parseInt(regel.substring(2).trim());
-            return achsen >= val;
-        }
-        if (regel.startsWith("=")) {
-            int val = Integer.parseInt(regel.substring(1).trim());
-            return achsen == val;
-        }
-        throw new IllegalArgumentException("Unbekannte Regel in ACHSZAHL: " + regel);
-    }
 }
@@ -1,5 +1,6 @@
 package de.htwberlin.dbtech.aufgaben.ue03;
 
+import de.htwberlin.dbtech.aufgaben.ue03.cache.Stammdaten;
 import de.htwberlin.dbtech.exceptions.AlreadyCruisedException;
 import de.htwberlin.dbtech.exceptions.InvalidVehicleDataException;
 import de.htwberlin.dbtech.exceptions.UnkownVehicleException;
@@ -24,11 +25,15 @@ import org.dbunit.database.DatabaseConfig;
 import org.dbunit.ext.oracle.OracleDataTypeFactory;
 
 import java.io.File;
+import java.util.List;
 
 import static org.junit.Assert.*;
 
 /**
  * Die Klasse enthaelt die Testfaelle fuer die Methoden des Mautservice
+ * mit Einzelabfragen; {@link MautServiceVerbundTest} fuehrt dieselben
+ * Testfaelle mit der Verbundabfrage aus, {@link MautServiceImplDaoTest}
+ * mit der DAO/TDG-basierten Implementierung.
  *
  * @author Patrick Dohmeier
  */
@@ -37,11 +42,27 @@ public class MautServiceTest {
     private static final Logger L = LoggerFactory.getLogger(MautServiceTest.class);
     private static IDatabaseConnection dbTesterCon = null;
 
-    private static final IMautService maut = new MautServiceImpl();
+    static IMautService maut;
 
     @BeforeClass
     public static void setUp() {
-        L.debug("setup: start");
+        setUp(MautServiceImpl.Aufloesung.EINZELABFRAGEN);
+    }
+
+    /**
+     * Testet {@link MautServiceImpl} mit dem Verfahren.
+     */
+    static void setUp(MautServiceImpl.Aufloesung aufloesung) {
+        MautServiceImpl service = new MautServiceImpl();
+        service.setAufloesung(aufloesung);
+        setUp(service);
+    }
+
+    /**
+     * Laedt die Testdaten neu und verbindet den zu testenden Service.
+     */
+    static void setUp(IMautService service) {
+        L.debug("setup: start {}", service.getClass().getSimpleName());
         try {
             IDatabaseTester dbTester = new JdbcDatabaseTester(DbCred.driverClass, DbCred.url, DbCred.user, DbCred.password,
                     DbCred.schema);
@@ -50,6 +71,8 @@ public class MautServiceTest {
             IDataSet pre = new CsvDataSet(new File("test-data/ue03-04"));
             dbTester.setDataSet(pre);
             DatabaseOperation.CLEAN_INSERT.execute(dbTesterCon, pre);
+            Stammdaten.verwerfen();
+            maut = service;
             maut.setConnection(dbTesterCon.getConnection());
         } catch (Exception e) {
             DbUnitUtils.closeDbUnitConnectionQuietly(dbTesterCon);
@@ -165,4 +188,76 @@ public class MautServiceTest {
         }
     }
 
+    /**
+     * Der Testfall testet die Verarbeitung mehrerer Erfassungen in einem Batch.
+     */
+    @org.junit.Test
+    public void testMauterhebung_7() throws Exception {
+        // Die Erfassungen entsprechen den Testfaellen 1 bis 6; statt einer
+        // Exception liefert der Batch je Erfassung das Mautergebnis. Die
+        // offene Buchung von DV 9413 NJ auf Abschnitt 1200 wird abgeschlossen,
+        // die zweite Erfassung derselben Buchung ist eine Doppelbefahrung.
+        int mauterhebungen = zeilen("select * from MAUTERHEBUNG");
+
+        List<Mautergebnis> ergebnisse = maut.berechneMautBatch(List.of(
+                new Erfassung(1200, 4, "LDS 677"),
+                new Erfassung(1200, 4, "HH 8499"),
+                new Erfassung(1200, 3, "DV 9413 NJ"),
+                new Erfassung(4174, 10, "DV 9413 NJ"),
+                new Erfassung(1200, 10, "DV 9413 NJ"),
+                new Erfassung(1200, 10, "DV 9413 NJ"),
+                new Erfassung(1433, 5, "M 6569")));
+
+        assertEquals(List.of(Mautergebnis.UNBEKANNT, Mautergebnis.ACHSZAHL_UNGUELTIG,
+                Mautergebnis.ACHSZAHL_UNGUELTIG, Mautergebnis.BEREITS_BEFAHREN,
+                Mautergebnis.BUCHUNG_ABGESCHLOSSEN, Mautergebnis.BEREITS_BEFAHREN,
+                Mautergebnis.BERECHNET), ergebnisse);
+        assertEquals("Die Buchung ist nicht auf abgeschlossen gesetzt worden", "3",
+                buchung(1113).getValue(0, "B_ID").toString());
+        assertEquals("Es wurde nicht genau eine Mauterhebung gespeichert", mauterhebungen + 1,
+                zeilen("select * from MAUTERHEBUNG"));
+    }
+
+    /**
+     * Der Testfall testet, dass nur offene Buchungen abgeschlossen werden,
+     * einzeln und im Batch.
+     */
+    @org.junit.Test
+    public void testMauterhebung_8() throws Exception {
+        // Die Buchung von LDS HV 372 auf Abschnitt 461 ist storniert. Wie eine
+        // abgeschlossene Buchung fuehrt sie zu einer AlreadyCruisedException
+        // bzw. im Batch zu BEREITS_BEFAHREN. Die offene Buchung von B CV 8890
+        // auf Abschnitt 1200 ist seit Testfall 5 abgeschlossen; die bereits
+        // vorher abgeschlossene Buchung 1001 darf nicht erneut abgeschlossen
+        // werden.
+        try {
+            maut.berechneMaut(461, 10, "LDS HV 372");
+            fail("Die stornierte Buchung wurde abgeschlossen");
+        } catch (AlreadyCruisedException e) {
+            // erwartet
+        }
+
+        List<Mautergebnis> ergebnisse = maut.berechneMautBatch(List.of(
+                new Erfassung(461, 10, "LDS HV 372"),
+                new Erfassung(1200, 4, "B CV 8890")));
+
+        assertEquals(List.of(Mautergebnis.BEREITS_BEFAHREN, Mautergebnis.BEREITS_BEFAHREN), ergebnisse);
+        ITable storniert = buchung(1011);
+        assertEquals("Die stornierte Buchung wurde veraendert", "2", storniert.getValue(0, "B_ID").toString());
+        assertNull("Die stornierte Buchung hat ein Befahrungsdatum", storniert.getValue(0, "BEFAHRUNGSDATUM"));
+        assertTrue("Die abgeschlossene Buchung wurde erneut abgeschlossen",
+                buchung(1001).getValue(0, "BEFAHRUNGSDATUM").toString().startsWith("2015-02-18"));
+    }
+
+    static ITable buchung(int buchungId) throws Exception {
+        QueryDataSet databaseDataSet = new QueryDataSet(dbTesterCon);
+        databaseDataSet.addTable("BUCHUNG", "select * from BUCHUNG where BUCHUNG_ID = " + buchungId);
+        return databaseDataSet.getTable("BUCHUNG");
+    }
+
+    static int zeilen(String sql) throws Exception {
+        QueryDataSet databaseDataSet = new QueryDataSet(dbTesterCon);
+        databaseDataSet.addTable("ERGEBNIS", sql);
+        return databaseDataSet.getTable("ERGEBNIS").getRowCount();
+    }
 }
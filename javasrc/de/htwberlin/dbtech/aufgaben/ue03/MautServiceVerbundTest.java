@@ -0,0 +1,16 @@
+package de.htwberlin.dbtech.aufgaben.ue03;
+
+import org.junit.BeforeClass;
+
+/**
+ * Die Klasse fuehrt die Testfaelle von {@link MautServiceTest} mit der
+ * Verbundabfrage ({@link MautServiceImpl.Aufloesung#VERBUNDABFRAGE}) aus.
+ */
+public class MautServiceVerbundTest extends MautServiceTest {
+
+    /** verdeckt {@link MautServiceTest#setUp()} */
+    @BeforeClass
+    public static void setUp() {
+        setUp(MautServiceImpl.Aufloesung.VERBUNDABFRAGE);
+    }
+}
@@ -0,0 +1,24 @@
+package de.htwberlin.dbtech.aufgaben.ue03;
+
+/**
+ * Ergebnis der Verarbeitung einer einzelnen {@link Erfassung}. Jeder
+ * Fehlerfall entspricht einer Exception von
+ * {@link IMautService#berechneMaut(int, int, String)}.
+ */
+public enum Mautergebnis {
+
+    /** Maut im Automatischen Verfahren berechnet und gespeichert */
+    BERECHNET,
+
+    /** offene Buchung im Manuellen Verfahren abgeschlossen */
+    BUCHUNG_ABGESCHLOSSEN,
+
+    /** entspricht der UnkownVehicleException */
+    UNBEKANNT,
+
+    /** entspricht der InvalidVehicleDataException */
+    ACHSZAHL_UNGUELTIG,
+
+    /** entspricht der AlreadyCruisedException */
+    BEREITS_BEFAHREN
+}
@@ -0,0 +1,54 @@
+package de.htwberlin.dbtech.aufgaben.ue03.abrechnung;
+
+import de.htwberlin.dbtech.aufgaben.ue03.tdg.SaldoTdg;
+import de.htwberlin.dbtech.exceptions.DataException;
+import de.htwberlin.dbtech.utils.DbCred;
+import de.htwberlin.dbtech.utils.JdbcUtils;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * Kommandozeile fuer OFFENER_SALDO: Neuaufbau aus MAUTERHEBUNG und POSITION
+ * (nach dem Laden von Daten ohne Service) oder Abfrage des Saldos eines
+ * Nutzers.
+ *
+ * Aufruf: {@code OffeneSalden neu | OffeneSalden <nutzerId>}
+ */
+public final class OffeneSalden {
+
+    private OffeneSalden() {
+    }
+
+    public static void main(String[] args) {
+        if (args.length != 1) {
+            System.err.println("Aufruf: OffeneSalden neu | OffeneSalden <nutzerId>");
+            System.exit(2);
+        }
+        JdbcUtils.loadDriver(DbCred.driverClass);
+        Connection connection = JdbcUtils.getConnectionViaDriverManager(DbCred.url, DbCred.user, DbCred.password);
+        try {
+            SaldoTdg salden = new SaldoTdg(connection);
+            if ("neu".equals(args[0])) {
+                connection.setAutoCommit(false);
+                long start = System.nanoTime();
+                int zeilen;
+                try {
+                    zeilen = salden.neuAufbauen();
+                    connection.commit();
+                } catch (RuntimeException e) {
+                    // Oracle schreibt beim Schliessen sonst fest
+                    connection.rollback();
+                    throw e;
+                }
+                System.out.printf("%,d Saldozeilen in %d ms neu aufgebaut%n", zeilen, (System.nanoTime() - start) / 1000000);
+            } else {
+                System.out.println(salden.ermittleSaldo(Long.parseLong(args[0])));
+            }
+        } catch (SQLException e) {
+            throw new DataException(e);
+        } finally {
+            JdbcUtils.closeConnectionQuietly(connection);
+        }
+    }
+}
@@ -0,0 +1,495 @@
+package de.htwberlin.dbtech.aufgaben.ue03.abrechnung;
+
+import de.htwberlin.dbtech.aufgaben.ue03.tdg.SaldoTdg;
+import de.htwberlin.dbtech.exceptions.DataException;
+import de.htwberlin.dbtech.utils.ConnectionPool;
+import de.htwberlin.dbtech.utils.DbCred;
+import de.htwberlin.dbtech.utils.IdAllocator;
+import de.htwberlin.dbtech.utils.JdbcUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.sql.DataSource;
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Rechnungslauf zu einem Stichtag: jeder faellige Nutzer erhaelt eine
+ * RECHNUNG (Status offen, BUCHUNGSDATUM = Stichtag) ueber alle seine
+ * Mauterhebungen bis einschliesslich Stichtag, die noch in keiner POSITION
+ * stehen, mit je einer POSITION je Mauterhebung.
+ *
+ * Faellig ist ein Nutzer, dessen letzte Rechnung mindestens
+ * RECHNUNGSINTERVALL Monate (ohne Angabe einen Monat) vor dem Stichtag
+ * liegt oder der noch keine Rechnung hat.
+ *
+ * Die faelligen Nutzer werden in {@link Konfiguration#partitionen(int)}
+ * gleich grosse Bereiche von NUTZER_IDs geteilt, die parallel abgerechnet
+ * werden. Jede Partition liest die offenen Mauterhebungen ihrer Nutzer
+ * sortiert ueber einen Cursor auf einer eigenen Verbindung und schreibt
+ * Rechnungen und Positionen per Batch ueber eine zweite; im selben Batch
+ * wird der abgerechnete Betrag je Fahrzeuggeraet von OFFENER_SALDO
+ * abgezogen. Festgeschrieben
+ * wird nur an Nutzergrenzen, eine Rechnung ist also immer vollstaendig oder
+ * gar nicht vorhanden.
+ *
+ * Wiederanlauf: Bereits abgerechnete Nutzer sind nicht mehr faellig und
+ * bereits berechnete Mauterhebungen stehen in POSITION. Ein abgebrochener
+ * Lauf wird daher durch einen erneuten Lauf zum selben Stichtag
+ * fortgesetzt, eine einzelne Partition mit
+ * {@link #abrechnen(LocalDate, long, long)}.
+ *
+ * Aufruf: {@code Rechnungslauf <stichtag> [partitionen] [threads]}
+ */
+public final class Rechnungslauf {
+    private static final Logger L = LoggerFactory.getLogger(Rechnungslauf.class);
+
+    /** RECHNUNNGSSTATUS offen */
+    static final int OFFEN = 1;
+
+    /** grosse Bloecke: die Partitionen teilen sich den Zaehler, jede Reservierung ist ein Roundtrip */
+    private static final IdAllocator R_IDS = IdAllocator.fuer("RECHNUNG", "R_ID", 1000);
+
+    /** Nutzer ohne Rechnung seit RECHNUNGSINTERVALL Monaten vor dem Stichtag (Parameter) */
+    private static final String FAELLIG = "NOT EXISTS (SELECT 1 FROM RECHNUNG r WHERE r.NUTZER_ID = n.NUTZER_ID "
+            + "AND r.BUCHUNGSDATUM > ADD_MONTHS(?, -COALESCE(n.RECHNUNGSINTERVALL, 1)))";
+
+    private static final String FAELLIGE_NUTZER = "SELECT n.NUTZER_ID FROM NUTZER n WHERE " + FAELLIG
+            + " ORDER BY n.NUTZER_ID";
+
+    private static final String OFFENE_MAUTERHEBUNGEN = "SELECT n.NUTZER_ID, me.MAUT_ID, me.KOSTEN, me.FZG_ID "
+            + "FROM NUTZER n "
+            + "JOIN FAHRZEUG f ON f.NUTZER_ID = n.NUTZER_ID "
+            + "JOIN FAHRZEUGGERAT g ON g.FZ_ID = f.FZ_ID "
+            + "JOIN MAUTERHEBUNG me ON me.FZG_ID = g.FZG_ID "
+            + "WHERE n.NUTZER_ID BETWEEN ? AND ? AND me.BEFAHRUNGSDATUM < ? AND " + FAELLIG + " "
+            + "AND NOT EXISTS (SELECT 1 FROM POSITION p WHERE p.MAUT_ID = me.MAUT_ID) "
+            + "ORDER BY n.NUTZER_ID, me.FZG_ID";
+
+    private static final String INSERT_RECHNUNG = "INSERT INTO RECHNUNG (R_ID, STATUS_ID, NUTZER_ID, "
+            + "BUCHUNGSDATUM, SUMME) VALUES (?, ?, ?, ?, ?)";
+
+    private static final String INSERT_POSITION = "INSERT INTO POSITION (MAUT_ID, R_ID) VALUES (?, ?)";
+
+    /** abgerechnete Betraege aus OFFENER_SALDO (siehe {@link SaldoTdg}) */
+    private static final String UPDATE_SALDO = "UPDATE OFFENER_SALDO SET SUMME = SUMME - ?, ANZAHL = ANZAHL - ? "
+            + "WHERE NUTZER_ID = ? AND FZG_ID = ?";
+
+    /** groesster Wert von RECHNUNG.SUMME NUMBER(8,2) in Cent */
+    private static final long MAX_SUMME_CENT = 99_999_999;
+
+    private final DataSource dataSource;
+    private final Konfiguration konfiguration;
+
+    public Rechnungslauf(DataSource dataSource, Konfiguration konfiguration) {
+        this.dataSource = dataSource;
+        this.konfiguration = konfiguration;
+    }
+
+    public static void main(String[] args) {
+        if (args.length < 1) {
+            System.err.println("Aufruf: Rechnungslauf <stichtag> [partitionen] [threads]");
+            System.exit(2);
+        }
+        LocalDate stichtag = LocalDate.parse(args[0]);
+        Konfiguration k = new Konfiguration();
+        if (args.length > 1) {
+            k.partitionen(Integer.parseInt(args[1]));
+        }
+        if (args.length > 2) {
+            k.threads(Integer.parseInt(args[2]));
+        }
+        JdbcUtils.loadDriver(DbCred.driverClass);
+        List<Teilergebnis> ergebnisse;
+        try (ConnectionPool pool = JdbcUtils.createConnectionPool(DbCred.url, DbCred.user, DbCred.password,
+                1, 2 * k.threads)) {
+            ergebnisse = new Rechnungslauf(pool, k).abrechnen(stichtag);
+        }
+        boolean fehler = false;
+        for (Teilergebnis t : ergebnisse) {
+            System.out.println(t);
+            fehler |= t.getFehler() != null;
+        }
+        if (fehler) {
+            System.err.println("Nicht alle Partitionen abgerechnet, Lauf zum selben Stichtag wiederholen");
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Rechnet alle faelligen Nutzer zum Stichtag ab und liefert das Ergebnis
+     * je Partition. Schlaegt eine Partition fehl, laufen die anderen weiter;
+     * der Fehler steht im {@link Teilergebnis}.
+     */
+    public List<Teilergebnis> abrechnen(LocalDate stichtag) {
+        long start = System.nanoTime();
+        long[][] bereiche = bereiche(faelligeNutzer(stichtag), konfiguration.partitionen);
+        L.info("Rechnungslauf zum {}: {} Partitionen, {}", stichtag, bereiche.length, konfiguration);
+
+        ExecutorService threads = Executors.newFixedThreadPool(konfiguration.threads, r -> {
+            Thread t = new Thread(r, "rechnungslauf");
+            t.setDaemon(true);
+            return t;
+        });
+        List<Future<Teilergebnis>> laufend = new ArrayList<>();
+        try {
+            for (long[] b : bereiche) {
+                laufend.add(threads.submit(() -> abrechnen(stichtag, b[0], b[1])));
+            }
+            List<Teilergebnis> ergebnisse = new ArrayList<>();
+            for (Future<Teilergebnis> f : laufend) {
+                ergebnisse.add(f.get());
+            }
+            long rechnungen = ergebnisse.stream().mapToLong(Teilergebnis::getRechnungen).sum();
+            long positionen = ergebnisse.stream().mapToLong(Teilergebnis::getPositionen).sum();
+            L.info("Rechnungslauf zum {}: {} Rechnungen mit {} Positionen in {} ms", stichtag, rechnungen,
+                    positionen, (System.nanoTime() - start) / 1000000);
+            return ergebnisse;
+        } catch (ExecutionException e) {
+            throw new DataException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DataException("Rechnungslauf unterbrochen", e);
+        } finally {
+            threads.shutdownNow();
+        }
+    }
+
+    /**
+     * Rechnet die faelligen Nutzer mit NUTZER_ID von vonNutzer bis
+     * bisNutzer (einschliesslich) ab. Fehler werden nicht geworfen, sondern
+     * im Ergebnis geliefert; bis dahin erstellte Rechnungen bleiben bestehen.
+     */
+    public Teilergebnis abrechnen(LocalDate stichtag, long vonNutzer, long bisNutzer) {
+        Teilergebnis t = new Teilergebnis(vonNutzer, bisNutzer);
+        long start = System.nanoTime();
+        Timestamp buchungsdatum = Timestamp.valueOf(stichtag.atStartOfDay());
+        try (Connection lesen = dataSource.getConnection();
+             Connection schreiben = dataSource.getConnection()) {
+            schreiben.setAutoCommit(false);
+            try (PreparedStatement abfrage = lesen.prepareStatement(OFFENE_MAUTERHEBUNGEN,
+                         ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+                 PreparedStatement rechnung = schreiben.prepareStatement(INSERT_RECHNUNG);
+                 PreparedStatement position = schreiben.prepareStatement(INSERT_POSITION);
+                 PreparedStatement saldo = schreiben.prepareStatement(UPDATE_SALDO)) {
+                abfrage.setFetchSize(konfiguration.fetchSize);
+                abfrage.setLong(1, vonNutzer);
+                abfrage.setLong(2, bisNutzer);
+                abfrage.setTimestamp(3, Timestamp.valueOf(stichtag.plusDays(1).atStartOfDay()));
+                abfrage.setTimestamp(4, buchungsdatum);
+                Rechnungsbildung r = new Rechnungsbildung(t, schreiben, rechnung, position, saldo,
+                        buchungsdatum);
+                try (ResultSet rs = abfrage.executeQuery()) {
+                    while (rs.next()) {
+                        r.mauterhebung(rs.getLong(1), rs.getLong(4), rs.getLong(2), rs.getBigDecimal(3));
+                    }
+                }
+                r.abschliessen();
+            } catch (SQLException | RuntimeException e) {
+                schreiben.rollback();
+                throw e;
+            }
+        } catch (SQLException | RuntimeException e) {
+            L.error("Partition {} bis {} abgebrochen nach {} Rechnungen", vonNutzer, bisNutzer, t.rechnungen, e);
+            t.fehler = e;
+        }
+        t.millis = (System.nanoTime() - start) / 1000000;
+        return t;
+    }
+
+    /**
+     * Liefert die faelligen Nutzer aufsteigend.
+     */
+    long[] faelligeNutzer(LocalDate stichtag) {
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement ps = connection.prepareStatement(FAELLIGE_NUTZER)) {
+            ps.setFetchSize(konfiguration.fetchSize);
+            ps.setTimestamp(1, Timestamp.valueOf(stichtag.atStartOfDay()));
+            long[] nutzer = new long[1024];
+            int n = 0;
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    if (n == nutzer.length) {
+                        nutzer = Arrays.copyOf(nutzer, 2 * n);
+                    }
+                    nutzer[n++] = rs.getLong(1);
+                }
+            }
+            return Arrays.copyOf(nutzer, n);
+        } catch (SQLException e) {
+            L.error("Fehler beim Ermitteln der faelligen Nutzer", e);
+            throw new DataException(e);
+        }
+    }
+
+    /**
+     * Teilt die aufsteigend sortierten Nutzer in hoechstens anzahl Bereiche
+     * {von, bis} mit gleich vielen Nutzern.
+     */
+    static long[][] bereiche(long[] nutzer, int anzahl) {
+        int n = Math.min(anzahl, nutzer.length);
+        long[][] bereiche = new long[n][];
+        for (int i = 0; i < n; i++) {
+            int von = (int) ((long) i * nutzer.length / n);
+            int bis = (int) ((long) (i + 1) * nutzer.length / n) - 1;
+            bereiche[i] = new long[]{nutzer[von], nutzer[bis]};
+        }
+        return bereiche;
+    }
+
+    /**
+     * Sammelt die nach Nutzer sortierten Mauterhebungen einer Partition zu
+     * Rechnungen.
+     */
+    private final class Rechnungsbildung {
+        private final Teilergebnis t;
+        private final Connection connection;
+        private final PreparedStatement rechnung;
+        private final PreparedStatement position;
+        private final PreparedStatement saldo;
+        private final Timestamp buchungsdatum;
+
+        private long nutzer = -1;
+        private long[] mautIds = new long[64];
+        private int anzahl;
+        private long summeCent;
+        /** Anteile der Fahrzeuggeraete des Nutzers fuer OFFENER_SALDO */
+        private long[] geraete = new long[8];
+        private long[] geraetCent = new long[8];
+        private int[] geraetAnzahl = new int[8];
+        private int anzahlGeraete;
+        private int imBatch;
+        private int seitCommit;
+
+        Rechnungsbildung(Teilergebnis t, Connection connection, PreparedStatement rechnung,
+                         PreparedStatement position, PreparedStatement saldo, Timestamp buchungsdatum) {
+            this.t = t;
+            this.connection = connection;
+            this.rechnung = rechnung;
+            this.position = position;
+            this.saldo = saldo;
+            this.buchungsdatum = buchungsdatum;
+        }
+
+        void mauterhebung(long nutzerId, long fzgId, long mautId, BigDecimal kosten) throws SQLException {
+            if (nutzerId != nutzer) {
+                nutzerFertig();
+                nutzer = nutzerId;
+            }
+            if (anzahl == mautIds.length) {
+                mautIds = Arrays.copyOf(mautIds, 2 * anzahl);
+            }
+            mautIds[anzahl++] = mautId;
+            long cent = kosten.movePointRight(2).longValueExact();
+            summeCent += cent;
+
+            // die Mauterhebungen eines Nutzers kommen nach Geraet sortiert
+            if (anzahlGeraete == 0 || geraete[anzahlGeraete - 1] != fzgId) {
+                if (anzahlGeraete == geraete.length) {
+                    geraete = Arrays.copyOf(geraete, 2 * anzahlGeraete);
+                    geraetCent = Arrays.copyOf(geraetCent, 2 * anzahlGeraete);
+                    geraetAnzahl = Arrays.copyOf(geraetAnzahl, 2 * anzahlGeraete);
+                }
+                geraete[anzahlGeraete] = fzgId;
+                geraetCent[anzahlGeraete] = 0;
+                geraetAnzahl[anzahlGeraete] = 0;
+                anzahlGeraete++;
+            }
+            geraetCent[anzahlGeraete - 1] += cent;
+            geraetAnzahl[anzahlGeraete - 1]++;
+        }
+
+        void abschliessen() throws SQLException {
+            nutzerFertig();
+            if (imBatch > 0) {
+                sende();
+            }
+            connection.commit();
+        }
+
+        /** schreibt die Rechnung des bisherigen Nutzers und schreibt an der Nutzergrenze ggf. fest */
+        private void nutzerFertig() throws SQLException {
+            if (anzahl > 0) {
+                if (summeCent > MAX_SUMME_CENT) {
+                    // passt nicht in RECHNUNG.SUMME, die Mauterhebungen bleiben offen
+                    L.error("Nutzer {}: Summe {} Cent uebersteigt RECHNUNG.SUMME, nicht abgerechnet", nutzer,
+                            summeCent);
+                    t.uebersprungen++;
+                } else {
+                    schreibeRechnung();
+                }
+            }
+            anzahl = 0;
+            summeCent = 0;
+            anzahlGeraete = 0;
+            if (seitCommit >= konfiguration.commitIntervall) {
+                sende();
+                connection.commit();
+                seitCommit = 0;
+            }
+        }
+
+        private void schreibeRechnung() throws SQLException {
+            long rId = R_IDS.naechsteId(connection);
+            rechnung.setLong(1, rId);
+            rechnung.setInt(2, OFFEN);
+            rechnung.setLong(3, nutzer);
+            rechnung.setTimestamp(4, buchungsdatum);
+            rechnung.setBigDecimal(5, BigDecimal.valueOf(summeCent, 2));
+            rechnung.addBatch();
+            for (int g = 0; g < anzahlGeraete; g++) {
+                saldo.setBigDecimal(1, BigDecimal.valueOf(geraetCent[g], 2));
+                saldo.setInt(2, geraetAnzahl[g]);
+                saldo.setLong(3, nutzer);
+                saldo.setLong(4, geraete[g]);
+                saldo.addBatch();
+            }
+            for (int i = 0; i < anzahl; i++) {
+                position.setLong(1, mautIds[i]);
+                position.setLong(2, rId);
+                position.addBatch();
+                // Rechnungen vor ihren Positionen senden, sonst verletzt POSITION den Fremdschluessel
+                if (++imBatch >= konfiguration.batchGroesse) {
+                    sende();
+                }
+            }
+            t.rechnungen++;
+            t.positionen += anzahl;
+            t.summeCent += summeCent;
+            seitCommit += anzahl + 1;
+        }
+
+        private void sende() throws SQLException {
+            rechnung.executeBatch();
+            position.executeBatch();
+            saldo.executeBatch();
+            imBatch = 0;
+        }
+    }
+
+    /**
+     * Ergebnis einer Partition.
+     */
+    public static final class Teilergebnis {
+        private final long vonNutzer;
+        private final long bisNutzer;
+        private long rechnungen;
+        private long positionen;
+        private long summeCent;
+        private long uebersprungen;
+        private long millis;
+        private Exception fehler;
+
+        Teilergebnis(long vonNutzer, long bisNutzer) {
+            this.vonNutzer = vonNutzer;
+            this.bisNutzer = bisNutzer;
+        }
+
+        public long getVonNutzer() {
+            return vonNutzer;
+        }
+
+        public long getBisNutzer() {
+            return bisNutzer;
+        }
+
+        public long getRechnungen() {
+            return rechnungen;
+        }
+
+        public long getPositionen() {
+            return positionen;
+        }
+
+        /** Summe der erstellten Rechnungen in Cent */
+        public long getSummeCent() {
+            return summeCent;
+        }
+
+        /** Nutzer, deren Summe nicht in RECHNUNG.SUMME passt */
+        public long getUebersprungen() {
+            return uebersprungen;
+        }
+
+        public long getMillis() {
+            return millis;
+        }
+
+        /** Ursache des Abbruchs oder null */
+        public Exception getFehler() {
+            return fehler;
+        }
+
+        @Override
+        public String toString() {
+            return "Partition[" + vonNutzer + " - " + bisNutzer + ": " + rechnungen + " Rechnungen, " + positionen
+                    + " Positionen, " + BigDecimal.valueOf(summeCent, 2) + " EUR, " + uebersprungen
+                    + " uebersprungen, " + millis + " ms" + (fehler == null ? "" : ", Fehler: " + fehler) + "]";
+        }
+    }
+
+    /**
+     * Einstellungen des Rechnungslaufs. Standard: 16 Partitionen auf 4
+     * Threads, Batches von 1000 Positionen, Commit nach mindestens 10000
+     * Zeilen, Fetchsize 1000.
+     */
+    public static final class Konfiguration {
+        private int partitionen = 16;
+        private int threads = 4;
+        private int batchGroesse = 1000;
+        private int commitIntervall = 10_000;
+        private int fetchSize = 1000;
+
+        public Konfiguration partitionen(int partitionen) {
+            this.partitionen = positiv("partitionen", partitionen);
+            return this;
+        }
+
+        /** parallel laufende Partitionen, je zwei Verbindungen */
+        public Konfiguration threads(int threads) {
+            this.threads = positiv("threads", threads);
+            return this;
+        }
+
+        public Konfiguration batchGroesse(int batchGroesse) {
+            this.batchGroesse = positiv("batchGroesse", batchGroesse);
+            return this;
+        }
+
+        /** Zeilen, nach denen an der naechsten Nutzergrenze festgeschrieben wird */
+        public Konfiguration commitIntervall(int commitIntervall) {
+            this.commitIntervall = positiv("commitIntervall", commitIntervall);
+            return this;
+        }
+
+        public Konfiguration fetchSize(int fetchSize) {
+            this.fetchSize = positiv("fetchSize", fetchSize);
+            return this;
+        }
+
+        private static int positiv(String name, int wert) {
+            if (wert < 1) {
+                throw new IllegalArgumentException(name + " muss positiv sein: " + wert);
+            }
+            return wert;
+        }
+
+        @Override
+        public String toString() {
+            return "partitionen=" + partitionen + ", threads=" + threads + ", batchGroesse=" + batchGroesse
+                    + ", commitIntervall=" + commitIntervall + ", fetchSize=" + fetchSize;
+        }
+    }
+}
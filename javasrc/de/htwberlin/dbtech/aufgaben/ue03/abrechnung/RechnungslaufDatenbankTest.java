@@ -0,0 +1,258 @@
+package de.htwberlin.dbtech.aufgaben.ue03.abrechnung;
+
+import de.htwberlin.dbtech.aufgaben.ue03.cache.Stammdaten;
+import de.htwberlin.dbtech.aufgaben.ue03.tdg.Mauterhebung;
+import de.htwberlin.dbtech.aufgaben.ue03.tdg.MauterhebungTdg;
+import de.htwberlin.dbtech.aufgaben.ue03.tdg.Saldo;
+import de.htwberlin.dbtech.aufgaben.ue03.tdg.SaldoTdg;
+import de.htwberlin.dbtech.utils.ConnectionPool;
+import de.htwberlin.dbtech.utils.DbCred;
+import de.htwberlin.dbtech.utils.DbUnitUtils;
+import de.htwberlin.dbtech.utils.JdbcUtils;
+import org.dbunit.IDatabaseTester;
+import org.dbunit.JdbcDatabaseTester;
+import org.dbunit.database.DatabaseConfig;
+import org.dbunit.database.IDatabaseConnection;
+import org.dbunit.database.QueryDataSet;
+import org.dbunit.dataset.IDataSet;
+import org.dbunit.dataset.ITable;
+import org.dbunit.dataset.csv.CsvDataSet;
+import org.dbunit.ext.oracle.OracleDataTypeFactory;
+import org.dbunit.operation.DatabaseOperation;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+
+import java.io.File;
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Die Klasse enthaelt die Testfaelle fuer den Rechnungslauf auf dem
+ * Datenbestand ue03-04: Rechnungen und Positionen, Wiederanlauf zum selben
+ * Stichtag, Abzug von OFFENER_SALDO und Nutzer, deren Summe nicht in
+ * RECHNUNG.SUMME passt.
+ */
+public class RechnungslaufDatenbankTest {
+    /** nach allen Mauterhebungen des Datenbestands */
+    private static final LocalDate STICHTAG = LocalDate.of(2015, 3, 31);
+    /** 8 Mauterhebungen auf 7 Geraeten, zusammen 6.90 */
+    private static final long NUTZER = 1000002L;
+    /** Geraet des Nutzers 1000001 ohne Mauterhebungen */
+    private static final long GERAET_1000001 = 7785969141L;
+
+    private static IDatabaseConnection dbTesterCon = null;
+    private static IDataSet pre;
+    private static ConnectionPool pool;
+
+    @BeforeClass
+    public static void setUp() {
+        try {
+            IDatabaseTester dbTester = new JdbcDatabaseTester(DbCred.driverClass, DbCred.url, DbCred.user,
+                    DbCred.password, DbCred.schema);
+            dbTesterCon = dbTester.getConnection();
+            dbTesterCon.getConfig().setProperty(DatabaseConfig.PROPERTY_DATATYPE_FACTORY, new OracleDataTypeFactory());
+            pre = new CsvDataSet(new File("test-data/ue03-04"));
+            dbTester.setDataSet(pre);
+            pool = JdbcUtils.createConnectionPool(DbCred.url, DbCred.user, DbCred.password, 1, 6);
+        } catch (Exception e) {
+            DbUnitUtils.closeDbUnitConnectionQuietly(dbTesterCon);
+            throw new RuntimeException(e);
+        }
+    }
+
+    @AfterClass
+    public static void tearDown() {
+        if (pool != null) {
+            pool.close();
+        }
+        DbUnitUtils.closeDbUnitConnectionQuietly(dbTesterCon);
+    }
+
+    /**
+     * RECHNUNG und POSITION stehen nicht im Datenbestand; ohne Leeren
+     * scheitert CLEAN_INSERT an den Fremdschluesseln auf MAUTERHEBUNG und
+     * NUTZER.
+     */
+    @Before
+    public void laden() throws Exception {
+        leeren();
+        DatabaseOperation.CLEAN_INSERT.execute(dbTesterCon, pre);
+        Stammdaten.verwerfen();
+        try (Connection c = pool.getConnection()) {
+            c.setAutoCommit(false);
+            new SaldoTdg(c).neuAufbauen();
+            c.commit();
+        }
+    }
+
+    @After
+    public void leeren() throws Exception {
+        try (Connection c = pool.getConnection();
+             Statement s = c.createStatement()) {
+            s.executeUpdate("DELETE FROM POSITION");
+            s.executeUpdate("DELETE FROM RECHNUNG");
+        }
+    }
+
+    /**
+     * Der Testfall testet, dass jeder Nutzer mit Mauterhebungen genau eine
+     * Rechnung ueber die Summe seiner Mauterhebungen mit je einer Position
+     * erhaelt.
+     */
+    @org.junit.Test
+    public void testRechnungenUndPositionen() throws Exception {
+        List<Rechnungslauf.Teilergebnis> ergebnisse = lauf().abrechnen(STICHTAG);
+
+        long rechnungen = 0;
+        long positionen = 0;
+        for (Rechnungslauf.Teilergebnis t : ergebnisse) {
+            assertNull(t.getFehler());
+            rechnungen += t.getRechnungen();
+            positionen += t.getPositionen();
+        }
+        assertEquals(zahl("SELECT COUNT(DISTINCT f.NUTZER_ID) FROM MAUTERHEBUNG me " +
+                "JOIN FAHRZEUGGERAT fg ON fg.FZG_ID = me.FZG_ID JOIN FAHRZEUG f ON f.FZ_ID = fg.FZ_ID"), rechnungen);
+        assertEquals(18, positionen);
+        assertEquals(rechnungen, zahl("SELECT COUNT(*) FROM RECHNUNG"));
+        assertEquals(18, zahl("SELECT COUNT(*) FROM POSITION"));
+
+        ITable r = tabelle("SELECT STATUS_ID, BUCHUNGSDATUM, SUMME, " +
+                "(SELECT COUNT(*) FROM POSITION p WHERE p.R_ID = r.R_ID) AS POSITIONEN " +
+                "FROM RECHNUNG r WHERE NUTZER_ID = " + NUTZER);
+        assertEquals(1, r.getRowCount());
+        assertEquals("1", r.getValue(0, "STATUS_ID").toString());
+        assertEquals(0, new BigDecimal("6.90").compareTo(new BigDecimal(r.getValue(0, "SUMME").toString())));
+        assertEquals("8", r.getValue(0, "POSITIONEN").toString());
+        assertEquals(Timestamp.valueOf(STICHTAG.atStartOfDay()), r.getValue(0, "BUCHUNGSDATUM"));
+
+        // jede Rechnung ueber genau die Kosten ihrer Positionen
+        assertEquals(0, zahl("SELECT COUNT(*) FROM RECHNUNG r WHERE r.SUMME <> " +
+                "(SELECT SUM(me.KOSTEN) FROM POSITION p JOIN MAUTERHEBUNG me ON me.MAUT_ID = p.MAUT_ID " +
+                "WHERE p.R_ID = r.R_ID)"));
+    }
+
+    /**
+     * Der Testfall testet den Wiederanlauf: nach einer einzeln abgerechneten
+     * Partition rechnet der Lauf zum selben Stichtag nur die uebrigen Nutzer
+     * ab, ein weiterer Lauf gar keinen mehr.
+     */
+    @org.junit.Test
+    public void testWiederanlaufZumSelbenStichtag() throws Exception {
+        Rechnungslauf lauf = lauf();
+        Rechnungslauf.Teilergebnis teil = lauf.abrechnen(STICHTAG, NUTZER, NUTZER);
+        assertNull(teil.getFehler());
+        assertEquals(1, teil.getRechnungen());
+        assertEquals(8, teil.getPositionen());
+
+        long rechnungen = 0;
+        for (Rechnungslauf.Teilergebnis t : lauf.abrechnen(STICHTAG)) {
+            assertNull(t.getFehler());
+            rechnungen += t.getRechnungen();
+        }
+        assertEquals(zahl("SELECT COUNT(*) FROM RECHNUNG") - 1, rechnungen);
+        assertEquals(0, zahl("SELECT COUNT(*) FROM (SELECT NUTZER_ID FROM RECHNUNG " +
+                "GROUP BY NUTZER_ID HAVING COUNT(*) > 1)"));
+        assertEquals(0, zahl("SELECT COUNT(*) FROM (SELECT MAUT_ID FROM POSITION " +
+                "GROUP BY MAUT_ID HAVING COUNT(*) > 1)"));
+        assertEquals(18, zahl("SELECT COUNT(*) FROM POSITION"));
+
+        for (Rechnungslauf.Teilergebnis t : lauf.abrechnen(STICHTAG)) {
+            assertEquals(0, t.getRechnungen());
+        }
+    }
+
+    /**
+     * Der Testfall testet, dass der Lauf den abgerechneten Betrag von
+     * OFFENER_SALDO abzieht und Mauterhebungen nach dem Stichtag offen
+     * bleiben.
+     */
+    @org.junit.Test
+    public void testSaldoAbgezogen() throws Exception {
+        try (Connection c = pool.getConnection()) {
+            Saldo vorher = new SaldoTdg(c).ermittleSaldo(NUTZER);
+            assertEquals(0, new BigDecimal("6.90").compareTo(vorher.getSumme()));
+            assertEquals(8, vorher.getAnzahl());
+
+            // 1014 am 11.03. liegt nach dem Stichtag
+            Rechnungslauf.Teilergebnis t = lauf().abrechnen(LocalDate.of(2015, 3, 9), NUTZER, NUTZER);
+            assertNull(t.getFehler());
+            assertEquals(7, t.getPositionen());
+
+            Saldo nachher = new SaldoTdg(c).ermittleSaldo(NUTZER);
+            assertEquals(0, new BigDecimal("0.39").compareTo(nachher.getSumme()));
+            assertEquals(1, nachher.getAnzahl());
+        }
+
+        // der Nutzer ist zum Stichtag nicht mehr faellig, alle anderen sind danach ausgeglichen
+        lauf().abrechnen(STICHTAG);
+        assertEquals(0, zahl("SELECT COUNT(*) FROM OFFENER_SALDO WHERE NUTZER_ID <> " + NUTZER +
+                " AND (SUMME <> 0 OR ANZAHL <> 0)"));
+        assertEquals(1, zahl("SELECT SUM(ANZAHL) FROM OFFENER_SALDO WHERE NUTZER_ID = " + NUTZER));
+    }
+
+    /**
+     * Der Testfall testet einen Nutzer, dessen Summe NUMBER(8,2) von
+     * RECHNUNG.SUMME uebersteigt: er wird uebersprungen, seine
+     * Mauterhebungen und sein Saldo bleiben offen, die anderen Nutzer werden
+     * abgerechnet.
+     */
+    @org.junit.Test
+    public void testSummeZuGrossUebersprungen() throws Exception {
+        long nutzer = 1000001L;
+        Saldo vorher;
+        try (Connection c = pool.getConnection()) {
+            c.setAutoCommit(false);
+            new MauterhebungTdg(c).fuegeMauterhebungenEin(List.of(
+                    new Mauterhebung(900001, 3750, GERAET_1000001, 18, LocalDate.of(2015, 3, 1),
+                            new BigDecimal("600000.00")),
+                    new Mauterhebung(900002, 3750, GERAET_1000001, 18, LocalDate.of(2015, 3, 2),
+                            new BigDecimal("600000.00"))));
+            c.commit();
+            vorher = new SaldoTdg(c).ermittleSaldo(nutzer);
+        }
+
+        long uebersprungen = 0;
+        long rechnungen = 0;
+        for (Rechnungslauf.Teilergebnis t : lauf().abrechnen(STICHTAG)) {
+            assertNull(t.getFehler());
+            uebersprungen += t.getUebersprungen();
+            rechnungen += t.getRechnungen();
+        }
+        assertEquals(1, uebersprungen);
+        assertEquals(rechnungen, zahl("SELECT COUNT(*) FROM RECHNUNG"));
+        assertEquals(0, zahl("SELECT COUNT(*) FROM RECHNUNG WHERE NUTZER_ID = " + nutzer));
+        assertEquals(0, zahl("SELECT COUNT(*) FROM POSITION WHERE MAUT_ID IN (900001, 900002)"));
+        assertEquals(1, zahl("SELECT COUNT(*) FROM RECHNUNG WHERE NUTZER_ID = " + NUTZER));
+
+        try (Connection c = pool.getConnection()) {
+            Saldo nachher = new SaldoTdg(c).ermittleSaldo(nutzer);
+            assertEquals(0, vorher.getSumme().compareTo(nachher.getSumme()));
+            assertEquals(vorher.getAnzahl(), nachher.getAnzahl());
+        }
+    }
+
+    private static Rechnungslauf lauf() {
+        return new Rechnungslauf(pool, new Rechnungslauf.Konfiguration().partitionen(4).threads(2).batchGroesse(3)
+                .commitIntervall(5));
+    }
+
+    private static long zahl(String sql) throws Exception {
+        ITable t = tabelle(sql);
+        return Long.parseLong(t.getValue(0, t.getTableMetaData().getColumns()[0].getColumnName()).toString());
+    }
+
+    private static ITable tabelle(String sql) throws Exception {
+        QueryDataSet q = new QueryDataSet(dbTesterCon);
+        q.addTable("ERGEBNIS", sql);
+        return q.getTable("ERGEBNIS");
+    }
+}
@@ -0,0 +1,27 @@
+package de.htwberlin.dbtech.aufgaben.ue03.abrechnung;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class RechnungslaufTest {
+
+    @org.junit.Test
+    public void testBereiche() {
+        long[] nutzer = {1000000, 1000001, 1000005, 1000007, 1000010, 1000011, 1000020};
+        long[][] b = Rechnungslauf.bereiche(nutzer, 3);
+        assertEquals(3, b.length);
+        assertArrayEquals(new long[]{1000000, 1000001}, b[0]);
+        assertArrayEquals(new long[]{1000005, 1000007}, b[1]);
+        assertArrayEquals(new long[]{1000010, 1000020}, b[2]);
+    }
+
+    /** nie mehr Bereiche als Nutzer, jeder Nutzer in genau einem Bereich */
+    @org.junit.Test
+    public void testWenigeNutzer() {
+        assertEquals(0, Rechnungslauf.bereiche(new long[0], 16).length);
+        long[][] b = Rechnungslauf.bereiche(new long[]{5, 9}, 16);
+        assertEquals(2, b.length);
+        assertArrayEquals(new long[]{5, 5}, b[0]);
+        assertArrayEquals(new long[]{9, 9}, b[1]);
+    }
+}
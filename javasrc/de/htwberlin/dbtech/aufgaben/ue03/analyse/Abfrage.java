@@ -0,0 +1,74 @@
+package de.htwberlin.dbtech.aufgaben.ue03.analyse;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Auswertung ueber {@link Mautspalten}: Filter auf Zeitraum,
+ * Abschnittstyp, Abschnitt und Mautkategorie sowie die Dimensionen, nach
+ * denen Anzahl und Summe gruppiert werden. Ohne Gruppierung entsteht eine
+ * Zeile mit den Gesamtwerten.
+ */
+public final class Abfrage {
+
+    /** Dimension der Gruppierung */
+    public enum Dimension {
+        TYP, ABSCHNITT, KATEGORIE, TAG
+    }
+
+    int vonTag = Integer.MIN_VALUE;
+    int bisTag = Integer.MAX_VALUE;
+    Set<String> typen;
+    Set<Integer> abschnitte;
+    Set<Integer> kategorien;
+    final List<Dimension> gruppierung = new ArrayList<>();
+
+    /** erster Tag (einschliesslich) */
+    public Abfrage von(LocalDate tag) {
+        this.vonTag = (int) tag.toEpochDay();
+        return this;
+    }
+
+    /** letzter Tag (einschliesslich) */
+    public Abfrage bis(LocalDate tag) {
+        this.bisTag = (int) tag.toEpochDay();
+        return this;
+    }
+
+    public Abfrage typ(String... abschnittstypen) {
+        this.typen = new HashSet<>(Arrays.asList(abschnittstypen));
+        return this;
+    }
+
+    public Abfrage abschnitt(Integer... abschnittsIds) {
+        this.abschnitte = new HashSet<>(Arrays.asList(abschnittsIds));
+        return this;
+    }
+
+    public Abfrage kategorie(Integer... kategorieIds) {
+        this.kategorien = new HashSet<>(Arrays.asList(kategorieIds));
+        return this;
+    }
+
+    /** gruppiert nach den Dimensionen in dieser Reihenfolge */
+    public Abfrage gruppiere(Dimension... dimensionen) {
+        for (Dimension d : dimensionen) {
+            if (gruppierung.contains(d)) {
+                throw new IllegalArgumentException("Dimension doppelt: " + d);
+            }
+            gruppierung.add(d);
+        }
+        return this;
+    }
+
+    @Override
+    public String toString() {
+        return "Abfrage[tage=" + (vonTag == Integer.MIN_VALUE ? "*" : LocalDate.ofEpochDay(vonTag)) + ".."
+                + (bisTag == Integer.MAX_VALUE ? "*" : LocalDate.ofEpochDay(bisTag)) + ", typen=" + typen
+                + ", abschnitte=" + abschnitte + ", kategorien=" + kategorien + ", gruppierung=" + gruppierung + "]";
+    }
+}
@@ -0,0 +1,101 @@
+package de.htwberlin.dbtech.aufgaben.ue03.analyse;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Ergebnis einer {@link Abfrage}: eine Zeile je nicht leerer Gruppe in der
+ * Reihenfolge der Gruppenschluessel.
+ */
+public final class Auswertung {
+
+    private final List<Zeile> zeilen;
+    private final long zeilenGeprueft;
+    private final long millis;
+
+    Auswertung(List<Zeile> zeilen, long zeilenGeprueft, long millis) {
+        this.zeilen = Collections.unmodifiableList(zeilen);
+        this.zeilenGeprueft = zeilenGeprueft;
+        this.millis = millis;
+    }
+
+    public List<Zeile> getZeilen() {
+        return zeilen;
+    }
+
+    /** Zeilen des Bestands zum Zeitpunkt der Abfrage */
+    public long getZeilenGeprueft() {
+        return zeilenGeprueft;
+    }
+
+    public long getMillis() {
+        return millis;
+    }
+
+    public long getAnzahl() {
+        return zeilen.stream().mapToLong(Zeile::getAnzahl).sum();
+    }
+
+    public long getCent() {
+        return zeilen.stream().mapToLong(Zeile::getCent).sum();
+    }
+
+    @Override
+    public String toString() {
+        return "Auswertung[" + zeilen.size() + " Gruppen, " + getAnzahl() + " Mauterhebungen, "
+                + BigDecimal.valueOf(getCent(), 2) + " EUR, " + zeilenGeprueft + " Zeilen in " + millis + " ms]";
+    }
+
+    /**
+     * Eine Gruppe; nicht gruppierte Dimensionen sind null.
+     */
+    public static final class Zeile {
+        private final String typ;
+        private final Integer abschnittsId;
+        private final Integer kategorieId;
+        private final LocalDate tag;
+        private final long anzahl;
+        private final long cent;
+
+        Zeile(String typ, Integer abschnittsId, Integer kategorieId, LocalDate tag, long anzahl, long cent) {
+            this.typ = typ;
+            this.abschnittsId = abschnittsId;
+            this.kategorieId = kategorieId;
+            this.tag = tag;
+            this.anzahl = anzahl;
+            this.cent = cent;
+        }
+
+        public String getTyp() {
+            return typ;
+        }
+
+        public Integer getAbschnittsId() {
+            return abschnittsId;
+        }
+
+        public Integer getKategorieId() {
+            return kategorieId;
+        }
+
+        public LocalDate getTag() {
+            return tag;
+        }
+
+        public long getAnzahl() {
+            return anzahl;
+        }
+
+        public long getCent() {
+            return cent;
+        }
+
+        @Override
+        public String toString() {
+            return "Zeile[" + typ + ", " + abschnittsId + ", " + kategorieId + ", " + tag + ": " + anzahl + ", "
+                    + BigDecimal.valueOf(cent, 2) + "]";
+        }
+    }
+}
@@ -0,0 +1,457 @@
+package de.htwberlin.dbtech.aufgaben.ue03.analyse;
+
+import de.htwberlin.dbtech.aufgaben.ue03.cache.AbschnittKatalog;
+import de.htwberlin.dbtech.exceptions.DataException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Spaltenorientierte Kopie von MAUTERHEBUNG im Speicher fuer Auswertungen
+ * nach Abschnittstyp, Abschnitt, Mautkategorie und Tag, ohne Last auf der
+ * Datenbank.
+ *
+ * Je Mauterhebung werden nur vier Werte in primitiven Arrays gehalten:
+ * Abschnitt und Kategorie als fortlaufender Code (Woerterbuch der IDs),
+ * der Tag als Epochentag und die Kosten in Cent, zusammen 14 Byte. Die
+ * Arrays sind in Bloecke von {@link #BLOCK} Zeilen geteilt, so dass neue
+ * Zeilen ohne Umkopieren angehaengt werden koennen.
+ *
+ * Eine Abfrage wertet die Zeilen aus, die bei ihrem Beginn vorhanden waren.
+ * Filter werden vorab in Tabellen je Code uebersetzt, die Zeilen dann in
+ * einer einfachen Schleife je Block geprueft und in dichte Arrays je Gruppe
+ * summiert, parallel auf einem {@link ForkJoinPool}.
+ *
+ * Anhaengen ({@link #fuegeHinzu}, {@link #ergaenze}) ist synchronisiert und
+ * darf parallel zu Abfragen laufen.
+ */
+public final class Mautspalten {
+    private static final Logger L = LoggerFactory.getLogger(Mautspalten.class);
+
+    static final int BLOCK_BITS = 16;
+    public static final int BLOCK = 1 << BLOCK_BITS;
+    /** groesste Anzahl Gruppen einer Abfrage */
+    static final int MAX_GRUPPEN = 1 << 22;
+
+    private final AbschnittKatalog katalog;
+    private final ForkJoinPool pool;
+
+    private final Kodierung abschnitte = new Kodierung();
+    private final Kodierung kategorien = new Kodierung();
+    /** Code des Abschnittstyps je Abschnittscode */
+    private int[] typJeAbschnitt = new int[64];
+    private final List<String> typen = new ArrayList<>();
+    private final Map<String, Integer> typCodes = new HashMap<>();
+
+    private int[][] abschnitt = new int[0][];
+    private short[][] kategorie = new short[0][];
+    private int[][] tag = new int[0][];
+    private int[][] cent = new int[0][];
+
+    /** veroeffentlicht die Zeilen und alle vorher geschriebenen Werte */
+    private volatile long anzahl;
+    private int minTag = Integer.MAX_VALUE;
+    private int maxTag = Integer.MIN_VALUE;
+    private long hoechsteMautId;
+
+    /**
+     * @param katalog liefert den Abschnittstyp; Abschnitte, die er nicht
+     *                kennt, haben den Typ null
+     */
+    public Mautspalten(AbschnittKatalog katalog) {
+        this(katalog, ForkJoinPool.commonPool());
+    }
+
+    public Mautspalten(AbschnittKatalog katalog, ForkJoinPool pool) {
+        this.katalog = katalog;
+        this.pool = pool;
+    }
+
+    /**
+     * Laedt alle Mauterhebungen.
+     */
+    public static Mautspalten lade(Connection connection, AbschnittKatalog katalog) {
+        Mautspalten m = new Mautspalten(katalog);
+        m.ergaenze(connection);
+        return m;
+    }
+
+    /**
+     * Haengt die Mauterhebungen mit einer MAUT_ID ueber der hoechsten
+     * bisher gelesenen an und liefert deren Anzahl. Da MAUT_IDs blockweise
+     * vergeben werden, kann eine Zeile mit kleinerer ID spaeter
+     * festgeschrieben werden; sie fehlt bis zum naechsten vollstaendigen
+     * Laden.
+     */
+    public synchronized int ergaenze(Connection connection) {
+        long start = System.nanoTime();
+        int n = 0;
+        try (PreparedStatement s = connection.prepareStatement(
+                "SELECT MAUT_ID, ABSCHNITTS_ID, KATEGORIE_ID, BEFAHRUNGSDATUM, KOSTEN FROM MAUTERHEBUNG "
+                        + "WHERE MAUT_ID > ?", ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            s.setFetchSize(10_000);
+            s.setLong(1, hoechsteMautId);
+            try (ResultSet r = s.executeQuery()) {
+                while (r.next()) {
+                    Date datum = r.getDate(4);
+                    fuegeHinzu(r.getLong(1), r.getInt(2), r.getInt(3), datum.toLocalDate(),
+                            r.getBigDecimal(5).movePointRight(2).longValueExact());
+                    n++;
+                }
+            }
+        } catch (SQLException e) {
+            L.error("Fehler beim Laden von MAUTERHEBUNG", e);
+            throw new DataException(e);
+        }
+        L.info("{} Mauterhebungen in {} ms angehaengt, {} insgesamt", n, (System.nanoTime() - start) / 1000000,
+                anzahl);
+        return n;
+    }
+
+    /**
+     * Haengt eine Mauterhebung an.
+     */
+    public void fuegeHinzu(long mautId, int abschnittsId, int kategorieId, LocalDate befahrungsdatum, long kosten) {
+        fuegeHinzu(mautId, abschnittsId, kategorieId, (int) befahrungsdatum.toEpochDay(), kosten);
+    }
+
+    /**
+     * Haengt eine Mauterhebung an.
+     *
+     * @param epochTag Tag der Befahrung seit 1970-01-01
+     * @param kosten   in Cent, hoechstens wie KOSTEN NUMBER(8,2)
+     */
+    public synchronized void fuegeHinzu(long mautId, int abschnittsId, int kategorieId, int epochTag, long kosten) {
+        if (kosten < Integer.MIN_VALUE || kosten > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Kosten ausserhalb von NUMBER(8,2): " + kosten);
+        }
+        long n = anzahl;
+        int b = (int) (n >>> BLOCK_BITS);
+        int i = (int) (n & (BLOCK - 1));
+        if (i == 0 && b == abschnitt.length) {
+            neuerBlock();
+        }
+        abschnitt[b][i] = abschnittCode(abschnittsId);
+        kategorie[b][i] = kategorieCode(kategorieId);
+        tag[b][i] = epochTag;
+        cent[b][i] = (int) kosten;
+        minTag = Math.min(minTag, epochTag);
+        maxTag = Math.max(maxTag, epochTag);
+        hoechsteMautId = Math.max(hoechsteMautId, mautId);
+        anzahl = n + 1;
+    }
+
+    private void neuerBlock() {
+        int b = abschnitt.length;
+        int[][] a = Arrays.copyOf(abschnitt, b + 1);
+        short[][] k = Arrays.copyOf(kategorie, b + 1);
+        int[][] t = Arrays.copyOf(tag, b + 1);
+        int[][] c = Arrays.copyOf(cent, b + 1);
+        a[b] = new int[BLOCK];
+        k[b] = new short[BLOCK];
+        t[b] = new int[BLOCK];
+        c[b] = new int[BLOCK];
+        abschnitt = a;
+        kategorie = k;
+        tag = t;
+        cent = c;
+    }
+
+    private int abschnittCode(int abschnittsId) {
+        int code = abschnitte.finde(abschnittsId);
+        if (code >= 0) {
+            return code;
+        }
+        code = abschnitte.neu(abschnittsId);
+        int index = katalog == null ? -1 : katalog.index(abschnittsId);
+        String typ = index < 0 ? null : katalog.getTyp(index);
+        Integer typCode = typCodes.get(typ);
+        if (typCode == null) {
+            typCode = typen.size();
+            typen.add(typ);
+            typCodes.put(typ, typCode);
+        }
+        if (code == typJeAbschnitt.length) {
+            typJeAbschnitt = Arrays.copyOf(typJeAbschnitt, 2 * code);
+        }
+        typJeAbschnitt[code] = typCode;
+        return code;
+    }
+
+    private short kategorieCode(int kategorieId) {
+        int code = kategorien.finde(kategorieId);
+        if (code < 0) {
+            if (kategorien.anzahl > Short.MAX_VALUE) {
+                throw new IllegalStateException("zu viele Mautkategorien: " + kategorien.anzahl);
+            }
+            code = kategorien.neu(kategorieId);
+        }
+        return (short) code;
+    }
+
+    public long getAnzahl() {
+        return anzahl;
+    }
+
+    /**
+     * Fuehrt die Abfrage ueber alle bis jetzt angehaengten Zeilen aus.
+     *
+     * @throws IllegalArgumentException falls die Gruppierung mehr als
+     *                                  {@link #MAX_GRUPPEN} Gruppen ergibt
+     */
+    public Auswertung auswerten(Abfrage abfrage) {
+        long start = System.nanoTime();
+        Plan p;
+        synchronized (this) {
+            // Woerterbuecher und Bloecke passend zur Zeilenzahl festhalten
+            p = new Plan(abfrage, anzahl);
+        }
+        List<Auswertung.Zeile> zeilen = new ArrayList<>();
+        if (p.zeilen > 0 && p.vonTag <= p.bisTag) {
+            int bloecke = (int) ((p.zeilen + BLOCK - 1) >>> BLOCK_BITS);
+            // wenige grosse Teile, damit nicht jeder Block eigene Gruppen-Arrays anlegt
+            int teil = Math.max(1, bloecke / (4 * pool.getParallelism()));
+            long[][] summen = pool.invoke(new Teil(p, 0, bloecke, teil));
+            for (int g = 0; g < p.gruppen; g++) {
+                if (summen[0][g] > 0) {
+                    zeilen.add(p.zeile(g, summen[0][g], summen[1][g]));
+                }
+            }
+        }
+        return new Auswertung(zeilen, p.zeilen, (System.nanoTime() - start) / 1000000);
+    }
+
+    /** Abfrage uebersetzt in Tabellen je Code */
+    private final class Plan {
+        final long zeilen;
+        final int[][] abschnitt;
+        final short[][] kategorie;
+        final int[][] tag;
+        final int[][] cent;
+        final int vonTag;
+        final int bisTag;
+        /** Gruppenanteil je Abschnittscode, -1 wenn ausgefiltert */
+        final int[] abschnittGruppe;
+        /** Gruppenanteil je Kategoriecode, -1 wenn ausgefiltert */
+        final int[] kategorieGruppe;
+        final int tagFaktor;
+        final int gruppen;
+
+        final List<Abfrage.Dimension> dimensionen;
+        final int[] faktor;
+        final int[] groesse;
+        final int[] abschnittIds;
+        final int[] kategorieIds;
+        final String[] typNamen;
+
+        Plan(Abfrage q, long zeilen) {
+            this.zeilen = zeilen;
+            this.abschnitt = Mautspalten.this.abschnitt;
+            this.kategorie = Mautspalten.this.kategorie;
+            this.tag = Mautspalten.this.tag;
+            this.cent = Mautspalten.this.cent;
+            this.vonTag = Math.max(q.vonTag, minTag);
+            this.bisTag = Math.min(q.bisTag, maxTag);
+            this.abschnittIds = Arrays.copyOf(abschnitte.ids, abschnitte.anzahl);
+            this.kategorieIds = Arrays.copyOf(kategorien.ids, kategorien.anzahl);
+            this.typNamen = typen.toArray(new String[0]);
+
+            dimensionen = q.gruppierung;
+            faktor = new int[dimensionen.size()];
+            groesse = new int[dimensionen.size()];
+            long g = 1;
+            for (int d = dimensionen.size() - 1; d >= 0; d--) {
+                switch (dimensionen.get(d)) {
+                    case TYP:
+                        groesse[d] = typNamen.length;
+                        break;
+                    case ABSCHNITT:
+                        groesse[d] = abschnittIds.length;
+                        break;
+                    case KATEGORIE:
+                        groesse[d] = kategorieIds.length;
+                        break;
+                    default:
+                        groesse[d] = Math.max(1, bisTag - vonTag + 1);
+                }
+                faktor[d] = (int) g;
+                g *= Math.max(1, groesse[d]);
+                if (g > MAX_GRUPPEN) {
+                    throw new IllegalArgumentException("zu viele Gruppen fuer " + q);
+                }
+            }
+            gruppen = (int) g;
+
+            int fTyp = faktor(Abfrage.Dimension.TYP);
+            int fAbschnitt = faktor(Abfrage.Dimension.ABSCHNITT);
+            int fKategorie = faktor(Abfrage.Dimension.KATEGORIE);
+            tagFaktor = faktor(Abfrage.Dimension.TAG);
+            abschnittGruppe = new int[abschnittIds.length];
+            for (int a = 0; a < abschnittIds.length; a++) {
+                int typ = typJeAbschnitt[a];
+                boolean ok = (q.typen == null || q.typen.contains(typNamen[typ]))
+                        && (q.abschnitte == null || q.abschnitte.contains(abschnittIds[a]));
+                abschnittGruppe[a] = ok ? typ * fTyp + a * fAbschnitt : -1;
+            }
+            kategorieGruppe = new int[kategorieIds.length];
+            for (int k = 0; k < kategorieIds.length; k++) {
+                boolean ok = q.kategorien == null || q.kategorien.contains(kategorieIds[k]);
+                kategorieGruppe[k] = ok ? k * fKategorie : -1;
+            }
+        }
+
+        private int faktor(Abfrage.Dimension d) {
+            int i = dimensionen.indexOf(d);
+            return i < 0 ? 0 : faktor[i];
+        }
+
+        Auswertung.Zeile zeile(int g, long anzahl, long cent) {
+            String typ = null;
+            Integer abschnittsId = null;
+            Integer kategorieId = null;
+            LocalDate t = null;
+            for (int d = 0; d < dimensionen.size(); d++) {
+                int i = g / faktor[d] % groesse[d];
+                switch (dimensionen.get(d)) {
+                    case TYP:
+                        typ = typNamen[i];
+                        break;
+                    case ABSCHNITT:
+                        abschnittsId = abschnittIds[i];
+                        break;
+                    case KATEGORIE:
+                        kategorieId = kategorieIds[i];
+                        break;
+                    default:
+                        t = LocalDate.ofEpochDay(vonTag + i);
+                }
+            }
+            return new Auswertung.Zeile(typ, abschnittsId, kategorieId, t, anzahl, cent);
+        }
+    }
+
+    /** summiert die Bloecke [von, bis) zu {anzahl[], cent[]} je Gruppe */
+    private static final class Teil extends RecursiveTask<long[][]> {
+        private static final long serialVersionUID = 1L;
+
+        private final Plan p;
+        private final int von;
+        private final int bis;
+        private final int teil;
+
+        Teil(Plan p, int von, int bis, int teil) {
+            this.p = p;
+            this.von = von;
+            this.bis = bis;
+            this.teil = teil;
+        }
+
+        @Override
+        protected long[][] compute() {
+            if (bis - von > teil) {
+                int mitte = (von + bis) >>> 1;
+                Teil links = new Teil(p, von, mitte, teil);
+                links.fork();
+                long[][] r = new Teil(p, mitte, bis, teil).compute();
+                long[][] l = links.join();
+                for (int g = 0; g < p.gruppen; g++) {
+                    r[0][g] += l[0][g];
+                    r[1][g] += l[1][g];
+                }
+                return r;
+            }
+            long[] anzahl = new long[p.gruppen];
+            long[] summe = new long[p.gruppen];
+            int[] abschnittGruppe = p.abschnittGruppe;
+            int[] kategorieGruppe = p.kategorieGruppe;
+            int vonTag = p.vonTag;
+            int bisTag = p.bisTag;
+            int tagFaktor = p.tagFaktor;
+            for (int b = von; b < bis; b++) {
+                int[] a = p.abschnitt[b];
+                short[] k = p.kategorie[b];
+                int[] t = p.tag[b];
+                int[] c = p.cent[b];
+                int n = (int) Math.min(BLOCK, p.zeilen - ((long) b << BLOCK_BITS));
+                for (int i = 0; i < n; i++) {
+                    int ga = abschnittGruppe[a[i]];
+                    int gk = kategorieGruppe[k[i]];
+                    int tg = t[i];
+                    if ((ga | gk) < 0 || tg < vonTag || tg > bisTag) {
+                        continue;
+                    }
+                    int g = ga + gk + (tg - vonTag) * tagFaktor;
+                    anzahl[g]++;
+                    summe[g] += c[i];
+                }
+            }
+            return new long[][]{anzahl, summe};
+        }
+    }
+
+    /** fortlaufende Codes fuer IDs (offene Adressierung) */
+    private static final class Kodierung {
+        int[] ids = new int[16];
+        int anzahl;
+        private int[] schluessel = new int[32];
+        /** Code + 1, 0 = frei */
+        private int[] codes = new int[32];
+
+        int finde(int id) {
+            int maske = codes.length - 1;
+            for (int i = streue(id) & maske; codes[i] != 0; i = (i + 1) & maske) {
+                if (schluessel[i] == id) {
+                    return codes[i] - 1;
+                }
+            }
+            return -1;
+        }
+
+        int neu(int id) {
+            if (2 * (anzahl + 1) > codes.length) {
+                int[] alteSchluessel = schluessel;
+                int[] alteCodes = codes;
+                schluessel = new int[2 * alteCodes.length];
+                codes = new int[2 * alteCodes.length];
+                for (int i = 0; i < alteCodes.length; i++) {
+                    if (alteCodes[i] != 0) {
+                        eintragen(alteSchluessel[i], alteCodes[i]);
+                    }
+                }
+            }
+            if (anzahl == ids.length) {
+                ids = Arrays.copyOf(ids, 2 * anzahl);
+            }
+            ids[anzahl] = id;
+            eintragen(id, ++anzahl);
+            return anzahl - 1;
+        }
+
+        private void eintragen(int id, int codePlusEins) {
+            int maske = codes.length - 1;
+            int i = streue(id) & maske;
+            while (codes[i] != 0) {
+                i = (i + 1) & maske;
+            }
+            schluessel[i] = id;
+            codes[i] = codePlusEins;
+        }
+
+        private static int streue(int id) {
+            return id * 0x9E3779B9 >>> 7;
+        }
+    }
+}
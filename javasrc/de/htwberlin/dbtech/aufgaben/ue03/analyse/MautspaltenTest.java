@@ -0,0 +1,112 @@
+package de.htwberlin.dbtech.aufgaben.ue03.analyse;
+
+import de.htwberlin.dbtech.aufgaben.ue02.Mautabschnitt;
+import de.htwberlin.dbtech.aufgaben.ue03.cache.AbschnittKatalog;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Die Klasse enthaelt die Testfaelle fuer die spaltenorientierte
+ * Auswertung der Mauterhebungen.
+ */
+public class MautspaltenTest {
+    static final AbschnittKatalog KATALOG = AbschnittKatalog.aus(List.of(
+            new Mautabschnitt(2660, 1400, "48.094 11.588", "48.083 11.596", "Muenchen-Giesing - Unterhaching-Nord", "B13"),
+            new Mautabschnitt(2659, 2100, "48.083 11.596", "48.068 11.606", "Unterhaching-Nord - Unterhaching-Sued", "B13"),
+            new Mautabschnitt(1433, 4100, "52.3 13.084", "52.3 13.026", "Nuthetal Dreieck - Michendorf", "A10")));
+    static final LocalDate ERSTER = LocalDate.of(2015, 2, 1);
+
+    @org.junit.Test
+    public void testGruppierung() {
+        Mautspalten m = new Mautspalten(KATALOG);
+        m.fuegeHinzu(1, 2660, 1, ERSTER, 101);
+        m.fuegeHinzu(2, 2659, 1, ERSTER, 50);
+        m.fuegeHinzu(3, 1433, 2, ERSTER.plusDays(2), 300);
+        m.fuegeHinzu(4, 2660, 2, ERSTER.plusDays(2), 7);
+        // Abschnitt ohne Katalogeintrag
+        m.fuegeHinzu(5, 9999, 1, ERSTER.plusDays(1), 1);
+
+        List<Auswertung.Zeile> z = m.auswerten(new Abfrage().gruppiere(Abfrage.Dimension.TYP)).getZeilen();
+        assertEquals(3, z.size());
+        assertEquals("B13", z.get(0).getTyp());
+        assertEquals(3, z.get(0).getAnzahl());
+        assertEquals(158, z.get(0).getCent());
+        assertEquals("A10", z.get(1).getTyp());
+        assertNull(z.get(2).getTyp());
+        assertNull(z.get(0).getTag());
+
+        z = m.auswerten(new Abfrage().typ("B13").gruppiere(Abfrage.Dimension.TAG, Abfrage.Dimension.KATEGORIE))
+                .getZeilen();
+        assertEquals(2, z.size());
+        assertEquals(ERSTER, z.get(0).getTag());
+        assertEquals(Integer.valueOf(1), z.get(0).getKategorieId());
+        assertEquals(151, z.get(0).getCent());
+        assertEquals(ERSTER.plusDays(2), z.get(1).getTag());
+        assertEquals(Integer.valueOf(2), z.get(1).getKategorieId());
+        assertEquals(7, z.get(1).getCent());
+
+        Auswertung gesamt = m.auswerten(new Abfrage().von(ERSTER.plusDays(1)).kategorie(1, 2));
+        assertEquals(1, gesamt.getZeilen().size());
+        assertEquals(3, gesamt.getAnzahl());
+        assertEquals(308, gesamt.getCent());
+    }
+
+    @org.junit.Test
+    public void testLeer() {
+        Mautspalten m = new Mautspalten(KATALOG);
+        assertEquals(0, m.auswerten(new Abfrage().gruppiere(Abfrage.Dimension.TAG)).getZeilen().size());
+        m.fuegeHinzu(1, 2660, 1, ERSTER, 101);
+        assertEquals(0, m.auswerten(new Abfrage().bis(ERSTER.minusDays(1))).getZeilen().size());
+    }
+
+    @org.junit.Test(expected = IllegalArgumentException.class)
+    public void testDoppelteDimension() {
+        new Abfrage().gruppiere(Abfrage.Dimension.TAG, Abfrage.Dimension.TAG);
+    }
+
+    /** Vergleich mit einer einfachen Schleife ueber mehrere Bloecke und Anhaengen zwischen Abfragen */
+    @org.junit.Test
+    public void testWieSchleife() {
+        Mautspalten m = new Mautspalten(KATALOG);
+        SplittableRandom r = new SplittableRandom(5);
+        int n = 3 * Mautspalten.BLOCK + 17;
+        int[] abschnitt = new int[n];
+        int[] kategorie = new int[n];
+        int[] tag = new int[n];
+        long[] cent = new long[n];
+        int[] ids = {2660, 2659, 1433, 4711};
+        for (int i = 0; i < n; i++) {
+            abschnitt[i] = ids[r.nextInt(ids.length)];
+            kategorie[i] = 1 + r.nextInt(12);
+            tag[i] = (int) ERSTER.toEpochDay() + r.nextInt(90);
+            cent[i] = r.nextInt(10_000);
+        }
+        int vonTag = (int) ERSTER.toEpochDay() + 10;
+        int bisTag = vonTag + 30;
+        for (int bisher : new int[]{Mautspalten.BLOCK - 1, n}) {
+            for (int i = (int) m.getAnzahl(); i < bisher; i++) {
+                m.fuegeHinzu(i + 1, abschnitt[i], kategorie[i], tag[i], cent[i]);
+            }
+            long[][] erwartet = new long[2][13];
+            for (int i = 0; i < bisher; i++) {
+                if (abschnitt[i] != 1433 && tag[i] >= vonTag && tag[i] <= bisTag) {
+                    erwartet[0][kategorie[i]]++;
+                    erwartet[1][kategorie[i]] += cent[i];
+                }
+            }
+            Auswertung a = m.auswerten(new Abfrage().abschnitt(2660, 2659, 4711).von(LocalDate.ofEpochDay(vonTag))
+                    .bis(LocalDate.ofEpochDay(bisTag)).gruppiere(Abfrage.Dimension.KATEGORIE));
+            assertEquals(bisher, a.getZeilenGeprueft());
+            for (Auswertung.Zeile z : a.getZeilen()) {
+                assertEquals(erwartet[0][z.getKategorieId()], z.getAnzahl());
+                assertEquals(erwartet[1][z.getKategorieId()], z.getCent());
+            }
+            assertEquals(12, a.getZeilen().size());
+        }
+    }
+}
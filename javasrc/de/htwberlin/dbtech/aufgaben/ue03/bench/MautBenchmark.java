@@ -0,0 +1,165 @@
+package de.htwberlin.dbtech.aufgaben.ue03.bench;
+
+import de.htwberlin.dbtech.aufgaben.ue03.IMautService;
+import de.htwberlin.dbtech.aufgaben.ue03.MautServiceImpl;
+import de.htwberlin.dbtech.aufgaben.ue03.MautServiceImplDao;
+import de.htwberlin.dbtech.utils.DbCred;
+import de.htwberlin.dbtech.utils.JdbcUtils;
+import org.dbunit.database.DatabaseConfig;
+import org.dbunit.database.DatabaseConnection;
+import org.dbunit.database.IDatabaseConnection;
+import org.dbunit.dataset.IDataSet;
+import org.dbunit.dataset.csv.CsvDataSet;
+import org.dbunit.ext.oracle.OracleDataTypeFactory;
+import org.dbunit.operation.DatabaseOperation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Lastmessung fuer alle Implementierungen von {@link IMautService}. Jede
+ * Variante durchlaeuft jedes {@link Szenario} gegen denselben Datenbestand
+ * aus test-data/ue03-04; gemessen werden Durchsatz, Latenz-Perzentile und
+ * allokierte Bytes je Aufruf.
+ *
+ * Jeder Aufruf laeuft in einer eigenen Transaktion, die nach der Messung
+ * zurueckgerollt wird. Dadurch sehen alle Aufrufe denselben Stand, z.B.
+ * bleibt die Buchung im Szenario MANUELL offen.
+ *
+ * Aufruf: {@code MautBenchmark [iterationen] [aufwaermen] [variante ...]}
+ * Neue Varianten werden in {@link #VARIANTEN} eingetragen.
+ */
+public final class MautBenchmark {
+    private static final Logger L = LoggerFactory.getLogger(MautBenchmark.class);
+
+    static final Map<String, Supplier<IMautService>> VARIANTEN = new LinkedHashMap<>();
+
+    static {
+        VARIANTEN.put("impl", MautServiceImpl::new);
+        VARIANTEN.put("impl-verbund", () -> {
+            MautServiceImpl s = new MautServiceImpl();
+            s.setAufloesung(MautServiceImpl.Aufloesung.VERBUNDABFRAGE);
+            return s;
+        });
+        VARIANTEN.put("dao", MautServiceImplDao::new);
+    }
+
+    private final Connection connection;
+    private final int iterationen;
+    private final int aufwaermen;
+    private final com.sun.management.ThreadMXBean threads;
+
+    MautBenchmark(Connection connection, int iterationen, int aufwaermen) {
+        this.connection = connection;
+        this.iterationen = iterationen;
+        this.aufwaermen = aufwaermen;
+        java.lang.management.ThreadMXBean t = ManagementFactory.getThreadMXBean();
+        this.threads = t instanceof com.sun.management.ThreadMXBean
+                && ((com.sun.management.ThreadMXBean) t).isThreadAllocatedMemorySupported()
+                ? (com.sun.management.ThreadMXBean) t : null;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int iterationen = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int aufwaermen = args.length > 1 ? Integer.parseInt(args[1]) : 500;
+        List<String> varianten = args.length > 2
+                ? Arrays.asList(args).subList(2, args.length)
+                : new ArrayList<>(VARIANTEN.keySet());
+
+        JdbcUtils.loadDriver(DbCred.driverClass);
+        Connection connection = JdbcUtils.getConnectionViaDriverManager(DbCred.url, DbCred.user, DbCred.password);
+        try {
+            befuelle(connection);
+            connection.setAutoCommit(false);
+            MautBenchmark benchmark = new MautBenchmark(connection, iterationen, aufwaermen);
+            System.out.printf("%-14s %-17s %10s %9s %9s %9s %9s %9s %10s%n", "variante", "szenario",
+                    "ops/s", "p50 us", "p90 us", "p99 us", "p99.9 us", "max us", "bytes/op");
+            for (String name : varianten) {
+                Supplier<IMautService> variante = VARIANTEN.get(name);
+                if (variante == null) {
+                    throw new IllegalArgumentException("unbekannte Variante " + name + ", bekannt: " + VARIANTEN.keySet());
+                }
+                for (Szenario szenario : Szenario.values()) {
+                    ausgeben(name, szenario, benchmark.miss(variante.get(), szenario));
+                }
+            }
+        } finally {
+            JdbcUtils.closeConnectionQuietly(connection);
+        }
+    }
+
+    /**
+     * Setzt den Datenbestand wie in den Tests per CLEAN_INSERT.
+     */
+    static void befuelle(Connection connection) throws Exception {
+        IDatabaseConnection db = new DatabaseConnection(connection, DbCred.schema);
+        db.getConfig().setProperty(DatabaseConfig.PROPERTY_DATATYPE_FACTORY, new OracleDataTypeFactory());
+        IDataSet daten = new CsvDataSet(new File("test-data/ue03-04"));
+        DatabaseOperation.CLEAN_INSERT.execute(db, daten);
+        L.info("Datenbestand test-data/ue03-04 geladen");
+    }
+
+    /**
+     * Misst ein Szenario mit einer frischen Serviceinstanz. Weicht der Ausgang
+     * eines Aufrufs vom erwarteten ab, bricht die Messung ab.
+     */
+    Messung miss(IMautService service, Szenario szenario) throws SQLException {
+        service.setConnection(connection);
+        for (int i = 0; i < aufwaermen; i++) {
+            aufruf(service, szenario);
+        }
+        Messung m = new Messung(iterationen);
+        if (threads == null) {
+            m.allokationUnbekannt();
+        }
+        for (int i = 0; i < iterationen; i++) {
+            long bytes = threads != null ? threads.getCurrentThreadAllocatedBytes() : 0;
+            long start = System.nanoTime();
+            RuntimeException ausgang = ausfuehren(service, szenario);
+            long dauer = System.nanoTime() - start;
+            bytes = threads != null ? threads.getCurrentThreadAllocatedBytes() - bytes : 0;
+            JdbcUtils.rollback(connection);
+            pruefe(szenario, ausgang);
+            m.erfasse(dauer, bytes);
+        }
+        return m;
+    }
+
+    private void aufruf(IMautService service, Szenario szenario) throws SQLException {
+        RuntimeException ausgang = ausfuehren(service, szenario);
+        JdbcUtils.rollback(connection);
+        pruefe(szenario, ausgang);
+    }
+
+    private static RuntimeException ausfuehren(IMautService service, Szenario szenario) {
+        try {
+            service.berechneMaut(szenario.mautAbschnitt, szenario.achszahl, szenario.kennzeichen);
+            return null;
+        } catch (RuntimeException e) {
+            return e;
+        }
+    }
+
+    private static void pruefe(Szenario szenario, RuntimeException ausgang) {
+        boolean ok = szenario.erwartet == null ? ausgang == null : szenario.erwartet.isInstance(ausgang);
+        if (!ok) {
+            throw new IllegalStateException(szenario + ": erwartet " + szenario.erwartet + ", erhalten " + ausgang, ausgang);
+        }
+    }
+
+    private static void ausgeben(String variante, Szenario szenario, Messung m) {
+        System.out.printf("%-14s %-17s %10.0f %9.1f %9.1f %9.1f %9.1f %9.1f %10d%n", variante, szenario,
+                m.durchsatz(), m.perzentil(0.5) / 1e3, m.perzentil(0.9) / 1e3, m.perzentil(0.99) / 1e3,
+                m.perzentil(0.999) / 1e3, m.perzentil(1.0) / 1e3, m.bytesJeAufruf());
+    }
+}
@@ -0,0 +1,66 @@
+package de.htwberlin.dbtech.aufgaben.ue03.bench;
+
+import java.util.Arrays;
+
+/**
+ * Messwerte einer Messreihe: Dauer jedes Aufrufs in Nanosekunden und die
+ * dabei im messenden Thread allokierten Bytes.
+ */
+final class Messung {
+    private long[] dauern;
+    private int anzahl;
+    private long bytes;
+    private boolean allokationGemessen = true;
+    private boolean sortiert;
+
+    Messung(int erwarteteAnzahl) {
+        this.dauern = new long[Math.max(1, erwarteteAnzahl)];
+    }
+
+    void erfasse(long dauerNanos, long allokiertBytes) {
+        if (anzahl == dauern.length) {
+            dauern = Arrays.copyOf(dauern, anzahl * 2);
+        }
+        dauern[anzahl++] = dauerNanos;
+        bytes += Math.max(0, allokiertBytes);
+        sortiert = false;
+    }
+
+    int getAnzahl() {
+        return anzahl;
+    }
+
+    /** Aufrufe je Sekunde, bezogen auf die Summe der gemessenen Dauern */
+    double durchsatz() {
+        long summe = 0;
+        for (int i = 0; i < anzahl; i++) {
+            summe += dauern[i];
+        }
+        return summe == 0 ? 0 : anzahl * 1e9 / summe;
+    }
+
+    /**
+     * Liefert das Perzentil (0 < p <= 1) der Dauern in Nanosekunden nach dem
+     * Nearest-Rank-Verfahren.
+     */
+    long perzentil(double p) {
+        if (anzahl == 0) {
+            return 0;
+        }
+        if (!sortiert) {
+            Arrays.sort(dauern, 0, anzahl);
+            sortiert = true;
+        }
+        int rang = (int) Math.ceil(p * anzahl);
+        return dauern[Math.min(anzahl, Math.max(1, rang)) - 1];
+    }
+
+    /** allokierte Bytes je Aufruf oder -1, falls die JVM das nicht misst */
+    long bytesJeAufruf() {
+        return !allokationGemessen || anzahl == 0 ? -1 : bytes / anzahl;
+    }
+
+    void allokationUnbekannt() {
+        allokationGemessen = false;
+    }
+}
@@ -0,0 +1,41 @@
+package de.htwberlin.dbtech.aufgaben.ue03.bench;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Die Klasse enthaelt die Testfaelle fuer die Auswertung einer Messreihe.
+ */
+public class MessungTest {
+
+    @org.junit.Test
+    public void testPerzentileNachRang() {
+        Messung m = new Messung(4);
+        // absichtlich unsortiert und ueber die Anfangsgroesse hinaus
+        for (int i = 100; i >= 1; i--) {
+            m.erfasse(i * 1000L, 10);
+        }
+        assertEquals(100, m.getAnzahl());
+        assertEquals(50_000, m.perzentil(0.5));
+        assertEquals(99_000, m.perzentil(0.99));
+        assertEquals(100_000, m.perzentil(1.0));
+        assertEquals(1_000, m.perzentil(0.001));
+        assertEquals(10, m.bytesJeAufruf());
+    }
+
+    @org.junit.Test
+    public void testDurchsatz() {
+        Messung m = new Messung(2);
+        m.erfasse(1_000_000, 0);
+        m.erfasse(3_000_000, 0);
+        assertEquals(500.0, m.durchsatz(), 1e-9);
+    }
+
+    @org.junit.Test
+    public void testOhneAllokationsmessung() {
+        Messung m = new Messung(1);
+        m.allokationUnbekannt();
+        m.erfasse(5, 0);
+        assertEquals(-1, m.bytesJeAufruf());
+        assertEquals(0, new Messung(1).perzentil(0.5));
+    }
+}
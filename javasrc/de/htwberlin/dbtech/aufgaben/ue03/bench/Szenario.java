@@ -0,0 +1,32 @@
+package de.htwberlin.dbtech.aufgaben.ue03.bench;
+
+import de.htwberlin.dbtech.exceptions.AlreadyCruisedException;
+import de.htwberlin.dbtech.exceptions.InvalidVehicleDataException;
+import de.htwberlin.dbtech.exceptions.UnkownVehicleException;
+
+/**
+ * Die gemessenen Pfade von berechneMaut mit Daten aus test-data/ue03-04 und
+ * dem erwarteten Ausgang (null fuer Erfolg). Die Daten entsprechen den
+ * Testfaellen aus MautServiceTest.
+ */
+enum Szenario {
+    /** Fahrzeug mit Fahrzeuggeraet, Mauterhebung wird geschrieben */
+    AUTOMATISCH(1433, 5, "M 6569", null),
+    /** offene Buchung wird abgeschlossen */
+    MANUELL(1200, 4, "B CV 8890", null),
+    UNBEKANNT(1200, 4, "LDS 677", UnkownVehicleException.class),
+    ACHSZAHL_FALSCH(1200, 3, "B CV 8890", InvalidVehicleDataException.class),
+    BEREITS_BEFAHREN(4174, 10, "DV 9413 NJ", AlreadyCruisedException.class);
+
+    final int mautAbschnitt;
+    final int achszahl;
+    final String kennzeichen;
+    final Class<? extends RuntimeException> erwartet;
+
+    Szenario(int mautAbschnitt, int achszahl, String kennzeichen, Class<? extends RuntimeException> erwartet) {
+        this.mautAbschnitt = mautAbschnitt;
+        this.achszahl = achszahl;
+        this.kennzeichen = kennzeichen;
+        this.erwartet = erwartet;
+    }
+}
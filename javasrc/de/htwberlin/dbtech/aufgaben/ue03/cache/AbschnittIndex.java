@@ -0,0 +1,318 @@
+package de.htwberlin.dbtech.aufgaben.ue03.cache;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+
+/**
+ * Raeumlicher Index ueber die Abschnitte eines {@link AbschnittKatalog}:
+ * welcher Abschnitt liegt einer GPS-Position am naechsten, welche liegen im
+ * Umkreis. Jeder Abschnitt gilt als Strecke von START_KOORDINATE nach
+ * ZIEL_KOORDINATE; Abschnitte ohne lesbare Koordinaten fehlen im Index.
+ *
+ * Der Index ist ein gleichmaessiges Gitter ueber Breite und Laenge, dessen
+ * Zellen mindestens {@link #getZelleMeter()} breit und hoch sind. Jede Zelle
+ * kennt die Abschnitte, deren Begrenzungsrechteck sie schneidet
+ * (Indizes zeilenweise in einem Array). Abstaende werden in Metern in
+ * einer ebenen Naeherung um die Anfrageposition berechnet, fuer Abschnitte
+ * von wenigen Kilometern genauer als die GPS-Position selbst.
+ *
+ * Unveraenderlich und threadsicher; wie {@link PreisMatrix} gehoert der
+ * Index zu genau einem Katalog.
+ */
+public final class AbschnittIndex {
+    private static final Logger L = LoggerFactory.getLogger(AbschnittIndex.class);
+
+    /** Meter je Grad Breite bzw. je Grad Laenge am Aequator */
+    static final double METER_JE_GRAD_BREITE = 110574;
+    static final double METER_JE_GRAD_LAENGE = 111320;
+
+    public static final double ZELLE_METER = 1000;
+    private static final long MAX_ZELLEN = 1 << 24;
+
+    private static volatile AbschnittIndex aktuell;
+
+    private final AbschnittKatalog katalog;
+    private final double zelleMeter;
+    private final double cosMin;
+    private final double minLat;
+    private final double minLon;
+    private final double zelleLat;
+    private final double zelleLon;
+    private final int zeilen;
+    private final int spalten;
+    /** Eintraege der Zelle z liegen in eintraege[start[z] .. start[z + 1]) */
+    private final int[] start;
+    private final int[] eintraege;
+
+    private AbschnittIndex(AbschnittKatalog katalog, double zelleMeter) {
+        this.katalog = katalog;
+        int n = katalog.getAnzahl();
+        double latMin = Double.POSITIVE_INFINITY;
+        double latMax = Double.NEGATIVE_INFINITY;
+        double lonMin = Double.POSITIVE_INFINITY;
+        double lonMax = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < n; i++) {
+            if (gueltig(katalog, i)) {
+                latMin = Math.min(latMin, Math.min(katalog.getStartLat(i), katalog.getZielLat(i)));
+                latMax = Math.max(latMax, Math.max(katalog.getStartLat(i), katalog.getZielLat(i)));
+                lonMin = Math.min(lonMin, Math.min(katalog.getStartLon(i), katalog.getZielLon(i)));
+                lonMax = Math.max(lonMax, Math.max(katalog.getStartLon(i), katalog.getZielLon(i)));
+            }
+        }
+        if (latMin > latMax) {
+            latMin = latMax = lonMin = lonMax = 0;
+        }
+        // Zellen so breit, dass sie auch am polnaechsten Abschnitt zelleMeter breit sind
+        double cosMin = Math.max(0.01, Math.cos(Math.toRadians(Math.max(Math.abs(latMin), Math.abs(latMax)))));
+        double meter = zelleMeter;
+        long anzahl;
+        int z;
+        int s;
+        do {
+            z = (int) Math.min(Integer.MAX_VALUE, (long) ((latMax - latMin) * METER_JE_GRAD_BREITE / meter) + 1);
+            s = (int) Math.min(Integer.MAX_VALUE,
+                    (long) ((lonMax - lonMin) * METER_JE_GRAD_LAENGE * cosMin / meter) + 1);
+            anzahl = (long) z * s;
+            if (anzahl > MAX_ZELLEN) {
+                meter *= 2;
+            }
+        } while (anzahl > MAX_ZELLEN);
+        this.zelleMeter = meter;
+        this.cosMin = cosMin;
+        this.minLat = latMin;
+        this.minLon = lonMin;
+        this.zelleLat = meter / METER_JE_GRAD_BREITE;
+        this.zelleLon = meter / (METER_JE_GRAD_LAENGE * cosMin);
+        this.zeilen = z;
+        this.spalten = s;
+
+        // zwei Durchlaeufe: zaehlen, dann fuellen
+        start = new int[z * s + 1];
+        for (int i = 0; i < n; i++) {
+            if (gueltig(katalog, i)) {
+                int[] r = rechteck(i);
+                for (int zeile = r[0]; zeile <= r[2]; zeile++) {
+                    for (int spalte = r[1]; spalte <= r[3]; spalte++) {
+                        start[zeile * s + spalte + 1]++;
+                    }
+                }
+            }
+        }
+        for (int c = 0; c < z * s; c++) {
+            start[c + 1] += start[c];
+        }
+        eintraege = new int[start[z * s]];
+        int[] frei = Arrays.copyOf(start, z * s);
+        for (int i = 0; i < n; i++) {
+            if (gueltig(katalog, i)) {
+                int[] r = rechteck(i);
+                for (int zeile = r[0]; zeile <= r[2]; zeile++) {
+                    for (int spalte = r[1]; spalte <= r[3]; spalte++) {
+                        eintraege[frei[zeile * s + spalte]++] = i;
+                    }
+                }
+            }
+        }
+    }
+
+    private static boolean gueltig(AbschnittKatalog k, int i) {
+        return !Double.isNaN(k.getStartLat(i)) && !Double.isNaN(k.getStartLon(i))
+                && !Double.isNaN(k.getZielLat(i)) && !Double.isNaN(k.getZielLon(i));
+    }
+
+    /** {zeileVon, spalteVon, zeileBis, spalteBis} des Abschnitts */
+    private int[] rechteck(int i) {
+        return new int[]{
+                zeile(Math.min(katalog.getStartLat(i), katalog.getZielLat(i))),
+                spalte(Math.min(katalog.getStartLon(i), katalog.getZielLon(i))),
+                zeile(Math.max(katalog.getStartLat(i), katalog.getZielLat(i))),
+                spalte(Math.max(katalog.getStartLon(i), katalog.getZielLon(i)))};
+    }
+
+    private int zeile(double lat) {
+        return (int) Math.max(0, Math.min(zeilen - 1, Math.floor((lat - minLat) / zelleLat)));
+    }
+
+    private int spalte(double lon) {
+        return (int) Math.max(0, Math.min(spalten - 1, Math.floor((lon - minLon) / zelleLon)));
+    }
+
+    /**
+     * Baut den Index mit Zellen von {@link #ZELLE_METER} Metern.
+     */
+    public static AbschnittIndex aus(AbschnittKatalog katalog) {
+        return aus(katalog, ZELLE_METER);
+    }
+
+    /**
+     * Baut den Index mit Zellen von mindestens zelleMeter Metern; bei sehr
+     * grossen Gebieten werden die Zellen vergroessert.
+     */
+    public static AbschnittIndex aus(AbschnittKatalog katalog, double zelleMeter) {
+        if (!(zelleMeter > 0)) {
+            throw new IllegalArgumentException("zelleMeter muss positiv sein: " + zelleMeter);
+        }
+        return new AbschnittIndex(katalog, zelleMeter);
+    }
+
+    /**
+     * Liefert den prozessweit gueltigen Index zum Katalog und baut ihn neu
+     * auf, falls er zu einem anderen Katalog gehoert.
+     */
+    public static AbschnittIndex aktuell(AbschnittKatalog katalog) {
+        AbschnittIndex x = aktuell;
+        if (x == null || x.katalog != katalog) {
+            synchronized (AbschnittIndex.class) {
+                x = aktuell;
+                if (x == null || x.katalog != katalog) {
+                    long t = System.nanoTime();
+                    x = aus(katalog);
+                    aktuell = x;
+                    L.info("Abschnittsindex mit {} Abschnitten, {}x{} Zellen zu {} m, {} Eintraegen in {} ms",
+                            katalog.getAnzahl(), x.zeilen, x.spalten, x.zelleMeter, x.eintraege.length,
+                            (System.nanoTime() - t) / 1000000);
+                }
+            }
+        }
+        return x;
+    }
+
+    /**
+     * Liefert den Index (im Katalog) des Abschnitts mit dem geringsten
+     * Abstand zur Position, hoechstens maxMeter entfernt, sonst -1. Bei
+     * gleichem Abstand gewinnt der kleinere Index.
+     */
+    public int naechster(double lat, double lon, double maxMeter) {
+        if (eintraege.length == 0 || Double.isNaN(lat) || Double.isNaN(lon)) {
+            return -1;
+        }
+        double kx = METER_JE_GRAD_LAENGE * Math.cos(Math.toRadians(lat));
+        int z0 = (int) Math.floor((lat - minLat) / zelleLat);
+        int s0 = (int) Math.floor((lon - minLon) / zelleLon);
+        // Abstand der Position zum Gitter, falls sie ausserhalb liegt
+        int aussen = Math.max(Math.max(-z0, z0 - (zeilen - 1)), Math.max(-s0, s0 - (spalten - 1)));
+        int maxRing = Math.max(zeilen, spalten) + Math.max(0, aussen);
+        // noerdlich des Katalogs sind die Zellen schmaler als zelleMeter
+        double ringMeter = zelleMeter * Math.min(1, Math.cos(Math.toRadians(lat)) / cosMin);
+        int best = -1;
+        double bestAbstand = maxMeter;
+        for (int k = Math.max(0, aussen); k <= maxRing; k++) {
+            // Zellen im Ring k sind mindestens (k - 1) Zellen entfernt
+            if ((k - 1) * ringMeter > bestAbstand) {
+                break;
+            }
+            for (int zeile = Math.max(0, z0 - k); zeile <= Math.min(zeilen - 1, z0 + k); zeile++) {
+                boolean rand = zeile == z0 - k || zeile == z0 + k;
+                int schritt = rand ? 1 : 2 * k;
+                for (int spalte = s0 - k; spalte <= s0 + k; spalte += Math.max(1, schritt)) {
+                    if (spalte < 0 || spalte >= spalten) {
+                        continue;
+                    }
+                    int c = zeile * spalten + spalte;
+                    for (int e = start[c]; e < start[c + 1]; e++) {
+                        int i = eintraege[e];
+                        double d = abstand(i, lat, lon, kx);
+                        if (d < bestAbstand || d == bestAbstand && (best < 0 || i < best)) {
+                            best = i;
+                            bestAbstand = d;
+                        }
+                    }
+                }
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Liefert die Indizes aller Abschnitte, die hoechstens meter von der
+     * Position entfernt sind, aufsteigend nach Abstand.
+     */
+    public int[] imUmkreis(double lat, double lon, double meter) {
+        if (eintraege.length == 0 || Double.isNaN(lat) || Double.isNaN(lon) || meter < 0) {
+            return new int[0];
+        }
+        int zVon = zeile(lat - meter / METER_JE_GRAD_BREITE);
+        int zBis = zeile(lat + meter / METER_JE_GRAD_BREITE);
+        double grad = meter / (METER_JE_GRAD_LAENGE * Math.max(0.01, Math.cos(Math.toRadians(Math.abs(lat)
+                + meter / METER_JE_GRAD_BREITE))));
+        int sVon = spalte(lon - grad);
+        int sBis = spalte(lon + grad);
+        int[] kandidaten = new int[16];
+        int n = 0;
+        for (int zeile = zVon; zeile <= zBis; zeile++) {
+            for (int c = zeile * spalten + sVon; c <= zeile * spalten + sBis; c++) {
+                for (int e = start[c]; e < start[c + 1]; e++) {
+                    if (n == kandidaten.length) {
+                        kandidaten = Arrays.copyOf(kandidaten, 2 * n);
+                    }
+                    kandidaten[n++] = eintraege[e];
+                }
+            }
+        }
+        Arrays.sort(kandidaten, 0, n);
+        double kx = METER_JE_GRAD_LAENGE * Math.cos(Math.toRadians(lat));
+        // Abstand in Millimetern und Index in einem long, damit ohne Objekte sortiert werden kann
+        long[] treffer = new long[n];
+        int m = 0;
+        for (int j = 0; j < n; j++) {
+            int i = kandidaten[j];
+            if (j > 0 && i == kandidaten[j - 1]) {
+                continue;
+            }
+            double d = abstand(i, lat, lon, kx);
+            if (d <= meter) {
+                treffer[m++] = (Math.round(d * 1000) << 24) | i;
+            }
+        }
+        Arrays.sort(treffer, 0, m);
+        int[] result = new int[m];
+        for (int j = 0; j < m; j++) {
+            result[j] = (int) (treffer[j] & 0xFFFFFF);
+        }
+        return result;
+    }
+
+    /**
+     * Abstand der Position zum Abschnitt mit dem Index in Metern.
+     */
+    public double abstand(int index, double lat, double lon) {
+        return abstand(index, lat, lon, METER_JE_GRAD_LAENGE * Math.cos(Math.toRadians(lat)));
+    }
+
+    /**
+     * Lage des Lotfusspunkts der Position auf dem Abschnitt: 0 am Start,
+     * 1 am Ziel.
+     */
+    public double anteil(int index, double lat, double lon) {
+        double kx = METER_JE_GRAD_LAENGE * Math.cos(Math.toRadians(lat));
+        double ax = (katalog.getStartLon(index) - lon) * kx;
+        double ay = (katalog.getStartLat(index) - lat) * METER_JE_GRAD_BREITE;
+        double dx = (katalog.getZielLon(index) - lon) * kx - ax;
+        double dy = (katalog.getZielLat(index) - lat) * METER_JE_GRAD_BREITE - ay;
+        double laenge2 = dx * dx + dy * dy;
+        return laenge2 == 0 ? 0 : Math.max(0, Math.min(1, -(ax * dx + ay * dy) / laenge2));
+    }
+
+    private double abstand(int index, double lat, double lon, double kx) {
+        double ax = (katalog.getStartLon(index) - lon) * kx;
+        double ay = (katalog.getStartLat(index) - lat) * METER_JE_GRAD_BREITE;
+        double dx = (katalog.getZielLon(index) - lon) * kx - ax;
+        double dy = (katalog.getZielLat(index) - lat) * METER_JE_GRAD_BREITE - ay;
+        double laenge2 = dx * dx + dy * dy;
+        double t = laenge2 == 0 ? 0 : Math.max(0, Math.min(1, -(ax * dx + ay * dy) / laenge2));
+        double px = ax + t * dx;
+        double py = ay + t * dy;
+        return Math.sqrt(px * px + py * py);
+    }
+
+    public AbschnittKatalog getKatalog() {
+        return katalog;
+    }
+
+    /** tatsaechliche Zellgroesse in Metern */
+    public double getZelleMeter() {
+        return zelleMeter;
+    }
+}
@@ -0,0 +1,95 @@
+package de.htwberlin.dbtech.aufgaben.ue03.cache;
+
+import de.htwberlin.dbtech.aufgaben.ue02.Mautabschnitt;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Die Klasse enthaelt die Testfaelle fuer den raeumlichen Abschnittsindex.
+ */
+public class AbschnittIndexTest {
+    AbschnittKatalog katalog = AbschnittKatalog.aus(List.of(
+            new Mautabschnitt(2660, 1400, "48.094 11.588", "48.083 11.596", "Muenchen-Giesing - Unterhaching-Nord", "B13"),
+            new Mautabschnitt(1433, 4100, "52.3 13.084", "52.3 13.026", "Nuthetal Dreieck - Michendorf", "A10"),
+            new Mautabschnitt(2659, 2100, "48.083 11.596", "48.068 11.606", "Unterhaching-Nord - Unterhaching-Sued", "B13"),
+            new Mautabschnitt(9999, 100, "unbekannt", null, "ohne Koordinaten", "A1")));
+    AbschnittIndex index = AbschnittIndex.aus(katalog);
+
+    @org.junit.Test
+    public void testNaechster() {
+        int i = index.naechster(52.3005, 13.05, 100);
+        assertEquals(1433, katalog.getId(i));
+        assertEquals(55, index.abstand(i, 52.3005, 13.05), 1);
+        assertEquals(34.0 / 58, index.anteil(i, 52.3005, 13.05), 0.001);
+        // 5 km noerdlich
+        assertEquals(-1, index.naechster(52.345, 13.05, 1000));
+        assertEquals(1433, katalog.getId(index.naechster(52.345, 13.05, 10000)));
+        // gemeinsamer Punkt zweier Abschnitte: kleinerer Index gewinnt
+        assertEquals(2659, katalog.getId(index.naechster(48.083, 11.596, 10)));
+        assertEquals(-1, index.naechster(Double.NaN, 11.596, 10));
+    }
+
+    @org.junit.Test
+    public void testImUmkreis() {
+        int[] treffer = index.imUmkreis(48.084, 11.596, 500);
+        assertEquals(2, treffer.length);
+        assertEquals(2660, katalog.getId(treffer[0]));
+        assertEquals(2659, katalog.getId(treffer[1]));
+        assertEquals(0, index.imUmkreis(50, 10, 1000).length);
+        assertEquals(3, index.imUmkreis(50, 12, 500000).length);
+    }
+
+    @org.junit.Test
+    public void testLeererKatalog() {
+        AbschnittIndex leer = AbschnittIndex.aus(AbschnittKatalog.aus(List.of()));
+        assertEquals(-1, leer.naechster(52, 13, 1000));
+        assertEquals(0, leer.imUmkreis(52, 13, 1000).length);
+    }
+
+    /** Vergleich mit der vollstaendigen Suche ueber alle Abschnitte */
+    @org.junit.Test
+    public void testWieVollstaendigeSuche() {
+        SplittableRandom r = new SplittableRandom(3);
+        List<Mautabschnitt> zeilen = new ArrayList<>();
+        for (int id = 1; id <= 3000; id++) {
+            double lat = 47.3 + r.nextDouble() * 7.7;
+            double lon = 6 + r.nextDouble() * 9;
+            zeilen.add(new Mautabschnitt(id, 0, lat + " " + lon,
+                    (lat + r.nextDouble(-0.05, 0.05)) + " " + (lon + r.nextDouble(-0.08, 0.08)), null, null));
+        }
+        AbschnittKatalog k = AbschnittKatalog.aus(zeilen);
+        AbschnittIndex x = AbschnittIndex.aus(k, 2000);
+        for (int q = 0; q < 2000; q++) {
+            double lat = 46.5 + r.nextDouble() * 9.5;
+            double lon = 5 + r.nextDouble() * 11;
+            double max = r.nextDouble() * 20000;
+            int erwartet = -1;
+            double bester = max;
+            List<Integer> umkreis = new ArrayList<>();
+            for (int i = 0; i < k.getAnzahl(); i++) {
+                double d = x.abstand(i, lat, lon);
+                if (d < bester || d == bester && erwartet < 0) {
+                    erwartet = i;
+                    bester = d;
+                }
+                if (d <= max) {
+                    umkreis.add(i);
+                }
+            }
+            assertEquals(erwartet, x.naechster(lat, lon, max));
+            int[] treffer = x.imUmkreis(lat, lon, max);
+            for (int j = 1; j < treffer.length; j++) {
+                assertTrue(x.abstand(treffer[j - 1], lat, lon) <= x.abstand(treffer[j], lat, lon) + 0.001);
+            }
+            Arrays.sort(treffer);
+            assertArrayEquals(umkreis.stream().mapToInt(Integer::intValue).toArray(), treffer);
+        }
+    }
+}
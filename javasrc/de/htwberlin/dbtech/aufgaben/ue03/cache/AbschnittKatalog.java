@@ -0,0 +1,238 @@
+package de.htwberlin.dbtech.aufgaben.ue03.cache;
+
+import de.htwberlin.dbtech.aufgaben.ue02.Mautabschnitt;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Unveraenderlicher Katalog aller Zeilen aus MAUTABSCHNITT, spaltenweise in
+ * Arrays abgelegt. Die Abschnitte sind nach ABSCHNITTS_ID sortiert, der Index
+ * eines Abschnitts wird per binaerer Suche ermittelt. Die Koordinaten
+ * ("Breite Laenge") liegen zusaetzlich als double vor; nicht lesbare
+ * Koordinaten ergeben NaN.
+ *
+ * Der prozessweit gueltige Katalog wird beim Neuladen als Ganzes ersetzt,
+ * Leser sehen also immer einen vollstaendigen Stand. Nach Ablauf der TTL
+ * ({@link #STANDARD_TTL}) laedt der naechste Zugriff neu; nach dem Laden von
+ * Stammdaten wird er ueber {@link Stammdaten#verwerfen()} sofort verworfen.
+ */
+public final class AbschnittKatalog {
+    private static final Logger L = LoggerFactory.getLogger(AbschnittKatalog.class);
+
+    private static final int[] KEINE = new int[0];
+
+    public static final Duration STANDARD_TTL = Duration.ofMinutes(5);
+
+    private static volatile AbschnittKatalog aktuell;
+    private static volatile long ttlNanos = STANDARD_TTL.toNanos();
+
+    private final long geladen = System.nanoTime();
+
+    private final int[] ids;
+    private final long[] laengen;
+    private final double[] startLat;
+    private final double[] startLon;
+    private final double[] zielLat;
+    private final double[] zielLon;
+    private final String[] startKoordinaten;
+    private final String[] zielKoordinaten;
+    private final String[] namen;
+    private final String[] typen;
+    /** ABSCHNITTSTYP -> Indizes, aufsteigend nach ABSCHNITTS_ID */
+    private final Map<String, int[]> typIndex;
+
+    private AbschnittKatalog(List<Mautabschnitt> zeilen) {
+        List<Mautabschnitt> sortiert = new ArrayList<>(zeilen);
+        sortiert.sort(Comparator.comparingInt(Mautabschnitt::getAbschnitts_id));
+
+        int n = sortiert.size();
+        ids = new int[n];
+        laengen = new long[n];
+        startLat = new double[n];
+        startLon = new double[n];
+        zielLat = new double[n];
+        zielLon = new double[n];
+        startKoordinaten = new String[n];
+        zielKoordinaten = new String[n];
+        namen = new String[n];
+        typen = new String[n];
+
+        Map<String, List<Integer>> proTyp = new HashMap<>();
+        for (int i = 0; i < n; i++) {
+            Mautabschnitt a = sortiert.get(i);
+            ids[i] = a.getAbschnitts_id();
+            laengen[i] = a.getLaenge();
+            startKoordinaten[i] = a.getStart_koordinate();
+            zielKoordinaten[i] = a.getZiel_koordinate();
+            double[] start = parseKoordinate(a.getStart_koordinate());
+            double[] ziel = parseKoordinate(a.getZiel_koordinate());
+            startLat[i] = start[0];
+            startLon[i] = start[1];
+            zielLat[i] = ziel[0];
+            zielLon[i] = ziel[1];
+            namen[i] = a.getName();
+            typen[i] = a.getAbschnittstyp();
+            if (typen[i] != null) {
+                proTyp.computeIfAbsent(typen[i], k -> new ArrayList<>()).add(i);
+            }
+        }
+
+        typIndex = new HashMap<>();
+        for (Map.Entry<String, List<Integer>> e : proTyp.entrySet()) {
+            typIndex.put(e.getKey(), e.getValue().stream().mapToInt(Integer::intValue).toArray());
+        }
+    }
+
+    /**
+     * Baut einen Katalog aus den Zeilen von MAUTABSCHNITT.
+     */
+    public static AbschnittKatalog aus(List<Mautabschnitt> zeilen) {
+        return new AbschnittKatalog(zeilen);
+    }
+
+    /**
+     * Liefert den prozessweit gueltigen Katalog und laedt ihn beim ersten
+     * Aufruf und nach Ablauf der TTL ueber den uebergebenen Lader.
+     */
+    public static AbschnittKatalog aktuell(Supplier<List<Mautabschnitt>> lader) {
+        AbschnittKatalog k = aktuell;
+        if (k == null || k.istAbgelaufen()) {
+            synchronized (AbschnittKatalog.class) {
+                k = aktuell;
+                if (k == null || k.istAbgelaufen()) {
+                    k = neuLaden(lader);
+                }
+            }
+        }
+        return k;
+    }
+
+    /**
+     * Laedt den Katalog neu und ersetzt den prozessweit gueltigen Stand.
+     */
+    public static synchronized AbschnittKatalog neuLaden(Supplier<List<Mautabschnitt>> lader) {
+        AbschnittKatalog k = aus(lader.get());
+        aktuell = k;
+        L.info("Abschnittskatalog mit {} Abschnitten geladen", k.ids.length);
+        return k;
+    }
+
+    /**
+     * Verwirft den prozessweit gueltigen Katalog; der naechste Zugriff laedt neu.
+     */
+    public static synchronized void verwerfen() {
+        aktuell = null;
+    }
+
+    /**
+     * Setzt die Zeit, nach der der prozessweit gueltige Katalog neu geladen wird.
+     */
+    public static void setTtl(Duration ttl) {
+        ttlNanos = ttl.toNanos();
+    }
+
+    private boolean istAbgelaufen() {
+        return System.nanoTime() - geladen >= ttlNanos;
+    }
+
+    /**
+     * Liefert den Index des Abschnitts oder -1.
+     */
+    public int index(int abschnittsId) {
+        int i = Arrays.binarySearch(ids, abschnittsId);
+        return i < 0 ? -1 : i;
+    }
+
+    /**
+     * Liefert die Laenge des Abschnitts in Metern oder -1, falls er nicht im Katalog ist.
+     */
+    public long laengeInMetern(int abschnittsId) {
+        int i = index(abschnittsId);
+        return i < 0 ? -1 : laengen[i];
+    }
+
+    /**
+     * Liefert die Indizes aller Abschnitte eines Typs, aufsteigend nach
+     * ABSCHNITTS_ID. Das Array darf nicht veraendert werden.
+     */
+    public int[] indizes(String abschnittstyp) {
+        return typIndex.getOrDefault(abschnittstyp, KEINE);
+    }
+
+    /**
+     * Liefert die Abschnitte eines Typs als neue Objekte, aufsteigend nach ABSCHNITTS_ID.
+     */
+    public List<Mautabschnitt> abschnitte(String abschnittstyp) {
+        int[] idx = indizes(abschnittstyp);
+        List<Mautabschnitt> result = new ArrayList<>(idx.length);
+        for (int i : idx) {
+            result.add(abschnitt(i));
+        }
+        return result;
+    }
+
+    public Mautabschnitt abschnitt(int index) {
+        return new Mautabschnitt(ids[index], (int) laengen[index], startKoordinaten[index],
+                zielKoordinaten[index], namen[index], typen[index]);
+    }
+
+    public int getAnzahl() {
+        return ids.length;
+    }
+
+    public int getId(int index) {
+        return ids[index];
+    }
+
+    public long getLaenge(int index) {
+        return laengen[index];
+    }
+
+    public double getStartLat(int index) {
+        return startLat[index];
+    }
+
+    public double getStartLon(int index) {
+        return startLon[index];
+    }
+
+    public double getZielLat(int index) {
+        return zielLat[index];
+    }
+
+    public double getZielLon(int index) {
+        return zielLon[index];
+    }
+
+    public String getName(int index) {
+        return namen[index];
+    }
+
+    public String getTyp(int index) {
+        return typen[index];
+    }
+
+    /** Zerlegt "52.3 13.084" in {Breite, Laenge}. */
+    static double[] parseKoordinate(String koordinate) {
+        if (koordinate != null) {
+            String[] teile = koordinate.trim().split("[\\s,]+");
+            if (teile.length == 2) {
+                try {
+                    return new double[]{Double.parseDouble(teile[0]), Double.parseDouble(teile[1])};
+                } catch (NumberFormatException e) {
+                    L.warn("Koordinate nicht lesbar: {}", koordinate);
+                }
+            }
+        }
+        return new double[]{Double.NaN, Double.NaN};
+    }
+}
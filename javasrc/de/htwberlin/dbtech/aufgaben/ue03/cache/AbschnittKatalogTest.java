@@ -0,0 +1,76 @@
+package de.htwberlin.dbtech.aufgaben.ue03.cache;
+
+import de.htwberlin.dbtech.aufgaben.ue02.Mautabschnitt;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Die Klasse enthaelt die Testfaelle fuer den Abschnittskatalog. Die Daten
+ * stammen aus test-data/ue03-04/Mautabschnitt.csv.
+ */
+public class AbschnittKatalogTest {
+    AbschnittKatalog k = AbschnittKatalog.aus(List.of(
+            new Mautabschnitt(2660, 1400, "48.094 11.588", "48.083 11.596", "Muenchen-Giesing - Unterhaching-Nord", "B13"),
+            new Mautabschnitt(1433, 4100, "52.3 13.084", "52.3 13.026", "Nuthetal Dreieck - Michendorf", "A10"),
+            new Mautabschnitt(2659, 2100, "48.083 11.596", "48.068 11.606", "Unterhaching-Nord - Unterhaching-Sued", "B13"),
+            new Mautabschnitt(1, 10, "kaputt", null, "ohne Koordinate", null)));
+
+    @org.junit.Test
+    public void testLaenge() {
+        assertEquals(4100, k.laengeInMetern(1433));
+        assertEquals(-1, k.laengeInMetern(1434));
+    }
+
+    @org.junit.Test
+    public void testAbschnitteJeTyp() {
+        List<Mautabschnitt> b13 = k.abschnitte("B13");
+        assertEquals(2, b13.size());
+        assertEquals(2659, b13.get(0).getAbschnitts_id());
+        assertEquals("48.094 11.588", b13.get(1).getStart_koordinate());
+        assertEquals(0, k.abschnitte("A99").size());
+    }
+
+    @org.junit.Test
+    public void testKoordinaten() {
+        int i = k.index(1433);
+        assertEquals(52.3, k.getStartLat(i), 0.0);
+        assertEquals(13.026, k.getZielLon(i), 0.0);
+        assertTrue(Double.isNaN(k.getStartLat(k.index(1))));
+        assertTrue(Double.isNaN(k.getZielLon(k.index(1))));
+    }
+
+    /** der prozessweite Katalog wird nach Stammdaten.verwerfen und nach Ablauf der TTL neu geladen */
+    @org.junit.Test
+    public void testAktuellNeuLaden() {
+        AtomicInteger geladen = new AtomicInteger();
+        Supplier<List<Mautabschnitt>> lader = () -> {
+            geladen.incrementAndGet();
+            return List.of(new Mautabschnitt(1433, 4100, null, null, null, "A10"));
+        };
+        try {
+            Stammdaten.verwerfen();
+            AbschnittKatalog erster = AbschnittKatalog.aktuell(lader);
+            assertSame(erster, AbschnittKatalog.aktuell(lader));
+            assertEquals(1, geladen.get());
+
+            Stammdaten.verwerfen();
+            assertNotSame(erster, AbschnittKatalog.aktuell(lader));
+            assertEquals(2, geladen.get());
+
+            AbschnittKatalog.setTtl(Duration.ZERO);
+            AbschnittKatalog.aktuell(lader);
+            assertEquals(3, geladen.get());
+        } finally {
+            AbschnittKatalog.setTtl(AbschnittKatalog.STANDARD_TTL);
+            Stammdaten.verwerfen();
+        }
+    }
+}
@@ -0,0 +1,287 @@
+package de.htwberlin.dbtech.aufgaben.ue03.cache;
+
+import de.htwberlin.dbtech.aufgaben.ue03.tdg.FahrzeugStammdaten;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Begrenzter LRU-Cache fuer FAHRZEUG und FAHRZEUGGERAT, Schluessel ist das
+ * normalisierte Kennzeichen (siehe {@link #normalisiere(String)}). Je
+ * Kennzeichen werden alle Fahrzeuge mit ihren Geraeten gehalten, so dass die
+ * Pruefungen einer Erfassung ohne Datenbankzugriff beantwortet werden.
+ *
+ * Aenderungen ueber die Mautverwaltung invalidieren die betroffenen Eintraege
+ * sofort. Aenderungen an der Datenbank an der Anwendung vorbei werden nach
+ * Ablauf der TTL sichtbar.
+ *
+ * Eine Invalidierung waehrend eines laufenden Ladevorgangs verhindert, dass
+ * das dann veraltete Ergebnis in den Cache geschrieben wird.
+ */
+public final class FahrzeugCache {
+    private static final Logger L = LoggerFactory.getLogger(FahrzeugCache.class);
+
+    public static final int STANDARD_GROESSE = 10_000;
+    public static final Duration STANDARD_TTL = Duration.ofMinutes(5);
+
+    private static final FahrzeugCache INSTANZ = new FahrzeugCache(STANDARD_GROESSE, STANDARD_TTL);
+
+    private final LinkedHashMap<String, Eintrag> eintraege;
+    /** FZ_ID und FZG_ID -> Kennzeichen der gecachten Eintraege */
+    private final Map<Long, String> fahrzeuge = new HashMap<>();
+    private final Map<Long, String> geraete = new HashMap<>();
+
+    private int maxGroesse;
+    private long ttlNanos;
+    /** wird bei jeder Invalidierung erhoeht */
+    private long generation;
+
+    private long treffer;
+    private long fehlschlaege;
+    private long abgelaufen;
+    private long invalidierungen;
+
+    FahrzeugCache(int maxGroesse, Duration ttl) {
+        this.maxGroesse = maxGroesse;
+        this.ttlNanos = ttl.toNanos();
+        this.eintraege = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Eintrag> eldest) {
+                if (size() <= FahrzeugCache.this.maxGroesse) {
+                    return false;
+                }
+                austragen(eldest.getValue());
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Liefert den prozessweit gemeinsamen Cache.
+     */
+    public static FahrzeugCache get() {
+        return INSTANZ;
+    }
+
+    /**
+     * Vereinheitlicht ein Kennzeichen: ohne fuehrende und abschliessende
+     * Leerzeichen, Grossbuchstaben, mehrfache Leerzeichen zusammengefasst.
+     */
+    public static String normalisiere(String kennzeichen) {
+        if (kennzeichen == null || istNormalisiert(kennzeichen)) {
+            return kennzeichen;
+        }
+        return kennzeichen.trim().replaceAll("\\s+", " ").toUpperCase(Locale.ROOT);
+    }
+
+    private static boolean istNormalisiert(String kennzeichen) {
+        int n = kennzeichen.length();
+        for (int i = 0; i < n; i++) {
+            char c = kennzeichen.charAt(i);
+            if (Character.isLowerCase(c)) {
+                return false;
+            }
+            if (Character.isWhitespace(c) && (c != ' ' || i == 0 || i == n - 1 || kennzeichen.charAt(i + 1) == ' ')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Liefert die Fahrzeuge zum Kennzeichen, aus dem Cache oder ueber den
+     * Lader. Der Lader bekommt das normalisierte Kennzeichen.
+     */
+    public Eintrag get(String kennzeichen, Function<String, List<FahrzeugStammdaten>> lader) {
+        String schluessel = normalisiere(kennzeichen);
+        long start;
+        synchronized (this) {
+            Eintrag e = eintraege.get(schluessel);
+            if (e != null && System.nanoTime() - e.geladen < ttlNanos) {
+                treffer++;
+                return e;
+            }
+            if (e != null) {
+                abgelaufen++;
+                eintraege.remove(schluessel);
+                austragen(e);
+            }
+            fehlschlaege++;
+            start = generation;
+        }
+
+        Eintrag e = new Eintrag(schluessel, lader.apply(schluessel), System.nanoTime());
+
+        synchronized (this) {
+            if (generation == start) {
+                Eintrag alt = eintraege.put(schluessel, e);
+                if (alt != null) {
+                    austragen(alt);
+                }
+                for (FahrzeugStammdaten f : e.fahrzeuge) {
+                    fahrzeuge.put(f.getFzId(), schluessel);
+                    for (long g : f.getGeraete()) {
+                        geraete.put(g, schluessel);
+                    }
+                }
+            }
+        }
+        return e;
+    }
+
+    /**
+     * Verwirft den Eintrag zum Kennzeichen, z.B. nach dem Anmelden eines Fahrzeugs.
+     */
+    public synchronized void invalidiereKennzeichen(String kennzeichen) {
+        entferne(normalisiere(kennzeichen));
+    }
+
+    /**
+     * Verwirft den Eintrag, der das Fahrzeug enthaelt.
+     */
+    public synchronized void invalidiereFahrzeug(long fzId) {
+        entferne(fahrzeuge.get(fzId));
+    }
+
+    /**
+     * Verwirft den Eintrag, der das Fahrzeuggeraet enthaelt.
+     */
+    public synchronized void invalidiereGeraet(long fzgId) {
+        entferne(geraete.get(fzgId));
+    }
+
+    /**
+     * Verwirft alle Eintraege.
+     */
+    public synchronized void leeren() {
+        generation++;
+        invalidierungen++;
+        eintraege.clear();
+        fahrzeuge.clear();
+        geraete.clear();
+        L.debug("Fahrzeugcache geleert");
+    }
+
+    public synchronized void setTtl(Duration ttl) {
+        this.ttlNanos = ttl.toNanos();
+    }
+
+    /**
+     * Setzt die maximale Anzahl Kennzeichen; ueberzaehlige Eintraege werden beim
+     * naechsten Einfuegen verdraengt.
+     */
+    public synchronized void setMaxGroesse(int maxGroesse) {
+        if (maxGroesse < 1) {
+            throw new IllegalArgumentException("maxGroesse muss positiv sein: " + maxGroesse);
+        }
+        this.maxGroesse = maxGroesse;
+    }
+
+    public synchronized long getTreffer() {
+        return treffer;
+    }
+
+    public synchronized long getFehlschlaege() {
+        return fehlschlaege;
+    }
+
+    public synchronized int getAnzahl() {
+        return eintraege.size();
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "FahrzeugCache[anzahl=" + eintraege.size() + ", treffer=" + treffer + ", fehlschlaege="
+                + fehlschlaege + ", abgelaufen=" + abgelaufen + ", invalidierungen=" + invalidierungen + "]";
+    }
+
+    private void entferne(String schluessel) {
+        generation++;
+        invalidierungen++;
+        Eintrag e = schluessel != null ? eintraege.remove(schluessel) : null;
+        if (e != null) {
+            austragen(e);
+        }
+    }
+
+    /** Entfernt die Rueckverweise eines Eintrags; nur unter der Sperre aufrufen. */
+    private void austragen(Eintrag e) {
+        for (FahrzeugStammdaten f : e.fahrzeuge) {
+            fahrzeuge.remove(f.getFzId(), e.kennzeichen);
+            for (long g : f.getGeraete()) {
+                geraete.remove(g, e.kennzeichen);
+            }
+        }
+    }
+
+    /**
+     * Alle Fahrzeuge eines Kennzeichens. Die Methoden entsprechen den
+     * Abfragen aus FahrzeugTdg.
+     */
+    public static final class Eintrag {
+        private final String kennzeichen;
+        private final List<FahrzeugStammdaten> fahrzeuge;
+        private final long geladen;
+
+        Eintrag(String kennzeichen, List<FahrzeugStammdaten> fahrzeuge, long geladen) {
+            this.kennzeichen = kennzeichen;
+            this.fahrzeuge = List.copyOf(fahrzeuge);
+            this.geladen = geladen;
+        }
+
+        /** Es gibt ein angemeldetes Fahrzeug mit dem Kennzeichen. */
+        public boolean istAngemeldet() {
+            for (FahrzeugStammdaten f : fahrzeuge) {
+                if (f.istAngemeldet()) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /** Es gibt ein angemeldetes Fahrzeug mit dem Kennzeichen und der Achszahl. */
+        public boolean istAngemeldet(int achsen) {
+            for (FahrzeugStammdaten f : fahrzeuge) {
+                if (f.istAngemeldet() && f.getAchsen() == achsen) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /** SSKL_ID des ersten Fahrzeugs mit der Achszahl oder 0. */
+        public int ermittleSchadstoffklasseId(int achsen) {
+            for (FahrzeugStammdaten f : fahrzeuge) {
+                if (f.getAchsen() == achsen) {
+                    return f.getSsklId();
+                }
+            }
+            return 0;
+        }
+
+        /** FZG_ID des ersten Fahrzeugs mit Achszahl, Schadstoffklasse und Geraet oder 0. */
+        public long ermittleFzgId(int achsen, int ssklId) {
+            for (FahrzeugStammdaten f : fahrzeuge) {
+                if (f.getAchsen() == achsen && f.getSsklId() == ssklId && f.getFzgId() != 0) {
+                    return f.getFzgId();
+                }
+            }
+            return 0L;
+        }
+
+        public String getKennzeichen() {
+            return kennzeichen;
+        }
+
+        public List<FahrzeugStammdaten> getFahrzeuge() {
+            return fahrzeuge;
+        }
+    }
+}
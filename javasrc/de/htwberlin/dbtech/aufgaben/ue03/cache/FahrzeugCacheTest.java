@@ -0,0 +1,88 @@
+package de.htwberlin.dbtech.aufgaben.ue03.cache;
+
+import de.htwberlin.dbtech.aufgaben.ue03.tdg.FahrzeugStammdaten;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Die Klasse enthaelt die Testfaelle fuer den Fahrzeugcache.
+ */
+public class FahrzeugCacheTest {
+    FahrzeugCache cache = new FahrzeugCache(2, Duration.ofMinutes(5));
+    AtomicInteger ladevorgaenge = new AtomicInteger();
+
+    Function<String, List<FahrzeugStammdaten>> lader = k -> {
+        ladevorgaenge.incrementAndGet();
+        if (!k.equals("M 6569")) {
+            return List.of();
+        }
+        return List.of(
+                new FahrzeugStammdaten(1L, 4, 5, LocalDate.of(2012, 1, 1), 10L, new long[]{10L}),
+                new FahrzeugStammdaten(2L, 4, 5, null, 21L, new long[]{20L, 21L}));
+    };
+
+    @org.junit.Test
+    public void testNormalisierung() {
+        assertEquals("M 6569", FahrzeugCache.normalisiere("M 6569"));
+        assertEquals("M 6569", FahrzeugCache.normalisiere("  m   6569 "));
+        cache.get("M 6569", lader);
+        cache.get(" m 6569", lader);
+        assertEquals(1, ladevorgaenge.get());
+    }
+
+    @org.junit.Test
+    public void testAbfragen() {
+        FahrzeugCache.Eintrag e = cache.get("M 6569", lader);
+        assertTrue(e.istAngemeldet());
+        assertTrue(e.istAngemeldet(5));
+        assertFalse(e.istAngemeldet(4));
+        assertEquals(4, e.ermittleSchadstoffklasseId(5));
+        assertEquals(0, e.ermittleSchadstoffklasseId(3));
+        assertEquals(10L, e.ermittleFzgId(5, 4));
+        assertFalse(cache.get("X 1", lader).istAngemeldet());
+    }
+
+    @org.junit.Test
+    public void testInvalidierung() {
+        cache.get("M 6569", lader);
+        cache.invalidiereGeraet(20L);
+        cache.get("M 6569", lader);
+        cache.invalidiereFahrzeug(1L);
+        cache.get("M 6569", lader);
+        cache.invalidiereFahrzeug(99L);
+        cache.get("M 6569", lader);
+        cache.invalidiereKennzeichen("m 6569");
+        cache.get("M 6569", lader);
+        assertEquals(4, ladevorgaenge.get());
+    }
+
+    @org.junit.Test
+    public void testTtlUndGroesse() {
+        cache.get("A 1", lader);
+        cache.get("A 2", lader);
+        cache.get("A 3", lader);
+        assertEquals(2, cache.getAnzahl());
+
+        cache.setTtl(Duration.ZERO);
+        cache.get("A 3", lader);
+        assertEquals(4, ladevorgaenge.get());
+    }
+
+    @org.junit.Test
+    public void testInvalidierungWaehrendDesLadens() {
+        cache.get("M 6569", k -> {
+            cache.invalidiereKennzeichen(k);
+            return lader.apply(k);
+        });
+        cache.get("M 6569", lader);
+        assertEquals(2, ladevorgaenge.get());
+    }
+}
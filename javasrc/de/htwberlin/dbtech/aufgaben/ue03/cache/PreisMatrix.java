@@ -0,0 +1,104 @@
+package de.htwberlin.dbtech.aufgaben.ue03.cache;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.math.BigDecimal;
+
+/**
+ * Vorberechnete Mautpreise je (Abschnitt, Kategorie) in Cent. Jeder Eintrag
+ * wird beim Aufbau einmal mit {@link TarifTabelle#berechnePreis} berechnet,
+ * die Werte stimmen daher exakt mit der bisherigen Rundung ueberein. Die
+ * Suche kommt ohne BigDecimal-Rechnung und ohne Objekterzeugung aus.
+ *
+ * Die Matrix gehoert zu genau einer {@link TarifTabelle} und einem
+ * {@link AbschnittKatalog}. Beide werden nach Ablauf ihrer TTL oder nach
+ * {@link Stammdaten#verwerfen()} als neue Instanz geladen; sobald
+ * {@link #aktuell(TarifTabelle, AbschnittKatalog)} mit einer davon gerufen
+ * wird, baut es die Matrix neu auf.
+ */
+public final class PreisMatrix {
+    private static final Logger L = LoggerFactory.getLogger(PreisMatrix.class);
+
+    private static volatile PreisMatrix aktuell;
+
+    private final TarifTabelle tarife;
+    private final AbschnittKatalog abschnitte;
+    /** [abschnittIndex * anzahlTarife + tarifIndex] */
+    private final int[] cent;
+
+    private PreisMatrix(TarifTabelle tarife, AbschnittKatalog abschnitte) {
+        this.tarife = tarife;
+        this.abschnitte = abschnitte;
+
+        int n = tarife.getAnzahl();
+        this.cent = new int[abschnitte.getAnzahl() * n];
+        for (int a = 0; a < abschnitte.getAnzahl(); a++) {
+            for (int t = 0; t < n; t++) {
+                cent[a * n + t] = TarifTabelle.berechnePreis(abschnitte.getLaenge(a), tarife.get(t).getMautsatzJeKm())
+                        .unscaledValue().intValueExact();
+            }
+        }
+    }
+
+    /**
+     * Baut eine Matrix aus Tariftabelle und Abschnittskatalog.
+     */
+    public static PreisMatrix aus(TarifTabelle tarife, AbschnittKatalog abschnitte) {
+        return new PreisMatrix(tarife, abschnitte);
+    }
+
+    /**
+     * Liefert die prozessweit gueltige Matrix zu Tariftabelle und
+     * Abschnittskatalog und berechnet sie neu, falls sie zu einem anderen
+     * Stand gehoert.
+     */
+    public static PreisMatrix aktuell(TarifTabelle tarife, AbschnittKatalog abschnitte) {
+        PreisMatrix m = aktuell;
+        if (m == null || m.tarife != tarife || m.abschnitte != abschnitte) {
+            synchronized (PreisMatrix.class) {
+                m = aktuell;
+                if (m == null || m.tarife != tarife || m.abschnitte != abschnitte) {
+                    m = aus(tarife, abschnitte);
+                    aktuell = m;
+                    L.info("Preismatrix mit {} Abschnitten und {} Kategorien berechnet",
+                            abschnitte.getAnzahl(), tarife.getAnzahl());
+                }
+            }
+        }
+        return m;
+    }
+
+    /**
+     * Verwirft die prozessweit gueltige Matrix, der naechste Aufruf von
+     * {@link #aktuell(TarifTabelle, AbschnittKatalog)} berechnet sie neu.
+     */
+    public static synchronized void verwerfen() {
+        aktuell = null;
+    }
+
+    /**
+     * Liefert den Preis in Cent fuer Abschnitt und Tarifindex aus
+     * {@link TarifTabelle#index(int, int)} oder -1, falls der Abschnitt
+     * nicht bekannt ist.
+     */
+    public long preisInCent(int mautAbschnitt, int tarifIndex) {
+        int a = abschnitte.index(mautAbschnitt);
+        return a < 0 ? -1 : cent[a * tarife.getAnzahl() + tarifIndex];
+    }
+
+    public TarifTabelle getTarife() {
+        return tarife;
+    }
+
+    public AbschnittKatalog getAbschnitte() {
+        return abschnitte;
+    }
+
+    /**
+     * Wandelt einen Centbetrag in Euro mit zwei Nachkommastellen.
+     */
+    public static BigDecimal alsEuro(long cent) {
+        return BigDecimal.valueOf(cent, 2);
+    }
+}
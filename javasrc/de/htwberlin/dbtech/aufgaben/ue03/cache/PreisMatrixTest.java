@@ -0,0 +1,79 @@
+package de.htwberlin.dbtech.aufgaben.ue03.cache;
+
+import de.htwberlin.dbtech.aufgaben.ue02.Mautabschnitt;
+import de.htwberlin.dbtech.aufgaben.ue03.tdg.Tarif;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Die Klasse enthaelt die Testfaelle fuer die Preismatrix.
+ */
+public class PreisMatrixTest {
+    TarifTabelle tarife = TarifTabelle.aus(List.of(
+            new Tarif(13, 4, "= 2", new BigDecimal("11.3")),
+            new Tarif(16, 4, ">= 5", new BigDecimal("16.7")),
+            new Tarif(20, 5, ">= 5", new BigDecimal("15.6"))));
+
+    AbschnittKatalog abschnitte = AbschnittKatalog.aus(List.of(
+            new Mautabschnitt(1433, 4100, "52.3 13.084", "52.3 13.026", "Nuthetal Dreieck - Michendorf", "A10")));
+
+    @org.junit.Test
+    public void testGleicheRundungWieBigDecimal() {
+        List<Mautabschnitt> zeilen = new ArrayList<>();
+        for (int i = 0; i < 20000; i += 7) {
+            zeilen.add(new Mautabschnitt(i, i, null, null, null, null));
+        }
+        AbschnittKatalog k = AbschnittKatalog.aus(zeilen);
+        PreisMatrix m = PreisMatrix.aus(tarife, k);
+        for (int t = 0; t < tarife.getAnzahl(); t++) {
+            for (int a = 0; a < k.getAnzahl(); a++) {
+                assertEquals(TarifTabelle.berechnePreis(k.getLaenge(a), tarife.get(t).getMautsatzJeKm()),
+                        PreisMatrix.alsEuro(m.preisInCent(k.getId(a), t)));
+            }
+        }
+    }
+
+    @org.junit.Test
+    public void testUnbekannterAbschnitt() {
+        PreisMatrix m = PreisMatrix.aus(tarife, abschnitte);
+        assertEquals(68, m.preisInCent(1433, tarife.index(4, 5)));
+        assertEquals(-1, m.preisInCent(1434, tarife.index(4, 5)));
+    }
+
+    @org.junit.Test
+    public void testNeuaufbau() {
+        PreisMatrix m = PreisMatrix.aktuell(tarife, abschnitte);
+        assertSame(m, PreisMatrix.aktuell(tarife, abschnitte));
+
+        TarifTabelle neu = TarifTabelle.aus(List.of(new Tarif(16, 4, ">= 5", new BigDecimal("20.0"))));
+        PreisMatrix n = PreisMatrix.aktuell(neu, abschnitte);
+        assertNotSame(m, n);
+        assertEquals(82, n.preisInCent(1433, neu.index(4, 5)));
+
+        AbschnittKatalog laenger = AbschnittKatalog.aus(List.of(new Mautabschnitt(1433, 5000, null, null, null, "A10")));
+        assertEquals(100, PreisMatrix.aktuell(neu, laenger).preisInCent(1433, neu.index(4, 5)));
+    }
+
+    /** nach dem Verwerfen der Stammdaten folgt die Matrix den neu geladenen Tarifen */
+    @org.junit.Test
+    public void testNeuaufbauNachVerwerfen() {
+        Stammdaten.verwerfen();
+        TarifTabelle alt = TarifTabelle.aktuell(() -> List.of(
+                new Tarif(16, 4, ">= 5", new BigDecimal("16.7"))));
+        AbschnittKatalog k = AbschnittKatalog.aktuell(() -> List.of(
+                new Mautabschnitt(1433, 4100, null, null, null, "A10")));
+        assertEquals(68, PreisMatrix.aktuell(alt, k).preisInCent(1433, alt.index(4, 5)));
+
+        Stammdaten.verwerfen();
+        TarifTabelle neu = TarifTabelle.aktuell(() -> List.of(new Tarif(16, 4, ">= 5", new BigDecimal("20.0"))));
+        assertSame(neu, PreisMatrix.aktuell(neu, k).getTarife());
+        assertEquals(82, PreisMatrix.aktuell(neu, k).preisInCent(1433, neu.index(4, 5)));
+        Stammdaten.verwerfen();
+    }
+}
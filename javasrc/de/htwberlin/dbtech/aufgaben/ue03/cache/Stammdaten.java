@@ -0,0 +1,20 @@
+package de.htwberlin.dbtech.aufgaben.ue03.cache;
+
+/**
+ * Verwirft die prozessweit gehaltenen Staende der Stammdaten einschliesslich
+ * des Fahrzeugcaches, z.B. nach dem MassenLader oder einem
+ * DbUnit-CLEAN_INSERT. Der naechste Zugriff laedt sie aus der Datenbank neu. Ohne diesen Aufruf werden Aenderungen an der
+ * Anwendung vorbei erst nach Ablauf der jeweiligen TTL sichtbar.
+ */
+public final class Stammdaten {
+
+    private Stammdaten() {
+    }
+
+    public static void verwerfen() {
+        AbschnittKatalog.verwerfen();
+        TarifTabelle.verwerfen();
+        PreisMatrix.verwerfen();
+        FahrzeugCache.get().leeren();
+    }
+}
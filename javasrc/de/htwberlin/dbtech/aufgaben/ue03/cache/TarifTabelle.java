@@ -0,0 +1,207 @@
+package de.htwberlin.dbtech.aufgaben.ue03.cache;
+
+import de.htwberlin.dbtech.aufgaben.ue03.tdg.Tarif;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Unveraenderliche Sicht auf MAUTKATEGORIE. Die Achszahl-Regeln ("= 3",
+ * ">= 5") werden beim Laden einmal ausgewertet und in eine Tabelle
+ * (SSKL_ID, Achszahl) -> Kategorie uebersetzt, so dass die Tarifsuche ohne
+ * Datenbankzugriff und ohne Zeichenkettenverarbeitung auskommt.
+ *
+ * Passen mehrere Regeln, gewinnt die Kategorie mit der kleinsten KATEGORIE_ID.
+ *
+ * Die aktuell gueltige Tabelle wird prozessweit gehalten, siehe
+ * {@link #aktuell(Supplier)} und {@link #neuLaden(Supplier)}. Nach Ablauf der
+ * TTL ({@link #STANDARD_TTL}) laedt der naechste Zugriff neu, Aenderungen an
+ * MAUTKATEGORIE werden also spaetestens dann sichtbar; wer sie selbst
+ * schreibt oder neu laedt, ruft {@link #verwerfen()}.
+ */
+public final class TarifTabelle {
+    private static final Logger L = LoggerFactory.getLogger(TarifTabelle.class);
+
+    public static final Duration STANDARD_TTL = Duration.ofMinutes(5);
+
+    private static volatile TarifTabelle aktuell;
+    private static volatile long ttlNanos = STANDARD_TTL.toNanos();
+
+    private final long geladen = System.nanoTime();
+
+    private final Tarif[] tarife;
+    private final int[] kategorieIndex;
+    private final int[] regelMin;
+    private final int[] regelMax;
+    /** [sskl][achsen] -> Index in tarife oder -1; der letzte Achsen-Eintrag gilt fuer alle groesseren Werte */
+    private final int[][] suche;
+
+    private TarifTabelle(List<Tarif> zeilen) {
+        this.tarife = zeilen.stream()
+                .sorted((a, b) -> Integer.compare(a.getKategorieId(), b.getKategorieId()))
+                .toArray(Tarif[]::new);
+
+        int maxKategorie = 0;
+        int maxSskl = 0;
+        int maxGrenze = 0;
+        regelMin = new int[tarife.length];
+        regelMax = new int[tarife.length];
+        for (int i = 0; i < tarife.length; i++) {
+            int[] regel = kompiliere(tarife[i].getAchszahlRegel());
+            regelMin[i] = regel[0];
+            regelMax[i] = regel[1];
+            maxGrenze = Math.max(maxGrenze, regel[0]);
+            maxKategorie = Math.max(maxKategorie, tarife[i].getKategorieId());
+            maxSskl = Math.max(maxSskl, tarife[i].getSsklId());
+        }
+
+        kategorieIndex = new int[maxKategorie + 1];
+        Arrays.fill(kategorieIndex, -1);
+        suche = new int[maxSskl + 1][maxGrenze + 2];
+        for (int[] zeile : suche) {
+            Arrays.fill(zeile, -1);
+        }
+        for (int i = 0; i < tarife.length; i++) {
+            kategorieIndex[tarife[i].getKategorieId()] = i;
+            int[] zeile = suche[tarife[i].getSsklId()];
+            for (int achsen = 0; achsen < zeile.length; achsen++) {
+                if (zeile[achsen] < 0 && achsen >= regelMin[i] && achsen <= regelMax[i]) {
+                    zeile[achsen] = i;
+                }
+            }
+        }
+    }
+
+    /**
+     * Baut eine Tabelle aus den Zeilen von MAUTKATEGORIE.
+     *
+     * @throws IllegalArgumentException falls eine Achszahl-Regel unbekannt ist
+     */
+    public static TarifTabelle aus(List<Tarif> zeilen) {
+        return new TarifTabelle(zeilen);
+    }
+
+    /**
+     * Liefert die prozessweit gueltige Tabelle und laedt sie beim ersten
+     * Aufruf und nach Ablauf der TTL ueber den uebergebenen Lader.
+     */
+    public static TarifTabelle aktuell(Supplier<List<Tarif>> lader) {
+        TarifTabelle t = aktuell;
+        if (t == null || t.istAbgelaufen()) {
+            synchronized (TarifTabelle.class) {
+                t = aktuell;
+                if (t == null || t.istAbgelaufen()) {
+                    t = neuLaden(lader);
+                }
+            }
+        }
+        return t;
+    }
+
+    /**
+     * Laedt die Tabelle neu, z.B. nach einer Tarifaenderung, und macht sie
+     * prozessweit gueltig.
+     */
+    public static synchronized TarifTabelle neuLaden(Supplier<List<Tarif>> lader) {
+        TarifTabelle t = aus(lader.get());
+        aktuell = t;
+        L.info("Tariftabelle mit {} Kategorien geladen", t.tarife.length);
+        return t;
+    }
+
+    /**
+     * Verwirft die prozessweit gueltige Tabelle; der naechste Zugriff laedt neu.
+     */
+    public static synchronized void verwerfen() {
+        aktuell = null;
+    }
+
+    /**
+     * Setzt die Zeit, nach der die prozessweit gueltige Tabelle neu geladen wird.
+     */
+    public static void setTtl(Duration ttl) {
+        ttlNanos = ttl.toNanos();
+    }
+
+    private boolean istAbgelaufen() {
+        return System.nanoTime() - geladen >= ttlNanos;
+    }
+
+    /**
+     * Liefert den Index der passenden Kategorie oder -1.
+     */
+    public int index(int ssklId, int achsen) {
+        if (ssklId < 0 || ssklId >= suche.length || achsen < 0) {
+            return -1;
+        }
+        int[] zeile = suche[ssklId];
+        return zeile[Math.min(achsen, zeile.length - 1)];
+    }
+
+    /**
+     * Liefert die passende Kategorie oder null.
+     */
+    public Tarif finde(int ssklId, int achsen) {
+        int i = index(ssklId, achsen);
+        return i < 0 ? null : tarife[i];
+    }
+
+    /**
+     * Prueft die Achszahl gegen die Regel der Kategorie.
+     */
+    public boolean passt(int kategorieId, int achsen) {
+        int i = kategorieId >= 0 && kategorieId < kategorieIndex.length ? kategorieIndex[kategorieId] : -1;
+        return i >= 0 && achsen >= regelMin[i] && achsen <= regelMax[i];
+    }
+
+    public Tarif get(int index) {
+        return tarife[index];
+    }
+
+    public int getAnzahl() {
+        return tarife.length;
+    }
+
+    /**
+     * Prueft eine Achszahl gegen eine Regel aus MAUTKATEGORIE.ACHSZAHL.
+     *
+     * @throws IllegalArgumentException falls die Regel unbekannt ist
+     */
+    public static boolean passtZurAchszahl(String regel, int achsen) {
+        int[] r = kompiliere(regel);
+        return achsen >= r[0] && achsen <= r[1];
+    }
+
+    /**
+     * Berechnet den Mautpreis in Euro auf zwei Nachkommastellen
+     * (Laenge m -> km auf 3 Stellen, Satz ct -> EUR auf 4 Stellen, jeweils HALF_UP).
+     */
+    public static BigDecimal berechnePreis(long laengeMeter, BigDecimal mautsatzJeKm) {
+        BigDecimal lengthKm = BigDecimal.valueOf(laengeMeter)
+                .divide(BigDecimal.valueOf(1000), 3, RoundingMode.HALF_UP);
+
+        return mautsatzJeKm
+                .divide(BigDecimal.valueOf(100), 4, RoundingMode.HALF_UP)
+                .multiply(lengthKm)
+                .setScale(2, RoundingMode.HALF_UP);
+    }
+
+    /** Uebersetzt "= n" in [n, n] und ">= n" in [n, MAX_VALUE]. */
+    private static int[] kompiliere(String regel) {
+        String r = regel.trim();
+        if (r.startsWith(">=")) {
+            return new int[]{Integer.parseInt(r.substring(2).trim()), Integer.MAX_VALUE};
+        }
+        if (r.startsWith("=")) {
+            int val = Integer.parseInt(r.substring(1).trim());
+            return new int[]{val, val};
+        }
+        throw new IllegalArgumentException("Unbekannte Regel in ACHSZAHL: " + regel);
+    }
+}
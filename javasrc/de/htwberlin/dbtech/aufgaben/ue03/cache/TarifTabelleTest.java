@@ -0,0 +1,100 @@
+package de.htwberlin.dbtech.aufgaben.ue03.cache;
+
+import de.htwberlin.dbtech.aufgaben.ue03.tdg.Tarif;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Die Klasse enthaelt die Testfaelle fuer die Tariftabelle. Die Kategorien
+ * entsprechen SSKL_ID 4 und 5 aus test-data/ue03-04/Mautkategorie.csv.
+ */
+public class TarifTabelleTest {
+    TarifTabelle t;
+
+    @org.junit.Before
+    public void setUp() {
+        t = TarifTabelle.aus(List.of(
+                new Tarif(16, 4, "      >= 5", new BigDecimal("16.7")),
+                new Tarif(13, 4, "= 2", new BigDecimal("11.3")),
+                new Tarif(14, 4, "= 3", new BigDecimal("14.5")),
+                new Tarif(15, 4, "= 4", new BigDecimal("14.9")),
+                new Tarif(20, 5, ">= 5", new BigDecimal("15.6"))));
+    }
+
+    @org.junit.Test
+    public void testFinde() {
+        assertEquals(13, t.finde(4, 2).getKategorieId());
+        assertEquals(15, t.finde(4, 4).getKategorieId());
+        assertEquals(16, t.finde(4, 5).getKategorieId());
+        assertEquals(16, t.finde(4, 12).getKategorieId());
+        assertEquals(20, t.finde(5, 7).getKategorieId());
+    }
+
+    @org.junit.Test
+    public void testKeinTarif() {
+        assertNull(t.finde(4, 1));
+        assertNull(t.finde(5, 4));
+        assertNull(t.finde(9, 5));
+        assertNull(t.finde(-1, 5));
+    }
+
+    @org.junit.Test
+    public void testPasst() {
+        assertTrue(t.passt(15, 4));
+        assertFalse(t.passt(15, 5));
+        assertTrue(t.passt(16, 9));
+        assertFalse(t.passt(99, 4));
+        assertTrue(TarifTabelle.passtZurAchszahl(" >= 5", 6));
+        assertFalse(TarifTabelle.passtZurAchszahl("= 3", 4));
+    }
+
+    @org.junit.Test(expected = IllegalArgumentException.class)
+    public void testUnbekannteRegel() {
+        TarifTabelle.aus(List.of(new Tarif(1, 1, "< 3", BigDecimal.ONE)));
+    }
+
+    @org.junit.Test
+    public void testBerechnePreis() {
+        // Abschnitt 1433, Kategorie 16 wie in MautServiceTest
+        assertEquals(new BigDecimal("0.68"), TarifTabelle.berechnePreis(4100, new BigDecimal("16.7")));
+        assertEquals(new BigDecimal("0.00"), TarifTabelle.berechnePreis(0, new BigDecimal("16.7")));
+    }
+
+    /** die prozessweite Tabelle wird nach Ablauf der TTL und nach verwerfen neu geladen */
+    @org.junit.Test
+    public void testAktuellNeuLaden() {
+        AtomicInteger geladen = new AtomicInteger();
+        Supplier<List<Tarif>> lader = () -> {
+            geladen.incrementAndGet();
+            return List.of(new Tarif(13, 4, "= 2", new BigDecimal("11.3")));
+        };
+        try {
+            TarifTabelle.verwerfen();
+            TarifTabelle erste = TarifTabelle.aktuell(lader);
+            assertSame(erste, TarifTabelle.aktuell(lader));
+            assertEquals(1, geladen.get());
+
+            TarifTabelle.verwerfen();
+            assertNotSame(erste, TarifTabelle.aktuell(lader));
+            assertEquals(2, geladen.get());
+
+            TarifTabelle.setTtl(Duration.ZERO);
+            TarifTabelle.aktuell(lader);
+            assertEquals(3, geladen.get());
+        } finally {
+            TarifTabelle.setTtl(TarifTabelle.STANDARD_TTL);
+            TarifTabelle.verwerfen();
+        }
+    }
+}
@@ -0,0 +1,502 @@
+package de.htwberlin.dbtech.aufgaben.ue03.daten;
+
+import de.htwberlin.dbtech.aufgaben.ue02.Mautabschnitt;
+import de.htwberlin.dbtech.aufgaben.ue03.cache.AbschnittKatalog;
+import de.htwberlin.dbtech.aufgaben.ue03.cache.PreisMatrix;
+import de.htwberlin.dbtech.aufgaben.ue03.cache.TarifTabelle;
+import de.htwberlin.dbtech.aufgaben.ue03.tdg.Tarif;
+import de.htwberlin.dbtech.exceptions.DataException;
+import de.htwberlin.dbtech.utils.CsvLeser;
+import de.htwberlin.dbtech.utils.CsvSchreiber;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+/**
+ * Erzeugt einen synthetischen Datenbestand im CSV-Format von test-data
+ * (DbUnit-CsvDataSet) in beliebiger Groesse, z.B. 10 Mio. Fahrzeuge mit
+ * 100 Mio. Mauterhebungen.
+ *
+ * Die Referenztabellen (Schadstoffklasse, Mautkategorie, Rechnunngsstatus,
+ * Buchungstatus, Zahltyp) werden aus dem Stammdatenverzeichnis uebernommen,
+ * alle anderen Tabellen erzeugt. Alle Fremdschluessel zeigen auf erzeugte
+ * Zeilen: Nutzer - Fahrzeug - Fahrzeuggerat - Mauterhebung, Mautabschnitt
+ * und Mautkategorie - Mauterhebung/Buchung, Rechnung - Position. Kategorie
+ * und Kosten passen zu Schadstoffklasse und Achszahl des Fahrzeugs.
+ *
+ * Die Verteilungen sind schief: Flottengroessen und Fahrten je Fahrzeug
+ * folgen einer Pareto-Verteilung, die Abschnitte werden nach Zipf befahren.
+ *
+ * Gleiche {@link Konfiguration} ergibt byteweise gleiche Dateien. Der
+ * Generator schreibt in einem Durchlauf ueber die Nutzer und haelt nur die
+ * Abschnitte und die Monatssummen des aktuellen Nutzers im Speicher; alle
+ * Ids werden fortlaufend bzw. aus Nutzer und Monat berechnet.
+ *
+ * Aufruf: {@code DatenGenerator <zielverzeichnis> [fahrzeuge] [mauterhebungen] [seed]}
+ */
+public final class DatenGenerator {
+    private static final Logger L = LoggerFactory.getLogger(DatenGenerator.class);
+
+    static final List<String> REFERENZTABELLEN = List.of(
+            "Schadstoffklasse", "Mautkategorie", "Rechnunngsstatus", "Buchungstatus", "Zahltyp");
+    static final List<String> TABELLEN = List.of(
+            "Mautabschnitt", "Nutzer", "Schadstoffklasse", "Mautkategorie", "Rechnunngsstatus",
+            "Fahrzeug", "Fahrzeuggerat", "Mauterhebung", "Buchungstatus", "Buchung", "Zahltyp",
+            "Zahlart", "Rechnung", "Position");
+
+    static final long ERSTER_NUTZER = 1000000;
+    static final long ERSTES_FAHRZEUG = 100000000000000L;
+    static final long ERSTES_GERAET = 1000000000L;
+    static final long ERSTE_MAUT_ID = 1000;
+    static final long ERSTE_BUCHUNG_ID = 1000;
+
+    private static final int B_ID_OFFEN = 1;
+    private static final int B_ID_STORNIERT = 2;
+    private static final int B_ID_ABGESCHLOSSEN = 3;
+    private static final int RECHNUNG_OFFEN = 1;
+    private static final int RECHNUNG_GESCHLOSSEN = 2;
+
+    private static final double ANTEIL_AKTIV = 0.97;
+    private static final double ANTEIL_ABGEMELDET = 0.02;
+    private static final int MAX_FLOTTE = 2000;
+
+    private static final String[] ORTE = {"B", "HH", "M", "K", "F", "S", "D", "DO", "E", "L", "DD", "H", "N",
+            "HB", "BO", "W", "BI", "MS", "KA", "MA", "A", "WI", "GE", "MG", "AC", "KI", "HAL", "MD", "FR", "LU",
+            "OB", "RO", "ER", "HD", "UL", "PB", "OS", "TR", "J", "CB"};
+    private static final String[] LAENDER = {"Polen", "Niederlande", "Tschechien", "Oesterreich", "Frankreich"};
+    private static final String[] VORNAMEN = {"Anna", "Peter", "Maria", "Thomas", "Sabine", "Michael", "Julia",
+            "Andreas", "Petra", "Stefan"};
+    private static final String[] NACHNAMEN = {"Mueller", "Schmidt", "Schneider", "Fischer", "Weber", "Meyer",
+            "Wagner", "Becker", "Schulz", "Hoffmann"};
+    private static final String[] STRASSEN = {"Hauptstrasse", "Industriestrasse", "Am Hafen", "Gewerbering",
+            "Lindenallee", "Bahnhofstrasse"};
+    private static final String[] GERAETETYPEN = {"Bosch", "Siemens", "Continental"};
+    private static final String[] ZUSTELLUNG = {"email", "pdf", "post"};
+
+    private final Konfiguration konfiguration;
+    private final SplittableRandom zufall;
+    private final long[] monatsBeginn;
+
+    private TarifTabelle tarife;
+    private PreisMatrix preise;
+    private Zipf abschnittsWahl;
+    private int[] zahltypen;
+    private double fahrtenJeFahrzeug;
+
+    private CsvSchreiber nutzer;
+    private CsvSchreiber zahlart;
+    private CsvSchreiber fahrzeug;
+    private CsvSchreiber geraet;
+    private CsvSchreiber erhebung;
+    private CsvSchreiber buchung;
+    private CsvSchreiber rechnung;
+    private CsvSchreiber position;
+
+    private long naechstesFahrzeug;
+    private long naechsteMautId = ERSTE_MAUT_ID;
+    private long naechsteBuchungId = ERSTE_BUCHUNG_ID;
+
+    public DatenGenerator(Konfiguration konfiguration) {
+        this.konfiguration = konfiguration;
+        this.zufall = new SplittableRandom(konfiguration.seed);
+        this.monatsBeginn = new long[konfiguration.monate + 1];
+        for (int m = 0; m <= konfiguration.monate; m++) {
+            monatsBeginn[m] = konfiguration.beginn.plusMonths(m).atStartOfDay().toEpochSecond(ZoneOffset.UTC);
+        }
+    }
+
+    public static void main(String[] args) {
+        if (args.length < 1) {
+            System.err.println("Aufruf: DatenGenerator <zielverzeichnis> [fahrzeuge] [mauterhebungen] [seed]");
+            System.exit(2);
+        }
+        Konfiguration k = new Konfiguration();
+        if (args.length > 1) {
+            k.fahrzeuge(Long.parseLong(args[1]));
+        }
+        if (args.length > 2) {
+            k.mauterhebungen(Long.parseLong(args[2]));
+        }
+        if (args.length > 3) {
+            k.seed(Long.parseLong(args[3]));
+        }
+        Map<String, Long> zeilen = new DatenGenerator(k).generiere(Path.of(args[0]));
+        zeilen.forEach((tabelle, anzahl) -> System.out.printf("%-18s %,14d%n", tabelle, anzahl));
+    }
+
+    /**
+     * Schreibt alle Tabellen und table-ordering.txt in das Verzeichnis und
+     * liefert die Zeilenzahl je Tabelle.
+     */
+    public Map<String, Long> generiere(Path ziel) {
+        long start = System.nanoTime();
+        Map<String, Long> zeilen = new LinkedHashMap<>();
+        try {
+            Files.createDirectories(ziel);
+            for (String t : REFERENZTABELLEN) {
+                Files.copy(konfiguration.stammdaten.resolve(t + ".csv"), ziel.resolve(t + ".csv"),
+                        StandardCopyOption.REPLACE_EXISTING);
+            }
+            Files.write(ziel.resolve("table-ordering.txt"), TABELLEN, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new DataException("Zielverzeichnis " + ziel + " nicht beschreibbar", e);
+        }
+        tarife = TarifTabelle.aus(leseTarife(ziel.resolve("Mautkategorie.csv")));
+        zahltypen = leseIds(ziel.resolve("Zahltyp.csv"), "ZTYP_ID");
+        fahrtenJeFahrzeug = (double) konfiguration.mauterhebungen
+                / (konfiguration.fahrzeuge * konfiguration.anteilGeraet * ANTEIL_AKTIV * (1 - ANTEIL_ABGEMELDET));
+
+        try (CsvSchreiber abschnitt = CsvSchreiber.oeffne(ziel.resolve("Mautabschnitt.csv"),
+                "ABSCHNITTS_ID", "LAENGE", "START_KOORDINATE", "ZIEL_KOORDINATE", "NAME", "ABSCHNITTSTYP")) {
+            schreibeAbschnitte(abschnitt);
+            zeilen.put("Mautabschnitt", abschnitt.getZeilen());
+        }
+        try {
+            nutzer = CsvSchreiber.oeffne(ziel.resolve("Nutzer.csv"), "NUTZER_ID", "STATUS", "FIRMENNAME", "VORNAME",
+                    "NACHNAME", "LAND", "STRASSE", "HAUSNUMMER", "POSTLEITZAHL", "RECHNUNGSINTERVALL",
+                    "RECHNUNGSZUSTELLUNG");
+            zahlart = CsvSchreiber.oeffne(ziel.resolve("Zahlart.csv"), "Z_ID", "ZTYP_ID", "NUTZER_ID", "STATUS",
+                    "GUELTIG_VON", "GUELTIG_BIS", "BETRAG", "EMMITENT", "NAME", "VORNAME", "NACHNAME", "BIN_CODE");
+            fahrzeug = CsvSchreiber.oeffne(ziel.resolve("Fahrzeug.csv"), "FZ_ID", "NUTZER_ID", "SSKL_ID",
+                    "KENNZEICHEN", "FIN", "ACHSEN", "GEWICHT", "ANMELDEDATUM", "ABMELDEDATUM", "ZULASSUNGSLAND");
+            geraet = CsvSchreiber.oeffne(ziel.resolve("Fahrzeuggerat.csv"), "FZG_ID", "FZ_ID", "STATUS", "TYP",
+                    "EINBAUDATUM", "AUSBAUDATUM");
+            erhebung = CsvSchreiber.oeffne(ziel.resolve("Mauterhebung.csv"), "MAUT_ID", "ABSCHNITTS_ID", "FZG_ID",
+                    "KATEGORIE_ID", "BEFAHRUNGSDATUM", "KOSTEN");
+            buchung = CsvSchreiber.oeffne(ziel.resolve("Buchung.csv"), "BUCHUNG_ID", "B_ID", "ABSCHNITTS_ID",
+                    "KATEGORIE_ID", "KENNZEICHEN", "BUCHUNGSDATUM", "BEFAHRUNGSDATUM", "KOSTEN");
+            rechnung = CsvSchreiber.oeffne(ziel.resolve("Rechnung.csv"), "R_ID", "STATUS_ID", "NUTZER_ID",
+                    "BUCHUNGSDATUM", "SUMME");
+            position = CsvSchreiber.oeffne(ziel.resolve("Position.csv"), "MAUT_ID", "R_ID");
+
+            for (long n = 0; naechstesFahrzeug < konfiguration.fahrzeuge; n++) {
+                schreibeNutzer(n);
+            }
+            zeilen.put("Nutzer", nutzer.getZeilen());
+            zeilen.put("Fahrzeug", fahrzeug.getZeilen());
+            zeilen.put("Fahrzeuggerat", geraet.getZeilen());
+            zeilen.put("Mauterhebung", erhebung.getZeilen());
+            zeilen.put("Buchung", buchung.getZeilen());
+            zeilen.put("Zahlart", zahlart.getZeilen());
+            zeilen.put("Rechnung", rechnung.getZeilen());
+            zeilen.put("Position", position.getZeilen());
+        } finally {
+            for (CsvSchreiber s : new CsvSchreiber[]{nutzer, zahlart, fahrzeug, geraet, erhebung, buchung,
+                    rechnung, position}) {
+                if (s != null) {
+                    s.close();
+                }
+            }
+        }
+        L.info("Datenbestand in {} erzeugt ({} ms): {}", ziel, (System.nanoTime() - start) / 1000000, zeilen);
+        return zeilen;
+    }
+
+    private void schreibeAbschnitte(CsvSchreiber abschnitt) {
+        List<Mautabschnitt> katalog = new ArrayList<>(konfiguration.abschnitte);
+        for (int id = 1; id <= konfiguration.abschnitte; id++) {
+            int laenge = 100 * (5 + zufall.nextInt(146));
+            double lat = 47.3 + zufall.nextDouble() * 7.7;
+            double lon = 6.0 + zufall.nextDouble() * 9.0;
+            double richtung = zufall.nextDouble() * 2 * Math.PI;
+            String startKoordinate = koordinate(lat, lon);
+            String zielKoordinate = koordinate(lat + Math.sin(richtung) * laenge / 111000.0,
+                    lon + Math.cos(richtung) * laenge / 71000.0);
+            String typ = zufall.nextInt(10) < 7 ? "A" + (1 + zufall.nextInt(99)) : "B" + (1 + zufall.nextInt(300));
+            String name = "Anschluss " + id + " - Anschluss " + (id + 1);
+            abschnitt.zahl(id).zahl(laenge).text(startKoordinate).text(zielKoordinate).text(name).text(typ).ende();
+            katalog.add(new Mautabschnitt(id, laenge, startKoordinate, zielKoordinate, name, typ));
+        }
+        preise = PreisMatrix.aus(tarife, AbschnittKatalog.aus(katalog));
+        abschnittsWahl = new Zipf(konfiguration.abschnitte, 1.0, zufall);
+    }
+
+    private static String koordinate(double lat, double lon) {
+        return Math.round(lat * 1000) / 1000.0 + " " + Math.round(lon * 1000) / 1000.0;
+    }
+
+    private void schreibeNutzer(long n) {
+        long nutzerId = ERSTER_NUTZER + n;
+        long flotte = Math.min(Math.min(MAX_FLOTTE, konfiguration.fahrzeuge - naechstesFahrzeug),
+                Math.max(1, Math.round(pareto(1.3, konfiguration.mittlereFlotte))));
+        boolean firma = flotte > 1 || zufall.nextInt(4) > 0;
+        String vorname = waehle(VORNAMEN);
+        String nachname = waehle(NACHNAMEN);
+        nutzer.zahl(nutzerId).text("active").text(firma ? "Spedition " + nachname + " " + n : null)
+                .text(vorname).text(nachname).text("Deutschland").text(waehle(STRASSEN))
+                .zahl(1 + zufall.nextInt(200)).zahl(10000 + zufall.nextInt(90000)).zahl(1)
+                .text(waehle(ZUSTELLUNG)).ende();
+        zahlart.zahl(100 + n).zahl(zahltypen[zufall.nextInt(zahltypen.length)]).zahl(nutzerId).text("active")
+                .datum(konfiguration.beginn.minusDays(zufall.nextInt(3650))).text(null).text(null).text(null)
+                .text(null).text(vorname).text(nachname).text(null).ende();
+
+        // Rechnung je Monat, der letzte Monat ist noch nicht abgerechnet
+        int abgerechnet = konfiguration.monate - 1;
+        long[] summe = new long[abgerechnet];
+        boolean[] hatPositionen = new boolean[abgerechnet];
+        for (long i = 0; i < flotte; i++) {
+            schreibeFahrzeug(nutzerId, n, summe, hatPositionen);
+        }
+        for (int m = 0; m < abgerechnet; m++) {
+            if (hatPositionen[m]) {
+                rechnung.zahl(rechnungsId(n, m)).zahl(m == abgerechnet - 1 ? RECHNUNG_OFFEN : RECHNUNG_GESCHLOSSEN)
+                        .zahl(nutzerId).zeitstempel(monatsBeginn[m + 1] + 6 * 3600).cent(summe[m]).ende();
+            }
+        }
+    }
+
+    private long rechnungsId(long nutzerIndex, int monat) {
+        return 1 + nutzerIndex * konfiguration.monate + monat;
+    }
+
+    private void schreibeFahrzeug(long nutzerId, long nutzerIndex, long[] summe, boolean[] hatPositionen) {
+        long i = naechstesFahrzeug++;
+        long fzId = ERSTES_FAHRZEUG + i;
+        int sskl = schadstoffklasse();
+        int achsen = 2 + Math.min(4, (int) Math.abs(zufall.nextGaussian() * 1.5) + zufall.nextInt(2));
+        String kennzeichen = kennzeichen(i);
+        LocalDate anmeldung = konfiguration.beginn.minusDays(1 + zufall.nextInt(3650));
+        boolean abgemeldet = zufall.nextDouble() < ANTEIL_ABGEMELDET;
+        LocalDate abmeldung = abgemeldet ? konfiguration.beginn.minusDays(zufall.nextInt(30)) : null;
+        String land = zufall.nextDouble() < 0.85 ? "Deutschland" : waehle(LAENDER);
+        fahrzeug.zahl(fzId).zahl(nutzerId).zahl(sskl).text(kennzeichen).text(String.format(Locale.ROOT, "WD%010d", i))
+                .zahl(achsen).zahl(3500L * achsen + zufall.nextInt(4000)).datum(anmeldung).datum(abmeldung)
+                .text(land).ende();
+
+        int tarifIndex = tarife.index(sskl, achsen);
+        if (zufall.nextDouble() >= konfiguration.anteilGeraet) {
+            schreibeBuchungen(kennzeichen, tarifIndex);
+            return;
+        }
+        long fzgId = ERSTES_GERAET + i;
+        boolean aktiv = zufall.nextDouble() < ANTEIL_AKTIV;
+        LocalDate einbau = anmeldung.plusDays(zufall.nextInt(60));
+        geraet.zahl(fzgId).zahl(fzId).text(aktiv ? "active" : "inactive").text(waehle(GERAETETYPEN))
+                .datum(einbau).datum(aktiv ? null : einbau.plusDays(1 + zufall.nextInt(365))).ende();
+        if (!aktiv || abgemeldet || tarifIndex < 0) {
+            return;
+        }
+        int kategorie = tarife.get(tarifIndex).getKategorieId();
+        long fahrten = Math.min((long) (pareto(1.5, fahrtenJeFahrzeug) + zufall.nextDouble()),
+                (long) (200 * fahrtenJeFahrzeug) + 1);
+        for (long f = 0; f < fahrten; f++) {
+            int abschnitt = abschnittsWahl.ziehe(zufall) + 1;
+            long cent = preise.preisInCent(abschnitt, tarifIndex);
+            int monat = zufall.nextInt(konfiguration.monate);
+            long mautId = naechsteMautId++;
+            erhebung.zahl(mautId).zahl(abschnitt).zahl(fzgId).zahl(kategorie).zeitstempel(zeitpunkt(monat))
+                    .cent(cent).ende();
+            if (monat < summe.length) {
+                position.zahl(mautId).zahl(rechnungsId(nutzerIndex, monat)).ende();
+                summe[monat] += cent;
+                hatPositionen[monat] = true;
+            }
+        }
+    }
+
+    private void schreibeBuchungen(String kennzeichen, int tarifIndex) {
+        if (tarifIndex < 0) {
+            return;
+        }
+        int kategorie = tarife.get(tarifIndex).getKategorieId();
+        double p = 1 / (1 + konfiguration.buchungenJeFahrzeug);
+        while (zufall.nextDouble() >= p) {
+            int abschnitt = abschnittsWahl.ziehe(zufall) + 1;
+            double u = zufall.nextDouble();
+            int bId = u < 0.8 ? B_ID_ABGESCHLOSSEN : u < 0.95 ? B_ID_OFFEN : B_ID_STORNIERT;
+            long gebucht = zeitpunkt(zufall.nextInt(konfiguration.monate));
+            buchung.zahl(naechsteBuchungId++).zahl(bId).zahl(abschnitt).zahl(kategorie).text(kennzeichen)
+                    .zeitstempel(gebucht);
+            if (bId == B_ID_ABGESCHLOSSEN) {
+                buchung.zeitstempel(gebucht + zufall.nextInt(48 * 3600));
+            } else {
+                buchung.text(null);
+            }
+            buchung.cent(preise.preisInCent(abschnitt, tarifIndex)).ende();
+        }
+    }
+
+    /** Sekunde im Monat, gleichverteilt */
+    private long zeitpunkt(int monat) {
+        return monatsBeginn[monat] + zufall.nextLong(monatsBeginn[monat + 1] - monatsBeginn[monat]);
+    }
+
+    /** S1 bis S7, ueberwiegend die neueren Klassen 4 bis 6 */
+    private int schadstoffklasse() {
+        int u = zufall.nextInt(100);
+        return u < 3 ? 1 : u < 7 ? 2 : u < 12 ? 3 : u < 30 ? 4 : u < 55 ? 5 : u < 90 ? 6 : 7;
+    }
+
+    /**
+     * Eindeutiges Kennzeichen zur laufenden Nummer, z.B. B AA 1 oder
+     * HH CV 8890; reicht fuer 40 * 676 * 9999 Fahrzeuge.
+     */
+    static String kennzeichen(long i) {
+        long rest = i / ORTE.length;
+        long nummer = rest / 676 + 1;
+        if (nummer > 9999) {
+            throw new DataException("zu viele Fahrzeuge fuer eindeutige Kennzeichen: " + i);
+        }
+        int buchstaben = (int) (rest % 676);
+        return ORTE[(int) (i % ORTE.length)] + " " + (char) ('A' + buchstaben / 26) + (char) ('A' + buchstaben % 26)
+                + " " + nummer;
+    }
+
+    /** Pareto-verteilter Wert mit dem angegebenen Mittelwert (alpha > 1) */
+    private double pareto(double alpha, double mittelwert) {
+        double minimum = mittelwert * (alpha - 1) / alpha;
+        return minimum / Math.pow(1 - zufall.nextDouble(), 1 / alpha);
+    }
+
+    private String waehle(String[] werte) {
+        return werte[zufall.nextInt(werte.length)];
+    }
+
+    private static List<Tarif> leseTarife(Path datei) {
+        List<Tarif> result = new ArrayList<>();
+        try (CsvLeser leser = CsvLeser.oeffne(datei)) {
+            int id = leser.spalte("KATEGORIE_ID");
+            int sskl = leser.spalte("SSKL_ID");
+            int achszahl = leser.spalte("ACHSZAHL");
+            int satz = leser.spalte("MAUTSATZ_JE_KM");
+            String[] z;
+            while ((z = leser.naechsteZeile()) != null) {
+                result.add(new Tarif(Integer.parseInt(z[id]), Integer.parseInt(z[sskl]), z[achszahl],
+                        new BigDecimal(z[satz])));
+            }
+        }
+        return result;
+    }
+
+    private static int[] leseIds(Path datei, String spalte) {
+        List<Integer> ids = new ArrayList<>();
+        try (CsvLeser leser = CsvLeser.oeffne(datei)) {
+            int i = leser.spalte(spalte);
+            String[] z;
+            while ((z = leser.naechsteZeile()) != null) {
+                ids.add(Integer.parseInt(z[i]));
+            }
+        }
+        if (ids.isEmpty()) {
+            throw new DataException(datei + " ist leer");
+        }
+        return ids.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     * Umfang und Verteilung des Datenbestands; gleiche Werte ergeben gleiche
+     * Dateien.
+     */
+    public static final class Konfiguration {
+        private long seed = 1;
+        private long fahrzeuge = 10000;
+        private long mauterhebungen = 100000;
+        private int abschnitte = 5000;
+        private double mittlereFlotte = 20;
+        private double anteilGeraet = 0.8;
+        private double buchungenJeFahrzeug = 2;
+        private int monate = 12;
+        private LocalDate beginn = LocalDate.of(2015, 1, 1);
+        private Path stammdaten = Path.of("test-data/ue03-04");
+
+        public Konfiguration seed(long seed) {
+            this.seed = seed;
+            return this;
+        }
+
+        public Konfiguration fahrzeuge(long fahrzeuge) {
+            this.fahrzeuge = positiv("fahrzeuge", fahrzeuge);
+            return this;
+        }
+
+        /** angestrebte Anzahl Mauterhebungen; die erzeugte Anzahl weicht zufaellig ab */
+        public Konfiguration mauterhebungen(long mauterhebungen) {
+            if (mauterhebungen < 0) {
+                throw new IllegalArgumentException("mauterhebungen darf nicht negativ sein: " + mauterhebungen);
+            }
+            this.mauterhebungen = mauterhebungen;
+            return this;
+        }
+
+        /** Anzahl Abschnitte, hoechstens 999999 (ABSCHNITTS_ID NUMBER(6)) */
+        public Konfiguration abschnitte(int abschnitte) {
+            if (abschnitte > 999999) {
+                throw new IllegalArgumentException("hoechstens 999999 Abschnitte: " + abschnitte);
+            }
+            this.abschnitte = (int) positiv("abschnitte", abschnitte);
+            return this;
+        }
+
+        /** mittlere Anzahl Fahrzeuge je Nutzer */
+        public Konfiguration mittlereFlotte(double mittlereFlotte) {
+            if (mittlereFlotte < 1) {
+                throw new IllegalArgumentException("mittlereFlotte muss mindestens 1 sein: " + mittlereFlotte);
+            }
+            this.mittlereFlotte = mittlereFlotte;
+            return this;
+        }
+
+        /** Anteil der Fahrzeuge mit Fahrzeuggeraet, die anderen buchen manuell */
+        public Konfiguration anteilGeraet(double anteilGeraet) {
+            if (anteilGeraet <= 0 || anteilGeraet > 1) {
+                throw new IllegalArgumentException("anteilGeraet muss in (0, 1] liegen: " + anteilGeraet);
+            }
+            this.anteilGeraet = anteilGeraet;
+            return this;
+        }
+
+        /** mittlere Anzahl Buchungen je Fahrzeug ohne Geraet */
+        public Konfiguration buchungenJeFahrzeug(double buchungenJeFahrzeug) {
+            if (buchungenJeFahrzeug < 0) {
+                throw new IllegalArgumentException("buchungenJeFahrzeug darf nicht negativ sein: "
+                        + buchungenJeFahrzeug);
+            }
+            this.buchungenJeFahrzeug = buchungenJeFahrzeug;
+            return this;
+        }
+
+        /** Zeitraum der Befahrungen ab beginn; alle Monate ausser dem letzten sind abgerechnet */
+        public Konfiguration zeitraum(LocalDate beginn, int monate) {
+            if (monate < 2) {
+                throw new IllegalArgumentException("mindestens 2 Monate: " + monate);
+            }
+            this.beginn = beginn;
+            this.monate = monate;
+            return this;
+        }
+
+        /** Verzeichnis mit den Referenztabellen, standardmaessig test-data/ue03-04 */
+        public Konfiguration stammdaten(Path stammdaten) {
+            this.stammdaten = stammdaten;
+            return this;
+        }
+
+        private static long positiv(String name, long wert) {
+            if (wert < 1) {
+                throw new IllegalArgumentException(name + " muss positiv sein: " + wert);
+            }
+            return wert;
+        }
+
+        @Override
+        public String toString() {
+            return "seed=" + seed + ", fahrzeuge=" + fahrzeuge + ", mauterhebungen=" + mauterhebungen
+                    + ", abschnitte=" + abschnitte + ", mittlereFlotte=" + mittlereFlotte
+                    + ", anteilGeraet=" + anteilGeraet + ", zeitraum=" + beginn + "/" + monate;
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package de.htwberlin.dbtech.aufgaben.ue03.daten;
+
+import de.htwberlin.dbtech.aufgaben.ue03.tdg.Datenbestand;
+import de.htwberlin.dbtech.utils.CsvLeser;
+import org.junit.Rule;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class DatenGeneratorTest {
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private static DatenGenerator.Konfiguration klein(long seed) {
+        return new DatenGenerator.Konfiguration().seed(seed).fahrzeuge(500).mauterhebungen(5000).abschnitte(40);
+    }
+
+    @org.junit.Test
+    public void testDeterministisch() throws IOException {
+        Path a = tmp.newFolder("a").toPath();
+        Path b = tmp.newFolder("b").toPath();
+        Path c = tmp.newFolder("c").toPath();
+        new DatenGenerator(klein(7)).generiere(a);
+        new DatenGenerator(klein(7)).generiere(b);
+        new DatenGenerator(klein(8)).generiere(c);
+        for (String t : DatenGenerator.TABELLEN) {
+            assertArrayEquals(t, Files.readAllBytes(a.resolve(t + ".csv")), Files.readAllBytes(b.resolve(t + ".csv")));
+        }
+        assertFalse(Arrays.equals(Files.readAllBytes(a.resolve("Mauterhebung.csv")),
+                Files.readAllBytes(c.resolve("Mauterhebung.csv"))));
+        assertEquals(DatenGenerator.TABELLEN, Files.readAllLines(a.resolve("table-ordering.txt")));
+    }
+
+    @org.junit.Test
+    public void testReferenzielleIntegritaet() throws IOException {
+        Path ziel = tmp.newFolder().toPath();
+        Map<String, Long> zeilen = new DatenGenerator(klein(1)).generiere(ziel);
+        assertEquals(500, (long) zeilen.get("Fahrzeug"));
+        assertEquals(40, (long) zeilen.get("Mautabschnitt"));
+        assertTrue(zeilen.get("Mauterhebung") > 2500 && zeilen.get("Mauterhebung") < 10000);
+
+        // prueft Fahrzeuggerat -> Fahrzeug und liest Kategorien und Abschnitte
+        Datenbestand daten = Datenbestand.ladeCsv(ziel);
+        assertEquals((long) zeilen.get("Mauterhebung"), daten.getAnzahlMauterhebungen());
+
+        Set<String> nutzer = spalte(ziel.resolve("Nutzer.csv"), "NUTZER_ID");
+        assertTrue(nutzer.containsAll(spalte(ziel.resolve("Fahrzeug.csv"), "NUTZER_ID")));
+        assertTrue(nutzer.containsAll(spalte(ziel.resolve("Zahlart.csv"), "NUTZER_ID")));
+        assertTrue(nutzer.containsAll(spalte(ziel.resolve("Rechnung.csv"), "NUTZER_ID")));
+        Set<String> abschnitte = spalte(ziel.resolve("Mautabschnitt.csv"), "ABSCHNITTS_ID");
+        assertTrue(abschnitte.containsAll(spalte(ziel.resolve("Mauterhebung.csv"), "ABSCHNITTS_ID")));
+        assertTrue(abschnitte.containsAll(spalte(ziel.resolve("Buchung.csv"), "ABSCHNITTS_ID")));
+        assertTrue(spalte(ziel.resolve("Fahrzeuggerat.csv"), "FZG_ID")
+                .containsAll(spalte(ziel.resolve("Mauterhebung.csv"), "FZG_ID")));
+        assertTrue(spalte(ziel.resolve("Fahrzeug.csv"), "KENNZEICHEN")
+                .containsAll(spalte(ziel.resolve("Buchung.csv"), "KENNZEICHEN")));
+        assertTrue(spalte(ziel.resolve("Mautkategorie.csv"), "KATEGORIE_ID")
+                .containsAll(spalte(ziel.resolve("Buchung.csv"), "KATEGORIE_ID")));
+
+        // Summe jeder Rechnung = Summe ihrer Positionen
+        Map<String, BigDecimal> kosten = new HashMap<>();
+        lese(ziel.resolve("Mauterhebung.csv"), (l, z) -> kosten.put(z[l.spalte("MAUT_ID")],
+                new BigDecimal(z[l.spalte("KOSTEN")])));
+        Map<String, BigDecimal> summen = new HashMap<>();
+        lese(ziel.resolve("Position.csv"), (l, z) -> {
+            BigDecimal k = kosten.get(z[l.spalte("MAUT_ID")]);
+            assertNotNull(k);
+            summen.merge(z[l.spalte("R_ID")], k, BigDecimal::add);
+        });
+        assertFalse(summen.isEmpty());
+        lese(ziel.resolve("Rechnung.csv"), (l, z) -> assertEquals(0,
+                summen.remove(z[l.spalte("R_ID")]).compareTo(new BigDecimal(z[l.spalte("SUMME")]))));
+        assertTrue(summen.isEmpty());
+    }
+
+    @org.junit.Test
+    public void testKennzeichenEindeutig() {
+        Set<String> kennzeichen = new HashSet<>();
+        for (long i = 0; i < 100000; i++) {
+            assertTrue(kennzeichen.add(DatenGenerator.kennzeichen(i)));
+        }
+        assertEquals("B AA 1", DatenGenerator.kennzeichen(0));
+    }
+
+    private interface Zeilenpruefung {
+        void pruefe(CsvLeser leser, String[] zeile);
+    }
+
+    private static void lese(Path datei, Zeilenpruefung pruefung) {
+        try (CsvLeser leser = CsvLeser.oeffne(datei)) {
+            String[] z;
+            while ((z = leser.naechsteZeile()) != null) {
+                pruefung.pruefe(leser, z);
+            }
+        }
+    }
+
+    private static Set<String> spalte(Path datei, String name) {
+        Set<String> werte = new HashSet<>();
+        lese(datei, (l, z) -> werte.add(z[l.spalte(name)]));
+        return werte;
+    }
+}
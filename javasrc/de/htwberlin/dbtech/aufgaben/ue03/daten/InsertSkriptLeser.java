@@ -0,0 +1,455 @@
+package de.htwberlin.dbtech.aufgaben.ue03.daten;
+
+import de.htwberlin.dbtech.exceptions.DataException;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Liest Skripte mit einzeiligen Insert-Anweisungen, wie sie der SQL Developer
+ * exportiert (siehe db/maut/insert), als {@link Zeilenquelle}:
+ * {@code Insert into T (A,B) values ('x',to_timestamp('22.01.14 00:00:00,000000000','DD.MM.RR HH24:MI:SS,FF'));}
+ *
+ * Texte werden ohne Anfuehrungszeichen geliefert, to_timestamp und to_date
+ * als yyyy-MM-dd HH:mm:ss[.f]. Zeilen mit REM, PROMPT, SET und -- sowie
+ * COMMIT werden uebersprungen. Alle Anweisungen eines Skripts muessen in
+ * dieselbe Tabelle mit denselben Spalten schreiben.
+ */
+final class InsertSkriptLeser implements Zeilenquelle {
+    private static final Charset WINDOWS_1252 = Charset.forName("windows-1252");
+
+    private final BufferedReader reader;
+    private final String name;
+    private final StringBuilder anweisung = new StringBuilder(512);
+    private final List<String> werte = new ArrayList<>();
+    private String puffer;
+    private int pos;
+    private boolean inText;
+    private long zeile;
+
+    private String tabelle;
+    private String[] spalten;
+    private String[] erste;
+
+    // Zerlegung der aktuellen Anweisung
+    private String s;
+    private int p;
+
+    InsertSkriptLeser(Reader reader, String name) {
+        this.reader = reader instanceof BufferedReader ? (BufferedReader) reader : new BufferedReader(reader, 1 << 16);
+        this.name = name;
+        erste = naechsteZeile();
+        if (tabelle == null) {
+            throw new DataException(name + " enthaelt keine Insert-Anweisung");
+        }
+    }
+
+    /**
+     * Oeffnet ein Skript in UTF-8 oder, falls es kein gueltiges UTF-8 ist,
+     * in windows-1252 (die Exporte in db/maut/insert sind gemischt).
+     */
+    static InsertSkriptLeser oeffne(Path datei) {
+        try {
+            Charset zeichensatz = istUtf8(datei) ? StandardCharsets.UTF_8 : WINDOWS_1252;
+            return new InsertSkriptLeser(Files.newBufferedReader(datei, zeichensatz), datei.toString());
+        } catch (IOException e) {
+            throw new DataException("Skript " + datei + " nicht lesbar", e);
+        }
+    }
+
+    private static boolean istUtf8(Path datei) throws IOException {
+        CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPORT)
+                .onUnmappableCharacter(CodingErrorAction.REPORT);
+        ByteBuffer ein = ByteBuffer.allocate(1 << 16);
+        CharBuffer aus = CharBuffer.allocate(1 << 16);
+        try (InputStream in = Files.newInputStream(datei)) {
+            int n;
+            while ((n = in.read(ein.array(), ein.position(), ein.remaining())) >= 0) {
+                ein.position(ein.position() + n);
+                ein.flip();
+                if (decoder.decode(ein, aus, false).isError()) {
+                    return false;
+                }
+                aus.clear();
+                ein.compact();
+            }
+            ein.flip();
+            return !decoder.decode(ein, aus, true).isError() && !decoder.flush(aus).isError();
+        }
+    }
+
+    @Override
+    public String getTabelle() {
+        return tabelle;
+    }
+
+    @Override
+    public String[] getSpalten() {
+        return spalten.clone();
+    }
+
+    @Override
+    public String getPosition() {
+        return name + ", Zeile " + zeile;
+    }
+
+    @Override
+    public String[] naechsteZeile() {
+        if (erste != null) {
+            String[] z = erste;
+            erste = null;
+            return z;
+        }
+        try {
+            String a;
+            while ((a = naechsteAnweisung()) != null) {
+                String kopf = a.length() > 8 ? a.substring(0, 8).toUpperCase(Locale.ROOT) : a.toUpperCase(Locale.ROOT);
+                if (kopf.startsWith("INSERT")) {
+                    return zerlege(a);
+                }
+                if (!kopf.startsWith("COMMIT") && !kopf.startsWith("SET ")) {
+                    throw new DataException("nicht unterstuetzte Anweisung: " + kurz(a));
+                }
+            }
+            return null;
+        } catch (IOException e) {
+            throw new DataException(e);
+        } catch (RuntimeException e) {
+            throw new DataException(getPosition() + ": " + e.getMessage(), e);
+        }
+    }
+
+    private String naechsteAnweisung() throws IOException {
+        for (;;) {
+            if (puffer == null || pos >= puffer.length()) {
+                puffer = reader.readLine();
+                pos = 0;
+                if (puffer == null) {
+                    if (!leer(anweisung)) {
+                        throw new DataException("Anweisung ohne ; am Dateiende: " + kurz(anweisung.toString()));
+                    }
+                    return null;
+                }
+                zeile++;
+                if (!puffer.isEmpty() && puffer.charAt(0) == '\uFEFF') {
+                    pos = 1;
+                }
+                if (leer(anweisung)) {
+                    anweisung.setLength(0);
+                    if (istKommandozeile(puffer, pos)) {
+                        puffer = null;
+                        continue;
+                    }
+                } else {
+                    anweisung.append('\n');
+                }
+            }
+            int start = pos;
+            while (pos < puffer.length()) {
+                char c = puffer.charAt(pos++);
+                if (c == '\'') {
+                    inText = !inText;
+                } else if (c == ';' && !inText) {
+                    anweisung.append(puffer, start, pos - 1);
+                    start = pos;
+                    if (!leer(anweisung)) {
+                        String a = anweisung.toString().strip();
+                        anweisung.setLength(0);
+                        return a;
+                    }
+                    anweisung.setLength(0);
+                }
+            }
+            anweisung.append(puffer, start, pos);
+        }
+    }
+
+    private static boolean leer(CharSequence text) {
+        for (int i = 0; i < text.length(); i++) {
+            if (!Character.isWhitespace(text.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean istKommandozeile(String zeile, int start) {
+        while (start < zeile.length() && Character.isWhitespace(zeile.charAt(start))) {
+            start++;
+        }
+        if (start < zeile.length() && Character.toUpperCase(zeile.charAt(start)) == 'I') {
+            return false;
+        }
+        String z = zeile.substring(start).strip().toUpperCase(Locale.ROOT);
+        return z.isEmpty() || z.equals("REM") || z.startsWith("REM ") || z.startsWith("PROMPT")
+                || z.startsWith("--") || z.startsWith("SET ") || z.equals("/");
+    }
+
+    private static String kurz(String a) {
+        return a.length() > 80 ? a.substring(0, 80) + "..." : a;
+    }
+
+    private String[] zerlege(String a) {
+        s = a;
+        p = 0;
+        wort("INSERT");
+        wort("INTO");
+        String t = bezeichner();
+        zeichen('(');
+        List<String> namen = new ArrayList<>();
+        do {
+            namen.add(bezeichner());
+        } while (komma());
+        zeichen(')');
+        wort("VALUES");
+        zeichen('(');
+        werte.clear();
+        do {
+            werte.add(wert());
+        } while (komma());
+        zeichen(')');
+        leerzeichen();
+        if (p < s.length()) {
+            throw new DataException("unerwartet nach values(...): " + kurz(s.substring(p)));
+        }
+        if (tabelle == null) {
+            tabelle = t;
+            spalten = namen.toArray(new String[0]);
+        } else if (!tabelle.equals(t) || !Arrays.equals(spalten, namen.toArray())) {
+            throw new DataException("Anweisung fuer " + t + namen + " statt " + tabelle + Arrays.toString(spalten));
+        }
+        if (werte.size() != spalten.length) {
+            throw new DataException(werte.size() + " Werte fuer " + spalten.length + " Spalten");
+        }
+        return werte.toArray(new String[0]);
+    }
+
+    private void leerzeichen() {
+        while (p < s.length() && Character.isWhitespace(s.charAt(p))) {
+            p++;
+        }
+    }
+
+    private void zeichen(char c) {
+        leerzeichen();
+        if (p >= s.length() || s.charAt(p) != c) {
+            throw new DataException("'" + c + "' erwartet an Position " + p + ": " + kurz(s));
+        }
+        p++;
+    }
+
+    private boolean komma() {
+        leerzeichen();
+        if (p < s.length() && s.charAt(p) == ',') {
+            p++;
+            return true;
+        }
+        return false;
+    }
+
+    private void wort(String w) {
+        leerzeichen();
+        if (!s.regionMatches(true, p, w, 0, w.length())) {
+            throw new DataException(w + " erwartet an Position " + p + ": " + kurz(s));
+        }
+        p += w.length();
+    }
+
+    /** Tabellen- oder Spaltenname in Grossbuchstaben, ohne Schema */
+    private String bezeichner() {
+        leerzeichen();
+        String b;
+        if (p < s.length() && s.charAt(p) == '"') {
+            int ende = s.indexOf('"', p + 1);
+            if (ende < 0) {
+                throw new DataException("nicht geschlossener Bezeichner: " + kurz(s));
+            }
+            b = s.substring(p + 1, ende);
+            p = ende + 1;
+        } else {
+            int start = p;
+            while (p < s.length() && (Character.isLetterOrDigit(s.charAt(p)) || "_$#".indexOf(s.charAt(p)) >= 0)) {
+                p++;
+            }
+            if (start == p) {
+                throw new DataException("Bezeichner erwartet an Position " + p + ": " + kurz(s));
+            }
+            b = s.substring(start, p).toUpperCase(Locale.ROOT);
+        }
+        if (p < s.length() && s.charAt(p) == '.') {
+            p++;
+            return bezeichner();
+        }
+        return b;
+    }
+
+    private String wert() {
+        leerzeichen();
+        if (p >= s.length()) {
+            throw new DataException("Wert erwartet: " + kurz(s));
+        }
+        char c = s.charAt(p);
+        if (c == '\'') {
+            return text();
+        }
+        if (Character.isLetter(c)) {
+            String funktion = bezeichner();
+            if (funktion.equals("NULL")) {
+                return null;
+            }
+            zeichen('(');
+            List<String> argumente = new ArrayList<>();
+            do {
+                argumente.add(wert());
+            } while (komma());
+            zeichen(')');
+            if (funktion.equals("TO_TIMESTAMP") || funktion.equals("TO_DATE")) {
+                String w = argumente.get(0);
+                return w == null || argumente.size() < 2 ? w : zeitstempel(w, argumente.get(1));
+            }
+            throw new DataException("Funktion " + funktion + " wird nicht unterstuetzt");
+        }
+        int start = p;
+        while (p < s.length() && s.charAt(p) != ',' && s.charAt(p) != ')' && !Character.isWhitespace(s.charAt(p))) {
+            p++;
+        }
+        return s.substring(start, p);
+    }
+
+    private String text() {
+        StringBuilder b = new StringBuilder();
+        p++;
+        for (;;) {
+            if (p >= s.length()) {
+                throw new DataException("nicht geschlossener Text: " + kurz(s));
+            }
+            char c = s.charAt(p++);
+            if (c == '\'') {
+                if (p < s.length() && s.charAt(p) == '\'') {
+                    b.append('\'');
+                    p++;
+                } else {
+                    return b.toString();
+                }
+            } else {
+                b.append(c);
+            }
+        }
+    }
+
+    /**
+     * Wandelt einen Wert im Oracle-Format (DD, MM, YYYY, YY, RR, RRRR, HH24,
+     * HH, MI, SS, FF, X) in yyyy-MM-dd HH:mm:ss[.f] um. Bei RR liegen 00-49
+     * im 21. und 50-99 im 20. Jahrhundert.
+     */
+    static String zeitstempel(String wert, String format) {
+        String f = format.toUpperCase(Locale.ROOT);
+        int jahr = 1970;
+        int monat = 1;
+        int tag = 1;
+        int stunde = 0;
+        int minute = 0;
+        int sekunde = 0;
+        String bruch = "";
+        int[] w = {0};
+        int i = 0;
+        while (i < f.length()) {
+            if (f.startsWith("YYYY", i) || f.startsWith("RRRR", i)) {
+                jahr = zahl(wert, w, 4, format);
+                i += 4;
+            } else if (f.startsWith("RR", i) || f.startsWith("YY", i)) {
+                int start = w[0];
+                int j = zahl(wert, w, 4, format);
+                jahr = w[0] - start > 2 ? j : f.charAt(i) == 'R' && j >= 50 ? 1900 + j : 2000 + j;
+                i += 2;
+            } else if (f.startsWith("MM", i)) {
+                monat = zahl(wert, w, 2, format);
+                i += 2;
+            } else if (f.startsWith("DD", i)) {
+                tag = zahl(wert, w, 2, format);
+                i += 2;
+            } else if (f.startsWith("HH24", i)) {
+                stunde = zahl(wert, w, 2, format);
+                i += 4;
+            } else if (f.startsWith("HH", i)) {
+                stunde = zahl(wert, w, 2, format);
+                i += 2;
+            } else if (f.startsWith("MI", i)) {
+                minute = zahl(wert, w, 2, format);
+                i += 2;
+            } else if (f.startsWith("SS", i)) {
+                sekunde = zahl(wert, w, 2, format);
+                i += 2;
+            } else if (f.startsWith("FF", i)) {
+                int start = w[0];
+                zahl(wert, w, 9, format);
+                bruch = wert.substring(start, w[0]);
+                i += 2;
+                if (i < f.length() && Character.isDigit(f.charAt(i))) {
+                    i++;
+                }
+            } else {
+                // Trennzeichen und X (Dezimaltrennzeichen) passen auf ein beliebiges Zeichen
+                if (w[0] < wert.length()) {
+                    w[0]++;
+                }
+                i++;
+            }
+        }
+        StringBuilder b = new StringBuilder(29);
+        b.append(jahr).append('-');
+        zweistellig(b, monat).append('-');
+        zweistellig(b, tag).append(' ');
+        zweistellig(b, stunde).append(':');
+        zweistellig(b, minute).append(':');
+        zweistellig(b, sekunde);
+        bruch = bruch.replaceAll("0+$", "");
+        if (!bruch.isEmpty()) {
+            b.append('.').append(bruch);
+        }
+        return b.toString();
+    }
+
+    private static int zahl(String wert, int[] w, int maxStellen, String format) {
+        int start = w[0];
+        int n = 0;
+        while (w[0] < wert.length() && w[0] - start < maxStellen && Character.isDigit(wert.charAt(w[0]))) {
+            n = n * 10 + wert.charAt(w[0]++) - '0';
+        }
+        if (w[0] == start) {
+            throw new DataException("Zeitstempel " + wert + " passt nicht zu " + format);
+        }
+        return n;
+    }
+
+    private static StringBuilder zweistellig(StringBuilder b, int wert) {
+        if (wert < 10) {
+            b.append('0');
+        }
+        return b.append(wert);
+    }
+
+    @Override
+    public void close() {
+        try {
+            reader.close();
+        } catch (IOException e) {
+            throw new DataException(e);
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package de.htwberlin.dbtech.aufgaben.ue03.daten;
+
+import de.htwberlin.dbtech.exceptions.DataException;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class InsertSkriptLeserTest {
+
+    private static InsertSkriptLeser leser(String skript) {
+        return new InsertSkriptLeser(new StringReader(skript), "test.sql");
+    }
+
+    @org.junit.Test
+    public void testWerte() {
+        try (InsertSkriptLeser l = leser("REM INSERTING into BUCHUNG\nSET DEFINE OFF;\n"
+                + "Insert into BUCHUNG (BUCHUNG_ID,KENNZEICHEN,BUCHUNGSDATUM,BEFAHRUNGSDATUM,KOSTEN) values "
+                + "(13319,'Erol''''s; GmbH',to_timestamp('22.01.14 10:15:01,500000000','DD.MM.RR HH24:MI:SS,FF'),"
+                + "null,'0,37');\n"
+                + "insert into buchung (buchung_id, kennzeichen, buchungsdatum, befahrungsdatum, kosten)\n"
+                + "  values (1, 'B\nCV', to_date('30.09.97 00:00:00','DD.MM.RR HH24:MI:SS'), null, 1.5);\n"
+                + "COMMIT;\n")) {
+            assertEquals("BUCHUNG", l.getTabelle());
+            assertArrayEquals(new String[]{"BUCHUNG_ID", "KENNZEICHEN", "BUCHUNGSDATUM", "BEFAHRUNGSDATUM", "KOSTEN"},
+                    l.getSpalten());
+            assertArrayEquals(new String[]{"13319", "Erol''s; GmbH", "2014-01-22 10:15:01.5", null, "0,37"},
+                    l.naechsteZeile());
+            assertArrayEquals(new String[]{"1", "B\nCV", "1997-09-30 00:00:00", null, "1.5"}, l.naechsteZeile());
+            assertNull(l.naechsteZeile());
+        }
+    }
+
+    @org.junit.Test
+    public void testZeitstempel() {
+        assertEquals("2019-04-19 00:00:00",
+                InsertSkriptLeser.zeitstempel("19.04.19 00:00:00,000000000", "DD.MM.RR HH24:MI:SSXFF"));
+        assertEquals("1950-12-31 23:59:58.25",
+                InsertSkriptLeser.zeitstempel("31.12.50 23:59:58,250", "DD.MM.RR HH24:MI:SS,FF3"));
+        assertEquals("2015-02-18 17:25:00",
+                InsertSkriptLeser.zeitstempel("2015-02-18 17:25", "YYYY-MM-DD HH24:MI"));
+    }
+
+    @org.junit.Test(expected = DataException.class)
+    public void testAndereTabelle() {
+        try (InsertSkriptLeser l = leser("Insert into A (X) values (1);\nInsert into B (X) values (2);\n")) {
+            l.naechsteZeile();
+            l.naechsteZeile();
+        }
+    }
+
+    @org.junit.Test(expected = DataException.class)
+    public void testUnvollstaendig() {
+        try (InsertSkriptLeser l = leser("Insert into A (X) values (1);\nInsert into A (X) values ('2)\n")) {
+            l.naechsteZeile();
+            l.naechsteZeile();
+        }
+    }
+
+    /** alle Skripte aus db/maut/insert, auch mit BOM und windows-1252 */
+    @org.junit.Test
+    public void testMautSkripte() throws IOException {
+        try (Stream<Path> skripte = Files.list(Path.of("db/maut/insert"))) {
+            for (Path skript : (Iterable<Path>) skripte::iterator) {
+                long erwartet;
+                try (Stream<String> zeilen = Files.lines(skript, StandardCharsets.ISO_8859_1)) {
+                    erwartet = zeilen.filter(z -> z.startsWith("Insert into")).count();
+                }
+                long gelesen = 0;
+                try (InsertSkriptLeser l = InsertSkriptLeser.oeffne(skript)) {
+                    assertTrue(skript.toString(), skript.getFileName().toString().startsWith(l.getTabelle() + "."));
+                    String[] z;
+                    while ((z = l.naechsteZeile()) != null) {
+                        assertEquals(l.getSpalten().length, z.length);
+                        gelesen++;
+                    }
+                }
+                assertEquals(skript.toString(), erwartet, gelesen);
+            }
+        }
+        try (InsertSkriptLeser l = InsertSkriptLeser.oeffne(Path.of("db/maut/insert/NUTZER.sql"))) {
+            boolean gefunden = false;
+            String[] z;
+            while ((z = l.naechsteZeile()) != null) {
+                gefunden |= "Rankestra\u00dfe ".equals(z[6]);
+            }
+            assertTrue(gefunden);
+        }
+    }
+}
@@ -0,0 +1,524 @@
+package de.htwberlin.dbtech.aufgaben.ue03.daten;
+
+import de.htwberlin.dbtech.aufgaben.ue03.cache.Stammdaten;
+import de.htwberlin.dbtech.aufgaben.ue03.tdg.SaldoTdg;
+import de.htwberlin.dbtech.exceptions.DataException;
+import de.htwberlin.dbtech.utils.ConnectionPool;
+import de.htwberlin.dbtech.utils.CsvLeser;
+import de.htwberlin.dbtech.utils.DbCred;
+import de.htwberlin.dbtech.utils.JdbcUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Laedt ein Verzeichnis mit CSV-Dateien (wie test-data/ue03-04 oder die
+ * Ausgabe von {@link DatenGenerator}) oder Insert-Skripten (wie
+ * db/maut/insert) per JDBC-Batch in die Datenbank. Ersetzt fuer grosse
+ * Datenbestaende DbUnit CLEAN_INSERT und das zeilenweise Ausfuehren der
+ * Skripte.
+ *
+ * Die Tabellen werden nacheinander in der Reihenfolge aus table-ordering.txt
+ * geladen, ohne diese Datei in der Reihenfolge von
+ * {@link DatenGenerator#TABELLEN}; vorher werden sie mit TRUNCATE geleert,
+ * waehrend die auf sie verweisenden Fremdschluessel deaktiviert sind. Beim
+ * Wiedereinschalten werden die Fremdschluessel geprueft; verweist eine nicht
+ * geladene Tabelle noch auf eine geleerte, scheitert das Laden. Innerhalb einer Tabelle liest ein Thread die Datei und
+ * verteilt Batches ueber eine begrenzte Warteschlange an mehrere Schreiber
+ * mit je eigener Verbindung, die nach jeweils
+ * {@link Konfiguration#commitIntervall(int)} Zeilen festschreiben. Bricht ein
+ * Schreiber ab, bleiben bereits festgeschriebene Zeilen stehen. Wurden
+ * Mauterhebungen, Positionen oder Fahrzeuge geladen, wird OFFENER_SALDO
+ * danach neu aufgebaut. Die prozessweit gehaltenen Stammdaten und
+ * Fahrzeuge werden auch nach einem Abbruch verworfen, da die Tabellen
+ * bereits geleert sein koennen.
+ *
+ * Aufruf: {@code MassenLader <verzeichnis> [threads] [batchGroesse] [commitIntervall]}
+ */
+public final class MassenLader {
+    private static final Logger L = LoggerFactory.getLogger(MassenLader.class);
+
+    private static final int TEXT = 0;
+    private static final int ZAHL = 1;
+    private static final int ZEIT = 2;
+    private static final String[][] ENDE = new String[0][];
+    /** Tabellen, aus denen OFFENER_SALDO abgeleitet wird */
+    private static final List<String> SALDO_QUELLEN =
+            List.of("MAUTERHEBUNG", "POSITION", "FAHRZEUGGERAT", "FAHRZEUG");
+
+    private final DataSource dataSource;
+    private final Konfiguration konfiguration;
+
+    public MassenLader(DataSource dataSource, Konfiguration konfiguration) {
+        this.dataSource = dataSource;
+        this.konfiguration = konfiguration;
+    }
+
+    public static void main(String[] args) {
+        if (args.length < 1) {
+            System.err.println("Aufruf: MassenLader <verzeichnis> [threads] [batchGroesse] [commitIntervall]");
+            System.exit(2);
+        }
+        Konfiguration k = new Konfiguration();
+        if (args.length > 1) {
+            k.threads(Integer.parseInt(args[1]));
+        }
+        if (args.length > 2) {
+            k.batchGroesse(Integer.parseInt(args[2]));
+        }
+        if (args.length > 3) {
+            k.commitIntervall(Integer.parseInt(args[3]));
+        }
+        JdbcUtils.loadDriver(DbCred.driverClass);
+        try (ConnectionPool pool = JdbcUtils.createConnectionPool(DbCred.url, DbCred.user, DbCred.password,
+                1, k.threads)) {
+            Map<String, Long> zeilen = new MassenLader(pool, k).lade(Path.of(args[0]));
+            zeilen.forEach((tabelle, anzahl) -> System.out.printf("%-18s %,14d%n", tabelle, anzahl));
+        }
+    }
+
+    /**
+     * Leert die Tabellen des Verzeichnisses und laedt sie neu; liefert die
+     * Zeilenzahl je Tabelle.
+     */
+    public Map<String, Long> lade(Path verzeichnis) {
+        long start = System.nanoTime();
+        List<Path> dateien = dateien(verzeichnis);
+        List<Zeilenquelle> quellen = new ArrayList<>();
+        Map<String, Long> zeilen = new LinkedHashMap<>();
+        try {
+            for (Path d : dateien) {
+                quellen.add(oeffne(d));
+            }
+            if (konfiguration.leeren) {
+                leere(quellen);
+            }
+            for (Zeilenquelle q : quellen) {
+                zeilen.put(q.getTabelle(), ladeTabelle(q));
+                q.close();
+            }
+            if (zeilen.keySet().stream().anyMatch(t -> SALDO_QUELLEN.contains(t.toUpperCase(Locale.ROOT)))) {
+                baueSaldenNeuAuf();
+            }
+        } finally {
+            Stammdaten.verwerfen();
+            for (Zeilenquelle q : quellen) {
+                q.close();
+            }
+        }
+        long millis = (System.nanoTime() - start) / 1000000;
+        long summe = zeilen.values().stream().mapToLong(Long::longValue).sum();
+        L.info("{} Zeilen aus {} in {} ms geladen ({} Zeilen/s)", summe, verzeichnis, millis,
+                millis == 0 ? summe : summe * 1000 / millis);
+        return zeilen;
+    }
+
+    /**
+     * Liefert die CSV- bzw. SQL-Dateien des Verzeichnisses in Ladereihenfolge.
+     * Dateien zu Tabellen, die nicht in der Reihenfolge stehen, kommen
+     * alphabetisch ans Ende.
+     */
+    static List<Path> dateien(Path verzeichnis) {
+        Map<String, Path> nachTabelle = new TreeMap<>();
+        try (Stream<Path> inhalt = Files.list(verzeichnis)) {
+            inhalt.forEach(d -> {
+                String n = d.getFileName().toString();
+                String klein = n.toLowerCase(Locale.ROOT);
+                if (klein.endsWith(".csv") || klein.endsWith(".sql")) {
+                    Path alt = nachTabelle.put(n.substring(0, n.length() - 4).toUpperCase(Locale.ROOT), d);
+                    if (alt != null) {
+                        throw new DataException("Tabelle doppelt: " + alt + ", " + d);
+                    }
+                }
+            });
+        } catch (IOException e) {
+            throw new DataException("Verzeichnis " + verzeichnis + " nicht lesbar", e);
+        }
+        List<String> reihenfolge;
+        Path ordnung = verzeichnis.resolve("table-ordering.txt");
+        try {
+            reihenfolge = Files.exists(ordnung) ? Files.readAllLines(ordnung, StandardCharsets.UTF_8)
+                    : DatenGenerator.TABELLEN;
+        } catch (IOException e) {
+            throw new DataException(ordnung + " nicht lesbar", e);
+        }
+        List<Path> result = new ArrayList<>();
+        for (String t : reihenfolge) {
+            Path d = nachTabelle.remove(t.strip().toUpperCase(Locale.ROOT));
+            if (d != null) {
+                result.add(d);
+            }
+        }
+        if (!nachTabelle.isEmpty()) {
+            L.warn("Tabellen ohne Reihenfolge werden zuletzt geladen: {}", nachTabelle.keySet());
+            result.addAll(nachTabelle.values());
+        }
+        return result;
+    }
+
+    static Zeilenquelle oeffne(Path datei) {
+        String n = datei.getFileName().toString();
+        if (n.toLowerCase(Locale.ROOT).endsWith(".sql")) {
+            return InsertSkriptLeser.oeffne(datei);
+        }
+        return new CsvQuelle(n.substring(0, n.length() - 4), CsvLeser.oeffne(datei));
+    }
+
+    /**
+     * Leert die Tabellen mit TRUNCATE. Oracle lehnt TRUNCATE einer Tabelle ab,
+     * auf die ein eingeschalteter Fremdschluessel verweist (ORA-02266), auch
+     * wenn die verweisende Tabelle leer ist; diese Fremdschluessel werden
+     * dafuer deaktiviert und danach mit Pruefung wieder eingeschaltet.
+     */
+    private void leere(List<Zeilenquelle> quellen) {
+        List<String> tabellen = new ArrayList<>();
+        for (int i = quellen.size() - 1; i >= 0; i--) {
+            tabellen.add(quellen.get(i).getTabelle().toUpperCase(Locale.ROOT));
+        }
+        if (tabellen.isEmpty()) {
+            return;
+        }
+        try (Connection connection = dataSource.getConnection(); Statement stmt = connection.createStatement()) {
+            List<String[]> fremdschluessel = fremdschluessel(connection, tabellen);
+            SQLException fehler = null;
+            try {
+                for (String[] fk : fremdschluessel) {
+                    stmt.execute("ALTER TABLE " + fk[0] + " DISABLE CONSTRAINT " + fk[1]);
+                }
+                for (String t : tabellen) {
+                    stmt.execute("TRUNCATE TABLE " + t);
+                    L.debug("{}: geleert", t);
+                }
+            } catch (SQLException e) {
+                fehler = e;
+            } finally {
+                for (String[] fk : fremdschluessel) {
+                    try {
+                        stmt.execute("ALTER TABLE " + fk[0] + " ENABLE CONSTRAINT " + fk[1]);
+                    } catch (SQLException e) {
+                        L.error("{}.{} nicht wieder eingeschaltet", fk[0], fk[1], e);
+                        if (fehler == null) {
+                            fehler = e;
+                        } else {
+                            fehler.addSuppressed(e);
+                        }
+                    }
+                }
+            }
+            if (fehler != null) {
+                throw fehler;
+            }
+            L.debug("{} Tabellen geleert, {} Fremdschluessel zeitweise deaktiviert", tabellen.size(),
+                    fremdschluessel.size());
+        } catch (SQLException e) {
+            throw new DataException(e);
+        }
+    }
+
+    /** Liefert Tabelle und Name der eingeschalteten Fremdschluessel auf die Tabellen. */
+    private static List<String[]> fremdschluessel(Connection connection, List<String> tabellen)
+            throws SQLException {
+        String sql = "SELECT c.TABLE_NAME, c.CONSTRAINT_NAME FROM USER_CONSTRAINTS c "
+                + "JOIN USER_CONSTRAINTS r ON r.CONSTRAINT_NAME = c.R_CONSTRAINT_NAME "
+                + "WHERE c.CONSTRAINT_TYPE = 'R' AND c.STATUS = 'ENABLED' AND r.TABLE_NAME IN ("
+                + JdbcUtils.placeholders(tabellen.size()) + ")";
+        List<String[]> result = new ArrayList<>();
+        try (PreparedStatement ps = connection.prepareStatement(sql)) {
+            for (int i = 0; i < tabellen.size(); i++) {
+                ps.setString(i + 1, tabellen.get(i));
+            }
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    result.add(new String[]{rs.getString(1), rs.getString(2)});
+                }
+            }
+        }
+        return result;
+    }
+
+    private void baueSaldenNeuAuf() {
+        try (Connection connection = dataSource.getConnection()) {
+            connection.setAutoCommit(false);
+            int n = new SaldoTdg(connection).neuAufbauen();
+            connection.commit();
+            L.info("OFFENER_SALDO mit {} Zeilen neu aufgebaut", n);
+        } catch (SQLException e) {
+            throw new DataException(e);
+        }
+    }
+
+    private long ladeTabelle(Zeilenquelle quelle) {
+        long start = System.nanoTime();
+        String tabelle = quelle.getTabelle();
+        String[] spalten = quelle.getSpalten();
+        String sql = "INSERT INTO " + tabelle + " (" + String.join(", ", spalten) + ") VALUES ("
+                + JdbcUtils.placeholders(spalten.length) + ")";
+        int[] typen = spaltentypen(tabelle, spalten);
+
+        BlockingQueue<String[][]> warteschlange = new ArrayBlockingQueue<>(2 * konfiguration.threads);
+        ExecutorService schreiber = Executors.newFixedThreadPool(konfiguration.threads, r -> {
+            Thread t = new Thread(r, "lader-" + tabelle);
+            t.setDaemon(true);
+            return t;
+        });
+        List<Future<Long>> ergebnisse = new ArrayList<>();
+        for (int i = 0; i < konfiguration.threads; i++) {
+            ergebnisse.add(schreiber.submit(() -> schreibe(sql, typen, warteschlange)));
+        }
+        long gelesen = 0;
+        try {
+            String[][] batch = new String[konfiguration.batchGroesse][];
+            int n = 0;
+            String[] z;
+            while ((z = quelle.naechsteZeile()) != null) {
+                if (z.length != spalten.length) {
+                    throw new DataException(quelle.getPosition() + ": " + z.length + " statt " + spalten.length
+                            + " Werte");
+                }
+                batch[n++] = z;
+                gelesen++;
+                if (n == batch.length) {
+                    if (!uebergebe(warteschlange, batch, ergebnisse)) {
+                        break;
+                    }
+                    batch = new String[konfiguration.batchGroesse][];
+                    n = 0;
+                }
+            }
+            if (n > 0) {
+                String[][] rest = new String[n][];
+                System.arraycopy(batch, 0, rest, 0, n);
+                uebergebe(warteschlange, rest, ergebnisse);
+            }
+            for (int i = 0; i < konfiguration.threads; i++) {
+                uebergebe(warteschlange, ENDE, ergebnisse);
+            }
+            long geschrieben = 0;
+            for (Future<Long> f : ergebnisse) {
+                geschrieben += f.get();
+            }
+            L.info("{}: {} Zeilen in {} ms", tabelle, geschrieben, (System.nanoTime() - start) / 1000000);
+            return geschrieben;
+        } catch (ExecutionException e) {
+            Throwable ursache = e.getCause();
+            throw new DataException(tabelle + " nach " + gelesen + " gelesenen Zeilen: " + ursache.getMessage(),
+                    ursache);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DataException("Laden von " + tabelle + " unterbrochen", e);
+        } finally {
+            schreiber.shutdownNow();
+        }
+    }
+
+    /**
+     * Stellt einen Batch in die Warteschlange; liefert false, wenn ein
+     * Schreiber schon beendet ist (vor {@link #ENDE} nur nach einem Fehler
+     * moeglich). ENDE wird zugestellt, solange noch ein Schreiber laeuft.
+     */
+    private static boolean uebergebe(BlockingQueue<String[][]> warteschlange, String[][] batch,
+                                     List<Future<Long>> schreiber) throws InterruptedException {
+        while (!warteschlange.offer(batch, 100, TimeUnit.MILLISECONDS)) {
+            int beendet = 0;
+            for (Future<Long> f : schreiber) {
+                if (f.isDone()) {
+                    beendet++;
+                }
+            }
+            if (batch == ENDE ? beendet == schreiber.size() : beendet > 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private long schreibe(String sql, int[] typen, BlockingQueue<String[][]> warteschlange)
+            throws SQLException, InterruptedException {
+        long geschrieben = 0;
+        try (Connection connection = dataSource.getConnection()) {
+            connection.setAutoCommit(false);
+            try (PreparedStatement ps = connection.prepareStatement(sql)) {
+                long seitCommit = 0;
+                String[][] batch;
+                while ((batch = warteschlange.take()) != ENDE) {
+                    for (String[] zeile : batch) {
+                        binde(ps, typen, zeile);
+                        ps.addBatch();
+                    }
+                    ps.executeBatch();
+                    geschrieben += batch.length;
+                    seitCommit += batch.length;
+                    if (seitCommit >= konfiguration.commitIntervall) {
+                        connection.commit();
+                        seitCommit = 0;
+                    }
+                }
+                connection.commit();
+            } catch (SQLException | RuntimeException e) {
+                connection.rollback();
+                throw e;
+            }
+        }
+        return geschrieben;
+    }
+
+    static void binde(PreparedStatement ps, int[] typen, String[] zeile) throws SQLException {
+        for (int i = 0; i < zeile.length; i++) {
+            String w = zeile[i];
+            if (w == null) {
+                ps.setNull(i + 1, typen[i] == ZAHL ? Types.NUMERIC
+                        : typen[i] == ZEIT ? Types.TIMESTAMP : Types.VARCHAR);
+            } else if (typen[i] == ZAHL) {
+                // Skripte aus dem SQL Developer enthalten Dezimalkommas wie '0,21'
+                ps.setBigDecimal(i + 1, new BigDecimal(w.replace(',', '.')));
+            } else if (typen[i] == ZEIT) {
+                ps.setTimestamp(i + 1, Timestamp.valueOf(CsvLeser.zeitstempel(w)));
+            } else {
+                ps.setString(i + 1, w);
+            }
+        }
+    }
+
+    private int[] spaltentypen(String tabelle, String[] spalten) {
+        String sql = "SELECT " + String.join(", ", spalten) + " FROM " + tabelle + " WHERE 1 = 0";
+        try (Connection connection = dataSource.getConnection();
+             Statement stmt = connection.createStatement()) {
+            ResultSetMetaData meta = stmt.executeQuery(sql).getMetaData();
+            int[] typen = new int[spalten.length];
+            for (int i = 0; i < typen.length; i++) {
+                typen[i] = art(meta.getColumnType(i + 1));
+            }
+            return typen;
+        } catch (SQLException e) {
+            throw new DataException(sql, e);
+        }
+    }
+
+    static int art(int sqlTyp) {
+        switch (sqlTyp) {
+            case Types.NUMERIC:
+            case Types.DECIMAL:
+            case Types.INTEGER:
+            case Types.BIGINT:
+            case Types.SMALLINT:
+            case Types.TINYINT:
+            case Types.DOUBLE:
+            case Types.FLOAT:
+            case Types.REAL:
+                return ZAHL;
+            case Types.DATE:
+            case Types.TIMESTAMP:
+            case Types.TIMESTAMP_WITH_TIMEZONE:
+                return ZEIT;
+            default:
+                return TEXT;
+        }
+    }
+
+    private static final class CsvQuelle implements Zeilenquelle {
+        private final String tabelle;
+        private final CsvLeser leser;
+
+        CsvQuelle(String tabelle, CsvLeser leser) {
+            this.tabelle = tabelle;
+            this.leser = leser;
+        }
+
+        @Override
+        public String getTabelle() {
+            return tabelle;
+        }
+
+        @Override
+        public String[] getSpalten() {
+            return leser.getKopf();
+        }
+
+        @Override
+        public String[] naechsteZeile() {
+            return leser.naechsteZeile();
+        }
+
+        @Override
+        public String getPosition() {
+            return tabelle + ".csv, Zeile " + leser.getZeile();
+        }
+
+        @Override
+        public void close() {
+            leser.close();
+        }
+    }
+
+    public static final class Konfiguration {
+        private int threads = 4;
+        private int batchGroesse = 1000;
+        private int commitIntervall = 50000;
+        private boolean leeren = true;
+
+        /** Schreiber je Tabelle, jeder mit eigener Verbindung */
+        public Konfiguration threads(int threads) {
+            this.threads = positiv("threads", threads);
+            return this;
+        }
+
+        /** Zeilen je executeBatch */
+        public Konfiguration batchGroesse(int batchGroesse) {
+            this.batchGroesse = positiv("batchGroesse", batchGroesse);
+            return this;
+        }
+
+        /** Zeilen je Schreiber zwischen zwei Commits */
+        public Konfiguration commitIntervall(int commitIntervall) {
+            this.commitIntervall = positiv("commitIntervall", commitIntervall);
+            return this;
+        }
+
+        /** Tabellen vor dem Laden leeren (Standard), sonst nur einfuegen */
+        public Konfiguration leeren(boolean leeren) {
+            this.leeren = leeren;
+            return this;
+        }
+
+        private static int positiv(String name, int wert) {
+            if (wert < 1) {
+                throw new IllegalArgumentException(name + " muss positiv sein: " + wert);
+            }
+            return wert;
+        }
+
+        @Override
+        public String toString() {
+            return "threads=" + threads + ", batchGroesse=" + batchGroesse + ", commitIntervall=" + commitIntervall
+                    + ", leeren=" + leeren;
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package de.htwberlin.dbtech.aufgaben.ue03.daten;
+
+import java.nio.file.Path;
+import java.sql.Types;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class MassenLaderTest {
+
+    private static List<String> namen(List<Path> dateien) {
+        return dateien.stream().map(d -> d.getFileName().toString()).collect(Collectors.toList());
+    }
+
+    @org.junit.Test
+    public void testReihenfolgeCsv() {
+        assertEquals(List.of("Mautabschnitt.csv", "Nutzer.csv", "Schadstoffklasse.csv", "Mautkategorie.csv",
+                "Rechnunngsstatus.csv", "Fahrzeug.csv", "Fahrzeuggerat.csv", "Mauterhebung.csv", "Buchungstatus.csv",
+                "Buchung.csv", "Zahltyp.csv", "Zahlart.csv"), namen(MassenLader.dateien(Path.of("test-data/ue03-04"))));
+    }
+
+    /** ohne table-ordering.txt gilt die Reihenfolge des Generators */
+    @org.junit.Test
+    public void testReihenfolgeSkripte() {
+        assertEquals(List.of("MAUTABSCHNITT.sql", "NUTZER.sql", "SCHADSTOFFKLASSE.sql", "MAUTKATEGORIE.sql",
+                "RECHNUNNGSSTATUS.sql", "FAHRZEUG.sql", "FAHRZEUGGERAT.sql", "MAUTERHEBUNG.sql", "BUCHUNGSTATUS.sql",
+                "BUCHUNG.sql", "ZAHLTYP.sql", "ZAHLART.sql", "RECHNUNG.sql", "POSITION.sql"),
+                namen(MassenLader.dateien(Path.of("db/maut/insert"))));
+    }
+
+    @org.junit.Test
+    public void testCsvQuelle() {
+        try (Zeilenquelle q = MassenLader.oeffne(Path.of("test-data/ue03-04/Buchung.csv"))) {
+            assertEquals("Buchung", q.getTabelle());
+            assertEquals("KENNZEICHEN", q.getSpalten()[4]);
+            assertArrayEquals(new String[]{"1001", "3", "1200", "14", "B CV 8890", "2015-02-18 10:15:01",
+                    "2015-02-18 17:25:00", "1.01"}, q.naechsteZeile());
+            assertArrayEquals(new String[]{"1011", "2", "461", "16", "LDS HV 372", "2015-02-13", null, "0.95"},
+                    q.naechsteZeile());
+        }
+    }
+
+    @org.junit.Test
+    public void testSpaltenart() {
+        assertEquals(MassenLader.art(Types.NUMERIC), MassenLader.art(Types.DECIMAL));
+        assertEquals(MassenLader.art(Types.DATE), MassenLader.art(Types.TIMESTAMP));
+        assertEquals(MassenLader.art(Types.VARCHAR), MassenLader.art(Types.CHAR));
+    }
+}
@@ -0,0 +1,21 @@
+package de.htwberlin.dbtech.aufgaben.ue03.daten;
+
+/**
+ * Liefert die Zeilen einer Tabelle als Texte, z.B. aus einer CSV-Datei oder
+ * einem Insert-Skript. Zeitstempel haben die Form yyyy-MM-dd HH:mm:ss[.f],
+ * null steht fuer NULL.
+ */
+interface Zeilenquelle extends AutoCloseable {
+    String getTabelle();
+
+    String[] getSpalten();
+
+    /** naechste Zeile oder null am Ende */
+    String[] naechsteZeile();
+
+    /** Position in der Quelle fuer Fehlermeldungen */
+    String getPosition();
+
+    @Override
+    void close();
+}
@@ -0,0 +1,42 @@
+package de.htwberlin.dbtech.aufgaben.ue03.daten;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * Zieht Indizes 0..n-1 nach einer Zipf-Verteilung: der Index mit Rang r wird
+ * mit Gewicht 1/r^s gezogen. Die Raenge sind zufaellig auf die Indizes
+ * verteilt, damit die beliebtesten Eintraege nicht die kleinsten Ids sind.
+ */
+final class Zipf {
+    private final double[] kumuliert;
+    private final int[] index;
+
+    Zipf(int n, double s, SplittableRandom zufall) {
+        if (n < 1) {
+            throw new IllegalArgumentException("n muss positiv sein: " + n);
+        }
+        kumuliert = new double[n];
+        double summe = 0;
+        for (int r = 0; r < n; r++) {
+            summe += 1.0 / Math.pow(r + 1, s);
+            kumuliert[r] = summe;
+        }
+        index = new int[n];
+        for (int i = 0; i < n; i++) {
+            index[i] = i;
+        }
+        for (int i = n - 1; i > 0; i--) {
+            int j = zufall.nextInt(i + 1);
+            int t = index[i];
+            index[i] = index[j];
+            index[j] = t;
+        }
+    }
+
+    int ziehe(SplittableRandom zufall) {
+        double u = zufall.nextDouble() * kumuliert[kumuliert.length - 1];
+        int r = Arrays.binarySearch(kumuliert, u);
+        return index[r < 0 ? Math.min(-r - 1, index.length - 1) : r];
+    }
+}
@@ -0,0 +1,480 @@
+package de.htwberlin.dbtech.aufgaben.ue03.ingest;
+
+import de.htwberlin.dbtech.aufgaben.ue03.Erfassung;
+import de.htwberlin.dbtech.aufgaben.ue03.IMautService;
+import de.htwberlin.dbtech.aufgaben.ue03.Mautergebnis;
+import de.htwberlin.dbtech.aufgaben.ue03.cache.FahrzeugCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.SQLRecoverableException;
+import java.sql.SQLTransientException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Asynchrone Annahme von Erfassungen vor einem {@link IMautService}. Die
+ * Kontrollsysteme erhalten sofort eine Quittung, die Datenbankarbeit
+ * erledigen Worker-Threads im Hintergrund.
+ *
+ * Jeder Worker hat eine eigene begrenzte Warteschlange und einen eigenen
+ * Service (und damit eine eigene Verbindung). Erfassungen werden ueber das
+ * normalisierte Kennzeichen einem Worker zugeordnet, so dass alle Erfassungen
+ * eines Fahrzeugs in Eingangsreihenfolge verarbeitet werden; die Erkennung
+ * von Doppelbefahrungen in BUCHUNG bleibt dadurch korrekt.
+ *
+ * Ein Worker entnimmt bis zu {@link Konfiguration#maxBatch(int)} wartende
+ * Erfassungen auf einmal und verarbeitet sie mit
+ * {@link IMautService#berechneMautBatch(List)}. Scheitert der Batch mit einer
+ * Exception, wird er einzeln wiederholt, so dass eine fehlerhafte Erfassung
+ * nicht die Futures der uebrigen scheitern laesst.
+ *
+ * Ist die Warteschlange voll, wird je nach {@link Ueberlauf} die Annahme
+ * sofort abgelehnt oder der Aufrufer bis zur Wartezeit blockiert.
+ *
+ * Mit einem {@link Erfassungsjournal} wird jede Erfassung vor der Quittung
+ * angehaengt und erst nach der Verarbeitung als erledigt markiert. Endet
+ * ein Batch mit einem voruebergehenden Datenbankfehler (siehe
+ * {@link #istVoruebergehend(Throwable)}), verwirft der Worker seinen Service
+ * und wiederholt den Batch mit einem neuen und wachsender Pause, bis er
+ * gelingt oder die Pipeline geschlossen wird; was dann noch offen ist, wird
+ * beim naechsten Start erneut eingereicht. Das ist nur sicher, weil
+ * {@link IMautService#berechneMautBatch(List)} atomar ist: ein
+ * fehlgeschlagener Batch hat nichts gespeichert. Doppelt verarbeitet wird
+ * eine Erfassung nur bei einem Absturz zwischen Commit und Markierung im
+ * Journal.
+ *
+ * Jeder andere Fehler (Programmfehler, Constraint-Verletzung, zu grosser
+ * Wert) tritt bei einer Wiederholung erneut auf. Der Batch wird dann
+ * einzeln verarbeitet; nur die scheiternden Erfassungen werden
+ * protokolliert, als erledigt markiert und als Quarantaene gezaehlt, damit
+ * sie nicht bei jedem Start erneut scheitern.
+ */
+public final class ErfassungsPipeline implements AutoCloseable {
+    private static final Logger L = LoggerFactory.getLogger(ErfassungsPipeline.class);
+
+    /** Verhalten bei voller Warteschlange */
+    public enum Ueberlauf {
+        /** sofort ablehnen */
+        ABLEHNEN,
+        /** bis zur Wartezeit blockieren, dann ablehnen */
+        BLOCKIEREN
+    }
+
+    private final Konfiguration konfiguration;
+    private final Supplier<IMautService> services;
+    private final Worker[] worker;
+    private volatile boolean geschlossen;
+
+    private final AtomicLong angenommen = new AtomicLong();
+    private final AtomicLong abgelehnt = new AtomicLong();
+    private final AtomicLong verarbeitet = new AtomicLong();
+    private final AtomicLong fehler = new AtomicLong();
+    private final AtomicLong wiederholt = new AtomicLong();
+    private final AtomicLong quarantaene = new AtomicLong();
+    private final AtomicLong latenzSummeNanos = new AtomicLong();
+    private final AtomicLong latenzMaxNanos = new AtomicLong();
+
+    /** erste Pause vor der Wiederholung eines fehlgeschlagenen Batches */
+    private static final long PAUSE_MIN_MILLIS = 100;
+    private static final long PAUSE_MAX_MILLIS = 10_000;
+
+    /**
+     * Startet die Worker und reicht die offenen Eintraege des Journals erneut
+     * ein.
+     *
+     * @param services liefert je Worker einen eigenen, verbundenen Service;
+     *                 nach einem voruebergehenden Fehler wird ein neuer geholt
+     */
+    public ErfassungsPipeline(Supplier<IMautService> services, Konfiguration konfiguration) {
+        this.konfiguration = konfiguration;
+        this.services = services;
+        this.worker = new Worker[konfiguration.worker];
+        for (int i = 0; i < worker.length; i++) {
+            worker[i] = new Worker(i);
+        }
+        for (Worker w : worker) {
+            w.thread = konfiguration.threads.newThread(w);
+            w.thread.setName("erfassung-" + w.nummer);
+            w.thread.start();
+        }
+        if (konfiguration.journal != null) {
+            wiederhole(konfiguration.journal);
+        }
+        L.info("Erfassungspipeline gestartet: {}", konfiguration);
+    }
+
+    private void wiederhole(Erfassungsjournal journal) {
+        for (Erfassungsjournal.Eintrag e : journal.offene()) {
+            Auftrag a = new Auftrag(e.getErfassung(), e.getPosition());
+            try {
+                worker[zuordnung(e.getErfassung().getKennzeichen())].warteschlange.put(a);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                L.warn("Wiederholung aus dem Journal unterbrochen, Rest beim naechsten Start");
+                return;
+            }
+            wiederholt.incrementAndGet();
+        }
+        if (wiederholt.get() > 0) {
+            L.info("{} offene Erfassungen aus dem Journal erneut eingereicht", wiederholt.get());
+        }
+    }
+
+    /**
+     * Nimmt eine Erfassung an. Die Rueckkehr ist die Quittung; die Future wird
+     * nach der Verarbeitung mit dem Ergebnis oder dem Datenbankfehler erfuellt.
+     *
+     * @throws RejectedExecutionException falls die Warteschlange voll oder die
+     *                                    Pipeline geschlossen ist
+     */
+    public CompletableFuture<Mautergebnis> einreichen(Erfassung erfassung) {
+        if (geschlossen) {
+            throw new RejectedExecutionException("Erfassungspipeline ist geschlossen");
+        }
+        Erfassungsjournal journal = konfiguration.journal;
+        long position = journal == null ? -1 : journal.anhaengen(erfassung, System.currentTimeMillis());
+        Auftrag a = new Auftrag(erfassung, position);
+        Worker w = worker[zuordnung(erfassung.getKennzeichen())];
+        boolean ok;
+        try {
+            ok = konfiguration.ueberlauf == Ueberlauf.ABLEHNEN
+                    ? w.warteschlange.offer(a)
+                    : w.warteschlange.offer(a, konfiguration.wartezeitMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            ok = false;
+        }
+        if (!ok) {
+            if (journal != null) {
+                journal.erledigt(a.position);
+            }
+            abgelehnt.incrementAndGet();
+            throw new RejectedExecutionException("Warteschlange von Worker " + w.nummer + " ist voll");
+        }
+        angenommen.incrementAndGet();
+        return a.ergebnis;
+    }
+
+    private int zuordnung(String kennzeichen) {
+        String k = FahrzeugCache.normalisiere(kennzeichen);
+        return k == null ? 0 : Math.floorMod(k.hashCode(), worker.length);
+    }
+
+    /**
+     * Nimmt keine Erfassungen mehr an, verarbeitet die wartenden und wartet
+     * auf das Ende der Worker. Das Journal bleibt offen und wird vom Aufrufer
+     * geschlossen.
+     */
+    @Override
+    public void close() {
+        geschlossen = true;
+        for (Worker w : worker) {
+            try {
+                w.thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            // Annahmen, die sich mit dem Schliessen ueberschnitten haben
+            List<Auftrag> rest = new ArrayList<>();
+            w.warteschlange.drainTo(rest);
+            for (Auftrag a : rest) {
+                abgelehnt.incrementAndGet();
+                a.ergebnis.completeExceptionally(new RejectedExecutionException("Erfassungspipeline ist geschlossen"));
+            }
+        }
+        L.info("Erfassungspipeline beendet: {}", this);
+    }
+
+    /** Anzahl aller wartenden Erfassungen */
+    public int getWarteschlangenTiefe() {
+        int n = 0;
+        for (Worker w : worker) {
+            n += w.warteschlange.size();
+        }
+        return n;
+    }
+
+    public long getAngenommen() {
+        return angenommen.get();
+    }
+
+    /** abgelehnte Erfassungen wegen voller Warteschlange */
+    public long getAbgelehnt() {
+        return abgelehnt.get();
+    }
+
+    public long getVerarbeitet() {
+        return verarbeitet.get();
+    }
+
+    /** Erfassungen, deren Verarbeitung mit einer Exception endete */
+    public long getFehler() {
+        return fehler.get();
+    }
+
+    /** beim Start aus dem Journal erneut eingereichte Erfassungen */
+    public long getWiederholt() {
+        return wiederholt.get();
+    }
+
+    /** wegen eines nicht voruebergehenden Fehlers aus dem Journal genommene Erfassungen */
+    public long getQuarantaene() {
+        return quarantaene.get();
+    }
+
+    /** mittlere Zeit von der Annahme bis zum Ergebnis in Mikrosekunden */
+    public long getMittlereLatenzMicros() {
+        long n = verarbeitet.get() + fehler.get();
+        return n == 0 ? 0 : latenzSummeNanos.get() / n / 1000;
+    }
+
+    /** laengste Zeit von der Annahme bis zum Ergebnis in Mikrosekunden */
+    public long getMaxLatenzMicros() {
+        return latenzMaxNanos.get() / 1000;
+    }
+
+    @Override
+    public String toString() {
+        return "ErfassungsPipeline[tiefe=" + getWarteschlangenTiefe() + ", angenommen=" + getAngenommen()
+                + ", abgelehnt=" + getAbgelehnt() + ", verarbeitet=" + getVerarbeitet() + ", fehler=" + getFehler()
+                + ", wiederholt=" + getWiederholt() + ", quarantaene=" + getQuarantaene()
+                + ", latenzMittel=" + getMittlereLatenzMicros() + "us, latenzMax=" + getMaxLatenzMicros() + "us]";
+    }
+
+    private void erfasseLatenz(Auftrag a) {
+        long dauer = System.nanoTime() - a.angenommen;
+        latenzSummeNanos.addAndGet(dauer);
+        latenzMaxNanos.accumulateAndGet(dauer, Math::max);
+    }
+
+    private static final class Auftrag {
+        final Erfassung erfassung;
+        /** Position im Journal oder -1 */
+        final long position;
+        final long angenommen = System.nanoTime();
+        final CompletableFuture<Mautergebnis> ergebnis = new CompletableFuture<>();
+
+        Auftrag(Erfassung erfassung, long position) {
+            this.erfassung = erfassung;
+            this.position = position;
+        }
+    }
+
+    private final class Worker implements Runnable {
+        final int nummer;
+        final BlockingQueue<Auftrag> warteschlange;
+        Thread thread;
+        IMautService service;
+
+        Worker(int nummer) {
+            this.nummer = nummer;
+            this.warteschlange = new ArrayBlockingQueue<>(konfiguration.kapazitaet);
+        }
+
+        @Override
+        public void run() {
+            List<Auftrag> auftraege = new ArrayList<>(konfiguration.maxBatch);
+            List<Erfassung> erfassungen = new ArrayList<>(konfiguration.maxBatch);
+            while (true) {
+                try {
+                    Auftrag erster = warteschlange.poll(100, TimeUnit.MILLISECONDS);
+                    if (erster == null) {
+                        if (geschlossen && warteschlange.isEmpty()) {
+                            return;
+                        }
+                        continue;
+                    }
+                    auftraege.add(erster);
+                    warteschlange.drainTo(auftraege, konfiguration.maxBatch - 1);
+                } catch (InterruptedException e) {
+                    L.warn("Worker {} unterbrochen, {} Erfassungen verworfen", nummer, warteschlange.size());
+                    return;
+                }
+
+                for (Auftrag a : auftraege) {
+                    erfassungen.add(a.erfassung);
+                }
+                verarbeite(auftraege, erfassungen);
+                auftraege.clear();
+                erfassungen.clear();
+            }
+        }
+
+        private void verarbeite(List<Auftrag> auftraege, List<Erfassung> erfassungen) {
+            RuntimeException e = versuche(auftraege, erfassungen);
+            if (e == null) {
+                return;
+            }
+            if (auftraege.size() == 1) {
+                scheitere(auftraege, e);
+                return;
+            }
+            // wie MauterhebungPuffer zeilenweise: nur die Erfassung scheitert,
+            // die tatsaechlich fehlerhaft ist
+            L.warn("Worker {}: Batch von {} Erfassungen fehlgeschlagen, Verarbeitung einzeln: {}",
+                    nummer, auftraege.size(), e.getMessage());
+            for (Auftrag a : auftraege) {
+                RuntimeException einzeln = versuche(List.of(a), List.of(a.erfassung));
+                if (einzeln != null) {
+                    scheitere(List.of(a), einzeln);
+                }
+            }
+        }
+
+        /**
+         * Verarbeitet die Erfassungen als ein Batch und erfuellt bei Erfolg ihre
+         * Futures. Voruebergehende Datenbankfehler werden mit Journal und neuem
+         * Service wiederholt; liefert sonst die Exception.
+         */
+        private RuntimeException versuche(List<Auftrag> auftraege, List<Erfassung> erfassungen) {
+            Erfassungsjournal journal = konfiguration.journal;
+            long pause = PAUSE_MIN_MILLIS;
+            while (true) {
+                try {
+                    if (service == null) {
+                        service = services.get();
+                    }
+                    List<Mautergebnis> ergebnisse = service.berechneMautBatch(erfassungen);
+                    for (int i = 0; i < auftraege.size(); i++) {
+                        Auftrag a = auftraege.get(i);
+                        if (journal != null) {
+                            journal.erledigt(a.position);
+                        }
+                        erfasseLatenz(a);
+                        verarbeitet.incrementAndGet();
+                        a.ergebnis.complete(ergebnisse.get(i));
+                    }
+                    return null;
+                } catch (RuntimeException e) {
+                    if (!istVoruebergehend(e)) {
+                        return e;
+                    }
+                    // die Verbindung des Service ist vermutlich unbrauchbar
+                    service = null;
+                    if (journal == null || geschlossen) {
+                        return e;
+                    }
+                    L.warn("Worker {}: Verarbeitung von {} Erfassungen fehlgeschlagen, Wiederholung in {} ms: {}",
+                            nummer, auftraege.size(), pause, e.getMessage());
+                    try {
+                        Thread.sleep(pause);
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                        return e;
+                    }
+                    pause = Math.min(2 * pause, PAUSE_MAX_MILLIS);
+                }
+            }
+        }
+
+        /**
+         * Scheitert eine einzelne Erfassung nicht voruebergehend, wird sie aus dem
+         * Journal genommen und protokolliert, damit sie nicht bei jedem Start
+         * erneut scheitert. Sonst bleiben die Eintraege im Journal offen.
+         */
+        private void scheitere(List<Auftrag> auftraege, RuntimeException e) {
+            Erfassungsjournal journal = konfiguration.journal;
+            boolean isolieren = journal != null && auftraege.size() == 1 && !istVoruebergehend(e);
+            L.error("Worker {}: Verarbeitung von {} Erfassungen fehlgeschlagen", nummer, auftraege.size(), e);
+            for (Auftrag a : auftraege) {
+                if (isolieren) {
+                    L.error("Worker {}: Erfassung {} in Quarantaene", nummer, a.erfassung);
+                    journal.erledigt(a.position);
+                    quarantaene.incrementAndGet();
+                }
+                erfasseLatenz(a);
+                fehler.incrementAndGet();
+                a.ergebnis.completeExceptionally(e);
+            }
+        }
+    }
+
+    /**
+     * Verbindungsabbruch, Zeitueberschreitung, Deadlock u.ae.: ein
+     * {@link SQLTransientException} oder {@link SQLRecoverableException} in
+     * der Ursachenkette. Alle anderen Fehler treten bei einer Wiederholung
+     * erneut auf.
+     */
+    static boolean istVoruebergehend(Throwable e) {
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (t instanceof SQLTransientException || t instanceof SQLRecoverableException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Einstellungen der Pipeline. Standard: 4 Worker mit je 1000 Plaetzen,
+     * bis zu 100 Erfassungen je Batch, Ablehnung bei voller Warteschlange,
+     * Plattform-Threads. Unter Java 21 koennen ueber {@link #threads} virtuelle
+     * Threads verwendet werden.
+     */
+    public static final class Konfiguration {
+        private int worker = 4;
+        private int kapazitaet = 1000;
+        private int maxBatch = 100;
+        private Ueberlauf ueberlauf = Ueberlauf.ABLEHNEN;
+        private long wartezeitMillis = 1000;
+        private ThreadFactory threads = Executors.defaultThreadFactory();
+        private Erfassungsjournal journal;
+
+        public Konfiguration worker(int worker) {
+            this.worker = positiv("worker", worker);
+            return this;
+        }
+
+        /** Plaetze je Worker-Warteschlange */
+        public Konfiguration kapazitaet(int kapazitaet) {
+            this.kapazitaet = positiv("kapazitaet", kapazitaet);
+            return this;
+        }
+
+        public Konfiguration maxBatch(int maxBatch) {
+            this.maxBatch = positiv("maxBatch", maxBatch);
+            return this;
+        }
+
+        /** Ueberlaufverhalten; die Wartezeit gilt nur fuer BLOCKIEREN */
+        public Konfiguration ueberlauf(Ueberlauf ueberlauf, long wartezeitMillis) {
+            this.ueberlauf = ueberlauf;
+            this.wartezeitMillis = wartezeitMillis;
+            return this;
+        }
+
+        public Konfiguration threads(ThreadFactory threads) {
+            this.threads = threads;
+            return this;
+        }
+
+        /** Journal der angenommenen Erfassungen, siehe Klassenbeschreibung */
+        public Konfiguration journal(Erfassungsjournal journal) {
+            this.journal = journal;
+            return this;
+        }
+
+        private static int positiv(String name, int wert) {
+            if (wert < 1) {
+                throw new IllegalArgumentException(name + " muss positiv sein: " + wert);
+            }
+            return wert;
+        }
+
+        @Override
+        public String toString() {
+            return "worker=" + worker + ", kapazitaet=" + kapazitaet + ", maxBatch=" + maxBatch
+                    + ", ueberlauf=" + ueberlauf + "/" + wartezeitMillis + "ms" + (journal == null ? "" : ", " + journal);
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package de.htwberlin.dbtech.aufgaben.ue03.ingest;
+
+import de.htwberlin.dbtech.aufgaben.ue03.Erfassung;
+import de.htwberlin.dbtech.aufgaben.ue03.IMautService;
+import de.htwberlin.dbtech.aufgaben.ue03.Mautergebnis;
+import de.htwberlin.dbtech.exceptions.AlreadyCruisedException;
+
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Die Klasse enthaelt die Testfaelle fuer die Erfassungspipeline mit einem
+ * Service, der Doppelbefahrungen im Speicher erkennt.
+ */
+public class ErfassungsPipelineTest {
+
+    /** schliesst je (Abschnitt, Kennzeichen) genau eine Buchung */
+    static class BuchungsService implements IMautService {
+        static final Set<String> GESCHLOSSEN = Collections.synchronizedSet(new HashSet<>());
+        final List<Erfassung> reihenfolge = Collections.synchronizedList(new ArrayList<>());
+
+        @Override
+        public void berechneMaut(int mautAbschnitt, int achszahl, String kennzeichen) {
+            reihenfolge.add(new Erfassung(mautAbschnitt, achszahl, kennzeichen));
+            if (!GESCHLOSSEN.add(mautAbschnitt + "|" + kennzeichen)) {
+                throw new AlreadyCruisedException("Strecke wurde bereits befahren");
+            }
+        }
+
+        @Override
+        public void setConnection(Connection connection) {
+        }
+    }
+
+    @org.junit.Test
+    public void testReihenfolgeJeKennzeichen() throws Exception {
+        BuchungsService.GESCHLOSSEN.clear();
+        List<CompletableFuture<Mautergebnis>> ergebnisse = new ArrayList<>();
+        try (ErfassungsPipeline p = new ErfassungsPipeline(BuchungsService::new,
+                new ErfassungsPipeline.Konfiguration().worker(4).maxBatch(7))) {
+            for (int i = 0; i < 1000; i++) {
+                ergebnisse.add(p.einreichen(new Erfassung(i % 10, 5, "K " + (i % 37))));
+            }
+        }
+        // die erste Erfassung je (Abschnitt, Kennzeichen) ist immer die berechnete
+        Set<String> gesehen = new HashSet<>();
+        for (int i = 0; i < 1000; i++) {
+            Mautergebnis erwartet = gesehen.add((i % 10) + "|K " + (i % 37))
+                    ? Mautergebnis.BERECHNET : Mautergebnis.BEREITS_BEFAHREN;
+            assertEquals(erwartet, ergebnisse.get(i).get(1, TimeUnit.SECONDS));
+        }
+    }
+
+    @org.junit.Test
+    public void testAblehnungBeiVollerWarteschlange() throws Exception {
+        CountDownLatch frei = new CountDownLatch(1);
+        IMautService blockiert = new BuchungsService() {
+            @Override
+            public void berechneMaut(int mautAbschnitt, int achszahl, String kennzeichen) {
+                try {
+                    frei.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        try (ErfassungsPipeline p = new ErfassungsPipeline(() -> blockiert,
+                new ErfassungsPipeline.Konfiguration().worker(1).kapazitaet(2).maxBatch(1))) {
+            p.einreichen(new Erfassung(1, 5, "A"));
+            // der Worker haelt die erste Erfassung, danach ist Platz fuer zwei
+            long ende = System.currentTimeMillis() + 1000;
+            while (p.getWarteschlangenTiefe() > 0 && System.currentTimeMillis() < ende) {
+                Thread.sleep(5);
+            }
+            p.einreichen(new Erfassung(1, 5, "A"));
+            p.einreichen(new Erfassung(1, 5, "A"));
+            try {
+                p.einreichen(new Erfassung(1, 5, "A"));
+                fail("Warteschlange sollte voll sein");
+            } catch (RejectedExecutionException e) {
+                assertEquals(1, p.getAbgelehnt());
+                assertEquals(2, p.getWarteschlangenTiefe());
+            }
+            frei.countDown();
+        }
+    }
+
+    @org.junit.Test
+    public void testMetriken() throws Exception {
+        BuchungsService.GESCHLOSSEN.clear();
+        ErfassungsPipeline p = new ErfassungsPipeline(BuchungsService::new, new ErfassungsPipeline.Konfiguration());
+        p.einreichen(new Erfassung(1, 5, "B")).get(1, TimeUnit.SECONDS);
+        p.close();
+        assertEquals(1, p.getAngenommen());
+        assertEquals(1, p.getVerarbeitet());
+        assertEquals(0, p.getFehler());
+        assertTrue(p.getMaxLatenzMicros() >= p.getMittlereLatenzMicros());
+        try {
+            p.einreichen(new Erfassung(1, 5, "B"));
+            fail("Pipeline ist geschlossen");
+        } catch (RejectedExecutionException e) {
+            // erwartet
+        }
+    }
+
+    /** eine fehlerhafte Erfassung laesst die uebrigen ihres Batches nicht scheitern */
+    @org.junit.Test
+    public void testEinzelverarbeitungNachFehlschlag() throws Exception {
+        CountDownLatch frei = new CountDownLatch(1);
+        IMautService service = new IMautService() {
+            @Override
+            public void berechneMaut(int mautAbschnitt, int achszahl, String kennzeichen) {
+                if (mautAbschnitt == 0) {
+                    try {
+                        frei.await(5, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                if (mautAbschnitt == 2) {
+                    throw new IllegalStateException("fehlerhafte Erfassung");
+                }
+            }
+
+            @Override
+            public void setConnection(Connection connection) {
+            }
+        };
+        try (ErfassungsPipeline p = new ErfassungsPipeline(() -> service,
+                new ErfassungsPipeline.Konfiguration().worker(1))) {
+            // die erste Erfassung haelt den Worker auf, die uebrigen bilden einen Batch
+            CompletableFuture<Mautergebnis> erste = p.einreichen(new Erfassung(0, 5, "B A 0"));
+            List<CompletableFuture<Mautergebnis>> f = new ArrayList<>();
+            for (int i = 1; i <= 3; i++) {
+                f.add(p.einreichen(new Erfassung(i, 5, "B A " + i)));
+            }
+            frei.countDown();
+            assertEquals(Mautergebnis.BERECHNET, erste.get(5, TimeUnit.SECONDS));
+            assertEquals(Mautergebnis.BERECHNET, f.get(0).get(5, TimeUnit.SECONDS));
+            assertEquals(Mautergebnis.BERECHNET, f.get(2).get(5, TimeUnit.SECONDS));
+            try {
+                f.get(1).get(5, TimeUnit.SECONDS);
+                fail("ExecutionException erwartet");
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof IllegalStateException);
+            }
+            assertEquals(1, p.getFehler());
+        }
+    }
+}
@@ -0,0 +1,466 @@
+package de.htwberlin.dbtech.aufgaben.ue03.ingest;
+
+import de.htwberlin.dbtech.aufgaben.ue03.Erfassung;
+import de.htwberlin.dbtech.exceptions.DataException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Journal der angenommenen Erfassungen in speicherabgebildeten Dateien. Eine
+ * Erfassung wird vor der Verarbeitung angehaengt und nach erfolgreicher
+ * Verarbeitung als erledigt markiert; was beim Start nicht erledigt ist,
+ * liefert {@link #offene()} zur erneuten Verarbeitung.
+ *
+ * Das Journal besteht aus Segmenten fester Groesse
+ * ({@link Konfiguration#segmentGroesse(int)}), benannt nach der Position
+ * ihres ersten Eintrags. Ein Eintrag ist
+ * {@code [laenge int][crc32 int][status byte][zeit long][abschnitt int]
+ * [achszahl int][kennzeichenlaenge short][kennzeichen UTF-8]}; die Laenge
+ * wird zuletzt geschrieben, ein abgebrochener oder (nach einem
+ * Systemabsturz) unvollstaendig geschriebener Eintrag beendet das Journal.
+ * Der Status ist nicht durch die Pruefsumme gedeckt und wird an Ort und
+ * Stelle gesetzt.
+ *
+ * Die Datei checkpoint haelt die Position, bis zu der alle Eintraege
+ * erledigt sind. Sie wird nur zum schnelleren Start und zum Loeschen alter
+ * Segmente gebraucht und darf veraltet sein.
+ *
+ * Nach einem Absturz des Prozesses liegen angehaengte Eintraege im
+ * Seitencache des Betriebssystems; gegen einen Absturz des Systems hilft
+ * {@link Konfiguration#synchron(boolean)} oder regelmaessig {@link #sync()}.
+ */
+public final class Erfassungsjournal implements AutoCloseable {
+    private static final Logger L = LoggerFactory.getLogger(Erfassungsjournal.class);
+
+    private static final String ENDUNG = ".journal";
+    private static final String CHECKPOINT = "checkpoint";
+    private static final long CHECKPOINT_PRUEFUNG = 0x4A6F75726E616CL;
+    /** laenge, crc, status */
+    static final int KOPF = 9;
+    private static final int OFFEN = 0;
+    private static final int ERLEDIGT = 1;
+    /** Eintraege, nach denen der Checkpoint geschrieben wird */
+    private static final int CHECKPOINT_INTERVALL = 10_000;
+
+    private final Path verzeichnis;
+    private final Konfiguration konfiguration;
+    private final TreeMap<Long, Segment> segmente = new TreeMap<>();
+    private final CRC32 crc = new CRC32();
+    private byte[] puffer = new byte[256];
+
+    private Segment aktuell;
+    /** alle Eintraege vor dieser Position sind erledigt */
+    private long checkpoint;
+    private long gespeicherterCheckpoint;
+    /** erledigte Eintraege seit dem letzten gespeicherten Checkpoint */
+    private int seitCheckpoint;
+    private boolean geschlossen;
+
+    private Erfassungsjournal(Path verzeichnis, Konfiguration konfiguration) {
+        this.verzeichnis = verzeichnis;
+        this.konfiguration = konfiguration;
+    }
+
+    /**
+     * Oeffnet das Journal im Verzeichnis oder legt es an.
+     */
+    public static Erfassungsjournal oeffne(Path verzeichnis, Konfiguration konfiguration) {
+        Erfassungsjournal j = new Erfassungsjournal(verzeichnis, konfiguration);
+        try {
+            Files.createDirectories(verzeichnis);
+            j.lade();
+        } catch (IOException e) {
+            throw new DataException("Journal " + verzeichnis + " nicht lesbar: " + e.getMessage(), e);
+        }
+        return j;
+    }
+
+    public static Erfassungsjournal oeffne(Path verzeichnis) {
+        return oeffne(verzeichnis, new Konfiguration());
+    }
+
+    private void lade() throws IOException {
+        try (Stream<Path> inhalt = Files.list(verzeichnis)) {
+            for (Path d : (Iterable<Path>) inhalt::iterator) {
+                String n = d.getFileName().toString();
+                if (n.endsWith(ENDUNG)) {
+                    long basis = Long.parseLong(n.substring(0, n.length() - ENDUNG.length()));
+                    segmente.put(basis, Segment.oeffne(d, basis));
+                }
+            }
+        }
+        checkpoint = leseCheckpoint();
+        if (segmente.isEmpty()) {
+            aktuell = neuesSegment(checkpoint);
+        } else {
+            // Schreibposition hinter dem letzten vollstaendigen Eintrag
+            aktuell = segmente.lastEntry().getValue();
+            int p = 0;
+            while (p < aktuell.groesse && gueltig(aktuell, p)) {
+                p += KOPF + aktuell.daten.getInt(p);
+            }
+            aktuell.ende = p;
+            // einen unvollstaendigen Eintrag ueberschreibbar machen
+            for (int i = p; i < Math.min(aktuell.groesse, p + KOPF); i++) {
+                aktuell.daten.put(i, (byte) 0);
+            }
+            checkpoint = Math.max(checkpoint, segmente.firstKey());
+        }
+        gespeicherterCheckpoint = checkpoint;
+        rueckeVor();
+        L.info("Journal {}: {} Segmente, Checkpoint {}, Ende {}", verzeichnis, segmente.size(), checkpoint,
+                getEnde());
+    }
+
+    /**
+     * Haengt eine Erfassung an und liefert die Position ihres Eintrags.
+     *
+     * @param zeitMillis Zeitpunkt der Erfassung
+     */
+    public synchronized long anhaengen(Erfassung erfassung, long zeitMillis) {
+        if (geschlossen) {
+            throw new IllegalStateException("Journal ist geschlossen");
+        }
+        byte[] kennzeichen = erfassung.getKennzeichen() == null ? null
+                : erfassung.getKennzeichen().getBytes(StandardCharsets.UTF_8);
+        int laenge = 8 + 4 + 4 + 2 + (kennzeichen == null ? 0 : kennzeichen.length);
+        if (kennzeichen != null && kennzeichen.length > Short.MAX_VALUE || KOPF + laenge > konfiguration.segmentGroesse) {
+            throw new IllegalArgumentException("Erfassung zu gross fuer das Journal: " + erfassung);
+        }
+        if (laenge > puffer.length) {
+            puffer = new byte[Math.max(laenge, 2 * puffer.length)];
+        }
+        ByteBuffer b = ByteBuffer.wrap(puffer);
+        b.putLong(zeitMillis).putInt(erfassung.getMautAbschnitt()).putInt(erfassung.getAchszahl());
+        if (kennzeichen == null) {
+            b.putShort((short) -1);
+        } else {
+            b.putShort((short) kennzeichen.length).put(kennzeichen);
+        }
+        crc.reset();
+        crc.update(puffer, 0, laenge);
+
+        if (aktuell.ende + KOPF + laenge > aktuell.groesse) {
+            rollen();
+        }
+        MappedByteBuffer d = aktuell.daten;
+        int p = aktuell.ende;
+        d.put(p + KOPF, puffer, 0, laenge);
+        d.put(p + 8, (byte) OFFEN);
+        d.putInt(p + 4, (int) crc.getValue());
+        d.putInt(p, laenge);
+        aktuell.ende = p + KOPF + laenge;
+        if (konfiguration.synchron) {
+            d.force(p, KOPF + laenge);
+        }
+        return aktuell.basis + p;
+    }
+
+    private void rollen() {
+        aktuell.daten.force();
+        aktuell = neuesSegment(aktuell.basis + aktuell.ende);
+        L.debug("Journal {}: neues Segment ab {}", verzeichnis, aktuell.basis);
+    }
+
+    private Segment neuesSegment(long basis) {
+        Path datei = verzeichnis.resolve(String.format("%020d%s", basis, ENDUNG));
+        try {
+            Segment s = Segment.anlegen(datei, basis, konfiguration.segmentGroesse);
+            segmente.put(basis, s);
+            return s;
+        } catch (IOException e) {
+            throw new DataException("Segment " + datei + " nicht angelegt: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Markiert den Eintrag an der Position als erledigt.
+     */
+    public synchronized void erledigt(long position) {
+        Map.Entry<Long, Segment> e = segmente.floorEntry(position);
+        if (e == null) {
+            // Segment liegt vor dem Checkpoint und ist schon geloescht
+            return;
+        }
+        e.getValue().daten.put((int) (position - e.getKey()) + 8, (byte) ERLEDIGT);
+        rueckeVor();
+    }
+
+    /** schiebt den Checkpoint ueber alle erledigten Eintraege */
+    private void rueckeVor() {
+        int eintraege = 0;
+        while (true) {
+            Map.Entry<Long, Segment> e = segmente.floorEntry(checkpoint);
+            Segment s = e.getValue();
+            int p = (int) (checkpoint - s.basis);
+            if (s == aktuell && p >= s.ende) {
+                break;
+            }
+            if (p >= s.groesse - KOPF || s.daten.getInt(p) == 0) {
+                // Ende des Segments
+                Long naechstes = segmente.higherKey(s.basis);
+                if (naechstes == null) {
+                    break;
+                }
+                checkpoint = naechstes;
+                continue;
+            }
+            if (s.daten.get(p + 8) != ERLEDIGT) {
+                break;
+            }
+            checkpoint += KOPF + s.daten.getInt(p);
+            eintraege++;
+        }
+        seitCheckpoint += eintraege;
+        // sofort, wenn dadurch ein Segment geloescht werden kann
+        if (checkpoint > gespeicherterCheckpoint && (seitCheckpoint >= CHECKPOINT_INTERVALL
+                || segmente.floorKey(checkpoint) > segmente.firstKey())) {
+            speichereCheckpoint();
+        }
+    }
+
+    /** schreibt den Checkpoint und loescht die Segmente davor */
+    private void speichereCheckpoint() {
+        seitCheckpoint = 0;
+        ByteBuffer b = ByteBuffer.allocate(16).putLong(checkpoint).putLong(checkpoint ^ CHECKPOINT_PRUEFUNG);
+        Path neu = verzeichnis.resolve(CHECKPOINT + ".neu");
+        try {
+            Files.write(neu, b.array());
+            Files.move(neu, verzeichnis.resolve(CHECKPOINT), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+            gespeicherterCheckpoint = checkpoint;
+            while (segmente.size() > 1 && segmente.higherKey(segmente.firstKey()) <= checkpoint) {
+                Segment alt = segmente.pollFirstEntry().getValue();
+                Files.deleteIfExists(alt.datei);
+                L.debug("Journal {}: Segment {} geloescht", verzeichnis, alt.datei.getFileName());
+            }
+        } catch (IOException e) {
+            // der Checkpoint ist nur eine Abkuerzung, das Journal bleibt korrekt
+            L.warn("Checkpoint in {} nicht geschrieben: {}", verzeichnis, e.getMessage());
+        }
+    }
+
+    private long leseCheckpoint() throws IOException {
+        Path datei = verzeichnis.resolve(CHECKPOINT);
+        if (!Files.exists(datei)) {
+            return 0;
+        }
+        ByteBuffer b = ByteBuffer.wrap(Files.readAllBytes(datei));
+        if (b.remaining() == 16) {
+            long wert = b.getLong();
+            if ((wert ^ CHECKPOINT_PRUEFUNG) == b.getLong()) {
+                return wert;
+            }
+        }
+        L.warn("Checkpoint in {} ungueltig, Journal wird vollstaendig gelesen", verzeichnis);
+        return 0;
+    }
+
+    private boolean gueltig(Segment s, int p) {
+        if (p > s.groesse - KOPF) {
+            return false;
+        }
+        int laenge = s.daten.getInt(p);
+        if (laenge < 18 || laenge > s.groesse - KOPF - p) {
+            return false;
+        }
+        byte[] b = new byte[laenge];
+        s.daten.get(p + KOPF, b);
+        crc.reset();
+        crc.update(b);
+        return (int) crc.getValue() == s.daten.getInt(p + 4);
+    }
+
+    /**
+     * Liefert alle nicht erledigten Eintraege ab dem Checkpoint in
+     * Journalreihenfolge. Das Lesen endet am ersten ungueltigen Eintrag.
+     */
+    public synchronized List<Eintrag> offene() {
+        List<Eintrag> result = new ArrayList<>();
+        for (Segment s : segmente.tailMap(segmente.floorKey(checkpoint), true).values()) {
+            int p = s.basis < checkpoint ? (int) (checkpoint - s.basis) : 0;
+            int ende = s == aktuell ? s.ende : s.groesse;
+            while (p < ende && gueltig(s, p)) {
+                int laenge = s.daten.getInt(p);
+                if (s.daten.get(p + 8) != ERLEDIGT) {
+                    result.add(lies(s, p));
+                }
+                p += KOPF + laenge;
+            }
+            if (s != aktuell && p < s.groesse - KOPF && s.daten.getInt(p) != 0) {
+                L.warn("Journal {}: ungueltiger Eintrag bei {}, Rest des Segments uebersprungen", verzeichnis,
+                        s.basis + p);
+            }
+        }
+        return result;
+    }
+
+    private static Eintrag lies(Segment s, int p) {
+        ByteBuffer d = s.daten.duplicate();
+        d.position(p + KOPF);
+        long zeit = d.getLong();
+        int abschnitt = d.getInt();
+        int achszahl = d.getInt();
+        short n = d.getShort();
+        String kennzeichen = null;
+        if (n >= 0) {
+            byte[] k = new byte[n];
+            d.get(k);
+            kennzeichen = new String(k, StandardCharsets.UTF_8);
+        }
+        return new Eintrag(s.basis + p, zeit, new Erfassung(abschnitt, achszahl, kennzeichen));
+    }
+
+    /**
+     * Schreibt alle Eintraege und Markierungen auf das Speichermedium.
+     */
+    public synchronized void sync() {
+        for (Segment s : segmente.values()) {
+            s.daten.force();
+        }
+    }
+
+    /** alle Eintraege vor dieser Position sind erledigt */
+    public synchronized long getCheckpoint() {
+        return checkpoint;
+    }
+
+    /** Position hinter dem letzten Eintrag */
+    public synchronized long getEnde() {
+        return aktuell.basis + aktuell.ende;
+    }
+
+    public synchronized int getSegmente() {
+        return segmente.size();
+    }
+
+    @Override
+    public synchronized void close() {
+        if (geschlossen) {
+            return;
+        }
+        geschlossen = true;
+        sync();
+        speichereCheckpoint();
+        for (Segment s : segmente.values()) {
+            try {
+                s.kanal.close();
+            } catch (IOException e) {
+                L.warn("Segment {} nicht geschlossen: {}", s.datei, e.getMessage());
+            }
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "Erfassungsjournal[" + verzeichnis + ", segmente=" + segmente.size() + ", checkpoint=" + checkpoint
+                + ", ende=" + getEnde() + "]";
+    }
+
+    private static final class Segment {
+        final Path datei;
+        final long basis;
+        final FileChannel kanal;
+        final MappedByteBuffer daten;
+        final int groesse;
+        /** Schreibposition, nur fuer das aktuelle Segment */
+        int ende;
+
+        private Segment(Path datei, long basis, FileChannel kanal, int groesse) throws IOException {
+            this.datei = datei;
+            this.basis = basis;
+            this.kanal = kanal;
+            this.groesse = groesse;
+            this.daten = kanal.map(FileChannel.MapMode.READ_WRITE, 0, groesse);
+        }
+
+        static Segment oeffne(Path datei, long basis) throws IOException {
+            FileChannel k = FileChannel.open(datei, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            return new Segment(datei, basis, k, (int) k.size());
+        }
+
+        static Segment anlegen(Path datei, long basis, int groesse) throws IOException {
+            FileChannel k = FileChannel.open(datei, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+            return new Segment(datei, basis, k, groesse);
+        }
+    }
+
+    /**
+     * Ein nicht erledigter Eintrag.
+     */
+    public static final class Eintrag {
+        private final long position;
+        private final long zeitMillis;
+        private final Erfassung erfassung;
+
+        Eintrag(long position, long zeitMillis, Erfassung erfassung) {
+            this.position = position;
+            this.zeitMillis = zeitMillis;
+            this.erfassung = erfassung;
+        }
+
+        /** fuer {@link #erledigt(long)} */
+        public long getPosition() {
+            return position;
+        }
+
+        public long getZeitMillis() {
+            return zeitMillis;
+        }
+
+        public Erfassung getErfassung() {
+            return erfassung;
+        }
+
+        @Override
+        public String toString() {
+            return "Eintrag[" + position + ", " + zeitMillis + ", " + erfassung + "]";
+        }
+    }
+
+    /**
+     * Einstellungen des Journals. Standard: Segmente von 64 MiB, kein
+     * force() je Eintrag.
+     */
+    public static final class Konfiguration {
+        private int segmentGroesse = 64 << 20;
+        private boolean synchron;
+
+        /** Groesse neuer Segmente in Byte */
+        public Konfiguration segmentGroesse(int segmentGroesse) {
+            if (segmentGroesse < 64) {
+                throw new IllegalArgumentException("segmentGroesse muss mindestens 64 sein: " + segmentGroesse);
+            }
+            this.segmentGroesse = segmentGroesse;
+            return this;
+        }
+
+        /** jeden Eintrag vor der Rueckkehr auf das Speichermedium schreiben */
+        public Konfiguration synchron(boolean synchron) {
+            this.synchron = synchron;
+            return this;
+        }
+
+        @Override
+        public String toString() {
+            return "segmentGroesse=" + segmentGroesse + ", synchron=" + synchron;
+        }
+    }
+}
@@ -0,0 +1,256 @@
+package de.htwberlin.dbtech.aufgaben.ue03.ingest;
+
+import de.htwberlin.dbtech.aufgaben.ue03.Erfassung;
+import de.htwberlin.dbtech.aufgaben.ue03.IMautService;
+import de.htwberlin.dbtech.aufgaben.ue03.Mautergebnis;
+import de.htwberlin.dbtech.exceptions.DataException;
+import org.junit.Rule;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.sql.SQLRecoverableException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Die Klasse enthaelt die Testfaelle fuer das Journal der Erfassungen und
+ * seine Verwendung in der Erfassungspipeline.
+ */
+public class ErfassungsjournalTest {
+
+    @Rule
+    public TemporaryFolder ordner = new TemporaryFolder();
+
+    @org.junit.Test
+    public void testOffeneNachNeustart() throws Exception {
+        Path v = ordner.getRoot().toPath();
+        List<Long> positionen = new ArrayList<>();
+        try (Erfassungsjournal j = Erfassungsjournal.oeffne(v)) {
+            for (int i = 0; i < 5; i++) {
+                positionen.add(j.anhaengen(new Erfassung(1200 + i, 5, "B AB " + i), 1000L + i));
+            }
+            positionen.add(j.anhaengen(new Erfassung(1300, 4, null), 2000L));
+            j.erledigt(positionen.get(0));
+            j.erledigt(positionen.get(2));
+            assertEquals((long) positionen.get(1), j.getCheckpoint());
+        }
+        try (Erfassungsjournal j = Erfassungsjournal.oeffne(v)) {
+            List<Erfassungsjournal.Eintrag> offen = j.offene();
+            assertEquals(4, offen.size());
+            assertEquals(1201, offen.get(0).getErfassung().getMautAbschnitt());
+            assertEquals("B AB 1", offen.get(0).getErfassung().getKennzeichen());
+            assertEquals(1001L, offen.get(0).getZeitMillis());
+            assertEquals(1203, offen.get(1).getErfassung().getMautAbschnitt());
+            assertNull(offen.get(3).getErfassung().getKennzeichen());
+            assertEquals(4, offen.get(3).getErfassung().getAchszahl());
+
+            // neue Eintraege hinter den alten
+            long neu = j.anhaengen(new Erfassung(1400, 3, "M X 1"), 3000L);
+            assertTrue(neu > offen.get(3).getPosition());
+            for (Erfassungsjournal.Eintrag e : offen) {
+                j.erledigt(e.getPosition());
+            }
+            assertEquals(neu, j.getCheckpoint());
+            assertEquals(1, j.offene().size());
+        }
+    }
+
+    @org.junit.Test
+    public void testSegmenteRollenUndLoeschen() throws Exception {
+        Path v = ordner.getRoot().toPath();
+        try (Erfassungsjournal j = Erfassungsjournal.oeffne(v,
+                new Erfassungsjournal.Konfiguration().segmentGroesse(256))) {
+            List<Long> positionen = new ArrayList<>();
+            for (int i = 0; i < 100; i++) {
+                positionen.add(j.anhaengen(new Erfassung(i, 5, "HH " + i), i));
+            }
+            assertTrue(j.getSegmente() > 10);
+            assertEquals(100, j.offene().size());
+            // bis auf den letzten Eintrag erledigt: nur das letzte Segment bleibt
+            for (int i = 0; i < 99; i++) {
+                j.erledigt(positionen.get(i));
+            }
+            assertEquals((long) positionen.get(99), j.getCheckpoint());
+            assertEquals(1, j.getSegmente());
+            assertEquals(1, segmentdateien(v));
+        }
+        try (Erfassungsjournal j = Erfassungsjournal.oeffne(v)) {
+            List<Erfassungsjournal.Eintrag> offen = j.offene();
+            assertEquals(1, offen.size());
+            assertEquals(99, offen.get(0).getErfassung().getMautAbschnitt());
+        }
+    }
+
+    /** ein nicht vollstaendig geschriebener Eintrag am Ende wird verworfen */
+    @org.junit.Test
+    public void testBeschaedigtesEnde() throws Exception {
+        Path v = ordner.getRoot().toPath();
+        long letzter;
+        try (Erfassungsjournal j = Erfassungsjournal.oeffne(v)) {
+            j.anhaengen(new Erfassung(1, 5, "B A 1"), 1);
+            letzter = j.anhaengen(new Erfassung(2, 5, "B A 2"), 2);
+        }
+        Path segment;
+        try (Stream<Path> s = Files.list(v)) {
+            segment = s.filter(d -> d.toString().endsWith(".journal")).findFirst().get();
+        }
+        try (RandomAccessFile f = new RandomAccessFile(segment.toFile(), "rw")) {
+            f.seek(letzter + Erfassungsjournal.KOPF + 3);
+            f.write(0x7f);
+        }
+        try (Erfassungsjournal j = Erfassungsjournal.oeffne(v)) {
+            assertEquals(1, j.offene().size());
+            assertEquals(letzter, j.getEnde());
+            long neu = j.anhaengen(new Erfassung(3, 5, "B A 3"), 3);
+            assertEquals(letzter, neu);
+            assertEquals(2, j.offene().size());
+        }
+    }
+
+    /**
+     * voruebergehende Datenbankfehler werden mit neuem Service wiederholt,
+     * offene Erfassungen beim Start erneut eingereicht
+     */
+    @org.junit.Test
+    public void testPipelineMitJournal() throws Exception {
+        Path v = ordner.getRoot().toPath();
+        List<Erfassung> verarbeitet = Collections.synchronizedList(new ArrayList<>());
+        AtomicInteger fehler = new AtomicInteger(2);
+        AtomicInteger geholt = new AtomicInteger();
+        IMautService stockend = new IMautService() {
+            @Override
+            public void berechneMaut(int mautAbschnitt, int achszahl, String kennzeichen) {
+                if (fehler.getAndDecrement() > 0) {
+                    throw new DataException(new SQLRecoverableException("Verbindung verloren"));
+                }
+                verarbeitet.add(new Erfassung(mautAbschnitt, achszahl, kennzeichen));
+            }
+
+            @Override
+            public void setConnection(Connection connection) {
+            }
+        };
+        try (Erfassungsjournal j = Erfassungsjournal.oeffne(v)) {
+            CompletableFuture<Mautergebnis> f;
+            try (ErfassungsPipeline p = new ErfassungsPipeline(() -> {
+                geholt.incrementAndGet();
+                return stockend;
+            }, new ErfassungsPipeline.Konfiguration().worker(1).journal(j))) {
+                f = p.einreichen(new Erfassung(1, 5, "B A 1"));
+                assertEquals(Mautergebnis.BERECHNET, f.get(10, TimeUnit.SECONDS));
+            }
+            assertEquals(1, verarbeitet.size());
+            assertEquals(3, geholt.get());
+            assertEquals(0, j.offene().size());
+
+            // eine angenommene, aber nicht verarbeitete Erfassung
+            j.anhaengen(new Erfassung(2, 5, "B A 2"), 0);
+        }
+        try (Erfassungsjournal j = Erfassungsjournal.oeffne(v)) {
+            try (ErfassungsPipeline p = new ErfassungsPipeline(() -> stockend,
+                    new ErfassungsPipeline.Konfiguration().worker(1).journal(j))) {
+                assertEquals(1, p.getWiederholt());
+            }
+            assertEquals(2, verarbeitet.size());
+            assertEquals(2, verarbeitet.get(1).getMautAbschnitt());
+            assertEquals(0, j.offene().size());
+        }
+    }
+
+    /** andere Fehler werden nicht wiederholt, die Erfassung kommt in Quarantaene */
+    @org.junit.Test
+    public void testPipelineOhneWiederholungBeiProgrammfehler() throws Exception {
+        Path v = ordner.getRoot().toPath();
+        AtomicInteger aufrufe = new AtomicInteger();
+        IMautService fehlerhaft = new IMautService() {
+            @Override
+            public void berechneMaut(int mautAbschnitt, int achszahl, String kennzeichen) {
+                aufrufe.incrementAndGet();
+                throw new IllegalStateException("Programmfehler");
+            }
+
+            @Override
+            public void setConnection(Connection connection) {
+            }
+        };
+        try (Erfassungsjournal j = Erfassungsjournal.oeffne(v)) {
+            try (ErfassungsPipeline p = new ErfassungsPipeline(() -> fehlerhaft,
+                    new ErfassungsPipeline.Konfiguration().worker(1).journal(j))) {
+                CompletableFuture<Mautergebnis> f = p.einreichen(new Erfassung(1, 5, "B A 1"));
+                try {
+                    f.get(10, TimeUnit.SECONDS);
+                    fail("ExecutionException erwartet");
+                } catch (ExecutionException e) {
+                    assertTrue(e.getCause() instanceof IllegalStateException);
+                }
+                assertEquals(1, p.getQuarantaene());
+                assertEquals(1, p.getFehler());
+            }
+            assertEquals(1, aufrufe.get());
+            assertEquals(0, j.offene().size());
+        }
+    }
+
+    /** nur die Erfassung mit dem bleibenden Datenbankfehler kommt in Quarantaene */
+    @org.junit.Test
+    public void testPipelineIsoliertNurFehlerhafteErfassung() throws Exception {
+        Path v = ordner.getRoot().toPath();
+        AtomicInteger aufrufe = new AtomicInteger();
+        IMautService fehlerhaft = new IMautService() {
+            @Override
+            public void berechneMaut(int mautAbschnitt, int achszahl, String kennzeichen) {
+                aufrufe.incrementAndGet();
+                if (mautAbschnitt == 2) {
+                    throw new DataException(new SQLIntegrityConstraintViolationException("ORA-02291"));
+                }
+            }
+
+            @Override
+            public void setConnection(Connection connection) {
+            }
+        };
+        try (Erfassungsjournal j = Erfassungsjournal.oeffne(v)) {
+            List<CompletableFuture<Mautergebnis>> f = new ArrayList<>();
+            try (ErfassungsPipeline p = new ErfassungsPipeline(() -> fehlerhaft,
+                    new ErfassungsPipeline.Konfiguration().worker(1).journal(j))) {
+                for (int i = 1; i <= 3; i++) {
+                    f.add(p.einreichen(new Erfassung(i, 5, "B A " + i)));
+                }
+                assertEquals(Mautergebnis.BERECHNET, f.get(0).get(10, TimeUnit.SECONDS));
+                assertEquals(Mautergebnis.BERECHNET, f.get(2).get(10, TimeUnit.SECONDS));
+                try {
+                    f.get(1).get(10, TimeUnit.SECONDS);
+                    fail("ExecutionException erwartet");
+                } catch (ExecutionException e) {
+                    assertTrue(e.getCause() instanceof DataException);
+                }
+                assertEquals(1, p.getQuarantaene());
+                assertEquals(1, p.getFehler());
+            }
+            // keine Wiederholung ausser der Einzelverarbeitung
+            assertTrue(aufrufe.get() <= 6);
+            assertEquals(0, j.offene().size());
+        }
+    }
+
+    private static long segmentdateien(Path v) throws Exception {
+        try (Stream<Path> s = Files.list(v)) {
+            return s.filter(d -> d.toString().endsWith(".journal")).count();
+        }
+    }
+}
@@ -0,0 +1,458 @@
+package de.htwberlin.dbtech.aufgaben.ue03.ingest;
+
+import de.htwberlin.dbtech.aufgaben.ue03.Erfassung;
+import de.htwberlin.dbtech.aufgaben.ue03.IMautService;
+import de.htwberlin.dbtech.aufgaben.ue03.cache.AbschnittIndex;
+import de.htwberlin.dbtech.aufgaben.ue03.cache.AbschnittKatalog;
+import de.htwberlin.dbtech.aufgaben.ue03.ingest.ErfassungsPipeline.Ueberlauf;
+import de.htwberlin.dbtech.aufgaben.ue03.tdg.AktivesFahrzeug;
+import de.htwberlin.dbtech.utils.LongHashMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.LongFunction;
+
+/**
+ * Ordnet die GPS-Positionen der Fahrzeuggeraete den Abschnitten aus
+ * MAUTABSCHNITT zu und meldet jeden befahrenen Abschnitt als
+ * {@link Erfassung}, wie sie {@link IMautService#berechneMaut(int, int, String)}
+ * erwartet. Die Erfassungen koennen direkt an eine
+ * {@link ErfassungsPipeline} weitergereicht werden
+ * ({@code e -> pipeline.einreichen(e)}).
+ *
+ * Die Positionen werden ueber die FZG_ID einem Worker zugeordnet, jeder
+ * Worker haelt je Geraet nur den aktuellen Abschnitt, den bisher befahrenen
+ * Teil davon und die letzte Position. Die Zuordnung erfolgt ueber den
+ * {@link AbschnittIndex} ohne Datenbankzugriff; Kennzeichen und Achszahl
+ * werden einmal je Geraet erfragt.
+ *
+ * Ein Abschnitt gilt als befahren, sobald das Fahrzeug ihn wieder verlaesst
+ * und mindestens {@link Konfiguration#mindestAbdeckung(double)} seiner
+ * Laenge abgedeckt hat. Liegen zwei aufeinanderfolgende Positionen auf
+ * verschiedenen Abschnitten, wird der Weg dazwischen beiden zugerechnet,
+ * so dass auch bei seltenen Positionen kurze Abschnitte erkannt werden.
+ * Einzelne Positionen abseits (GPS-Ausreisser) werden uebergangen, nach
+ * einer Luecke von {@link Konfiguration#maxLueckeMillis(long)} beginnt die
+ * Zuordnung neu. Derselbe Abschnitt wird innerhalb einer Fahrt nicht
+ * zweimal nacheinander gemeldet. Positionen muessen je Geraet in zeitlicher Reihenfolge
+ * eintreffen, aeltere werden verworfen.
+ */
+public final class Kartenabgleich implements AutoCloseable {
+    private static final Logger L = LoggerFactory.getLogger(Kartenabgleich.class);
+
+    private final Konfiguration konfiguration;
+    private final AbschnittIndex index;
+    private final AbschnittKatalog katalog;
+    private final LongFunction<AktivesFahrzeug> fahrzeuge;
+    private final Consumer<Erfassung> ziel;
+    private final Worker[] worker;
+    private volatile boolean geschlossen;
+
+    private final AtomicLong angenommen = new AtomicLong();
+    private final AtomicLong abgelehnt = new AtomicLong();
+    private final AtomicLong verworfen = new AtomicLong();
+    private final AtomicLong erfassungen = new AtomicLong();
+    private final AtomicLong fehler = new AtomicLong();
+
+    /**
+     * Startet die Worker.
+     *
+     * @param fahrzeuge liefert zur FZG_ID das Fahrzeug oder null, falls das
+     *                  Geraet unbekannt ist; wird von den Workern aufgerufen
+     * @param ziel      erhaelt die Erfassungen, je Geraet in Fahrtreihenfolge;
+     *                  wird von den Workern aufgerufen
+     */
+    public Kartenabgleich(AbschnittIndex index, LongFunction<AktivesFahrzeug> fahrzeuge, Consumer<Erfassung> ziel,
+                          Konfiguration konfiguration) {
+        this.konfiguration = konfiguration;
+        this.index = index;
+        this.katalog = index.getKatalog();
+        this.fahrzeuge = fahrzeuge;
+        this.ziel = ziel;
+        this.worker = new Worker[konfiguration.worker];
+        for (int i = 0; i < worker.length; i++) {
+            worker[i] = new Worker(i);
+        }
+        for (Worker w : worker) {
+            w.thread = konfiguration.threads.newThread(w);
+            w.thread.setName("kartenabgleich-" + w.nummer);
+            w.thread.start();
+        }
+        L.info("Kartenabgleich gestartet: {}", konfiguration);
+    }
+
+    /**
+     * Nimmt eine Position an.
+     *
+     * @throws RejectedExecutionException falls die Warteschlange voll oder
+     *                                    der Abgleich geschlossen ist
+     */
+    public void einreichen(Ortung ortung) {
+        if (geschlossen) {
+            throw new RejectedExecutionException("Kartenabgleich ist geschlossen");
+        }
+        Worker w = worker[Math.floorMod(Long.hashCode(ortung.getFzgId()), worker.length)];
+        boolean ok;
+        try {
+            ok = konfiguration.ueberlauf == Ueberlauf.ABLEHNEN
+                    ? w.warteschlange.offer(ortung)
+                    : w.warteschlange.offer(ortung, konfiguration.wartezeitMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            ok = false;
+        }
+        if (!ok) {
+            abgelehnt.incrementAndGet();
+            throw new RejectedExecutionException("Warteschlange von Worker " + w.nummer + " ist voll");
+        }
+        angenommen.incrementAndGet();
+    }
+
+    /**
+     * Nimmt keine Positionen mehr an, verarbeitet die wartenden, meldet die
+     * noch offenen Abschnitte und wartet auf das Ende der Worker.
+     */
+    @Override
+    public void close() {
+        geschlossen = true;
+        for (Worker w : worker) {
+            try {
+                w.thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            abgelehnt.addAndGet(w.warteschlange.size());
+            w.warteschlange.clear();
+        }
+        L.info("Kartenabgleich beendet: {}", this);
+    }
+
+    public long getAngenommen() {
+        return angenommen.get();
+    }
+
+    /** abgelehnte Positionen wegen voller Warteschlange */
+    public long getAbgelehnt() {
+        return abgelehnt.get();
+    }
+
+    /** Positionen unbekannter Geraete oder ausserhalb der Reihenfolge */
+    public long getVerworfen() {
+        return verworfen.get();
+    }
+
+    /** gemeldete Erfassungen */
+    public long getErfassungen() {
+        return erfassungen.get();
+    }
+
+    /** Erfassungen, deren Uebergabe mit einer Exception endete */
+    public long getFehler() {
+        return fehler.get();
+    }
+
+    @Override
+    public String toString() {
+        return "Kartenabgleich[angenommen=" + getAngenommen() + ", abgelehnt=" + getAbgelehnt()
+                + ", verworfen=" + getVerworfen() + ", erfassungen=" + getErfassungen() + ", fehler=" + getFehler()
+                + "]";
+    }
+
+    /** Stand eines Geraets */
+    private static final class Zustand {
+        final long fzgId;
+        final AktivesFahrzeug fahrzeug;
+        long zeit = Long.MIN_VALUE;
+        /** aktueller Abschnitt (Index im Katalog) oder -1 */
+        int abschnitt = -1;
+        /** befahrener Teil des aktuellen Abschnitts */
+        double von;
+        double bis;
+        /** letzte Position auf dem aktuellen Abschnitt */
+        double lat;
+        double lon;
+        /** Positionen abseits seit der letzten auf dem Abschnitt */
+        int daneben;
+        /** zuletzt gemeldeter Abschnitt oder -1 */
+        int gemeldet = -1;
+
+        Zustand(long fzgId, AktivesFahrzeug fahrzeug) {
+            this.fzgId = fzgId;
+            this.fahrzeug = fahrzeug;
+        }
+
+        void erweitere(double anteil) {
+            von = Math.min(von, anteil);
+            bis = Math.max(bis, anteil);
+        }
+    }
+
+    private final class Worker implements Runnable {
+        final int nummer;
+        final BlockingQueue<Ortung> warteschlange;
+        final LongHashMap<Zustand> zustaende = new LongHashMap<>();
+        Thread thread;
+        /** juengste Zeit aller Positionen dieses Workers */
+        long jetzt = Long.MIN_VALUE;
+        long naechsteBereinigung = Long.MIN_VALUE;
+
+        Worker(int nummer) {
+            this.nummer = nummer;
+            this.warteschlange = new ArrayBlockingQueue<>(konfiguration.kapazitaet);
+        }
+
+        @Override
+        public void run() {
+            List<Ortung> ortungen = new ArrayList<>(konfiguration.kapazitaet);
+            try {
+                while (true) {
+                    try {
+                        Ortung erste = warteschlange.poll(100, TimeUnit.MILLISECONDS);
+                        if (erste == null) {
+                            if (geschlossen && warteschlange.isEmpty()) {
+                                return;
+                            }
+                            continue;
+                        }
+                        ortungen.add(erste);
+                        warteschlange.drainTo(ortungen);
+                    } catch (InterruptedException e) {
+                        L.warn("Worker {} unterbrochen, {} Positionen verworfen", nummer, warteschlange.size());
+                        return;
+                    }
+                    for (Ortung o : ortungen) {
+                        verarbeite(o);
+                    }
+                    ortungen.clear();
+                }
+            } finally {
+                zustaende.forEachValue(this::beende);
+                zustaende.clear();
+            }
+        }
+
+        void verarbeite(Ortung o) {
+            Zustand z = zustaende.get(o.getFzgId());
+            if (z == null) {
+                if (zustaende.size() >= konfiguration.maxFahrzeuge) {
+                    verdraenge();
+                }
+                // auch unbekannte Geraete bekommen einen Zustand, damit nicht jede Position nachfragt
+                z = new Zustand(o.getFzgId(), fahrzeuge.apply(o.getFzgId()));
+                zustaende.put(o.getFzgId(), z);
+            }
+            if (z.fahrzeug == null || o.getZeitMillis() < z.zeit) {
+                verworfen.incrementAndGet();
+                z.zeit = Math.max(z.zeit, o.getZeitMillis());
+                return;
+            }
+            if (z.zeit != Long.MIN_VALUE && o.getZeitMillis() - z.zeit > konfiguration.maxLueckeMillis) {
+                beende(z);
+                z.gemeldet = -1;
+            }
+            z.zeit = o.getZeitMillis();
+            gleicheAb(z, o.getLat(), o.getLon());
+
+            if (z.zeit > jetzt) {
+                jetzt = z.zeit;
+            }
+            if (jetzt >= naechsteBereinigung) {
+                bereinige();
+                naechsteBereinigung = jetzt + Math.max(1, konfiguration.maxLueckeMillis / 2);
+            }
+        }
+
+        private void gleicheAb(Zustand z, double lat, double lon) {
+            double toleranz = konfiguration.toleranzMeter;
+            int neu;
+            if (z.abschnitt >= 0 && index.abstand(z.abschnitt, lat, lon) <= toleranz) {
+                // solange das Fahrzeug nahe genug bleibt, gilt der bisherige Abschnitt
+                neu = z.abschnitt;
+            } else {
+                neu = index.naechster(lat, lon, toleranz);
+            }
+
+            if (neu < 0) {
+                if (z.abschnitt >= 0 && ++z.daneben > konfiguration.ausreisser) {
+                    beende(z);
+                }
+                return;
+            }
+            if (neu == z.abschnitt) {
+                z.erweitere(index.anteil(neu, lat, lon));
+                z.daneben = 0;
+            } else {
+                boolean anschluss = z.abschnitt >= 0 && z.daneben == 0;
+                double vorLat = z.lat;
+                double vorLon = z.lon;
+                if (anschluss) {
+                    z.erweitere(index.anteil(z.abschnitt, lat, lon));
+                }
+                beende(z);
+                z.abschnitt = neu;
+                z.von = z.bis = index.anteil(neu, lat, lon);
+                if (anschluss) {
+                    z.erweitere(index.anteil(neu, vorLat, vorLon));
+                }
+            }
+            z.lat = lat;
+            z.lon = lon;
+        }
+
+        /** schliesst den aktuellen Abschnitt ab und meldet ihn, falls er befahren wurde */
+        private void beende(Zustand z) {
+            int a = z.abschnitt;
+            z.abschnitt = -1;
+            z.daneben = 0;
+            if (a < 0 || z.bis - z.von < konfiguration.mindestAbdeckung || a == z.gemeldet) {
+                return;
+            }
+            z.gemeldet = a;
+            Erfassung e = new Erfassung(katalog.getId(a), z.fahrzeug.getAchsen(), z.fahrzeug.getKennzeichen());
+            try {
+                ziel.accept(e);
+                erfassungen.incrementAndGet();
+            } catch (RuntimeException ex) {
+                fehler.incrementAndGet();
+                L.error("Worker {}: Erfassung {} von Geraet {} nicht uebergeben", nummer, e, z.fzgId, ex);
+            }
+        }
+
+        /** beendet die Geraete, die laenger als die maximale Luecke nichts gemeldet haben */
+        private void bereinige() {
+            List<Zustand> alt = new ArrayList<>();
+            zustaende.forEachValue(z -> {
+                if (jetzt - z.zeit > konfiguration.maxLueckeMillis) {
+                    alt.add(z);
+                }
+            });
+            entferne(alt);
+        }
+
+        /** entfernt bei voller Tabelle das am laengsten stille Viertel der Geraete */
+        private void verdraenge() {
+            List<Zustand> alle = zustaende.values();
+            alle.sort(Comparator.comparingLong(z -> z.zeit));
+            entferne(alle.subList(0, Math.max(1, alle.size() / 4)));
+        }
+
+        private void entferne(List<Zustand> liste) {
+            for (Zustand z : liste) {
+                beende(z);
+                zustaende.remove(z.fzgId);
+            }
+        }
+    }
+
+    /**
+     * Einstellungen des Abgleichs. Standard: ein Worker je Prozessor mit je
+     * 10000 Plaetzen, Blockieren bis 1 s bei voller Warteschlange, 30 m
+     * Toleranz, 80 % Abdeckung, 5 min maximale Luecke, 2 Ausreisser,
+     * hoechstens 100000 Geraete je Worker.
+     */
+    public static final class Konfiguration {
+        private int worker = Runtime.getRuntime().availableProcessors();
+        private int kapazitaet = 10_000;
+        private Ueberlauf ueberlauf = Ueberlauf.BLOCKIEREN;
+        private long wartezeitMillis = 1000;
+        private double toleranzMeter = 30;
+        private double mindestAbdeckung = 0.8;
+        private long maxLueckeMillis = 300_000;
+        private int ausreisser = 2;
+        private int maxFahrzeuge = 100_000;
+        private ThreadFactory threads = Executors.defaultThreadFactory();
+
+        public Konfiguration worker(int worker) {
+            this.worker = positiv("worker", worker);
+            return this;
+        }
+
+        /** Plaetze je Worker-Warteschlange */
+        public Konfiguration kapazitaet(int kapazitaet) {
+            this.kapazitaet = positiv("kapazitaet", kapazitaet);
+            return this;
+        }
+
+        /** Ueberlaufverhalten; die Wartezeit gilt nur fuer BLOCKIEREN */
+        public Konfiguration ueberlauf(Ueberlauf ueberlauf, long wartezeitMillis) {
+            this.ueberlauf = ueberlauf;
+            this.wartezeitMillis = wartezeitMillis;
+            return this;
+        }
+
+        /** groesster Abstand einer Position zu ihrem Abschnitt */
+        public Konfiguration toleranzMeter(double toleranzMeter) {
+            if (!(toleranzMeter > 0)) {
+                throw new IllegalArgumentException("toleranzMeter muss positiv sein: " + toleranzMeter);
+            }
+            this.toleranzMeter = toleranzMeter;
+            return this;
+        }
+
+        /** Anteil der Laenge, der befahren sein muss (0 bis 1) */
+        public Konfiguration mindestAbdeckung(double mindestAbdeckung) {
+            if (!(mindestAbdeckung >= 0 && mindestAbdeckung <= 1)) {
+                throw new IllegalArgumentException("mindestAbdeckung muss zwischen 0 und 1 liegen: "
+                        + mindestAbdeckung);
+            }
+            this.mindestAbdeckung = mindestAbdeckung;
+            return this;
+        }
+
+        /** laengste Zeit ohne Position, bevor die Fahrt als beendet gilt */
+        public Konfiguration maxLueckeMillis(long maxLueckeMillis) {
+            if (maxLueckeMillis < 1) {
+                throw new IllegalArgumentException("maxLueckeMillis muss positiv sein: " + maxLueckeMillis);
+            }
+            this.maxLueckeMillis = maxLueckeMillis;
+            return this;
+        }
+
+        /** Positionen abseits in Folge, die den aktuellen Abschnitt nicht beenden */
+        public Konfiguration ausreisser(int ausreisser) {
+            if (ausreisser < 0) {
+                throw new IllegalArgumentException("ausreisser darf nicht negativ sein: " + ausreisser);
+            }
+            this.ausreisser = ausreisser;
+            return this;
+        }
+
+        /** Geraete je Worker, deren Stand gehalten wird */
+        public Konfiguration maxFahrzeuge(int maxFahrzeuge) {
+            this.maxFahrzeuge = positiv("maxFahrzeuge", maxFahrzeuge);
+            return this;
+        }
+
+        public Konfiguration threads(ThreadFactory threads) {
+            this.threads = threads;
+            return this;
+        }
+
+        private static int positiv(String name, int wert) {
+            if (wert < 1) {
+                throw new IllegalArgumentException(name + " muss positiv sein: " + wert);
+            }
+            return wert;
+        }
+
+        @Override
+        public String toString() {
+            return "worker=" + worker + ", kapazitaet=" + kapazitaet + ", ueberlauf=" + ueberlauf + "/"
+                    + wartezeitMillis + "ms, toleranz=" + toleranzMeter + "m, abdeckung=" + mindestAbdeckung
+                    + ", luecke=" + maxLueckeMillis + "ms, ausreisser=" + ausreisser
+                    + ", maxFahrzeuge=" + maxFahrzeuge;
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package de.htwberlin.dbtech.aufgaben.ue03.ingest;
+
+import de.htwberlin.dbtech.aufgaben.ue02.Mautabschnitt;
+import de.htwberlin.dbtech.aufgaben.ue03.Erfassung;
+import de.htwberlin.dbtech.aufgaben.ue03.cache.AbschnittIndex;
+import de.htwberlin.dbtech.aufgaben.ue03.cache.AbschnittKatalog;
+import de.htwberlin.dbtech.aufgaben.ue03.tdg.AktivesFahrzeug;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Die Klasse enthaelt die Testfaelle fuer die Zuordnung von GPS-Positionen
+ * zu Abschnitten.
+ */
+public class KartenabgleichTest {
+    static final AbschnittKatalog KATALOG = AbschnittKatalog.aus(List.of(
+            new Mautabschnitt(2660, 1400, "48.094 11.588", "48.083 11.596", "Muenchen-Giesing - Unterhaching-Nord", "B13"),
+            new Mautabschnitt(2659, 2100, "48.083 11.596", "48.068 11.606", "Unterhaching-Nord - Unterhaching-Sued", "B13"),
+            new Mautabschnitt(1433, 4100, "52.3 13.084", "52.3 13.026", "Nuthetal Dreieck - Michendorf", "A10")));
+    static final AbschnittIndex INDEX = AbschnittIndex.aus(KATALOG);
+
+    final List<Erfassung> erfassungen = Collections.synchronizedList(new ArrayList<>());
+
+    /** Geraete 1 bis 999 sind bekannt, das Kennzeichen ist "M K <FZG_ID>" */
+    private Kartenabgleich abgleich(int worker) {
+        return new Kartenabgleich(INDEX, fzgId -> fzgId < 1000 ? new AktivesFahrzeug("M K " + fzgId, 5, 1, fzgId) : null,
+                erfassungen::add, new Kartenabgleich.Konfiguration().worker(worker));
+    }
+
+    /** Position bei anteil der Strecke des Abschnitts, 5 m seitlich versetzt */
+    private static Ortung ortung(long fzgId, long zeit, int abschnittsId, double anteil) {
+        int i = KATALOG.index(abschnittsId);
+        double lat = KATALOG.getStartLat(i) + anteil * (KATALOG.getZielLat(i) - KATALOG.getStartLat(i));
+        double lon = KATALOG.getStartLon(i) + anteil * (KATALOG.getZielLon(i) - KATALOG.getStartLon(i));
+        return new Ortung(fzgId, zeit, lat + 0.00005, lon);
+    }
+
+    /** faehrt die Abschnitte mit je schritte Positionen im Abstand von 10 s ab */
+    private static long fahre(Kartenabgleich a, long fzgId, long zeit, int schritte, int... abschnitte) {
+        for (int id : abschnitte) {
+            for (int s = 0; s <= schritte; s++) {
+                a.einreichen(ortung(fzgId, zeit, id, (double) s / schritte));
+                zeit += 10_000;
+            }
+        }
+        return zeit;
+    }
+
+    private List<Integer> abschnitte(String kennzeichen) {
+        synchronized (erfassungen) {
+            return erfassungen.stream().filter(e -> e.getKennzeichen().equals(kennzeichen))
+                    .map(Erfassung::getMautAbschnitt).collect(Collectors.toList());
+        }
+    }
+
+    @org.junit.Test
+    public void testFahrt() {
+        try (Kartenabgleich a = abgleich(1)) {
+            fahre(a, 7, 0, 20, 2660, 2659);
+        }
+        assertEquals(List.of(2660, 2659), abschnitte("M K 7"));
+        assertEquals(5, erfassungen.get(0).getAchszahl());
+    }
+
+    /** bei seltenen Positionen zaehlt der Weg zwischen zwei Abschnitten zu beiden */
+    @org.junit.Test
+    public void testSelteneOrtungen() {
+        try (Kartenabgleich a = abgleich(1)) {
+            a.einreichen(ortung(7, 0, 2660, 0.1));
+            a.einreichen(ortung(7, 60_000, 2659, 0.5));
+            a.einreichen(ortung(7, 100_000, 2659, 0.95));
+        }
+        assertEquals(List.of(2660, 2659), abschnitte("M K 7"));
+    }
+
+    @org.junit.Test
+    public void testTeilstreckeUndLuecke() {
+        Kartenabgleich a = abgleich(1);
+        try (a) {
+            // nur die halbe Strecke
+            for (int s = 0; s <= 10; s++) {
+                a.einreichen(ortung(1, s * 10_000, 2660, s / 20.0));
+            }
+            // beide Haelften, aber mit 10 Minuten Pause
+            for (int s = 0; s <= 10; s++) {
+                a.einreichen(ortung(2, s * 10_000, 2660, s / 20.0));
+            }
+            for (int s = 0; s <= 10; s++) {
+                a.einreichen(ortung(2, 700_000 + s * 10_000, 2660, 0.5 + s / 20.0));
+            }
+            // veraltete Position
+            a.einreichen(ortung(2, 0, 2660, 1));
+            // unbekanntes Geraet
+            fahre(a, 5000, 0, 10, 2660);
+            // Ausreisser 200 m neben dem Abschnitt
+            a.einreichen(ortung(3, 0, 1433, 0));
+            a.einreichen(ortung(3, 10_000, 1433, 0.5));
+            a.einreichen(new Ortung(3, 20_000, 52.302, 13.055));
+            a.einreichen(ortung(3, 30_000, 1433, 1));
+        }
+        assertEquals(12, a.getVerworfen());
+        assertEquals(List.of(), abschnitte("M K 1"));
+        assertEquals(List.of(), abschnitte("M K 2"));
+        assertEquals(List.of(1433), abschnitte("M K 3"));
+    }
+
+    /** viele Geraete auf mehreren Workern: je Fahrzeug bleibt die Reihenfolge erhalten */
+    @org.junit.Test
+    public void testReihenfolgeJeGeraet() {
+        try (Kartenabgleich a = abgleich(4)) {
+            for (long fzgId = 1; fzgId <= 300; fzgId++) {
+                if (fzgId % 2 == 0) {
+                    fahre(a, fzgId, 0, 15, 2660, 2659, 1433);
+                } else {
+                    // Gegenrichtung
+                    long zeit = 0;
+                    for (int s = 30; s >= 0; s--) {
+                        a.einreichen(ortung(fzgId, zeit += 10_000, s > 15 ? 2659 : 2660, s > 15 ? (s - 15) / 15.0 : s / 15.0));
+                    }
+                }
+            }
+            assertEquals(150 * 48 + 150 * 31, a.getAngenommen());
+        }
+        Map<String, List<Integer>> jeFahrzeug;
+        synchronized (erfassungen) {
+            jeFahrzeug = erfassungen.stream().collect(Collectors.groupingBy(Erfassung::getKennzeichen,
+                    Collectors.mapping(Erfassung::getMautAbschnitt, Collectors.toList())));
+        }
+        assertEquals(300, jeFahrzeug.size());
+        for (long fzgId = 1; fzgId <= 300; fzgId++) {
+            assertEquals(fzgId % 2 == 0 ? List.of(2660, 2659, 1433) : List.of(2659, 2660),
+                    jeFahrzeug.get("M K " + fzgId));
+        }
+    }
+}
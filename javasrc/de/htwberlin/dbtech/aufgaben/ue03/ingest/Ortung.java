@@ -0,0 +1,44 @@
+package de.htwberlin.dbtech.aufgaben.ue03.ingest;
+
+/**
+ * Eine GPS-Position, die ein Fahrzeuggeraet (FZG_ID) zu einem Zeitpunkt
+ * meldet.
+ */
+public final class Ortung {
+
+    private final long fzgId;
+    private final long zeitMillis;
+    private final double lat;
+    private final double lon;
+
+    /**
+     * @param zeitMillis Zeitpunkt der Messung in Millisekunden seit 1970
+     */
+    public Ortung(long fzgId, long zeitMillis, double lat, double lon) {
+        this.fzgId = fzgId;
+        this.zeitMillis = zeitMillis;
+        this.lat = lat;
+        this.lon = lon;
+    }
+
+    public long getFzgId() {
+        return fzgId;
+    }
+
+    public long getZeitMillis() {
+        return zeitMillis;
+    }
+
+    public double getLat() {
+        return lat;
+    }
+
+    public double getLon() {
+        return lon;
+    }
+
+    @Override
+    public String toString() {
+        return "Ortung[" + fzgId + ", " + zeitMillis + ", " + lat + " " + lon + "]";
+    }
+}
@@ -0,0 +1,36 @@
+package de.htwberlin.dbtech.aufgaben.ue03.tdg;
+
+/**
+ * Ein angemeldetes Fahrzeug (ABMELDEDATUM IS NULL) mit seinem Fahrzeuggeraet.
+ * Ist kein Geraet verbaut, ist die FZG_ID 0.
+ */
+public final class AktivesFahrzeug {
+
+    private final String kennzeichen;
+    private final int achsen;
+    private final int ssklId;
+    private final long fzgId;
+
+    public AktivesFahrzeug(String kennzeichen, int achsen, int ssklId, long fzgId) {
+        this.kennzeichen = kennzeichen;
+        this.achsen = achsen;
+        this.ssklId = ssklId;
+        this.fzgId = fzgId;
+    }
+
+    public String getKennzeichen() {
+        return kennzeichen;
+    }
+
+    public int getAchsen() {
+        return achsen;
+    }
+
+    public int getSsklId() {
+        return ssklId;
+    }
+
+    public long getFzgId() {
+        return fzgId;
+    }
+}
@@ -1,8 +1,32 @@
 package de.htwberlin.dbtech.aufgaben.ue03.tdg;
 
+import java.util.Collection;
+import java.util.List;
+
 public interface BuchungDao {
     boolean istManuellRegistriert(int mautAbschnitt, String kennzeichen);
     boolean istBuchungAbgeschlossen(int mautAbschnitt, String kennzeichen);
     void setzeBuchungAbgeschlossen(String kennzeichen, int mautAbschnitt);
+
+    /**
+     * Schliesst die offenen Buchungen zu Abschnitt und Kennzeichen mit einem
+     * bedingten UPDATE ab.
+     *
+     * @return false, falls keine offene Buchung vorlag (bereits befahren)
+     */
+    boolean schliesseOffeneBuchungAb(String kennzeichen, int mautAbschnitt);
     String ermittleAchszahlRegel(int mautAbschnitt, String kennzeichen);
+
+    /**
+     * Liefert alle Buchungen zu den Kennzeichen, aufsteigend nach BUCHUNG_ID.
+     */
+    List<Buchungsstand> ermittleBuchungen(Collection<String> kennzeichen);
+
+    /**
+     * Schliesst die Buchungen ueber ihre BUCHUNG_ID als JDBC-Batch ab, jede
+     * mit einem bedingten UPDATE wie {@link #schliesseOffeneBuchungAb}.
+     *
+     * @return je Buchung false, falls sie nicht mehr offen war (bereits befahren)
+     */
+    boolean[] schliesseOffeneBuchungenAb(List<Buchungsstand> buchungen);
 }
@@ -0,0 +1,120 @@
+package de.htwberlin.dbtech.aufgaben.ue03.tdg;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Misst die Aufrufe einer {@link BuchungDao} und gibt sie unveraendert weiter,
+ * siehe {@link DaoMetriken}.
+ */
+public final class BuchungDaoMessung implements BuchungDao {
+    private final BuchungDao dao;
+    private final DaoMetriken.Messpunkt istManuellRegistriert;
+    private final DaoMetriken.Messpunkt istBuchungAbgeschlossen;
+    private final DaoMetriken.Messpunkt setzeBuchungAbgeschlossen;
+    private final DaoMetriken.Messpunkt schliesseOffeneBuchungAb;
+    private final DaoMetriken.Messpunkt ermittleAchszahlRegel;
+    private final DaoMetriken.Messpunkt ermittleBuchungen;
+    private final DaoMetriken.Messpunkt schliesseOffeneBuchungenAb;
+
+    public BuchungDaoMessung(BuchungDao dao, DaoMetriken metriken) {
+        this.dao = dao;
+        this.istManuellRegistriert = metriken.messpunkt("BuchungDao", "istManuellRegistriert");
+        this.istBuchungAbgeschlossen = metriken.messpunkt("BuchungDao", "istBuchungAbgeschlossen");
+        this.setzeBuchungAbgeschlossen = metriken.messpunkt("BuchungDao", "setzeBuchungAbgeschlossen");
+        this.schliesseOffeneBuchungAb = metriken.messpunkt("BuchungDao", "schliesseOffeneBuchungAb");
+        this.ermittleAchszahlRegel = metriken.messpunkt("BuchungDao", "ermittleAchszahlRegel");
+        this.ermittleBuchungen = metriken.messpunkt("BuchungDao", "ermittleBuchungen");
+        this.schliesseOffeneBuchungenAb = metriken.messpunkt("BuchungDao", "schliesseOffeneBuchungenAb");
+    }
+
+    @Override
+    public boolean istManuellRegistriert(int mautAbschnitt, String kennzeichen) {
+        long start = System.nanoTime();
+        boolean fehler = true;
+        try {
+            boolean result = dao.istManuellRegistriert(mautAbschnitt, kennzeichen);
+            fehler = false;
+            return result;
+        } finally {
+            istManuellRegistriert.erfasse(start, fehler);
+        }
+    }
+
+    @Override
+    public boolean istBuchungAbgeschlossen(int mautAbschnitt, String kennzeichen) {
+        long start = System.nanoTime();
+        boolean fehler = true;
+        try {
+            boolean result = dao.istBuchungAbgeschlossen(mautAbschnitt, kennzeichen);
+            fehler = false;
+            return result;
+        } finally {
+            istBuchungAbgeschlossen.erfasse(start, fehler);
+        }
+    }
+
+    @Override
+    public void setzeBuchungAbgeschlossen(String kennzeichen, int mautAbschnitt) {
+        long start = System.nanoTime();
+        boolean fehler = true;
+        try {
+            dao.setzeBuchungAbgeschlossen(kennzeichen, mautAbschnitt);
+            fehler = false;
+        } finally {
+            setzeBuchungAbgeschlossen.erfasse(start, fehler);
+        }
+    }
+
+    @Override
+    public boolean schliesseOffeneBuchungAb(String kennzeichen, int mautAbschnitt) {
+        long start = System.nanoTime();
+        boolean fehler = true;
+        try {
+            boolean result = dao.schliesseOffeneBuchungAb(kennzeichen, mautAbschnitt);
+            fehler = false;
+            return result;
+        } finally {
+            schliesseOffeneBuchungAb.erfasse(start, fehler);
+        }
+    }
+
+    @Override
+    public String ermittleAchszahlRegel(int mautAbschnitt, String kennzeichen) {
+        long start = System.nanoTime();
+        boolean fehler = true;
+        try {
+            String result = dao.ermittleAchszahlRegel(mautAbschnitt, kennzeichen);
+            fehler = false;
+            return result;
+        } finally {
+            ermittleAchszahlRegel.erfasse(start, fehler);
+        }
+    }
+
+    @Override
+    public List<Buchungsstand> ermittleBuchungen(Collection<String> kennzeichen) {
+        long start = System.nanoTime();
+        boolean fehler = true;
+        try {
+            List<Buchungsstand> result = dao.ermittleBuchungen(kennzeichen);
+            fehler = false;
+            return result;
+        } finally {
+            ermittleBuchungen.erfasse(start, fehler);
+        }
+    }
+
+    @Override
+    public boolean[] schliesseOffeneBuchungenAb(List<Buchungsstand> buchungen) {
+        long start = System.nanoTime();
+        boolean fehler = true;
+        try {
+            boolean[] result = dao.schliesseOffeneBuchungenAb(buchungen);
+            fehler = false;
+            return result;
+        } finally {
+            schliesseOffeneBuchungenAb.erfasse(start, fehler);
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package de.htwberlin.dbtech.aufgaben.ue03.tdg;
+
+import de.htwberlin.dbtech.aufgaben.ue03.cache.FahrzeugCache;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+/**
+ * {@link BuchungDao} auf einem {@link Datenbestand}. Die Ergebnisse
+ * entsprechen denen von {@link BuchungTdg}; gibt es mehrere Buchungen zu
+ * Abschnitt und Kennzeichen, gilt die offene, sonst die mit der kleinsten
+ * BUCHUNG_ID.
+ */
+public class BuchungSpeicher implements BuchungDao {
+
+    private final Datenbestand daten;
+
+    public BuchungSpeicher(Datenbestand daten) {
+        this.daten = daten;
+    }
+
+    /**
+     * Massgebliche Buchung zu Abschnitt und Kennzeichen oder null: die offene,
+     * sonst die mit der kleinsten BUCHUNG_ID. Nur unter der Sperre aufrufen.
+     */
+    private Datenbestand.Buchung erste(int mautAbschnitt, String kennzeichen) {
+        Datenbestand.Buchung erste = null;
+        for (Datenbestand.Buchung b : daten.buchungen(kennzeichen)) {
+            if (b.mautAbschnitt == mautAbschnitt) {
+                if (b.bId == 1) {
+                    return b;
+                }
+                if (erste == null) {
+                    erste = b;
+                }
+            }
+        }
+        return erste;
+    }
+
+    @Override
+    public boolean istManuellRegistriert(int mautAbschnitt, String kennzeichen) {
+        synchronized (daten) {
+            return erste(mautAbschnitt, kennzeichen) != null;
+        }
+    }
+
+    @Override
+    public boolean istBuchungAbgeschlossen(int mautAbschnitt, String kennzeichen) {
+        synchronized (daten) {
+            Datenbestand.Buchung b = erste(mautAbschnitt, kennzeichen);
+            return b != null && b.bId == 3;
+        }
+    }
+
+    @Override
+    public void setzeBuchungAbgeschlossen(String kennzeichen, int mautAbschnitt) {
+        synchronized (daten) {
+            for (Datenbestand.Buchung b : daten.buchungen(kennzeichen)) {
+                if (b.mautAbschnitt == mautAbschnitt) {
+                    daten.schliesseAb(b);
+                }
+            }
+        }
+    }
+
+    @Override
+    public boolean schliesseOffeneBuchungAb(String kennzeichen, int mautAbschnitt) {
+        boolean geschlossen = false;
+        synchronized (daten) {
+            for (Datenbestand.Buchung b : daten.buchungen(kennzeichen)) {
+                if (b.mautAbschnitt == mautAbschnitt && b.bId == 1) {
+                    daten.schliesseAb(b);
+                    geschlossen = true;
+                }
+            }
+        }
+        return geschlossen;
+    }
+
+    @Override
+    public String ermittleAchszahlRegel(int mautAbschnitt, String kennzeichen) {
+        synchronized (daten) {
+            Datenbestand.Buchung b = erste(mautAbschnitt, kennzeichen);
+            Tarif t = b != null ? daten.kategorien.get(b.kategorieId) : null;
+            return t != null ? t.getAchszahlRegel() : null;
+        }
+    }
+
+    @Override
+    public List<Buchungsstand> ermittleBuchungen(Collection<String> kennzeichen) {
+        List<Buchungsstand> result = new ArrayList<>();
+        synchronized (daten) {
+            // je normalisiertem Kennzeichen nur einmal
+            LinkedHashSet<String> schluessel = new LinkedHashSet<>();
+            for (String k : kennzeichen) {
+                schluessel.add(FahrzeugCache.normalisiere(k));
+            }
+            for (String k : schluessel) {
+                for (Datenbestand.Buchung b : daten.buchungen(k)) {
+                    Tarif t = daten.kategorien.get(b.kategorieId);
+                    if (t != null) {
+                        result.add(new Buchungsstand(b.buchungId, b.bId, b.mautAbschnitt, b.kennzeichen,
+                                t.getAchszahlRegel()));
+                    }
+                }
+            }
+        }
+        result.sort((a, b) -> Long.compare(a.getBuchungId(), b.getBuchungId()));
+        return result;
+    }
+
+    @Override
+    public boolean[] schliesseOffeneBuchungenAb(List<Buchungsstand> buchungen) {
+        boolean[] result = new boolean[buchungen.size()];
+        synchronized (daten) {
+            for (int i = 0; i < result.length; i++) {
+                Buchungsstand s = buchungen.get(i);
+                for (Datenbestand.Buchung b : daten.buchungen(s.getKennzeichen())) {
+                    if (b.buchungId == s.getBuchungId() && b.bId == 1) {
+                        daten.schliesseAb(b);
+                        result[i] = true;
+                    }
+                }
+            }
+        }
+        return result;
+    }
+}
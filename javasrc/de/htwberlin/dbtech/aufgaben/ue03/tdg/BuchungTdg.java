@@ -1,21 +1,28 @@
 package de.htwberlin.dbtech.aufgaben.ue03.tdg;
 
 import de.htwberlin.dbtech.exceptions.DataException;
+import de.htwberlin.dbtech.utils.JdbcUtils;
+import de.htwberlin.dbtech.utils.StatementCache;
 
 import java.sql.*;
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 
 public class BuchungTdg implements BuchungDao {
 
     private final Connection connection;
+    private final StatementCache statements;
 
     public BuchungTdg(Connection connection) {
         this.connection = connection;
+        this.statements = StatementCache.fuer(connection);
     }
 
     @Override
     public boolean istManuellRegistriert(int mautAbschnitt, String kennzeichen) {
-        try (PreparedStatement s = connection.prepareStatement(
+        try (PreparedStatement s = statements.prepareStatement(
                 "SELECT 1 FROM BUCHUNG WHERE KENNZEICHEN = ? AND ABSCHNITTS_ID = ?")) {
             s.setString(1, kennzeichen);
             s.setInt(2, mautAbschnitt);
@@ -27,7 +34,7 @@ public class BuchungTdg implements BuchungDao {
 
     @Override
     public boolean istBuchungAbgeschlossen(int mautAbschnitt, String kennzeichen) {
-        try (PreparedStatement s = connection.prepareStatement(
+        try (PreparedStatement s = statements.prepareStatement(
                 "SELECT B_ID FROM BUCHUNG WHERE ABSCHNITTS_ID = ? AND KENNZEICHEN = ?")) {
             s.setInt(1, mautAbschnitt);
             s.setString(2, kennzeichen);
@@ -43,7 +50,7 @@ public class BuchungTdg implements BuchungDao {
 
     @Override
     public void setzeBuchungAbgeschlossen(String kennzeichen, int mautAbschnitt) {
-        try (PreparedStatement s = connection.prepareStatement(
+        try (PreparedStatement s = statements.prepareStatement(
                 "UPDATE BUCHUNG SET B_ID = 3, BEFAHRUNGSDATUM = ? " +
                         "WHERE ABSCHNITTS_ID = ? AND KENNZEICHEN = ?")) {
             s.setDate(1, Date.valueOf(LocalDate.now()));
@@ -55,13 +62,30 @@ public class BuchungTdg implements BuchungDao {
         }
     }
 
+    @Override
+    public boolean schliesseOffeneBuchungAb(String kennzeichen, int mautAbschnitt) {
+        // die Zeilensperre des UPDATE entscheidet gleichzeitige Erfassungen
+        try (PreparedStatement s = statements.prepareStatement(
+                "UPDATE BUCHUNG SET B_ID = 3, BEFAHRUNGSDATUM = ? " +
+                        "WHERE ABSCHNITTS_ID = ? AND KENNZEICHEN = ? AND B_ID = 1")) {
+            s.setDate(1, Date.valueOf(LocalDate.now()));
+            s.setInt(2, mautAbschnitt);
+            s.setString(3, kennzeichen);
+            return s.executeUpdate() > 0;
+        } catch (SQLException e) {
+            throw new DataException(e);
+        }
+    }
+
     @Override
     public String ermittleAchszahlRegel(int mautAbschnitt, String kennzeichen) {
-        try (PreparedStatement s = connection.prepareStatement(
+        try (PreparedStatement s = statements.prepareStatement(
                 "SELECT MK.ACHSZAHL " +
                         "FROM BUCHUNG B " +
                         "JOIN MAUTKATEGORIE MK ON B.KATEGORIE_ID = MK.KATEGORIE_ID " +
-                        "WHERE B.ABSCHNITTS_ID = ? AND B.KENNZEICHEN = ?")) {
+                        "WHERE B.ABSCHNITTS_ID = ? AND B.KENNZEICHEN = ? " +
+                        // wie MautBatch: die offene Buchung, sonst die erste
+                        "ORDER BY CASE WHEN B.B_ID = 1 THEN 0 ELSE 1 END, B.BUCHUNG_ID")) {
             s.setInt(1, mautAbschnitt);
             s.setString(2, kennzeichen);
             ResultSet r = s.executeQuery();
@@ -70,4 +94,53 @@ public class BuchungTdg implements BuchungDao {
             throw new DataException(e);
         }
     }
+
+    @Override
+    public List<Buchungsstand> ermittleBuchungen(Collection<String> kennzeichen) {
+        List<Buchungsstand> result = new ArrayList<>();
+        for (List<String> teil : JdbcUtils.partition(new ArrayList<>(kennzeichen), JdbcUtils.MAX_IN_LIST)) {
+            try (PreparedStatement s = connection.prepareStatement(
+                    "SELECT B.BUCHUNG_ID, B.B_ID, B.ABSCHNITTS_ID, B.KENNZEICHEN, MK.ACHSZAHL " +
+                            "FROM BUCHUNG B " +
+                            "JOIN MAUTKATEGORIE MK ON B.KATEGORIE_ID = MK.KATEGORIE_ID " +
+                            "WHERE B.KENNZEICHEN IN (" + JdbcUtils.placeholders(teil.size()) + ") " +
+                            "ORDER BY B.BUCHUNG_ID")) {
+                for (int i = 0; i < teil.size(); i++) {
+                    s.setString(i + 1, teil.get(i));
+                }
+                ResultSet r = s.executeQuery();
+                while (r.next()) {
+                    result.add(new Buchungsstand(
+                            r.getLong("BUCHUNG_ID"),
+                            r.getInt("B_ID"),
+                            r.getInt("ABSCHNITTS_ID"),
+                            r.getString("KENNZEICHEN"),
+                            r.getString("ACHSZAHL")));
+                }
+            } catch (SQLException e) {
+                throw new DataException(e);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public boolean[] schliesseOffeneBuchungenAb(List<Buchungsstand> buchungen) {
+        if (buchungen.isEmpty()) {
+            return new boolean[0];
+        }
+        try (PreparedStatement s = statements.prepareStatement(
+                "UPDATE BUCHUNG SET B_ID = 3, BEFAHRUNGSDATUM = ? " +
+                        "WHERE BUCHUNG_ID = ? AND B_ID = 1")) {
+            Date heute = Date.valueOf(LocalDate.now());
+            for (Buchungsstand b : buchungen) {
+                s.setDate(1, heute);
+                s.setLong(2, b.getBuchungId());
+                s.addBatch();
+            }
+            return JdbcUtils.geaendert(s.executeBatch());
+        } catch (SQLException e) {
+            throw new DataException(e);
+        }
+    }
 }
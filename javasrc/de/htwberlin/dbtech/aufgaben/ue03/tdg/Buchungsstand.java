@@ -0,0 +1,45 @@
+package de.htwberlin.dbtech.aufgaben.ue03.tdg;
+
+/**
+ * Eine Buchung im Manuellen Verfahren mit der Achszahl-Regel ihrer Mautkategorie.
+ */
+public final class Buchungsstand {
+
+    private final long buchungId;
+    private final int bId;
+    private final int mautAbschnitt;
+    private final String kennzeichen;
+    private final String achszahlRegel;
+
+    public Buchungsstand(long buchungId, int bId, int mautAbschnitt, String kennzeichen, String achszahlRegel) {
+        this.buchungId = buchungId;
+        this.bId = bId;
+        this.mautAbschnitt = mautAbschnitt;
+        this.kennzeichen = kennzeichen;
+        this.achszahlRegel = achszahlRegel;
+    }
+
+    public long getBuchungId() {
+        return buchungId;
+    }
+
+    public int getBId() {
+        return bId;
+    }
+
+    public int getMautAbschnitt() {
+        return mautAbschnitt;
+    }
+
+    public String getKennzeichen() {
+        return kennzeichen;
+    }
+
+    public String getAchszahlRegel() {
+        return achszahlRegel;
+    }
+
+    public boolean istAbgeschlossen() {
+        return bId == 3;
+    }
+}
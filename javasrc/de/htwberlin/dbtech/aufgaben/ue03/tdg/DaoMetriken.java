@@ -0,0 +1,146 @@
+package de.htwberlin.dbtech.aufgaben.ue03.tdg;
+
+import de.htwberlin.dbtech.utils.LatenzHistogramm;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Aufrufzahlen, Fehlerzahlen und Latenzverteilungen je DAO-Methode. Die
+ * Werte werden von den messenden DAOs (z.B. {@link FahrzeugDaoMessung})
+ * erfasst; eingeschaltet werden sie ueber
+ * {@link de.htwberlin.dbtech.aufgaben.ue03.MautServiceImplDao#setMetriken}.
+ *
+ * Die Messpunkte werden beim Anlegen der messenden DAOs einmal aufgeloest,
+ * je Aufruf fallen nur zwei nanoTime-Aufrufe und einige atomare Additionen an.
+ */
+public final class DaoMetriken {
+    private static final DaoMetriken INSTANZ = new DaoMetriken();
+
+    private final Map<String, Messpunkt> messpunkte = new ConcurrentHashMap<>();
+
+    /**
+     * Liefert die prozessweit gemeinsamen Metriken.
+     */
+    public static DaoMetriken get() {
+        return INSTANZ;
+    }
+
+    /**
+     * Liefert den Messpunkt einer Methode und legt ihn bei Bedarf an.
+     */
+    public Messpunkt messpunkt(String dao, String methode) {
+        return messpunkte.computeIfAbsent(dao + "." + methode, Messpunkt::new);
+    }
+
+    /**
+     * Liefert den Stand aller Messpunkte, sortiert nach Name.
+     */
+    public Map<String, Stand> schnappschuss() {
+        Map<String, Stand> result = new TreeMap<>();
+        for (Messpunkt m : messpunkte.values()) {
+            result.put(m.name, m.schnappschuss());
+        }
+        return result;
+    }
+
+    /**
+     * Setzt alle Messpunkte zurueck.
+     */
+    public void zuruecksetzen() {
+        for (Messpunkt m : messpunkte.values()) {
+            m.zuruecksetzen();
+        }
+    }
+
+    /**
+     * Eine Zeile je Methode mit Aufrufen, Fehlern und Latenzen in Mikrosekunden.
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(String.format("%-55s %9s %7s %9s %9s %9s %9s%n",
+                "methode", "aufrufe", "fehler", "mittel", "p50", "p99", "max"));
+        for (Stand s : schnappschuss().values()) {
+            sb.append(s).append(System.lineSeparator());
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Zaehler einer Methode.
+     */
+    public static final class Messpunkt {
+        private final String name;
+        private final LongAdder aufrufe = new LongAdder();
+        private final LongAdder fehler = new LongAdder();
+        private final LatenzHistogramm latenzen = new LatenzHistogramm();
+
+        Messpunkt(String name) {
+            this.name = name;
+        }
+
+        /**
+         * Erfasst einen Aufruf, der bei {@code startNanos} (System.nanoTime) begann.
+         */
+        public void erfasse(long startNanos, boolean fehlgeschlagen) {
+            latenzen.erfasse(System.nanoTime() - startNanos);
+            aufrufe.increment();
+            if (fehlgeschlagen) {
+                fehler.increment();
+            }
+        }
+
+        Stand schnappschuss() {
+            return new Stand(name, aufrufe.sum(), fehler.sum(), latenzen.schnappschuss());
+        }
+
+        void zuruecksetzen() {
+            aufrufe.reset();
+            fehler.reset();
+            latenzen.zuruecksetzen();
+        }
+    }
+
+    /**
+     * Unveraenderlicher Stand eines Messpunkts.
+     */
+    public static final class Stand {
+        private final String name;
+        private final long aufrufe;
+        private final long fehler;
+        private final LatenzHistogramm.Verteilung latenzen;
+
+        Stand(String name, long aufrufe, long fehler, LatenzHistogramm.Verteilung latenzen) {
+            this.name = name;
+            this.aufrufe = aufrufe;
+            this.fehler = fehler;
+            this.latenzen = latenzen;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getAufrufe() {
+            return aufrufe;
+        }
+
+        public long getFehler() {
+            return fehler;
+        }
+
+        /** Latenzen in Nanosekunden */
+        public LatenzHistogramm.Verteilung getLatenzen() {
+            return latenzen;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%-55s %9d %7d %9.1f %9.1f %9.1f %9.1f", name, aufrufe, fehler,
+                    latenzen.getMittelwert() / 1e3, latenzen.perzentil(0.5) / 1e3,
+                    latenzen.perzentil(0.99) / 1e3, latenzen.getMax() / 1e3);
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package de.htwberlin.dbtech.aufgaben.ue03.tdg;
+
+import de.htwberlin.dbtech.exceptions.DataException;
+import de.htwberlin.dbtech.utils.LatenzHistogramm;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Die Klasse enthaelt die Testfaelle fuer die messenden DAOs und das
+ * Latenzhistogramm.
+ */
+public class DaoMetrikenTest {
+
+    @org.junit.Test
+    public void testPerzentileInnerhalbDerGenauigkeit() {
+        LatenzHistogramm h = new LatenzHistogramm();
+        for (long v = 1; v <= 100_000; v++) {
+            h.erfasse(v * 1000);
+        }
+        LatenzHistogramm.Verteilung v = h.schnappschuss();
+        assertEquals(100_000, v.getAnzahl());
+        assertEquals(100_000_000, v.getMax());
+        assertEquals(50_000_500.0, v.getMittelwert(), 1e-6);
+        for (double p : new double[]{0.5, 0.9, 0.99, 0.999}) {
+            double exakt = p * 100_000_000;
+            long gemessen = v.perzentil(p);
+            assertTrue(p + ": " + gemessen, gemessen >= exakt && gemessen <= exakt * 1.032);
+        }
+        assertEquals(100_000_000, v.perzentil(1.0));
+
+        h.zuruecksetzen();
+        assertEquals(0, h.schnappschuss().getAnzahl());
+        assertEquals(0, h.schnappschuss().perzentil(0.5));
+    }
+
+    @org.junit.Test
+    public void testKleineWerteExakt() {
+        LatenzHistogramm h = new LatenzHistogramm();
+        for (long v = 0; v < 64; v++) {
+            h.erfasse(v);
+        }
+        assertEquals(31, h.schnappschuss().perzentil(0.5));
+        assertEquals(63, h.schnappschuss().perzentil(1.0));
+    }
+
+    @org.junit.Test
+    public void testAufrufeUndFehler() {
+        DaoMetriken metriken = new DaoMetriken();
+        MauterhebungDao dao = new MauterhebungDaoMessung(new MauterhebungDao() {
+            @Override
+            public int ermittleNaechsteMautId() {
+                return 42;
+            }
+
+            @Override
+            public void fuegeMauterhebungEin(int mautId, int mautAbschnitt, long fzgId, int kategorieId,
+                                             LocalDate datum, BigDecimal kosten) {
+                throw new DataException("ORA-00001");
+            }
+
+            @Override
+            public void fuegeMauterhebungenEin(List<Mauterhebung> erhebungen) {
+            }
+        }, metriken);
+
+        assertEquals(42, dao.ermittleNaechsteMautId());
+        assertEquals(42, dao.ermittleNaechsteMautId());
+        try {
+            dao.fuegeMauterhebungEin(1, 1433, 1, 16, LocalDate.now(), BigDecimal.ONE);
+            fail();
+        } catch (DataException e) {
+            // erwartet
+        }
+
+        DaoMetriken.Stand id = metriken.schnappschuss().get("MauterhebungDao.ermittleNaechsteMautId");
+        assertEquals(2, id.getAufrufe());
+        assertEquals(0, id.getFehler());
+        assertEquals(2, id.getLatenzen().getAnzahl());
+        DaoMetriken.Stand einfuegen = metriken.schnappschuss().get("MauterhebungDao.fuegeMauterhebungEin");
+        assertEquals(1, einfuegen.getAufrufe());
+        assertEquals(1, einfuegen.getFehler());
+        assertEquals(0, metriken.schnappschuss().get("MauterhebungDao.fuegeMauterhebungenEin").getAufrufe());
+
+        metriken.zuruecksetzen();
+        assertEquals(0, metriken.schnappschuss().get("MauterhebungDao.ermittleNaechsteMautId").getAufrufe());
+    }
+}
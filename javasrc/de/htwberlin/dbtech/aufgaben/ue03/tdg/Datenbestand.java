@@ -0,0 +1,320 @@
+package de.htwberlin.dbtech.aufgaben.ue03.tdg;
+
+import de.htwberlin.dbtech.aufgaben.ue02.Mautabschnitt;
+import de.htwberlin.dbtech.aufgaben.ue03.cache.AbschnittKatalog;
+import de.htwberlin.dbtech.aufgaben.ue03.cache.FahrzeugCache;
+import de.htwberlin.dbtech.aufgaben.ue03.cache.PreisMatrix;
+import de.htwberlin.dbtech.aufgaben.ue03.cache.TarifTabelle;
+import de.htwberlin.dbtech.exceptions.DataException;
+import de.htwberlin.dbtech.utils.CsvLeser;
+import de.htwberlin.dbtech.utils.LongHashMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Die Tabellen FAHRZEUG, FAHRZEUGGERAT, BUCHUNG, MAUTKATEGORIE,
+ * MAUTABSCHNITT und MAUTERHEBUNG vollstaendig im Speicher, mit DAOs, die sich
+ * wie die TDGs verhalten (siehe {@link #fahrzeugDao()} usw.). Damit laeuft
+ * MautServiceImplDao ohne Datenbank, z.B. fuer Simulationen oder als
+ * Vergleichswert in Lastmessungen.
+ *
+ * Die Primaerschluessel liegen in {@link LongHashMap}s; Fahrzeuge und
+ * Buchungen sind zusaetzlich ueber das normalisierte Kennzeichen erreichbar.
+ * Alle Zugriffe sperren den Datenbestand.
+ *
+ * Neue Mauterhebungen und geaenderte Buchungen werden vermerkt und koennen mit
+ * {@link #schreiben(Connection)} in eine Datenbank uebernommen werden.
+ */
+public final class Datenbestand {
+    private static final Logger L = LoggerFactory.getLogger(Datenbestand.class);
+
+    final LongHashMap<Fahrzeug> fahrzeuge = new LongHashMap<>();
+    final Map<String, List<Fahrzeug>> fahrzeugeNachKennzeichen = new HashMap<>();
+    final LongHashMap<Geraet> geraete = new LongHashMap<>();
+    final LongHashMap<Buchung> buchungen = new LongHashMap<>();
+    final Map<String, List<Buchung>> buchungenNachKennzeichen = new HashMap<>();
+    final LongHashMap<Tarif> kategorien = new LongHashMap<>();
+    final LongHashMap<Mautabschnitt> abschnitte = new LongHashMap<>();
+    final LongHashMap<Mauterhebung> erhebungen = new LongHashMap<>();
+    int naechsteMautId = 1;
+
+    /** seit dem letzten schreiben() */
+    final List<Mauterhebung> neueErhebungen = new ArrayList<>();
+    final Set<Buchung> geaenderteBuchungen = new LinkedHashSet<>();
+
+    private PreisMatrix preise;
+
+    /**
+     * Liest die CSV-Dateien Fahrzeug, Fahrzeuggerat, Mautkategorie,
+     * Mautabschnitt, Buchung und Mauterhebung aus einem Verzeichnis wie
+     * test-data/ue03-04. Fehlende Dateien ergeben leere Tabellen.
+     */
+    public static Datenbestand ladeCsv(Path verzeichnis) {
+        Datenbestand d = new Datenbestand();
+        synchronized (d) {
+            lese(verzeichnis.resolve("Fahrzeug.csv"), r -> d.fuegeFahrzeugEin(new Fahrzeug(
+                    Long.parseLong(r.wert("FZ_ID")), Integer.parseInt(r.wert("SSKL_ID")), r.wert("KENNZEICHEN"),
+                    Integer.parseInt(r.wert("ACHSEN")), CsvLeser.datum(r.wert("ABMELDEDATUM")))));
+            lese(verzeichnis.resolve("Fahrzeuggerat.csv"), r -> d.fuegeGeraetEin(new Geraet(
+                    Long.parseLong(r.wert("FZG_ID")), Long.parseLong(r.wert("FZ_ID")), r.wert("STATUS"))));
+            lese(verzeichnis.resolve("Mautkategorie.csv"), r -> d.fuegeKategorieEin(new Tarif(
+                    Integer.parseInt(r.wert("KATEGORIE_ID")), Integer.parseInt(r.wert("SSKL_ID")),
+                    r.wert("ACHSZAHL"), new BigDecimal(r.wert("MAUTSATZ_JE_KM")))));
+            lese(verzeichnis.resolve("Mautabschnitt.csv"), r -> d.fuegeAbschnittEin(new Mautabschnitt(
+                    Integer.parseInt(r.wert("ABSCHNITTS_ID")), new BigDecimal(r.wert("LAENGE")).intValue(),
+                    r.wert("START_KOORDINATE"), r.wert("ZIEL_KOORDINATE"), r.wert("NAME"), r.wert("ABSCHNITTSTYP"))));
+            lese(verzeichnis.resolve("Buchung.csv"), r -> d.fuegeBuchungEin(new Buchung(
+                    Long.parseLong(r.wert("BUCHUNG_ID")), Integer.parseInt(r.wert("B_ID")),
+                    Integer.parseInt(r.wert("ABSCHNITTS_ID")), Integer.parseInt(r.wert("KATEGORIE_ID")),
+                    r.wert("KENNZEICHEN"), CsvLeser.datum(r.wert("BEFAHRUNGSDATUM")))));
+            lese(verzeichnis.resolve("Mauterhebung.csv"), r -> d.fuegeErhebungEin(new Mauterhebung(
+                    Integer.parseInt(r.wert("MAUT_ID")), Integer.parseInt(r.wert("ABSCHNITTS_ID")),
+                    Long.parseLong(r.wert("FZG_ID")), Integer.parseInt(r.wert("KATEGORIE_ID")),
+                    CsvLeser.datum(r.wert("BEFAHRUNGSDATUM")), new BigDecimal(r.wert("KOSTEN")))));
+            d.neueErhebungen.clear();
+        }
+        L.info("Datenbestand aus {} geladen: {}", verzeichnis, d);
+        return d;
+    }
+
+    private interface Zeilenleser {
+        void lies(Zeile zeile);
+    }
+
+    private static final class Zeile {
+        final CsvLeser leser;
+        String[] felder;
+
+        Zeile(CsvLeser leser) {
+            this.leser = leser;
+        }
+
+        String wert(String spalte) {
+            int i = leser.spalte(spalte);
+            return i < felder.length ? felder[i] : null;
+        }
+    }
+
+    private static void lese(Path datei, Zeilenleser zeilenleser) {
+        if (!Files.exists(datei)) {
+            return;
+        }
+        try (CsvLeser leser = CsvLeser.oeffne(datei)) {
+            Zeile z = new Zeile(leser);
+            while ((z.felder = leser.naechsteZeile()) != null) {
+                try {
+                    zeilenleser.lies(z);
+                } catch (RuntimeException e) {
+                    throw new DataException(datei + ", Zeile " + leser.getZeile() + ": " + e.getMessage(), e);
+                }
+            }
+        }
+    }
+
+    synchronized void fuegeFahrzeugEin(Fahrzeug f) {
+        if (fahrzeuge.put(f.fzId, f) != null) {
+            throw new DataException("FZ_ID " + f.fzId + " doppelt");
+        }
+        fahrzeugeNachKennzeichen.computeIfAbsent(f.schluessel, k -> new ArrayList<>()).add(f);
+    }
+
+    synchronized void fuegeGeraetEin(Geraet g) {
+        Fahrzeug f = fahrzeuge.get(g.fzId);
+        if (f == null) {
+            throw new DataException("FZG_ID " + g.fzgId + ": FZ_ID " + g.fzId + " unbekannt");
+        }
+        if (geraete.put(g.fzgId, g) != null) {
+            throw new DataException("FZG_ID " + g.fzgId + " doppelt");
+        }
+        f.geraete.add(g);
+        f.geraete.sort(Comparator.comparingLong(x -> x.fzgId));
+    }
+
+    synchronized void fuegeKategorieEin(Tarif t) {
+        kategorien.put(t.getKategorieId(), t);
+        preise = null;
+    }
+
+    synchronized void fuegeAbschnittEin(Mautabschnitt a) {
+        abschnitte.put(a.getAbschnitts_id(), a);
+        preise = null;
+    }
+
+    synchronized void fuegeBuchungEin(Buchung b) {
+        if (buchungen.put(b.buchungId, b) != null) {
+            throw new DataException("BUCHUNG_ID " + b.buchungId + " doppelt");
+        }
+        List<Buchung> liste = buchungenNachKennzeichen.computeIfAbsent(b.schluessel, k -> new ArrayList<>());
+        liste.add(b);
+        liste.sort(Comparator.comparingLong(x -> x.buchungId));
+    }
+
+    synchronized void fuegeErhebungEin(Mauterhebung m) {
+        if (erhebungen.containsKey(m.getMautId())) {
+            throw new DataException("MAUT_ID " + m.getMautId() + " doppelt");
+        }
+        erhebungen.put(m.getMautId(), m);
+        naechsteMautId = Math.max(naechsteMautId, m.getMautId() + 1);
+        neueErhebungen.add(m);
+    }
+
+    /** Buchung auf abgeschlossen setzen und fuer schreiben() vermerken */
+    synchronized void schliesseAb(Buchung b) {
+        b.bId = 3;
+        b.befahrungsdatum = LocalDate.now();
+        geaenderteBuchungen.add(b);
+    }
+
+    List<Fahrzeug> fahrzeuge(String kennzeichen) {
+        List<Fahrzeug> l = fahrzeugeNachKennzeichen.get(FahrzeugCache.normalisiere(kennzeichen));
+        return l != null ? l : List.of();
+    }
+
+    List<Buchung> buchungen(String kennzeichen) {
+        List<Buchung> l = buchungenNachKennzeichen.get(FahrzeugCache.normalisiere(kennzeichen));
+        return l != null ? l : List.of();
+    }
+
+    List<Tarif> tarife() {
+        List<Tarif> result = kategorien.values();
+        result.sort(Comparator.comparingInt(Tarif::getKategorieId));
+        return result;
+    }
+
+    /** Preismatrix zu den aktuellen Kategorien und Abschnitten */
+    synchronized PreisMatrix preise() {
+        if (preise == null) {
+            preise = PreisMatrix.aus(TarifTabelle.aus(tarife()), AbschnittKatalog.aus(abschnitte.values()));
+        }
+        return preise;
+    }
+
+    public FahrzeugDao fahrzeugDao() {
+        return new FahrzeugSpeicher(this);
+    }
+
+    public BuchungDao buchungDao() {
+        return new BuchungSpeicher(this);
+    }
+
+    public MautabschnittDao mautabschnittDao() {
+        return new MautabschnittSpeicher(this);
+    }
+
+    public MautkategorieDao mautkategorieDao() {
+        return new MautkategorieSpeicher(this);
+    }
+
+    public MauterhebungDao mauterhebungDao() {
+        return new MauterhebungSpeicher(this);
+    }
+
+    /**
+     * Uebernimmt die seit dem letzten Aufruf eingefuegten Mauterhebungen und
+     * abgeschlossenen Buchungen als JDBC-Batch. Die Salden der Nutzer bucht
+     * MauterhebungTdg mit. Die Transaktion steuert der Aufrufer; bei einem
+     * Fehler bleiben die Aenderungen vermerkt.
+     */
+    public synchronized void schreiben(Connection connection) {
+        new MauterhebungTdg(connection).fuegeMauterhebungenEin(neueErhebungen);
+        if (!geaenderteBuchungen.isEmpty()) {
+            try (PreparedStatement s = connection.prepareStatement(
+                    "UPDATE BUCHUNG SET B_ID = ?, BEFAHRUNGSDATUM = ? WHERE BUCHUNG_ID = ?")) {
+                for (Buchung b : geaenderteBuchungen) {
+                    s.setInt(1, b.bId);
+                    s.setDate(2, b.befahrungsdatum != null ? Date.valueOf(b.befahrungsdatum) : null);
+                    s.setLong(3, b.buchungId);
+                    s.addBatch();
+                }
+                s.executeBatch();
+            } catch (SQLException e) {
+                throw new DataException(e);
+            }
+        }
+        L.info("{} Mauterhebungen und {} Buchungen geschrieben", neueErhebungen.size(), geaenderteBuchungen.size());
+        neueErhebungen.clear();
+        geaenderteBuchungen.clear();
+    }
+
+    public synchronized int getAnzahlMauterhebungen() {
+        return erhebungen.size();
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "Datenbestand[fahrzeuge=" + fahrzeuge.size() + ", geraete=" + geraete.size() + ", buchungen="
+                + buchungen.size() + ", kategorien=" + kategorien.size() + ", abschnitte=" + abschnitte.size()
+                + ", mauterhebungen=" + erhebungen.size() + ", ungeschrieben=" + neueErhebungen.size() + "]";
+    }
+
+    /** Zeile aus FAHRZEUG mit ihren Geraeten, nach FZG_ID sortiert. */
+    static final class Fahrzeug {
+        final long fzId;
+        final int ssklId;
+        final String kennzeichen;
+        final String schluessel;
+        final int achsen;
+        final LocalDate abmeldedatum;
+        final List<Geraet> geraete = new ArrayList<>(1);
+
+        Fahrzeug(long fzId, int ssklId, String kennzeichen, int achsen, LocalDate abmeldedatum) {
+            this.fzId = fzId;
+            this.ssklId = ssklId;
+            this.kennzeichen = kennzeichen;
+            this.schluessel = FahrzeugCache.normalisiere(kennzeichen);
+            this.achsen = achsen;
+            this.abmeldedatum = abmeldedatum;
+        }
+    }
+
+    /** Zeile aus FAHRZEUGGERAT. */
+    static final class Geraet {
+        final long fzgId;
+        final long fzId;
+        final String status;
+
+        Geraet(long fzgId, long fzId, String status) {
+            this.fzgId = fzgId;
+            this.fzId = fzId;
+            this.status = status;
+        }
+    }
+
+    /** Zeile aus BUCHUNG; Status und Befahrungsdatum sind veraenderlich. */
+    static final class Buchung {
+        final long buchungId;
+        final int mautAbschnitt;
+        final int kategorieId;
+        final String kennzeichen;
+        final String schluessel;
+        int bId;
+        LocalDate befahrungsdatum;
+
+        Buchung(long buchungId, int bId, int mautAbschnitt, int kategorieId, String kennzeichen,
+                LocalDate befahrungsdatum) {
+            this.buchungId = buchungId;
+            this.bId = bId;
+            this.mautAbschnitt = mautAbschnitt;
+            this.kategorieId = kategorieId;
+            this.kennzeichen = kennzeichen;
+            this.schluessel = FahrzeugCache.normalisiere(kennzeichen);
+            this.befahrungsdatum = befahrungsdatum;
+        }
+    }
+}
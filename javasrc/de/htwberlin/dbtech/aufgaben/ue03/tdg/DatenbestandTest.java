@@ -0,0 +1,112 @@
+package de.htwberlin.dbtech.aufgaben.ue03.tdg;
+
+import de.htwberlin.dbtech.aufgaben.ue03.Erfassung;
+import de.htwberlin.dbtech.aufgaben.ue03.MautServiceImplDao;
+import de.htwberlin.dbtech.aufgaben.ue03.Mautergebnis;
+import de.htwberlin.dbtech.exceptions.AlreadyCruisedException;
+import de.htwberlin.dbtech.exceptions.InvalidVehicleDataException;
+import de.htwberlin.dbtech.exceptions.UnkownVehicleException;
+
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Die Klasse enthaelt die Testfaelle aus MautServiceTest fuer
+ * MautServiceImplDao auf dem Datenbestand im Speicher.
+ */
+public class DatenbestandTest {
+    Datenbestand daten = Datenbestand.ladeCsv(Path.of("test-data/ue03-04"));
+    MautServiceImplDao maut = new MautServiceImplDao();
+
+    {
+        maut.setDatenbestand(daten);
+    }
+
+    @org.junit.Test
+    public void testLaden() {
+        assertEquals(100, daten.fahrzeuge.size());
+        assertEquals(79, daten.geraete.size());
+        assertEquals(5, daten.buchungen.size());
+        assertEquals(28, daten.kategorien.size());
+        assertEquals(25, daten.abschnitte.size());
+        assertEquals(18, daten.getAnzahlMauterhebungen());
+
+        FahrzeugDao fahrzeuge = daten.fahrzeugDao();
+        assertTrue(fahrzeuge.istAutoRegistriert("m  6569 "));
+        assertEquals(4, fahrzeuge.ermittleSchadstoffklasseId("M 6569", 5));
+        assertEquals(4100, daten.mautabschnittDao().ermittleLaengeInMetern(1433));
+        assertEquals(0, daten.mautabschnittDao().ermittleLaengeInMetern(-1));
+    }
+
+    @org.junit.Test(expected = UnkownVehicleException.class)
+    public void testUnbekanntesFahrzeug() {
+        maut.berechneMaut(1200, 4, "LDS 677");
+    }
+
+    @org.junit.Test(expected = InvalidVehicleDataException.class)
+    public void testAutomatischFalscheAchszahl() {
+        maut.berechneMaut(1200, 4, "HH 8499");
+    }
+
+    @org.junit.Test(expected = InvalidVehicleDataException.class)
+    public void testManuellFalscheAchszahl() {
+        maut.berechneMaut(1200, 3, "B CV 8890");
+    }
+
+    @org.junit.Test(expected = AlreadyCruisedException.class)
+    public void testBereitsBefahren() {
+        maut.berechneMaut(4174, 10, "DV 9413 NJ");
+    }
+
+    @org.junit.Test
+    public void testManuellAbschliessen() {
+        maut.berechneMaut(1200, 4, "B CV 8890");
+        assertEquals(3, daten.buchungen.get(1111).bId);
+        assertEquals(1, daten.geaenderteBuchungen.size());
+        assertFalse(daten.buchungDao().schliesseOffeneBuchungAb("B CV 8890", 1200));
+    }
+
+    @org.junit.Test(expected = AlreadyCruisedException.class)
+    public void testStorniertBereitsBefahren() {
+        maut.berechneMaut(461, 10, "LDS HV 372");
+    }
+
+    /** im Batch werden wie einzeln nur offene Buchungen abgeschlossen */
+    @org.junit.Test
+    public void testBatchNurOffeneBuchungen() {
+        List<Mautergebnis> ergebnisse = maut.berechneMautBatch(List.of(
+                new Erfassung(461, 10, "LDS HV 372"),
+                new Erfassung(1200, 4, "B CV 8890"),
+                new Erfassung(1200, 4, "B CV 8890")));
+        assertEquals(List.of(Mautergebnis.BEREITS_BEFAHREN, Mautergebnis.BUCHUNG_ABGESCHLOSSEN,
+                Mautergebnis.BEREITS_BEFAHREN), ergebnisse);
+        assertEquals(2, daten.buchungen.get(1011).bId);
+        assertEquals(3, daten.buchungen.get(1111).bId);
+        assertEquals(1, daten.geaenderteBuchungen.size());
+    }
+
+    /** eine inzwischen abgeschlossene Buchung meldet der bedingte Abschluss */
+    @org.junit.Test
+    public void testAbschlussNurWennOffen() {
+        List<Buchungsstand> offen = List.of(new Buchungsstand(1111, 1, 1200, "B CV 8890", "= 4"),
+                new Buchungsstand(1001, 1, 1200, "B CV 8890", "= 3"));
+        assertArrayEquals(new boolean[]{true, false}, daten.buchungDao().schliesseOffeneBuchungenAb(offen));
+        assertArrayEquals(new boolean[]{false, false}, daten.buchungDao().schliesseOffeneBuchungenAb(offen));
+    }
+
+    @org.junit.Test
+    public void testAutomatisch() {
+        maut.berechneMaut(1433, 5, "M 6569");
+        assertEquals(19, daten.getAnzahlMauterhebungen());
+        List<Mauterhebung> neu = daten.neueErhebungen;
+        assertEquals(1, neu.size());
+        assertEquals(new BigDecimal("0.68"), neu.get(0).getKosten());
+        assertTrue(neu.get(0).getMautId() > 1017);
+    }
+}
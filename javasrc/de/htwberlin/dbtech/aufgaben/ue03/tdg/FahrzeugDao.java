@@ -1,9 +1,24 @@
 package de.htwberlin.dbtech.aufgaben.ue03.tdg;
 
 import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
 
 public interface FahrzeugDao {
     boolean istAutoRegistriert(String kennzeichen);
     int ermittleSchadstoffklasseId(String kennzeichen, int achszahl);
     long ermittleFzgId(String kennzeichen, int achszahl, int ssklId);
+
+    /**
+     * Liefert alle angemeldeten Fahrzeuge zu den Kennzeichen.
+     * Schluessel ist das Kennzeichen.
+     */
+    Map<String, AktivesFahrzeug> ermittleAktiveFahrzeuge(Collection<String> kennzeichen);
+
+    /**
+     * Liefert alle Fahrzeuge mit dem Kennzeichen, angemeldet oder nicht, mit
+     * ihren Fahrzeuggeraeten. Grundlage fuer den Fahrzeugcache.
+     */
+    List<FahrzeugStammdaten> ermittleStammdaten(String kennzeichen);
 }
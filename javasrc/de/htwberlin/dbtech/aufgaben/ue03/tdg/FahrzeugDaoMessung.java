@@ -0,0 +1,92 @@
+package de.htwberlin.dbtech.aufgaben.ue03.tdg;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Misst die Aufrufe einer {@link FahrzeugDao} und gibt sie unveraendert weiter,
+ * siehe {@link DaoMetriken}.
+ */
+public final class FahrzeugDaoMessung implements FahrzeugDao {
+    private final FahrzeugDao dao;
+    private final DaoMetriken.Messpunkt istAutoRegistriert;
+    private final DaoMetriken.Messpunkt ermittleSchadstoffklasseId;
+    private final DaoMetriken.Messpunkt ermittleFzgId;
+    private final DaoMetriken.Messpunkt ermittleAktiveFahrzeuge;
+    private final DaoMetriken.Messpunkt ermittleStammdaten;
+
+    public FahrzeugDaoMessung(FahrzeugDao dao, DaoMetriken metriken) {
+        this.dao = dao;
+        this.istAutoRegistriert = metriken.messpunkt("FahrzeugDao", "istAutoRegistriert");
+        this.ermittleSchadstoffklasseId = metriken.messpunkt("FahrzeugDao", "ermittleSchadstoffklasseId");
+        this.ermittleFzgId = metriken.messpunkt("FahrzeugDao", "ermittleFzgId");
+        this.ermittleAktiveFahrzeuge = metriken.messpunkt("FahrzeugDao", "ermittleAktiveFahrzeuge");
+        this.ermittleStammdaten = metriken.messpunkt("FahrzeugDao", "ermittleStammdaten");
+    }
+
+    @Override
+    public boolean istAutoRegistriert(String kennzeichen) {
+        long start = System.nanoTime();
+        boolean fehler = true;
+        try {
+            boolean result = dao.istAutoRegistriert(kennzeichen);
+            fehler = false;
+            return result;
+        } finally {
+            istAutoRegistriert.erfasse(start, fehler);
+        }
+    }
+
+    @Override
+    public int ermittleSchadstoffklasseId(String kennzeichen, int achszahl) {
+        long start = System.nanoTime();
+        boolean fehler = true;
+        try {
+            int result = dao.ermittleSchadstoffklasseId(kennzeichen, achszahl);
+            fehler = false;
+            return result;
+        } finally {
+            ermittleSchadstoffklasseId.erfasse(start, fehler);
+        }
+    }
+
+    @Override
+    public long ermittleFzgId(String kennzeichen, int achszahl, int ssklId) {
+        long start = System.nanoTime();
+        boolean fehler = true;
+        try {
+            long result = dao.ermittleFzgId(kennzeichen, achszahl, ssklId);
+            fehler = false;
+            return result;
+        } finally {
+            ermittleFzgId.erfasse(start, fehler);
+        }
+    }
+
+    @Override
+    public Map<String, AktivesFahrzeug> ermittleAktiveFahrzeuge(Collection<String> kennzeichen) {
+        long start = System.nanoTime();
+        boolean fehler = true;
+        try {
+            Map<String, AktivesFahrzeug> result = dao.ermittleAktiveFahrzeuge(kennzeichen);
+            fehler = false;
+            return result;
+        } finally {
+            ermittleAktiveFahrzeuge.erfasse(start, fehler);
+        }
+    }
+
+    @Override
+    public List<FahrzeugStammdaten> ermittleStammdaten(String kennzeichen) {
+        long start = System.nanoTime();
+        boolean fehler = true;
+        try {
+            List<FahrzeugStammdaten> result = dao.ermittleStammdaten(kennzeichen);
+            fehler = false;
+            return result;
+        } finally {
+            ermittleStammdaten.erfasse(start, fehler);
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package de.htwberlin.dbtech.aufgaben.ue03.tdg;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * {@link FahrzeugDao} auf einem {@link Datenbestand}. Die Ergebnisse
+ * entsprechen denen von {@link FahrzeugTdg}; der Fahrzeugcache wird nicht
+ * benutzt.
+ */
+public class FahrzeugSpeicher implements FahrzeugDao {
+
+    private final Datenbestand daten;
+
+    public FahrzeugSpeicher(Datenbestand daten) {
+        this.daten = daten;
+    }
+
+    @Override
+    public boolean istAutoRegistriert(String kennzeichen) {
+        synchronized (daten) {
+            for (Datenbestand.Fahrzeug f : daten.fahrzeuge(kennzeichen)) {
+                if (f.abmeldedatum == null) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    @Override
+    public int ermittleSchadstoffklasseId(String kennzeichen, int achszahl) {
+        synchronized (daten) {
+            for (Datenbestand.Fahrzeug f : daten.fahrzeuge(kennzeichen)) {
+                if (f.achsen == achszahl) {
+                    return f.ssklId;
+                }
+            }
+            return 0;
+        }
+    }
+
+    @Override
+    public long ermittleFzgId(String kennzeichen, int achszahl, int ssklId) {
+        synchronized (daten) {
+            for (Datenbestand.Fahrzeug f : daten.fahrzeuge(kennzeichen)) {
+                long fzgId = fzgId(f);
+                if (f.achsen == achszahl && f.ssklId == ssklId && fzgId != 0) {
+                    return fzgId;
+                }
+            }
+            return 0L;
+        }
+    }
+
+    /** das aktive Geraet, sonst das erste, ohne Geraet 0 */
+    private static long fzgId(Datenbestand.Fahrzeug f) {
+        long fzgId = 0;
+        for (Datenbestand.Geraet g : f.geraete) {
+            if (fzgId == 0 || "active".equals(g.status)) {
+                fzgId = g.fzgId;
+            }
+        }
+        return fzgId;
+    }
+
+    @Override
+    public Map<String, AktivesFahrzeug> ermittleAktiveFahrzeuge(Collection<String> kennzeichen) {
+        Map<String, AktivesFahrzeug> result = new HashMap<>();
+        synchronized (daten) {
+            for (String k : kennzeichen) {
+                for (Datenbestand.Fahrzeug f : daten.fahrzeuge(k)) {
+                    if (f.abmeldedatum == null) {
+                        result.put(f.kennzeichen, new AktivesFahrzeug(f.kennzeichen, f.achsen, f.ssklId, fzgId(f)));
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public List<FahrzeugStammdaten> ermittleStammdaten(String kennzeichen) {
+        List<FahrzeugStammdaten> result = new ArrayList<>();
+        synchronized (daten) {
+            for (Datenbestand.Fahrzeug f : daten.fahrzeuge(kennzeichen)) {
+                long[] geraete = new long[f.geraete.size()];
+                for (int i = 0; i < geraete.length; i++) {
+                    geraete[i] = f.geraete.get(i).fzgId;
+                }
+                result.add(new FahrzeugStammdaten(f.fzId, f.ssklId, f.achsen, f.abmeldedatum, fzgId(f), geraete));
+            }
+        }
+        result.sort((a, b) -> Long.compare(a.getFzId(), b.getFzId()));
+        return result;
+    }
+}
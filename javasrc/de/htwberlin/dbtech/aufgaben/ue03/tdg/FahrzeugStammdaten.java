@@ -0,0 +1,56 @@
+package de.htwberlin.dbtech.aufgaben.ue03.tdg;
+
+import java.time.LocalDate;
+
+/**
+ * Eine Zeile aus FAHRZEUG mit den Fahrzeuggeraeten des Fahrzeugs. Als FZG_ID
+ * gilt das aktive Geraet, sonst das erste; ohne Geraet ist sie 0.
+ */
+public final class FahrzeugStammdaten {
+
+    private final long fzId;
+    private final int ssklId;
+    private final int achsen;
+    private final LocalDate abmeldedatum;
+    private final long fzgId;
+    private final long[] geraete;
+
+    public FahrzeugStammdaten(long fzId, int ssklId, int achsen, LocalDate abmeldedatum, long fzgId, long[] geraete) {
+        this.fzId = fzId;
+        this.ssklId = ssklId;
+        this.achsen = achsen;
+        this.abmeldedatum = abmeldedatum;
+        this.fzgId = fzgId;
+        this.geraete = geraete.clone();
+    }
+
+    public long getFzId() {
+        return fzId;
+    }
+
+    public int getSsklId() {
+        return ssklId;
+    }
+
+    public int getAchsen() {
+        return achsen;
+    }
+
+    /** null, solange das Fahrzeug angemeldet ist */
+    public LocalDate getAbmeldedatum() {
+        return abmeldedatum;
+    }
+
+    public boolean istAngemeldet() {
+        return abmeldedatum == null;
+    }
+
+    public long getFzgId() {
+        return fzgId;
+    }
+
+    /** alle FZG_IDs des Fahrzeugs */
+    public long[] getGeraete() {
+        return geraete.clone();
+    }
+}
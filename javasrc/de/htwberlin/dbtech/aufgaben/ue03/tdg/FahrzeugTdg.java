@@ -1,55 +1,137 @@
 package de.htwberlin.dbtech.aufgaben.ue03.tdg;
 
+import de.htwberlin.dbtech.aufgaben.ue03.cache.FahrzeugCache;
 import de.htwberlin.dbtech.exceptions.DataException;
+import de.htwberlin.dbtech.utils.JdbcUtils;
+import de.htwberlin.dbtech.utils.StatementCache;
 
 import java.sql.*;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 public class FahrzeugTdg implements FahrzeugDao {
 
     private final Connection connection;
+    private final StatementCache statements;
 
     public FahrzeugTdg(Connection connection) {
         this.connection = connection;
+        this.statements = StatementCache.fuer(connection);
     }
 
     @Override
     public boolean istAutoRegistriert(String kennzeichen) {
-        try (PreparedStatement s = connection.prepareStatement(
-                "SELECT 1 FROM FAHRZEUG WHERE KENNZEICHEN = ? AND ABMELDEDATUM IS NULL")) {
-            s.setString(1, kennzeichen);
-            return s.executeQuery().next();
-        } catch (SQLException e) {
-            throw new DataException(e);
-        }
+        return fahrzeug(kennzeichen).istAngemeldet();
     }
 
     @Override
     public int ermittleSchadstoffklasseId(String kennzeichen, int achszahl) {
-        try (PreparedStatement s = connection.prepareStatement(
-                "SELECT SSKL_ID FROM FAHRZEUG WHERE ACHSEN = ? AND KENNZEICHEN = ?")) {
-            s.setInt(1, achszahl);
-            s.setString(2, kennzeichen);
-            ResultSet r = s.executeQuery();
-            return r.next() ? r.getInt("SSKL_ID") : 0;
-        } catch (SQLException e) {
-            throw new DataException(e);
-        }
+        return fahrzeug(kennzeichen).ermittleSchadstoffklasseId(achszahl);
     }
 
     @Override
     public long ermittleFzgId(String kennzeichen, int achszahl, int ssklId) {
-        try (PreparedStatement s = connection.prepareStatement(
-                "SELECT fg.FZG_ID " +
-                        "FROM FAHRZEUGGERAT fg " +
-                        "JOIN FAHRZEUG f ON fg.FZ_ID = f.FZ_ID " +
-                        "WHERE f.SSKL_ID = ? AND f.KENNZEICHEN = ? AND f.ACHSEN = ?")) {
-            s.setInt(1, ssklId);
-            s.setString(2, kennzeichen);
-            s.setInt(3, achszahl);
+        return fahrzeug(kennzeichen).ermittleFzgId(achszahl, ssklId);
+    }
+
+    private FahrzeugCache.Eintrag fahrzeug(String kennzeichen) {
+        return FahrzeugCache.get().get(kennzeichen, this::ermittleStammdaten);
+    }
+
+    @Override
+    public List<FahrzeugStammdaten> ermittleStammdaten(String kennzeichen) {
+        try (PreparedStatement s = statements.prepareStatement(
+                "SELECT f.FZ_ID, f.SSKL_ID, f.ACHSEN, f.ABMELDEDATUM, fg.FZG_ID, fg.STATUS " +
+                        "FROM FAHRZEUG f " +
+                        "LEFT JOIN FAHRZEUGGERAT fg ON fg.FZ_ID = f.FZ_ID " +
+                        "WHERE f.KENNZEICHEN = ? " +
+                        "ORDER BY f.FZ_ID, fg.FZG_ID")) {
+            s.setString(1, kennzeichen);
             ResultSet r = s.executeQuery();
-            return r.next() ? r.getLong("FZG_ID") : 0L;
+            return leseStammdaten(r);
         } catch (SQLException e) {
             throw new DataException(e);
         }
     }
+
+    /**
+     * Fasst die Zeilen (nach FZ_ID sortiert) je Fahrzeug zusammen; bei mehreren
+     * Geraeten gewinnt das aktive.
+     */
+    public static List<FahrzeugStammdaten> leseStammdaten(ResultSet r) throws SQLException {
+        List<FahrzeugStammdaten> result = new ArrayList<>();
+        long fzId = 0;
+        int ssklId = 0;
+        int achsen = 0;
+        Date abmeldedatum = null;
+        long fzgId = 0;
+        List<Long> geraete = new ArrayList<>();
+        boolean offen = false;
+
+        while (r.next()) {
+            long id = r.getLong("FZ_ID");
+            if (!offen || id != fzId) {
+                if (offen) {
+                    result.add(stammdaten(fzId, ssklId, achsen, abmeldedatum, fzgId, geraete));
+                }
+                offen = true;
+                fzId = id;
+                ssklId = r.getInt("SSKL_ID");
+                achsen = r.getInt("ACHSEN");
+                abmeldedatum = r.getDate("ABMELDEDATUM");
+                fzgId = 0;
+                geraete.clear();
+            }
+            long g = r.getLong("FZG_ID");
+            if (!r.wasNull()) {
+                geraete.add(g);
+                if (fzgId == 0 || "active".equals(r.getString("STATUS"))) {
+                    fzgId = g;
+                }
+            }
+        }
+        if (offen) {
+            result.add(stammdaten(fzId, ssklId, achsen, abmeldedatum, fzgId, geraete));
+        }
+        return result;
+    }
+
+    private static FahrzeugStammdaten stammdaten(long fzId, int ssklId, int achsen, Date abmeldedatum,
+                                                 long fzgId, List<Long> geraete) {
+        return new FahrzeugStammdaten(fzId, ssklId, achsen,
+                abmeldedatum != null ? abmeldedatum.toLocalDate() : null, fzgId,
+                geraete.stream().mapToLong(Long::longValue).toArray());
+    }
+
+    @Override
+    public Map<String, AktivesFahrzeug> ermittleAktiveFahrzeuge(Collection<String> kennzeichen) {
+        Map<String, AktivesFahrzeug> result = new HashMap<>();
+        for (List<String> teil : JdbcUtils.partition(new ArrayList<>(kennzeichen), JdbcUtils.MAX_IN_LIST)) {
+            try (PreparedStatement s = connection.prepareStatement(
+                    "SELECT f.KENNZEICHEN, f.ACHSEN, f.SSKL_ID, fg.FZG_ID, fg.STATUS " +
+                            "FROM FAHRZEUG f " +
+                            "LEFT JOIN FAHRZEUGGERAT fg ON fg.FZ_ID = f.FZ_ID " +
+                            "WHERE f.ABMELDEDATUM IS NULL " +
+                            "AND f.KENNZEICHEN IN (" + JdbcUtils.placeholders(teil.size()) + ")")) {
+                for (int i = 0; i < teil.size(); i++) {
+                    s.setString(i + 1, teil.get(i));
+                }
+                ResultSet r = s.executeQuery();
+                while (r.next()) {
+                    String k = r.getString("KENNZEICHEN");
+                    long fzgId = r.getLong("FZG_ID");
+                    // bei mehreren Geraeten gewinnt das aktive
+                    if (!result.containsKey(k) || "active".equals(r.getString("STATUS"))) {
+                        result.put(k, new AktivesFahrzeug(k, r.getInt("ACHSEN"), r.getInt("SSKL_ID"), fzgId));
+                    }
+                }
+            } catch (SQLException e) {
+                throw new DataException(e);
+            }
+        }
+        return result;
+    }
 }
@@ -1,6 +1,21 @@
 package de.htwberlin.dbtech.aufgaben.ue03.tdg;
 
+import de.htwberlin.dbtech.aufgaben.ue02.Mautabschnitt;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
 public interface MautabschnittDao {
     long ermittleLaengeInMetern(int mautAbschnitt);
-}
 
+    /**
+     * Liefert die Laengen der Abschnitte. Schluessel ist die ABSCHNITTS_ID.
+     */
+    Map<Integer, Long> ermittleLaengenInMetern(Collection<Integer> mautAbschnitte);
+
+    /**
+     * Liefert alle Zeilen aus MAUTABSCHNITT, z.B. zum Laden des Abschnittskatalogs.
+     */
+    List<Mautabschnitt> ermittleAbschnitte();
+}
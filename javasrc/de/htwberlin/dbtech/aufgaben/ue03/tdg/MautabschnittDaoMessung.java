@@ -0,0 +1,64 @@
+package de.htwberlin.dbtech.aufgaben.ue03.tdg;
+
+import de.htwberlin.dbtech.aufgaben.ue02.Mautabschnitt;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Misst die Aufrufe einer {@link MautabschnittDao} und gibt sie unveraendert weiter,
+ * siehe {@link DaoMetriken}.
+ */
+public final class MautabschnittDaoMessung implements MautabschnittDao {
+    private final MautabschnittDao dao;
+    private final DaoMetriken.Messpunkt ermittleLaengeInMetern;
+    private final DaoMetriken.Messpunkt ermittleLaengenInMetern;
+    private final DaoMetriken.Messpunkt ermittleAbschnitte;
+
+    public MautabschnittDaoMessung(MautabschnittDao dao, DaoMetriken metriken) {
+        this.dao = dao;
+        this.ermittleLaengeInMetern = metriken.messpunkt("MautabschnittDao", "ermittleLaengeInMetern");
+        this.ermittleLaengenInMetern = metriken.messpunkt("MautabschnittDao", "ermittleLaengenInMetern");
+        this.ermittleAbschnitte = metriken.messpunkt("MautabschnittDao", "ermittleAbschnitte");
+    }
+
+    @Override
+    public long ermittleLaengeInMetern(int mautAbschnitt) {
+        long start = System.nanoTime();
+        boolean fehler = true;
+        try {
+            long result = dao.ermittleLaengeInMetern(mautAbschnitt);
+            fehler = false;
+            return result;
+        } finally {
+            ermittleLaengeInMetern.erfasse(start, fehler);
+        }
+    }
+
+    @Override
+    public Map<Integer, Long> ermittleLaengenInMetern(Collection<Integer> mautAbschnitte) {
+        long start = System.nanoTime();
+        boolean fehler = true;
+        try {
+            Map<Integer, Long> result = dao.ermittleLaengenInMetern(mautAbschnitte);
+            fehler = false;
+            return result;
+        } finally {
+            ermittleLaengenInMetern.erfasse(start, fehler);
+        }
+    }
+
+    @Override
+    public List<Mautabschnitt> ermittleAbschnitte() {
+        long start = System.nanoTime();
+        boolean fehler = true;
+        try {
+            List<Mautabschnitt> result = dao.ermittleAbschnitte();
+            fehler = false;
+            return result;
+        } finally {
+            ermittleAbschnitte.erfasse(start, fehler);
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package de.htwberlin.dbtech.aufgaben.ue03.tdg;
+
+import de.htwberlin.dbtech.aufgaben.ue02.Mautabschnitt;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * {@link MautabschnittDao} auf einem {@link Datenbestand}.
+ */
+public class MautabschnittSpeicher implements MautabschnittDao {
+
+    private final Datenbestand daten;
+
+    public MautabschnittSpeicher(Datenbestand daten) {
+        this.daten = daten;
+    }
+
+    @Override
+    public long ermittleLaengeInMetern(int mautAbschnitt) {
+        synchronized (daten) {
+            Mautabschnitt a = daten.abschnitte.get(mautAbschnitt);
+            return a != null ? a.getLaenge() : 0L;
+        }
+    }
+
+    @Override
+    public Map<Integer, Long> ermittleLaengenInMetern(Collection<Integer> mautAbschnitte) {
+        Map<Integer, Long> result = new HashMap<>();
+        synchronized (daten) {
+            for (int id : mautAbschnitte) {
+                Mautabschnitt a = daten.abschnitte.get(id);
+                if (a != null) {
+                    result.put(id, (long) a.getLaenge());
+                }
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public List<Mautabschnitt> ermittleAbschnitte() {
+        synchronized (daten) {
+            return daten.abschnitte.values();
+        }
+    }
+}
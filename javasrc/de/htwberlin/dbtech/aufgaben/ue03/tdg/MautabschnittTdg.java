@@ -1,20 +1,36 @@
 package de.htwberlin.dbtech.aufgaben.ue03.tdg;
 
+import de.htwberlin.dbtech.aufgaben.ue02.Mautabschnitt;
+import de.htwberlin.dbtech.aufgaben.ue03.cache.AbschnittKatalog;
 import de.htwberlin.dbtech.exceptions.DataException;
+import de.htwberlin.dbtech.utils.JdbcUtils;
+import de.htwberlin.dbtech.utils.StatementCache;
 
 import java.sql.*;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 public class MautabschnittTdg implements MautabschnittDao {
 
     private final Connection connection;
+    private final StatementCache statements;
 
     public MautabschnittTdg(Connection connection) {
         this.connection = connection;
+        this.statements = StatementCache.fuer(connection);
     }
 
     @Override
     public long ermittleLaengeInMetern(int mautAbschnitt) {
-        try (PreparedStatement s = connection.prepareStatement(
+        long laenge = AbschnittKatalog.aktuell(this::ermittleAbschnitte).laengeInMetern(mautAbschnitt);
+        if (laenge >= 0) {
+            return laenge;
+        }
+        // Abschnitt juenger als der Katalog
+        try (PreparedStatement s = statements.prepareStatement(
                 "SELECT LAENGE FROM MAUTABSCHNITT WHERE ABSCHNITTS_ID = ?")) {
             s.setInt(1, mautAbschnitt);
             ResultSet r = s.executeQuery();
@@ -23,4 +39,47 @@ public class MautabschnittTdg implements MautabschnittDao {
             throw new DataException(e);
         }
     }
+
+    @Override
+    public Map<Integer, Long> ermittleLaengenInMetern(Collection<Integer> mautAbschnitte) {
+        Map<Integer, Long> result = new HashMap<>();
+        for (List<Integer> teil : JdbcUtils.partition(new ArrayList<>(mautAbschnitte), JdbcUtils.MAX_IN_LIST)) {
+            try (PreparedStatement s = connection.prepareStatement(
+                    "SELECT ABSCHNITTS_ID, LAENGE FROM MAUTABSCHNITT " +
+                            "WHERE ABSCHNITTS_ID IN (" + JdbcUtils.placeholders(teil.size()) + ")")) {
+                for (int i = 0; i < teil.size(); i++) {
+                    s.setInt(i + 1, teil.get(i));
+                }
+                ResultSet r = s.executeQuery();
+                while (r.next()) {
+                    result.put(r.getInt("ABSCHNITTS_ID"), r.getLong("LAENGE"));
+                }
+            } catch (SQLException e) {
+                throw new DataException(e);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public List<Mautabschnitt> ermittleAbschnitte() {
+        List<Mautabschnitt> result = new ArrayList<>();
+        try (PreparedStatement s = statements.prepareStatement(
+                "SELECT ABSCHNITTS_ID, LAENGE, START_KOORDINATE, ZIEL_KOORDINATE, NAME, ABSCHNITTSTYP " +
+                        "FROM MAUTABSCHNITT")) {
+            ResultSet r = s.executeQuery();
+            while (r.next()) {
+                result.add(new Mautabschnitt(
+                        r.getInt("ABSCHNITTS_ID"),
+                        r.getInt("LAENGE"),
+                        r.getString("START_KOORDINATE"),
+                        r.getString("ZIEL_KOORDINATE"),
+                        r.getString("NAME"),
+                        r.getString("ABSCHNITTSTYP")));
+            }
+            return result;
+        } catch (SQLException e) {
+            throw new DataException(e);
+        }
+    }
 }
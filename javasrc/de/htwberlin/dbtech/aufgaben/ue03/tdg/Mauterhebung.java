@@ -0,0 +1,51 @@
+package de.htwberlin.dbtech.aufgaben.ue03.tdg;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+/**
+ * Eine Zeile aus MAUTERHEBUNG.
+ */
+public final class Mauterhebung {
+
+    private final int mautId;
+    private final int mautAbschnitt;
+    private final long fzgId;
+    private final int kategorieId;
+    private final LocalDate datum;
+    private final BigDecimal kosten;
+
+    public Mauterhebung(int mautId, int mautAbschnitt, long fzgId, int kategorieId,
+                        LocalDate datum, BigDecimal kosten) {
+        this.mautId = mautId;
+        this.mautAbschnitt = mautAbschnitt;
+        this.fzgId = fzgId;
+        this.kategorieId = kategorieId;
+        this.datum = datum;
+        this.kosten = kosten;
+    }
+
+    public int getMautId() {
+        return mautId;
+    }
+
+    public int getMautAbschnitt() {
+        return mautAbschnitt;
+    }
+
+    public long getFzgId() {
+        return fzgId;
+    }
+
+    public int getKategorieId() {
+        return kategorieId;
+    }
+
+    public LocalDate getDatum() {
+        return datum;
+    }
+
+    public BigDecimal getKosten() {
+        return kosten;
+    }
+}
@@ -2,6 +2,7 @@ package de.htwberlin.dbtech.aufgaben.ue03.tdg;
 
 import java.math.BigDecimal;
 import java.time.LocalDate;
+import java.util.List;
 
 public interface MauterhebungDao {
     int ermittleNaechsteMautId();
@@ -11,4 +12,9 @@ public interface MauterhebungDao {
                               int kategorieId,
                               LocalDate datum,
                               BigDecimal kosten);
+
+    /**
+     * Fuegt die Mauterhebungen als JDBC-Batch ein.
+     */
+    void fuegeMauterhebungenEin(List<Mauterhebung> erhebungen);
 }
@@ -0,0 +1,61 @@
+package de.htwberlin.dbtech.aufgaben.ue03.tdg;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * Misst die Aufrufe einer {@link MauterhebungDao} und gibt sie unveraendert weiter,
+ * siehe {@link DaoMetriken}.
+ */
+public final class MauterhebungDaoMessung implements MauterhebungDao {
+    private final MauterhebungDao dao;
+    private final DaoMetriken.Messpunkt ermittleNaechsteMautId;
+    private final DaoMetriken.Messpunkt fuegeMauterhebungEin;
+    private final DaoMetriken.Messpunkt fuegeMauterhebungenEin;
+
+    public MauterhebungDaoMessung(MauterhebungDao dao, DaoMetriken metriken) {
+        this.dao = dao;
+        this.ermittleNaechsteMautId = metriken.messpunkt("MauterhebungDao", "ermittleNaechsteMautId");
+        this.fuegeMauterhebungEin = metriken.messpunkt("MauterhebungDao", "fuegeMauterhebungEin");
+        this.fuegeMauterhebungenEin = metriken.messpunkt("MauterhebungDao", "fuegeMauterhebungenEin");
+    }
+
+    @Override
+    public int ermittleNaechsteMautId() {
+        long start = System.nanoTime();
+        boolean fehler = true;
+        try {
+            int result = dao.ermittleNaechsteMautId();
+            fehler = false;
+            return result;
+        } finally {
+            ermittleNaechsteMautId.erfasse(start, fehler);
+        }
+    }
+
+    @Override
+    public void fuegeMauterhebungEin(int mautId, int mautAbschnitt, long fzgId,
+                                     int kategorieId, LocalDate datum, BigDecimal kosten) {
+        long start = System.nanoTime();
+        boolean fehler = true;
+        try {
+            dao.fuegeMauterhebungEin(mautId, mautAbschnitt, fzgId, kategorieId, datum, kosten);
+            fehler = false;
+        } finally {
+            fuegeMauterhebungEin.erfasse(start, fehler);
+        }
+    }
+
+    @Override
+    public void fuegeMauterhebungenEin(List<Mauterhebung> erhebungen) {
+        long start = System.nanoTime();
+        boolean fehler = true;
+        try {
+            dao.fuegeMauterhebungenEin(erhebungen);
+            fehler = false;
+        } finally {
+            fuegeMauterhebungenEin.erfasse(start, fehler);
+        }
+    }
+}
@@ -0,0 +1,350 @@
+package de.htwberlin.dbtech.aufgaben.ue03.tdg;
+
+import de.htwberlin.dbtech.exceptions.DataException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Schreibpuffer fuer MAUTERHEBUNG. Die Zeilen werden gesammelt und als ein
+ * JDBC-Batch mit genau einem Commit geschrieben, sobald der Puffer
+ * {@code maxZeilen} erreicht oder die aelteste Zeile {@code maxWartezeitMillis}
+ * alt ist.
+ *
+ * Der Puffer schreibt ueber eine eigene Verbindung, deren Autocommit
+ * abgeschaltet wird; sie darf von niemand anderem benutzt werden. Mehrere
+ * Services koennen sich einen Puffer teilen, siehe {@link #fuer(MauterhebungDao)}.
+ *
+ * Mit {@link Dauerhaftigkeit#SYNCHRON} kehrt das Einfuegen erst nach dem
+ * Commit der Zeile zurueck; gleichzeitig wartende Aufrufer teilen sich einen
+ * Commit. Jeder Aufrufer schreibt sofort, {@code maxZeilen} und
+ * {@code maxWartezeitMillis} haben in diesem Modus keine Wirkung. Mit
+ * {@link Dauerhaftigkeit#ASYNCHRON} gehen bei einem Absturz die noch nicht
+ * geschriebenen Zeilen verloren.
+ *
+ * Schlaegt der Batch fehl, werden seine Zeilen einzeln mit je einem Commit
+ * geschrieben. Nur die dabei fehlerhaften Zeilen werden verworfen: Bei
+ * SYNCHRON erhaelt ihr Aufrufer die DataException (seine uebrigen Zeilen
+ * koennen bereits geschrieben sein), bei ASYNCHRON werden sie protokolliert
+ * und ueber {@link #holeFehlschlaege()} geliefert.
+ */
+public final class MauterhebungPuffer implements AutoCloseable {
+    private static final Logger L = LoggerFactory.getLogger(MauterhebungPuffer.class);
+
+    public enum Dauerhaftigkeit {
+        /** Rueckkehr sofort, Commit spaeter */
+        ASYNCHRON,
+        /** Rueckkehr nach dem Commit */
+        SYNCHRON
+    }
+
+    private final Connection verbindung;
+    private final MauterhebungTdg tdg;
+    private final int maxZeilen;
+    private final long maxWartezeitMillis;
+    private final Dauerhaftigkeit dauerhaftigkeit;
+    private final Thread zeitgeber;
+
+    /** gesperrt ueber this */
+    private List<Eintrag> puffer = new ArrayList<>();
+    private long aeltesteZeile;
+    private boolean geschlossen;
+
+    /** gesperrt ueber verbindung */
+    private long geschrieben;
+    private long flushes;
+    private long verworfen;
+    private List<Fehlschlag> fehlschlaege = new ArrayList<>();
+
+    public MauterhebungPuffer(Connection verbindung, int maxZeilen, long maxWartezeitMillis,
+                              Dauerhaftigkeit dauerhaftigkeit) {
+        if (maxZeilen < 1 || maxWartezeitMillis < 1) {
+            throw new IllegalArgumentException("maxZeilen und maxWartezeitMillis muessen positiv sein");
+        }
+        try {
+            verbindung.setAutoCommit(false);
+        } catch (SQLException e) {
+            throw new DataException(e);
+        }
+        this.verbindung = verbindung;
+        this.tdg = new MauterhebungTdg(verbindung);
+        this.maxZeilen = maxZeilen;
+        this.maxWartezeitMillis = maxWartezeitMillis;
+        this.dauerhaftigkeit = dauerhaftigkeit;
+        this.zeitgeber = new Thread(this::zeitgeber, "mauterhebung-puffer");
+        this.zeitgeber.setDaemon(true);
+        if (dauerhaftigkeit == Dauerhaftigkeit.ASYNCHRON) {
+            this.zeitgeber.start();
+        }
+    }
+
+    /**
+     * Liefert eine Sicht als {@link MauterhebungDao}: Schluessel kommen aus
+     * der uebergebenen DAO, Einfuegungen gehen in den Puffer.
+     */
+    public MauterhebungDao fuer(MauterhebungDao schluessel) {
+        return new MauterhebungDao() {
+            @Override
+            public int ermittleNaechsteMautId() {
+                return schluessel.ermittleNaechsteMautId();
+            }
+
+            @Override
+            public void fuegeMauterhebungEin(int mautId, int mautAbschnitt, long fzgId, int kategorieId,
+                                             LocalDate datum, BigDecimal kosten) {
+                einfuegen(List.of(new Mauterhebung(mautId, mautAbschnitt, fzgId, kategorieId, datum, kosten)));
+            }
+
+            @Override
+            public void fuegeMauterhebungenEin(List<Mauterhebung> erhebungen) {
+                einfuegen(erhebungen);
+            }
+        };
+    }
+
+    /**
+     * Nimmt die Zeilen in den Puffer auf. Ist der Puffer danach voll, schreibt
+     * der Aufrufer ihn selbst; bei SYNCHRON wartet er auf den Commit.
+     */
+    public void einfuegen(List<Mauterhebung> erhebungen) {
+        if (erhebungen.isEmpty()) {
+            return;
+        }
+        CompletableFuture<Void> commit = dauerhaftigkeit == Dauerhaftigkeit.SYNCHRON ? new CompletableFuture<>() : null;
+        boolean voll;
+        synchronized (this) {
+            if (geschlossen) {
+                throw new DataException("Mauterhebungspuffer ist geschlossen");
+            }
+            if (puffer.isEmpty()) {
+                aeltesteZeile = System.currentTimeMillis();
+                notifyAll();
+            }
+            for (Mauterhebung m : erhebungen) {
+                puffer.add(new Eintrag(m, commit));
+            }
+            voll = puffer.size() >= maxZeilen;
+        }
+        if (commit == null) {
+            if (voll) {
+                try {
+                    schreiben();
+                } catch (DataException e) {
+                    // bereits protokolliert, betrifft nicht nur die Zeilen dieses Aufrufers
+                }
+            }
+            return;
+        }
+        // die Zeile kann bereits im Batch eines anderen Aufrufers liegen
+        try {
+            schreiben();
+        } catch (DataException e) {
+            // die eigenen Zeilen koennen geschrieben sein, massgeblich ist die Future
+        }
+        try {
+            commit.join();
+        } catch (RuntimeException e) {
+            throw e.getCause() instanceof DataException ? (DataException) e.getCause() : new DataException(e);
+        }
+    }
+
+    /**
+     * Schreibt alle gepufferten Zeilen mit einem Commit, nach einem Fehler
+     * zeilenweise.
+     *
+     * @throws DataException falls mindestens eine Zeile verworfen wurde
+     */
+    public void schreiben() {
+        synchronized (verbindung) {
+            List<Eintrag> batch;
+            synchronized (this) {
+                if (puffer.isEmpty()) {
+                    return;
+                }
+                batch = puffer;
+                puffer = new ArrayList<>();
+            }
+
+            List<Mauterhebung> zeilen = new ArrayList<>(batch.size());
+            for (Eintrag e : batch) {
+                zeilen.add(e.erhebung);
+            }
+            try {
+                tdg.fuegeMauterhebungenEin(zeilen);
+                verbindung.commit();
+                geschrieben += zeilen.size();
+                flushes++;
+                for (Eintrag e : batch) {
+                    if (e.commit != null) {
+                        e.commit.complete(null);
+                    }
+                }
+            } catch (SQLException | RuntimeException e) {
+                rollback();
+                L.warn("Batch mit {} Mauterhebungen fehlgeschlagen, schreibe zeilenweise", zeilen.size(), e);
+                zeilenweise(batch);
+            }
+        }
+    }
+
+    /** Schreibt jede Zeile mit eigenem Commit; gesperrt ueber verbindung */
+    private void zeilenweise(List<Eintrag> batch) {
+        DataException erster = null;
+        int fehler = 0;
+        for (Eintrag eintrag : batch) {
+            Mauterhebung m = eintrag.erhebung;
+            try {
+                tdg.fuegeMauterhebungenEin(List.of(m));
+                verbindung.commit();
+                geschrieben++;
+                flushes++;
+            } catch (SQLException | RuntimeException e) {
+                DataException fehlschlag = e instanceof DataException ? (DataException) e : new DataException(e);
+                rollback();
+                verworfen++;
+                fehler++;
+                L.error("verworfen: MAUT_ID={}, ABSCHNITTS_ID={}, FZG_ID={}, KOSTEN={}: {}", m.getMautId(),
+                        m.getMautAbschnitt(), m.getFzgId(), m.getKosten(), e.getMessage());
+                if (eintrag.commit != null) {
+                    eintrag.commit.completeExceptionally(fehlschlag);
+                } else {
+                    synchronized (this) {
+                        fehlschlaege.add(new Fehlschlag(m, fehlschlag));
+                    }
+                }
+                if (erster == null) {
+                    erster = fehlschlag;
+                }
+            }
+        }
+        for (Eintrag eintrag : batch) {
+            if (eintrag.commit != null) {
+                // ohne Wirkung, wenn eine Zeile des Aufrufers verworfen wurde
+                eintrag.commit.complete(null);
+            }
+        }
+        if (erster != null) {
+            throw new DataException(fehler + " von " + batch.size() + " Mauterhebungen verworfen", erster);
+        }
+    }
+
+    private void rollback() {
+        try {
+            verbindung.rollback();
+        } catch (SQLException e) {
+            L.error("Rollback fehlgeschlagen", e);
+        }
+    }
+
+    private void zeitgeber() {
+        while (true) {
+            synchronized (this) {
+                try {
+                    while (!geschlossen && (puffer.isEmpty()
+                            || System.currentTimeMillis() - aeltesteZeile < maxWartezeitMillis)) {
+                        wait(puffer.isEmpty() ? 0 : Math.max(1, maxWartezeitMillis - (System.currentTimeMillis() - aeltesteZeile)));
+                    }
+                } catch (InterruptedException e) {
+                    return;
+                }
+                if (geschlossen) {
+                    return;
+                }
+            }
+            try {
+                schreiben();
+            } catch (DataException e) {
+                // bereits protokolliert
+            }
+        }
+    }
+
+    /**
+     * Beendet den Zeitgeber und schreibt die restlichen Zeilen. Die Verbindung
+     * bleibt offen.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            geschlossen = true;
+            notifyAll();
+        }
+        try {
+            zeitgeber.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        schreiben();
+        L.info("Mauterhebungspuffer geschlossen: {}", this);
+    }
+
+    public synchronized int getAnzahlGepuffert() {
+        return puffer.size();
+    }
+
+    public long getGeschrieben() {
+        synchronized (verbindung) {
+            return geschrieben;
+        }
+    }
+
+    /**
+     * Liefert die seit dem letzten Aufruf verworfenen Zeilen ohne wartenden
+     * Aufrufer (ASYNCHRON) und vergisst sie.
+     */
+    public synchronized List<Fehlschlag> holeFehlschlaege() {
+        List<Fehlschlag> f = fehlschlaege;
+        fehlschlaege = new ArrayList<>();
+        return f;
+    }
+
+    public long getVerworfen() {
+        synchronized (verbindung) {
+            return verworfen;
+        }
+    }
+
+    @Override
+    public String toString() {
+        synchronized (verbindung) {
+            return "MauterhebungPuffer[gepuffert=" + getAnzahlGepuffert() + ", geschrieben=" + geschrieben
+                    + ", commits=" + flushes + ", verworfen=" + verworfen + "]";
+        }
+    }
+
+    /** Eine verworfene Zeile und der Fehler beim Einzelschreiben. */
+    public static final class Fehlschlag {
+        private final Mauterhebung erhebung;
+        private final DataException fehler;
+
+        Fehlschlag(Mauterhebung erhebung, DataException fehler) {
+            this.erhebung = erhebung;
+            this.fehler = fehler;
+        }
+
+        public Mauterhebung getErhebung() {
+            return erhebung;
+        }
+
+        public DataException getFehler() {
+            return fehler;
+        }
+    }
+
+    private static final class Eintrag {
+        final Mauterhebung erhebung;
+        final CompletableFuture<Void> commit;
+
+        Eintrag(Mauterhebung erhebung, CompletableFuture<Void> commit) {
+            this.erhebung = erhebung;
+            this.commit = commit;
+        }
+    }
+}
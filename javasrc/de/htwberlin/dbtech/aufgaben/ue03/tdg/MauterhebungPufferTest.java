@@ -0,0 +1,130 @@
+package de.htwberlin.dbtech.aufgaben.ue03.tdg;
+
+import de.htwberlin.dbtech.exceptions.DataException;
+import de.htwberlin.dbtech.utils.DbCred;
+import de.htwberlin.dbtech.utils.DbUnitUtils;
+import de.htwberlin.dbtech.utils.JdbcUtils;
+import org.dbunit.IDatabaseTester;
+import org.dbunit.JdbcDatabaseTester;
+import org.dbunit.database.DatabaseConfig;
+import org.dbunit.database.IDatabaseConnection;
+import org.dbunit.database.QueryDataSet;
+import org.dbunit.dataset.IDataSet;
+import org.dbunit.dataset.csv.CsvDataSet;
+import org.dbunit.ext.oracle.OracleDataTypeFactory;
+import org.dbunit.operation.DatabaseOperation;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+
+import java.io.File;
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * Die Klasse enthaelt die Testfaelle fuer den Schreibpuffer der
+ * Mauterhebungen. Die fehlerhafte Zeile verwendet die bereits vergebene
+ * MAUT_ID 1000.
+ */
+public class MauterhebungPufferTest {
+    private static IDatabaseConnection dbTesterCon = null;
+    private static IDataSet pre;
+
+    private Connection verbindung;
+
+    @BeforeClass
+    public static void setUp() {
+        try {
+            IDatabaseTester dbTester = new JdbcDatabaseTester(DbCred.driverClass, DbCred.url, DbCred.user,
+                    DbCred.password, DbCred.schema);
+            dbTesterCon = dbTester.getConnection();
+            dbTesterCon.getConfig().setProperty(DatabaseConfig.PROPERTY_DATATYPE_FACTORY, new OracleDataTypeFactory());
+            pre = new CsvDataSet(new File("test-data/ue03-04"));
+            dbTester.setDataSet(pre);
+        } catch (Exception e) {
+            DbUnitUtils.closeDbUnitConnectionQuietly(dbTesterCon);
+            throw new RuntimeException(e);
+        }
+    }
+
+    @AfterClass
+    public static void tearDown() {
+        DbUnitUtils.closeDbUnitConnectionQuietly(dbTesterCon);
+    }
+
+    @Before
+    public void laden() throws Exception {
+        DatabaseOperation.CLEAN_INSERT.execute(dbTesterCon, pre);
+        verbindung = DriverManager.getConnection(DbCred.url, DbCred.user, DbCred.password);
+    }
+
+    @After
+    public void schliessen() {
+        JdbcUtils.closeConnectionQuietly(verbindung);
+    }
+
+    /**
+     * Der Testfall testet, dass eine fehlerhafte Zeile im asynchronen Modus
+     * nur sich selbst verwirft und ueber holeFehlschlaege geliefert wird.
+     */
+    @org.junit.Test
+    public void testAsynchronVerwirftNurFehlerhafteZeile() throws Exception {
+        try (MauterhebungPuffer puffer = new MauterhebungPuffer(verbindung, 100, 60_000,
+                MauterhebungPuffer.Dauerhaftigkeit.ASYNCHRON)) {
+            puffer.einfuegen(List.of(zeile(900001), zeile(1000), zeile(900002)));
+            try {
+                puffer.schreiben();
+                fail("DataException erwartet");
+            } catch (DataException e) {
+                // erwartet
+            }
+            assertEquals(2, puffer.getGeschrieben());
+            assertEquals(1, puffer.getVerworfen());
+            List<MauterhebungPuffer.Fehlschlag> f = puffer.holeFehlschlaege();
+            assertEquals(1, f.size());
+            assertEquals(1000, f.get(0).getErhebung().getMautId());
+            assertEquals(0, puffer.holeFehlschlaege().size());
+        }
+        assertEquals(2, zeilen("SELECT * FROM MAUTERHEBUNG WHERE MAUT_ID IN (900001, 900002)"));
+    }
+
+    /**
+     * Der Testfall testet, dass im synchronen Modus nur der Aufrufer mit der
+     * fehlerhaften Zeile die DataException erhaelt.
+     */
+    @org.junit.Test
+    public void testSynchronFehlerBeimAufrufer() throws Exception {
+        try (MauterhebungPuffer puffer = new MauterhebungPuffer(verbindung, 100, 60_000,
+                MauterhebungPuffer.Dauerhaftigkeit.SYNCHRON)) {
+            puffer.einfuegen(List.of(zeile(900003)));
+            try {
+                puffer.einfuegen(List.of(zeile(1000)));
+                fail("DataException erwartet");
+            } catch (DataException e) {
+                // erwartet
+            }
+            puffer.einfuegen(List.of(zeile(900004)));
+            assertEquals(2, puffer.getGeschrieben());
+            assertEquals(1, puffer.getVerworfen());
+            assertEquals(0, puffer.holeFehlschlaege().size());
+        }
+        assertEquals(2, zeilen("SELECT * FROM MAUTERHEBUNG WHERE MAUT_ID IN (900003, 900004)"));
+    }
+
+    private static Mauterhebung zeile(int mautId) {
+        return new Mauterhebung(mautId, 3750, 9136470816L, 18, LocalDate.of(2024, 1, 1), new BigDecimal("0.71"));
+    }
+
+    private static int zeilen(String sql) throws Exception {
+        QueryDataSet q = new QueryDataSet(dbTesterCon);
+        q.addTable("ERGEBNIS", sql);
+        return q.getTable("ERGEBNIS").getRowCount();
+    }
+}
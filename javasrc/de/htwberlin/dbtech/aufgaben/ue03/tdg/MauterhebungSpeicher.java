@@ -0,0 +1,41 @@
+package de.htwberlin.dbtech.aufgaben.ue03.tdg;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * {@link MauterhebungDao} auf einem {@link Datenbestand}. Schluessel werden
+ * fortlaufend ab MAX(MAUT_ID) + 1 vergeben; eine doppelte MAUT_ID fuehrt wie
+ * in der Datenbank zu einer DataException.
+ */
+public class MauterhebungSpeicher implements MauterhebungDao {
+
+    private final Datenbestand daten;
+
+    public MauterhebungSpeicher(Datenbestand daten) {
+        this.daten = daten;
+    }
+
+    @Override
+    public int ermittleNaechsteMautId() {
+        synchronized (daten) {
+            return daten.naechsteMautId++;
+        }
+    }
+
+    @Override
+    public void fuegeMauterhebungEin(int mautId, int mautAbschnitt, long fzgId, int kategorieId,
+                                     LocalDate datum, BigDecimal kosten) {
+        daten.fuegeErhebungEin(new Mauterhebung(mautId, mautAbschnitt, fzgId, kategorieId, datum, kosten));
+    }
+
+    @Override
+    public void fuegeMauterhebungenEin(List<Mauterhebung> erhebungen) {
+        synchronized (daten) {
+            for (Mauterhebung m : erhebungen) {
+                daten.fuegeErhebungEin(m);
+            }
+        }
+    }
+}
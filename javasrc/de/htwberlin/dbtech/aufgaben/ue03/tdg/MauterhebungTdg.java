@@ -2,28 +2,31 @@ package de.htwberlin.dbtech.aufgaben.ue03.tdg;
 
 import de.htwberlin.dbtech.aufgaben.ue03.MautServiceImplDao;
 import de.htwberlin.dbtech.exceptions.DataException;
+import de.htwberlin.dbtech.utils.IdAllocator;
+import de.htwberlin.dbtech.utils.StatementCache;
 
 import java.math.BigDecimal;
 import java.sql.*;
 import java.time.LocalDate;
+import java.util.List;
 
 public class MauterhebungTdg implements MauterhebungDao {
 
+    private static final IdAllocator MAUT_IDS = IdAllocator.fuer("MAUTERHEBUNG", "MAUT_ID");
+
     private final Connection connection;
+    private final StatementCache statements;
+    private final SaldoTdg salden;
 
     public MauterhebungTdg(Connection connection) {
         this.connection = connection;
+        this.statements = StatementCache.fuer(connection);
+        this.salden = new SaldoTdg(connection);
     }
 
     @Override
     public int ermittleNaechsteMautId() {
-        try (PreparedStatement s = connection.prepareStatement(
-                "SELECT COALESCE(MAX(MAUT_ID), 0) AS MAX_ID FROM MAUTERHEBUNG")) {
-            ResultSet r = s.executeQuery();
-            return r.next() ? (int) (r.getLong("MAX_ID") + 1) : 1;
-        } catch (SQLException e) {
-            throw new DataException(e);
-        }
+        return (int) MAUT_IDS.naechsteId(connection);
     }
 
     @Override
@@ -33,7 +36,7 @@ public class MauterhebungTdg implements MauterhebungDao {
                                      int kategorieId,
                                      LocalDate datum,
                                      BigDecimal kosten) {
-        try (PreparedStatement s = connection.prepareStatement(
+        try (PreparedStatement s = statements.prepareStatement(
                 "INSERT INTO MAUTERHEBUNG " +
                         "(MAUT_ID, ABSCHNITTS_ID, FZG_ID, KATEGORIE_ID, BEFAHRUNGSDATUM, KOSTEN) " +
                         "VALUES (?, ?, ?, ?, ?, ?)")) {
@@ -47,6 +50,31 @@ public class MauterhebungTdg implements MauterhebungDao {
         } catch (SQLException e) {
             throw new DataException(e);
         }
+        salden.bucheMauterhebung(fzgId, kosten);
     }
 
+    @Override
+    public void fuegeMauterhebungenEin(List<Mauterhebung> erhebungen) {
+        if (erhebungen.isEmpty()) {
+            return;
+        }
+        try (PreparedStatement s = statements.prepareStatement(
+                "INSERT INTO MAUTERHEBUNG " +
+                        "(MAUT_ID, ABSCHNITTS_ID, FZG_ID, KATEGORIE_ID, BEFAHRUNGSDATUM, KOSTEN) " +
+                        "VALUES (?, ?, ?, ?, ?, ?)")) {
+            for (Mauterhebung m : erhebungen) {
+                s.setInt(1, m.getMautId());
+                s.setInt(2, m.getMautAbschnitt());
+                s.setLong(3, m.getFzgId());
+                s.setInt(4, m.getKategorieId());
+                s.setDate(5, Date.valueOf(m.getDatum()));
+                s.setBigDecimal(6, m.getKosten());
+                s.addBatch();
+            }
+            s.executeBatch();
+        } catch (SQLException e) {
+            throw new DataException(e);
+        }
+        salden.bucheMauterhebungen(erhebungen);
+    }
 }
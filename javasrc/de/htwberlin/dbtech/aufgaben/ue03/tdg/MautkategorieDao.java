@@ -1,6 +1,7 @@
 package de.htwberlin.dbtech.aufgaben.ue03.tdg;
 
 import java.math.BigDecimal;
+import java.util.List;
 import java.util.Map;
 
 public interface MautkategorieDao {
@@ -15,4 +16,17 @@ public interface MautkategorieDao {
      */
     Map.Entry<Integer, BigDecimal> berechneMautpreisFuerFahrzeug(
             int ssklId, int achszahl, long laengeMeter);
+
+    /**
+     * Wie {@link #berechneMautpreisFuerFahrzeug}, die Streckenlaenge ergibt
+     * sich aus dem Mautabschnitt. Der Preis kommt aus der vorberechneten
+     * Preismatrix.
+     */
+    Map.Entry<Integer, BigDecimal> berechneMautpreisFuerAbschnitt(
+            int ssklId, int achszahl, int mautAbschnitt);
+
+    /**
+     * Liefert alle Mautkategorien, aufsteigend nach KATEGORIE_ID.
+     */
+    List<Tarif> ermittleTarife();
 }
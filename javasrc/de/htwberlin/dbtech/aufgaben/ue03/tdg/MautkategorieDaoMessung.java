@@ -0,0 +1,62 @@
+package de.htwberlin.dbtech.aufgaben.ue03.tdg;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Misst die Aufrufe einer {@link MautkategorieDao} und gibt sie unveraendert weiter,
+ * siehe {@link DaoMetriken}.
+ */
+public final class MautkategorieDaoMessung implements MautkategorieDao {
+    private final MautkategorieDao dao;
+    private final DaoMetriken.Messpunkt berechneMautpreisFuerFahrzeug;
+    private final DaoMetriken.Messpunkt berechneMautpreisFuerAbschnitt;
+    private final DaoMetriken.Messpunkt ermittleTarife;
+
+    public MautkategorieDaoMessung(MautkategorieDao dao, DaoMetriken metriken) {
+        this.dao = dao;
+        this.berechneMautpreisFuerFahrzeug = metriken.messpunkt("MautkategorieDao", "berechneMautpreisFuerFahrzeug");
+        this.berechneMautpreisFuerAbschnitt = metriken.messpunkt("MautkategorieDao", "berechneMautpreisFuerAbschnitt");
+        this.ermittleTarife = metriken.messpunkt("MautkategorieDao", "ermittleTarife");
+    }
+
+    @Override
+    public Map.Entry<Integer, BigDecimal> berechneMautpreisFuerFahrzeug(int ssklId, int achszahl, long laengeMeter) {
+        long start = System.nanoTime();
+        boolean fehler = true;
+        try {
+            Map.Entry<Integer, BigDecimal> result = dao.berechneMautpreisFuerFahrzeug(ssklId, achszahl, laengeMeter);
+            fehler = false;
+            return result;
+        } finally {
+            berechneMautpreisFuerFahrzeug.erfasse(start, fehler);
+        }
+    }
+
+    @Override
+    public Map.Entry<Integer, BigDecimal> berechneMautpreisFuerAbschnitt(int ssklId, int achszahl, int mautAbschnitt) {
+        long start = System.nanoTime();
+        boolean fehler = true;
+        try {
+            Map.Entry<Integer, BigDecimal> result = dao.berechneMautpreisFuerAbschnitt(ssklId, achszahl, mautAbschnitt);
+            fehler = false;
+            return result;
+        } finally {
+            berechneMautpreisFuerAbschnitt.erfasse(start, fehler);
+        }
+    }
+
+    @Override
+    public List<Tarif> ermittleTarife() {
+        long start = System.nanoTime();
+        boolean fehler = true;
+        try {
+            List<Tarif> result = dao.ermittleTarife();
+            fehler = false;
+            return result;
+        } finally {
+            ermittleTarife.erfasse(start, fehler);
+        }
+    }
+}
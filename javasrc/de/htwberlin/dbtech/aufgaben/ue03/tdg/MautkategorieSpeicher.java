@@ -0,0 +1,52 @@
+package de.htwberlin.dbtech.aufgaben.ue03.tdg;
+
+import de.htwberlin.dbtech.aufgaben.ue03.cache.PreisMatrix;
+import de.htwberlin.dbtech.aufgaben.ue03.cache.TarifTabelle;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * {@link MautkategorieDao} auf einem {@link Datenbestand}. Die Preise kommen
+ * aus einer eigenen Preismatrix des Datenbestands, nicht aus der
+ * prozessweiten.
+ */
+public class MautkategorieSpeicher implements MautkategorieDao {
+
+    private final Datenbestand daten;
+
+    public MautkategorieSpeicher(Datenbestand daten) {
+        this.daten = daten;
+    }
+
+    @Override
+    public Map.Entry<Integer, BigDecimal> berechneMautpreisFuerFahrzeug(int ssklId, int achszahl, long laengeMeter) {
+        Tarif tarif = daten.preise().getTarife().finde(ssklId, achszahl);
+        if (tarif == null) {
+            return Map.entry(0, BigDecimal.ZERO);
+        }
+        return Map.entry(tarif.getKategorieId(), TarifTabelle.berechnePreis(laengeMeter, tarif.getMautsatzJeKm()));
+    }
+
+    @Override
+    public Map.Entry<Integer, BigDecimal> berechneMautpreisFuerAbschnitt(int ssklId, int achszahl, int mautAbschnitt) {
+        PreisMatrix matrix = daten.preise();
+        int t = matrix.getTarife().index(ssklId, achszahl);
+        if (t < 0) {
+            return Map.entry(0, BigDecimal.ZERO);
+        }
+        Tarif tarif = matrix.getTarife().get(t);
+        long cent = matrix.preisInCent(mautAbschnitt, t);
+        // ein unbekannter Abschnitt hat wie in MautabschnittTdg die Laenge 0
+        return Map.entry(tarif.getKategorieId(),
+                cent >= 0 ? PreisMatrix.alsEuro(cent) : TarifTabelle.berechnePreis(0, tarif.getMautsatzJeKm()));
+    }
+
+    @Override
+    public List<Tarif> ermittleTarife() {
+        synchronized (daten) {
+            return daten.tarife();
+        }
+    }
+}
@@ -1,56 +1,80 @@
 package de.htwberlin.dbtech.aufgaben.ue03.tdg;
 
-import de.htwberlin.dbtech.aufgaben.ue03.MautServiceImplDao;
+import de.htwberlin.dbtech.aufgaben.ue03.cache.AbschnittKatalog;
+import de.htwberlin.dbtech.aufgaben.ue03.cache.PreisMatrix;
+import de.htwberlin.dbtech.aufgaben.ue03.cache.TarifTabelle;
 import de.htwberlin.dbtech.exceptions.DataException;
+import de.htwberlin.dbtech.utils.StatementCache;
 
 import java.math.BigDecimal;
-import java.math.RoundingMode;
 import java.sql.*;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 
         public class MautkategorieTdg implements MautkategorieDao {
 
     private final Connection connection;
+    private final StatementCache statements;
 
     public MautkategorieTdg(Connection connection) {
         this.connection = connection;
+        this.statements = StatementCache.fuer(connection);
     }
 
     @Override
     public Map.Entry<Integer, BigDecimal> berechneMautpreisFuerFahrzeug(
             int ssklId, int achszahl, long laengeMeter) {
 
-        try (PreparedStatement s = connection.prepareStatement(
-                "SELECT KATEGORIE_ID, ACHSZAHL, MAUTSATZ_JE_KM " +
-                        "FROM MAUTKATEGORIE WHERE SSKL_ID = ?")) {
+        Tarif tarif = TarifTabelle.aktuell(this::ermittleTarife).finde(ssklId, achszahl);
+        if (tarif == null) {
+            // nichts gefunden -> 0 / 0 €
+            return Map.entry(0, BigDecimal.ZERO);
+        }
 
-            s.setInt(1, ssklId);
-            ResultSet r = s.executeQuery();
+        // key   = Kategorie-ID
+        // value = Preis
+        return Map.entry(tarif.getKategorieId(),
+                TarifTabelle.berechnePreis(laengeMeter, tarif.getMautsatzJeKm()));
+    }
 
-            while (r.next()) {
-                String regel = r.getString("ACHSZAHL");
-                if (MautServiceImplDao.passtZurAchszahl(regel, achszahl)) {
+    @Override
+    public Map.Entry<Integer, BigDecimal> berechneMautpreisFuerAbschnitt(
+            int ssklId, int achszahl, int mautAbschnitt) {
 
-                    BigDecimal mautsatzJeKm = r.getBigDecimal("MAUTSATZ_JE_KM");
-                    int kategorieId = r.getInt("KATEGORIE_ID");
+        MautabschnittDao abschnitte = new MautabschnittTdg(connection);
+        PreisMatrix matrix = PreisMatrix.aktuell(
+                TarifTabelle.aktuell(this::ermittleTarife), AbschnittKatalog.aktuell(abschnitte::ermittleAbschnitte));
 
-                    BigDecimal lengthKm = BigDecimal.valueOf(laengeMeter)
-                            .divide(BigDecimal.valueOf(1000), 3, RoundingMode.HALF_UP);
+        int t = matrix.getTarife().index(ssklId, achszahl);
+        if (t < 0) {
+            return Map.entry(0, BigDecimal.ZERO);
+        }
+        Tarif tarif = matrix.getTarife().get(t);
 
-                    BigDecimal preis = mautsatzJeKm
-                            .divide(BigDecimal.valueOf(100), 4, RoundingMode.HALF_UP) // ct -> €
-                            .multiply(lengthKm)
-                            .setScale(2, RoundingMode.HALF_UP);
+        long cent = matrix.preisInCent(mautAbschnitt, t);
+        BigDecimal preis = cent >= 0
+                ? PreisMatrix.alsEuro(cent)
+                // Abschnitt juenger als die Matrix
+                : TarifTabelle.berechnePreis(abschnitte.ermittleLaengeInMetern(mautAbschnitt), tarif.getMautsatzJeKm());
+        return Map.entry(tarif.getKategorieId(), preis);
+    }
 
-                    // key   = Kategorie-ID
-                    // value = Preis
-                    return Map.entry(kategorieId, preis);
-                }
+    @Override
+    public List<Tarif> ermittleTarife() {
+        List<Tarif> result = new ArrayList<>();
+        try (PreparedStatement s = statements.prepareStatement(
+                "SELECT KATEGORIE_ID, SSKL_ID, ACHSZAHL, MAUTSATZ_JE_KM " +
+                        "FROM MAUTKATEGORIE ORDER BY KATEGORIE_ID")) {
+            ResultSet r = s.executeQuery();
+            while (r.next()) {
+                result.add(new Tarif(
+                        r.getInt("KATEGORIE_ID"),
+                        r.getInt("SSKL_ID"),
+                        r.getString("ACHSZAHL"),
+                        r.getBigDecimal("MAUTSATZ_JE_KM")));
             }
-
-            // nichts gefunden -> 0 / 0 €
-            return Map.entry(0, BigDecimal.ZERO);
-
+            return result;
         } catch (SQLException e) {
             throw new DataException(e);
         }
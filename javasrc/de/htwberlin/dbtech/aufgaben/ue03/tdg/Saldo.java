@@ -0,0 +1,38 @@
+package de.htwberlin.dbtech.aufgaben.ue03.tdg;
+
+import java.math.BigDecimal;
+
+/**
+ * Saldo eines Nutzers aus OFFENER_SALDO, summiert ueber seine
+ * Fahrzeuggeraete: Summe und Anzahl der noch nicht abgerechneten
+ * Mauterhebungen.
+ */
+public final class Saldo {
+
+    private final long nutzerId;
+    private final BigDecimal summe;
+    private final long anzahl;
+
+    public Saldo(long nutzerId, BigDecimal summe, long anzahl) {
+        this.nutzerId = nutzerId;
+        this.summe = summe;
+        this.anzahl = anzahl;
+    }
+
+    public long getNutzerId() {
+        return nutzerId;
+    }
+
+    public BigDecimal getSumme() {
+        return summe;
+    }
+
+    public long getAnzahl() {
+        return anzahl;
+    }
+
+    @Override
+    public String toString() {
+        return "Saldo[" + nutzerId + ", " + summe + ", " + anzahl + "]";
+    }
+}
@@ -0,0 +1,210 @@
+package de.htwberlin.dbtech.aufgaben.ue03.tdg;
+
+import de.htwberlin.dbtech.exceptions.DataException;
+import de.htwberlin.dbtech.utils.StatementCache;
+
+import java.math.BigDecimal;
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Pflegt OFFENER_SALDO, die laufende Summe und Anzahl der noch nicht
+ * abgerechneten Mauterhebungen je Nutzer. Jede neue Mauterhebung wird in
+ * derselben Transaktion gebucht, der Rechnungslauf zieht die abgerechneten
+ * Betraege wieder ab.
+ *
+ * Die Tabelle hat eine Zeile je Nutzer und Fahrzeuggeraet. Eine Buchung
+ * sperrt bis zum Commit nur die Zeile ihres Geraets, die Geraete eines
+ * Flottenkunden werden also parallel gebucht; die Mauterhebungen eines
+ * Geraets sind ohnehin ueber die StreifenSperre des Kennzeichens
+ * serialisiert. Der Saldo eines Nutzers ist die Summe seiner Zeilen, in
+ * der index-organisierten Tabelle ein Bereichszugriff ueber den
+ * Primaerschluessel statt eines Joins ueber alle Mauterhebungen.
+ *
+ * Gebucht wird von MauterhebungTdg (und damit Datenbestand.schreiben und
+ * dem Schreibpuffer), MautServiceImpl, der PL/SQL-Prozedur ueber
+ * maut_service.buche_saldo (db/aufgaben/ue04) und dem MassenLader (Neuaufbau
+ * nach dem Laden). Nach dem Laden von MAUTERHEBUNG ueber DbUnit muss die
+ * Tabelle mit {@link #neuAufbauen()} neu aufgebaut werden.
+ *
+ * Buchen zwei Transaktionen gleichzeitig den ersten Betrag eines Geraets,
+ * nehmen beide MERGE den INSERT-Zweig und die zweite scheitert nach dem
+ * Commit der ersten mit ORA-00001. Die Buchung wird dann als UPDATE
+ * wiederholt.
+ */
+public class SaldoTdg {
+
+    private static final String SQL_BUCHEN =
+            "MERGE INTO OFFENER_SALDO s " +
+                    "USING (SELECT f.NUTZER_ID, fg.FZG_ID, ? AS SUMME, ? AS ANZAHL FROM FAHRZEUGGERAT fg " +
+                    "JOIN FAHRZEUG f ON f.FZ_ID = fg.FZ_ID WHERE fg.FZG_ID = ?) m " +
+                    "ON (s.NUTZER_ID = m.NUTZER_ID AND s.FZG_ID = m.FZG_ID) " +
+                    "WHEN MATCHED THEN UPDATE SET s.SUMME = s.SUMME + m.SUMME, s.ANZAHL = s.ANZAHL + m.ANZAHL " +
+                    "WHEN NOT MATCHED THEN INSERT (NUTZER_ID, FZG_ID, SUMME, ANZAHL) " +
+                    "VALUES (m.NUTZER_ID, m.FZG_ID, m.SUMME, m.ANZAHL)";
+
+    /** Wiederholung nach ORA-00001, gleiche Parameter wie SQL_BUCHEN */
+    private static final String SQL_NACHBUCHEN =
+            "UPDATE OFFENER_SALDO SET SUMME = SUMME + ?, ANZAHL = ANZAHL + ? " +
+                    "WHERE (NUTZER_ID, FZG_ID) = (SELECT f.NUTZER_ID, fg.FZG_ID FROM FAHRZEUGGERAT fg " +
+                    "JOIN FAHRZEUG f ON f.FZ_ID = fg.FZ_ID WHERE fg.FZG_ID = ?)";
+
+    private final Connection connection;
+    private final StatementCache statements;
+
+    public SaldoTdg(Connection connection) {
+        this.connection = connection;
+        this.statements = StatementCache.fuer(connection);
+    }
+
+    /**
+     * Bucht eine neue Mauterhebung des Fahrzeuggeraets auf den Saldo seines
+     * Nutzers.
+     */
+    public void bucheMauterhebung(long fzgId, BigDecimal kosten) {
+        buche(fzgId, kosten, 1);
+    }
+
+    private void buche(long fzgId, BigDecimal summe, int anzahl) {
+        try {
+            try {
+                ausfuehren(SQL_BUCHEN, fzgId, summe, anzahl);
+            } catch (SQLException e) {
+                if (!istEindeutigkeitsverletzung(e)) {
+                    throw e;
+                }
+                ausfuehren(SQL_NACHBUCHEN, fzgId, summe, anzahl);
+            }
+        } catch (SQLException e) {
+            throw new DataException(e);
+        }
+    }
+
+    private void ausfuehren(String sql, long fzgId, BigDecimal summe, int anzahl) throws SQLException {
+        try (PreparedStatement s = statements.prepareStatement(sql)) {
+            s.setBigDecimal(1, summe);
+            s.setInt(2, anzahl);
+            s.setLong(3, fzgId);
+            s.executeUpdate();
+        }
+    }
+
+    /** ORA-00001, Verletzung des Primaerschluessels */
+    private static boolean istEindeutigkeitsverletzung(SQLException e) {
+        return "23000".equals(e.getSQLState()) && e.getErrorCode() == 1;
+    }
+
+    /**
+     * Bucht neue Mauterhebungen als JDBC-Batch, je Fahrzeuggeraet
+     * zusammengefasst. Scheitert eine Buchung mit ORA-00001, werden sie und
+     * die folgenden einzeln gebucht; die vorherigen hat der Treiber bereits
+     * ausgefuehrt.
+     */
+    public void bucheMauterhebungen(List<Mauterhebung> erhebungen) {
+        if (erhebungen.isEmpty()) {
+            return;
+        }
+        Map<Long, BigDecimal> summen = new LinkedHashMap<>();
+        Map<Long, Integer> anzahlen = new LinkedHashMap<>();
+        for (Mauterhebung m : erhebungen) {
+            summen.merge(m.getFzgId(), m.getKosten(), BigDecimal::add);
+            anzahlen.merge(m.getFzgId(), 1, Integer::sum);
+        }
+        List<Long> geraete = new ArrayList<>(summen.keySet());
+        try (PreparedStatement s = statements.prepareStatement(SQL_BUCHEN)) {
+            for (Long fzgId : geraete) {
+                s.setBigDecimal(1, summen.get(fzgId));
+                s.setInt(2, anzahlen.get(fzgId));
+                s.setLong(3, fzgId);
+                s.addBatch();
+            }
+            s.executeBatch();
+        } catch (BatchUpdateException e) {
+            if (!istEindeutigkeitsverletzung(e)) {
+                throw new DataException(e);
+            }
+            int[] ausgefuehrt = e.getUpdateCounts();
+            for (int i = 0; i < geraete.size(); i++) {
+                boolean fehlt = ausgefuehrt.length == geraete.size()
+                        ? ausgefuehrt[i] == Statement.EXECUTE_FAILED
+                        : i >= ausgefuehrt.length;
+                if (fehlt) {
+                    Long fzgId = geraete.get(i);
+                    buche(fzgId, summen.get(fzgId), anzahlen.get(fzgId));
+                }
+            }
+        } catch (SQLException e) {
+            throw new DataException(e);
+        }
+    }
+
+    /**
+     * Zieht summe und anzahl abgerechneter Mauterhebungen eines
+     * Fahrzeuggeraets vom Saldo des Nutzers ab.
+     */
+    public void rechneAb(long nutzerId, long fzgId, BigDecimal summe, int anzahl) {
+        try (PreparedStatement s = statements.prepareStatement(
+                "UPDATE OFFENER_SALDO SET SUMME = SUMME - ?, ANZAHL = ANZAHL - ? " +
+                        "WHERE NUTZER_ID = ? AND FZG_ID = ?")) {
+            s.setBigDecimal(1, summe);
+            s.setInt(2, anzahl);
+            s.setLong(3, nutzerId);
+            s.setLong(4, fzgId);
+            s.executeUpdate();
+        } catch (SQLException e) {
+            throw new DataException(e);
+        }
+    }
+
+    /**
+     * Liefert den Saldo des Nutzers als Summe ueber seine Fahrzeuggeraete,
+     * ohne offene Mauterhebungen Summe und Anzahl 0.
+     */
+    public Saldo ermittleSaldo(long nutzerId) {
+        try (PreparedStatement s = statements.prepareStatement(
+                "SELECT SUM(SUMME) AS SUMME, SUM(ANZAHL) AS ANZAHL FROM OFFENER_SALDO WHERE NUTZER_ID = ?")) {
+            s.setLong(1, nutzerId);
+            try (ResultSet r = s.executeQuery()) {
+                if (r.next() && r.getBigDecimal("SUMME") != null) {
+                    return new Saldo(nutzerId, r.getBigDecimal("SUMME"), r.getLong("ANZAHL"));
+                }
+            }
+            return new Saldo(nutzerId, BigDecimal.ZERO.setScale(2), 0);
+        } catch (SQLException e) {
+            throw new DataException(e);
+        }
+    }
+
+    /**
+     * Prueft, ob der Saldo des Nutzers zuzueglich des Betrags das Limit
+     * nicht uebersteigt.
+     */
+    public boolean istImLimit(long nutzerId, BigDecimal betrag, BigDecimal limit) {
+        return ermittleSaldo(nutzerId).getSumme().add(betrag).compareTo(limit) <= 0;
+    }
+
+    /**
+     * Baut OFFENER_SALDO aus allen Mauterhebungen ohne POSITION neu auf und
+     * liefert die Anzahl der Zeilen (Nutzer und Fahrzeuggeraet). Die Tabelle bleibt bis zum Commit des
+     * Aufrufers exklusiv gesperrt; parallel gebuchte Mauterhebungen warten
+     * und werden danach auf den neuen Stand gebucht.
+     */
+    public int neuAufbauen() {
+        try (Statement s = connection.createStatement()) {
+            s.execute("LOCK TABLE OFFENER_SALDO IN EXCLUSIVE MODE");
+            s.executeUpdate("DELETE FROM OFFENER_SALDO");
+            return s.executeUpdate(
+                    "INSERT INTO OFFENER_SALDO (NUTZER_ID, FZG_ID, SUMME, ANZAHL) " +
+                            "SELECT f.NUTZER_ID, me.FZG_ID, SUM(me.KOSTEN), COUNT(*) FROM MAUTERHEBUNG me " +
+                            "JOIN FAHRZEUGGERAT fg ON fg.FZG_ID = me.FZG_ID " +
+                            "JOIN FAHRZEUG f ON f.FZ_ID = fg.FZ_ID " +
+                            "WHERE NOT EXISTS (SELECT 1 FROM POSITION p WHERE p.MAUT_ID = me.MAUT_ID) " +
+                            "GROUP BY f.NUTZER_ID, me.FZG_ID");
+        } catch (SQLException e) {
+            throw new DataException(e);
+        }
+    }
+}
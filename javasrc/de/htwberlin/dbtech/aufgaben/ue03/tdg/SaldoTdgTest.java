@@ -0,0 +1,205 @@
+package de.htwberlin.dbtech.aufgaben.ue03.tdg;
+
+import de.htwberlin.dbtech.aufgaben.ue03.Erfassung;
+import de.htwberlin.dbtech.aufgaben.ue03.MautServiceImpl;
+import de.htwberlin.dbtech.aufgaben.ue03.cache.Stammdaten;
+import de.htwberlin.dbtech.utils.DbCred;
+import de.htwberlin.dbtech.utils.DbUnitUtils;
+import de.htwberlin.dbtech.utils.JdbcUtils;
+import org.dbunit.IDatabaseTester;
+import org.dbunit.JdbcDatabaseTester;
+import org.dbunit.database.DatabaseConfig;
+import org.dbunit.database.IDatabaseConnection;
+import org.dbunit.database.QueryDataSet;
+import org.dbunit.dataset.IDataSet;
+import org.dbunit.dataset.ITable;
+import org.dbunit.dataset.csv.CsvDataSet;
+import org.dbunit.ext.oracle.OracleDataTypeFactory;
+import org.dbunit.operation.DatabaseOperation;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+
+import java.io.File;
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+/**
+ * Die Klasse enthaelt die Testfaelle fuer OFFENER_SALDO. Der Saldo je Nutzer
+ * muss der Summe der Kosten seiner nicht abgerechneten Mauterhebungen
+ * entsprechen.
+ */
+public class SaldoTdgTest {
+    private static final long GERAET = 5945590311L;
+    /** zweites Geraet desselben Nutzers */
+    private static final long ANDERES_GERAET = 2573245804L;
+    private static final long NUTZER = 1000000L;
+
+    private static IDatabaseConnection dbTesterCon = null;
+    private static IDataSet pre;
+
+    private Connection verbindung;
+
+    @BeforeClass
+    public static void setUp() {
+        try {
+            IDatabaseTester dbTester = new JdbcDatabaseTester(DbCred.driverClass, DbCred.url, DbCred.user,
+                    DbCred.password, DbCred.schema);
+            dbTesterCon = dbTester.getConnection();
+            dbTesterCon.getConfig().setProperty(DatabaseConfig.PROPERTY_DATATYPE_FACTORY, new OracleDataTypeFactory());
+            pre = new CsvDataSet(new File("test-data/ue03-04"));
+            dbTester.setDataSet(pre);
+        } catch (Exception e) {
+            DbUnitUtils.closeDbUnitConnectionQuietly(dbTesterCon);
+            throw new RuntimeException(e);
+        }
+    }
+
+    @AfterClass
+    public static void tearDown() {
+        DbUnitUtils.closeDbUnitConnectionQuietly(dbTesterCon);
+    }
+
+    @Before
+    public void laden() throws Exception {
+        DatabaseOperation.CLEAN_INSERT.execute(dbTesterCon, pre);
+        Stammdaten.verwerfen();
+        verbindung = DriverManager.getConnection(DbCred.url, DbCred.user, DbCred.password);
+        verbindung.setAutoCommit(false);
+        new SaldoTdg(verbindung).neuAufbauen();
+        verbindung.commit();
+    }
+
+    @After
+    public void schliessen() {
+        JdbcUtils.closeConnectionQuietly(verbindung);
+    }
+
+    /**
+     * Der Testfall testet, dass der Saldo nach Mauterhebungen des Service
+     * einzeln, im Batch und ueber den Datenbestand der Summe der Kosten
+     * entspricht.
+     */
+    @org.junit.Test
+    public void testSaldoGleichSummeDerKosten() throws Exception {
+        verbindung.setAutoCommit(true);
+        MautServiceImpl maut = new MautServiceImpl();
+        maut.setConnection(verbindung);
+        maut.berechneMaut(1433, 5, "M 6569");
+        maut.berechneMautBatch(List.of(
+                new Erfassung(1200, 10, "DV 9413 NJ"),
+                new Erfassung(1433, 5, "M 6569")));
+        verbindung.setAutoCommit(false);
+        new MauterhebungTdg(verbindung).fuegeMauterhebungenEin(List.of(
+                zeile(900001, new BigDecimal("0.71")), zeile(900002, new BigDecimal("1.20"))));
+        verbindung.commit();
+
+        vergleicheMitKosten();
+    }
+
+    /**
+     * Der Testfall testet zwei gleichzeitige erste Buchungen eines Nutzers:
+     * die zweite scheitert am Primaerschluessel und wird als UPDATE
+     * wiederholt, einzeln und im Batch.
+     */
+    @org.junit.Test
+    public void testGleichzeitigeErsteBuchung() throws Exception {
+        gleichzeitig(andere -> new SaldoTdg(andere).bucheMauterhebung(GERAET, new BigDecimal("2.00")));
+        gleichzeitig(andere -> new SaldoTdg(andere).bucheMauterhebungen(
+                List.of(zeile(900003, new BigDecimal("2.00")))));
+    }
+
+    /**
+     * Der Testfall testet, dass Buchungen auf verschiedene Geraete eines
+     * Nutzers nicht aufeinander warten und der Saldo die Summe beider ist.
+     */
+    @org.junit.Test
+    public void testGeraeteEinesNutzersParallel() throws Exception {
+        Saldo vorher = new SaldoTdg(verbindung).ermittleSaldo(NUTZER);
+        new SaldoTdg(verbindung).bucheMauterhebung(GERAET, new BigDecimal("1.00"));
+        try (Connection andere = DriverManager.getConnection(DbCred.url, DbCred.user, DbCred.password)) {
+            andere.setAutoCommit(false);
+            CompletableFuture.runAsync(() -> {
+                new SaldoTdg(andere).bucheMauterhebung(ANDERES_GERAET, new BigDecimal("2.00"));
+                try {
+                    andere.commit();
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            }).get(10, TimeUnit.SECONDS);
+        }
+        verbindung.commit();
+        Saldo saldo = new SaldoTdg(verbindung).ermittleSaldo(NUTZER);
+        assertEquals(0, vorher.getSumme().add(new BigDecimal("3.00")).compareTo(saldo.getSumme()));
+        assertEquals(vorher.getAnzahl() + 2, saldo.getAnzahl());
+    }
+
+    private void gleichzeitig(Zweitbuchung zweite) throws Exception {
+        try (Statement s = verbindung.createStatement()) {
+            s.executeUpdate("DELETE FROM OFFENER_SALDO WHERE NUTZER_ID = " + NUTZER);
+        }
+        verbindung.commit();
+        new SaldoTdg(verbindung).bucheMauterhebung(GERAET, new BigDecimal("1.00"));
+        try (Connection andere = DriverManager.getConnection(DbCred.url, DbCred.user, DbCred.password)) {
+            andere.setAutoCommit(false);
+            CompletableFuture<Void> f = CompletableFuture.runAsync(() -> {
+                zweite.buche(andere);
+                try {
+                    andere.commit();
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            });
+            // die zweite Buchung wartet auf den Indexeintrag der ersten
+            Thread.sleep(200);
+            assertFalse(f.isDone());
+            verbindung.commit();
+            f.get(10, TimeUnit.SECONDS);
+        }
+        Saldo saldo = new SaldoTdg(verbindung).ermittleSaldo(NUTZER);
+        assertEquals(0, new BigDecimal("3.00").compareTo(saldo.getSumme()));
+        assertEquals(2, saldo.getAnzahl());
+    }
+
+    private void vergleicheMitKosten() throws Exception {
+        ITable salden = tabelle("SELECT NUTZER_ID, SUM(SUMME) AS SUMME, SUM(ANZAHL) AS ANZAHL FROM OFFENER_SALDO " +
+                "GROUP BY NUTZER_ID ORDER BY NUTZER_ID");
+        ITable kosten = tabelle(
+                "SELECT f.NUTZER_ID, SUM(me.KOSTEN) AS SUMME, COUNT(*) AS ANZAHL FROM MAUTERHEBUNG me " +
+                        "JOIN FAHRZEUGGERAT fg ON fg.FZG_ID = me.FZG_ID " +
+                        "JOIN FAHRZEUG f ON f.FZ_ID = fg.FZ_ID " +
+                        "WHERE NOT EXISTS (SELECT 1 FROM POSITION p WHERE p.MAUT_ID = me.MAUT_ID) " +
+                        "GROUP BY f.NUTZER_ID ORDER BY f.NUTZER_ID");
+        assertEquals(kosten.getRowCount(), salden.getRowCount());
+        for (int i = 0; i < kosten.getRowCount(); i++) {
+            for (String spalte : new String[]{"NUTZER_ID", "SUMME", "ANZAHL"}) {
+                assertEquals(spalte + " in Zeile " + i, 0, new BigDecimal(kosten.getValue(i, spalte).toString())
+                        .compareTo(new BigDecimal(salden.getValue(i, spalte).toString())));
+            }
+        }
+    }
+
+    private static Mauterhebung zeile(int mautId, BigDecimal kosten) {
+        return new Mauterhebung(mautId, 3750, GERAET, 18, LocalDate.of(2024, 1, 1), kosten);
+    }
+
+    private static ITable tabelle(String sql) throws Exception {
+        QueryDataSet q = new QueryDataSet(dbTesterCon);
+        q.addTable("ERGEBNIS", sql);
+        return q.getTable("ERGEBNIS");
+    }
+
+    private interface Zweitbuchung {
+        void buche(Connection connection);
+    }
+}
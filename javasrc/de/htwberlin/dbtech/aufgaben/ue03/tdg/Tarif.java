@@ -0,0 +1,37 @@
+package de.htwberlin.dbtech.aufgaben.ue03.tdg;
+
+import java.math.BigDecimal;
+
+/**
+ * Eine Zeile aus MAUTKATEGORIE.
+ */
+public final class Tarif {
+
+    private final int kategorieId;
+    private final int ssklId;
+    private final String achszahlRegel;
+    private final BigDecimal mautsatzJeKm;
+
+    public Tarif(int kategorieId, int ssklId, String achszahlRegel, BigDecimal mautsatzJeKm) {
+        this.kategorieId = kategorieId;
+        this.ssklId = ssklId;
+        this.achszahlRegel = achszahlRegel;
+        this.mautsatzJeKm = mautsatzJeKm;
+    }
+
+    public int getKategorieId() {
+        return kategorieId;
+    }
+
+    public int getSsklId() {
+        return ssklId;
+    }
+
+    public String getAchszahlRegel() {
+        return achszahlRegel;
+    }
+
+    public BigDecimal getMautsatzJeKm() {
+        return mautsatzJeKm;
+    }
+}
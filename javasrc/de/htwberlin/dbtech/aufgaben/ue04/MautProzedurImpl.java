@@ -15,6 +15,9 @@ import java.sql.SQLException;
  * MAUT_SERVICE auf und prüft gemäß der Paket-Spezifikation die Bedingungen zur
  * Mauterhebung. Sind alle Vorraussetzungen erfüllt wird die Maut für ein
  * bestimmtes Fahrzeug auf einem Mautabschnitt erhoben und gespeichert.
+ *
+ * Die Prozedur bucht jede Mauterhebung in derselben Transaktion ueber
+ * maut_service.buche_saldo auf OFFENER_SALDO, wie SaldoTdg im Java-Zweig.
  **/
 
 public class MautProzedurImpl implements IMautService {
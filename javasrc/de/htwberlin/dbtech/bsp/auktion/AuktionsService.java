@@ -2,6 +2,7 @@ package de.htwberlin.dbtech.bsp.auktion;
 
 import de.htwberlin.dbtech.exceptions.DataException;
 import de.htwberlin.dbtech.exceptions.ServiceException;
+import de.htwberlin.dbtech.utils.IdAllocator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -10,6 +11,7 @@ import java.sql.*;
 
 public class AuktionsService implements IAuktionsService {
     private static final Logger L = LoggerFactory.getLogger(AuktionsService.class);
+    private static final IdAllocator GIDS = IdAllocator.fuer("GEBOT", "GID");
     private Connection connection = null;
 
     @Override
@@ -116,20 +118,6 @@ public class AuktionsService implements IAuktionsService {
     }
 
     private Integer neueGid() {
-        String sql = "select max(gid) as maxgid from gebot";
-        int neueGid = 1;
-        try (Statement stmt = useConnection().createStatement()) {
-            try (ResultSet rs = stmt.executeQuery(sql)) {
-                rs.next();
-                int maxGid = rs.getInt("maxgid");
-                if (!rs.wasNull()) {
-                    neueGid = maxGid + 1;
-                }
-            }
-            return neueGid;
-        } catch (SQLException e) {
-            L.error("", e);
-            throw new DataException(e);
-        }
+        return (int) GIDS.naechsteId(useConnection());
     }
 }
@@ -0,0 +1,506 @@
+package de.htwberlin.dbtech.utils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.sql.DataSource;
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.SQLTimeoutException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Einfacher Verbindungspool als {@link DataSource}. Die gelieferten
+ * Verbindungen werden mit close() an den Pool zurueckgegeben; offene
+ * Transaktionen werden dabei zurueckgerollt und Autocommit wieder
+ * eingeschaltet.
+ *
+ * Jede Ausleihe liefert ein eigenes Verbindungsobjekt. Nach seiner Rueckgabe
+ * fuehrt jeder Zugriff zu einer SQLException, auch wenn die physische
+ * Verbindung inzwischen wieder ausgeliehen ist; ein zweites close() ist ohne
+ * Wirkung. Der {@link StatementCache} wird ueber die physische Verbindung
+ * gefuehrt, siehe {@link #physisch(Connection)}, und bleibt so ueber
+ * Ausleihen hinweg erhalten.
+ *
+ * Verbindungen, die laenger als {@link #setValidierungNachMillis(long)} ungenutzt
+ * waren, werden vor der Ausleihe mit isValid() geprueft. Ist
+ * {@link #setLeckSchwelleMillis(long)} gesetzt, wird fuer jede Verbindung, die
+ * laenger ausgeliehen ist, einmal eine Warnung mit der Stelle der Ausleihe
+ * protokolliert.
+ */
+public final class ConnectionPool implements DataSource, AutoCloseable {
+    private static final Logger L = LoggerFactory.getLogger(ConnectionPool.class);
+
+    /** Oeffnet eine physische Verbindung. */
+    @FunctionalInterface
+    public interface Verbindungsquelle {
+        Connection oeffne() throws SQLException;
+    }
+
+    private final Verbindungsquelle quelle;
+    private final int min;
+    private final int max;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition frei = lock.newCondition();
+    /** LIFO, damit wenige Verbindungen warm bleiben */
+    private final Deque<Gepoolt> leerlauf = new ArrayDeque<>();
+    private final Set<Gepoolt> ausgeliehen = new HashSet<>();
+    private int anzahl;
+    private int wartend;
+    private boolean geschlossen;
+
+    private volatile long wartezeitMillis = 30_000;
+    private volatile long validierungNachMillis = 5_000;
+    private volatile long leckSchwelleMillis;
+
+    private long ausleihen;
+    private long timeouts;
+    private long verworfen;
+    private long lecks;
+
+    private final Thread hausmeister;
+
+    /**
+     * Legt den Pool an und oeffnet sofort {@code min} Verbindungen.
+     */
+    public ConnectionPool(Verbindungsquelle quelle, int min, int max) {
+        if (min < 0 || max < 1 || min > max) {
+            throw new IllegalArgumentException("ungueltige Poolgroesse: min=" + min + ", max=" + max);
+        }
+        this.quelle = quelle;
+        this.min = min;
+        this.max = max;
+        auffuellen();
+        this.hausmeister = new Thread(this::hausmeister, "connection-pool");
+        this.hausmeister.setDaemon(true);
+        this.hausmeister.start();
+        L.info("Verbindungspool gestartet: min={}, max={}", min, max);
+    }
+
+    /**
+     * Pool ueber den DriverManager.
+     */
+    public static ConnectionPool fuer(String url, String user, String passwd, int min, int max) {
+        return new ConnectionPool(() -> DriverManager.getConnection(url, user, passwd), min, max);
+    }
+
+    /** maximale Wartezeit auf eine freie Verbindung */
+    public void setWartezeitMillis(long wartezeitMillis) {
+        this.wartezeitMillis = wartezeitMillis;
+    }
+
+    /** Leerlaufzeit, ab der eine Verbindung vor der Ausleihe geprueft wird */
+    public void setValidierungNachMillis(long validierungNachMillis) {
+        this.validierungNachMillis = validierungNachMillis;
+    }
+
+    /** Ausleihdauer, ab der ein Leck gemeldet wird; 0 schaltet die Erkennung ab */
+    public void setLeckSchwelleMillis(long leckSchwelleMillis) {
+        this.leckSchwelleMillis = leckSchwelleMillis;
+    }
+
+    /**
+     * Liefert zu einer ausgeliehenen Verbindung eines Pools die physische
+     * Verbindung, sonst die Verbindung selbst.
+     */
+    static Connection physisch(Connection connection) {
+        if (connection != null && Proxy.isProxyClass(connection.getClass())
+                && Proxy.getInvocationHandler(connection) instanceof Gepoolt.Ausleihe) {
+            return ((Gepoolt.Ausleihe) Proxy.getInvocationHandler(connection)).physisch();
+        }
+        return connection;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        long ende = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(wartezeitMillis);
+        while (true) {
+            Gepoolt g = null;
+            boolean neu = false;
+            lock.lock();
+            try {
+                while (!geschlossen && leerlauf.isEmpty() && anzahl >= max) {
+                    long rest = ende - System.nanoTime();
+                    if (rest <= 0) {
+                        timeouts++;
+                        throw new SQLTimeoutException("keine freie Verbindung nach " + wartezeitMillis + " ms ("
+                                + ausgeliehen.size() + " ausgeliehen)");
+                    }
+                    wartend++;
+                    try {
+                        frei.awaitNanos(rest);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new SQLException("Warten auf Verbindung unterbrochen", e);
+                    } finally {
+                        wartend--;
+                    }
+                }
+                if (geschlossen) {
+                    throw new SQLException("Verbindungspool ist geschlossen");
+                }
+                if (!leerlauf.isEmpty()) {
+                    g = leerlauf.pop();
+                } else {
+                    anzahl++;
+                    neu = true;
+                }
+            } finally {
+                lock.unlock();
+            }
+
+            if (neu) {
+                try {
+                    g = new Gepoolt(quelle.oeffne());
+                } catch (SQLException | RuntimeException e) {
+                    lock.lock();
+                    try {
+                        anzahl--;
+                        frei.signal();
+                    } finally {
+                        lock.unlock();
+                    }
+                    throw e;
+                }
+            } else if (System.currentTimeMillis() - g.zurueckgegeben > validierungNachMillis && !g.istGueltig()) {
+                verwerfen(g);
+                continue;
+            }
+            return ausleihen(g);
+        }
+    }
+
+    private Connection ausleihen(Gepoolt g) {
+        lock.lock();
+        try {
+            ausleihen++;
+            ausgeliehen.add(g);
+            g.ausgeliehenSeit = System.currentTimeMillis();
+            g.herkunft = leckSchwelleMillis > 0 ? new Throwable("Ausleihe") : null;
+            g.gemeldet = false;
+            g.istAusgeliehen = true;
+            g.ausleihe = g.new Ausleihe();
+            return g.ausleihe.proxy;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void zurueckgeben(Gepoolt g) {
+        lock.lock();
+        try {
+            if (!g.istAusgeliehen) {
+                return;
+            }
+            g.istAusgeliehen = false;
+            g.ausleihe = null;
+            ausgeliehen.remove(g);
+        } finally {
+            lock.unlock();
+        }
+
+        boolean ok;
+        try {
+            if (!g.physisch.getAutoCommit()) {
+                g.physisch.rollback();
+                g.physisch.setAutoCommit(true);
+            }
+            ok = !g.physisch.isClosed();
+        } catch (SQLException e) {
+            L.warn("Zuruecksetzen der Verbindung fehlgeschlagen, sie wird verworfen", e);
+            ok = false;
+        }
+
+        lock.lock();
+        try {
+            if (ok && !geschlossen) {
+                g.zurueckgegeben = System.currentTimeMillis();
+                leerlauf.push(g);
+                frei.signal();
+                return;
+            }
+        } finally {
+            lock.unlock();
+        }
+        verwerfen(g);
+    }
+
+    private void verwerfen(Gepoolt g) {
+        lock.lock();
+        try {
+            anzahl--;
+            verworfen++;
+            frei.signal();
+        } finally {
+            lock.unlock();
+        }
+        StatementCache.verwerfen(g.physisch);
+        JdbcUtils.closeConnectionQuietly(g.physisch);
+    }
+
+    /** Oeffnet Verbindungen, bis min erreicht ist. */
+    private void auffuellen() {
+        while (true) {
+            lock.lock();
+            try {
+                if (geschlossen || anzahl >= min) {
+                    return;
+                }
+                anzahl++;
+            } finally {
+                lock.unlock();
+            }
+            try {
+                Gepoolt g = new Gepoolt(quelle.oeffne());
+                lock.lock();
+                try {
+                    g.zurueckgegeben = System.currentTimeMillis();
+                    leerlauf.push(g);
+                    frei.signal();
+                } finally {
+                    lock.unlock();
+                }
+            } catch (SQLException | RuntimeException e) {
+                lock.lock();
+                try {
+                    anzahl--;
+                } finally {
+                    lock.unlock();
+                }
+                L.warn("Verbindung fuer den Pool konnte nicht geoeffnet werden", e);
+                return;
+            }
+        }
+    }
+
+    private void hausmeister() {
+        while (true) {
+            try {
+                Thread.sleep(1000);
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (geschlossen) {
+                return;
+            }
+            auffuellen();
+            pruefeLecks();
+        }
+    }
+
+    private void pruefeLecks() {
+        long schwelle = leckSchwelleMillis;
+        if (schwelle <= 0) {
+            return;
+        }
+        List<Gepoolt> verdaechtig = new ArrayList<>();
+        long jetzt = System.currentTimeMillis();
+        lock.lock();
+        try {
+            for (Gepoolt g : ausgeliehen) {
+                if (!g.gemeldet && jetzt - g.ausgeliehenSeit > schwelle) {
+                    g.gemeldet = true;
+                    lecks++;
+                    verdaechtig.add(g);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        for (Gepoolt g : verdaechtig) {
+            L.warn("moegliches Verbindungsleck: seit {} ms ausgeliehen", jetzt - g.ausgeliehenSeit, g.herkunft);
+        }
+    }
+
+    /**
+     * Schliesst alle freien Verbindungen; ausgeliehene werden bei der
+     * Rueckgabe geschlossen.
+     */
+    @Override
+    public void close() {
+        List<Gepoolt> frei;
+        lock.lock();
+        try {
+            geschlossen = true;
+            frei = new ArrayList<>(leerlauf);
+            leerlauf.clear();
+            this.frei.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        hausmeister.interrupt();
+        for (Gepoolt g : frei) {
+            verwerfen(g);
+        }
+        L.info("Verbindungspool geschlossen: {}", this);
+    }
+
+    public int getAusgeliehen() {
+        lock.lock();
+        try {
+            return ausgeliehen.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getLeerlauf() {
+        lock.lock();
+        try {
+            return leerlauf.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getTimeouts() {
+        lock.lock();
+        try {
+            return timeouts;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getLecks() {
+        lock.lock();
+        try {
+            return lecks;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public String toString() {
+        lock.lock();
+        try {
+            return "ConnectionPool[anzahl=" + anzahl + ", ausgeliehen=" + ausgeliehen.size() + ", leerlauf="
+                    + leerlauf.size() + ", wartend=" + wartend + ", ausleihen=" + ausleihen + ", timeouts="
+                    + timeouts + ", verworfen=" + verworfen + ", lecks=" + lecks + "]";
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        throw new SQLFeatureNotSupportedException("Benutzer wird beim Anlegen des Pools festgelegt");
+    }
+
+    @Override
+    public PrintWriter getLogWriter() {
+        return null;
+    }
+
+    @Override
+    public void setLogWriter(PrintWriter out) {
+    }
+
+    @Override
+    public void setLoginTimeout(int seconds) {
+    }
+
+    @Override
+    public int getLoginTimeout() {
+        return 0;
+    }
+
+    @Override
+    public java.util.logging.Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        throw new SQLFeatureNotSupportedException();
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        if (iface.isInstance(this)) {
+            return iface.cast(this);
+        }
+        throw new SQLException("kein Wrapper fuer " + iface);
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) {
+        return iface.isInstance(this);
+    }
+
+    private final class Gepoolt {
+        final Connection physisch;
+        volatile boolean istAusgeliehen;
+        /** aktuelle Ausleihe, gesperrt ueber lock */
+        Ausleihe ausleihe;
+        long ausgeliehenSeit;
+        long zurueckgegeben;
+        Throwable herkunft;
+        boolean gemeldet;
+
+        Gepoolt(Connection physisch) {
+            this.physisch = physisch;
+        }
+
+        boolean istGueltig() {
+            try {
+                return physisch.isValid(2);
+            } catch (SQLException e) {
+                return false;
+            }
+        }
+
+        /** Verbindungsobjekt einer einzelnen Ausleihe */
+        final class Ausleihe implements InvocationHandler {
+            final Connection proxy = (Connection) Proxy.newProxyInstance(
+                    Connection.class.getClassLoader(), new Class<?>[]{Connection.class}, this);
+            private volatile boolean aktiv = true;
+
+            Connection physisch() {
+                return physisch;
+            }
+
+            @Override
+            public Object invoke(Object p, Method method, Object[] args) throws Throwable {
+                switch (method.getName()) {
+                    case "equals":
+                        return p == args[0];
+                    case "hashCode":
+                        return System.identityHashCode(p);
+                    case "toString":
+                        return "Pooled[" + physisch + "]";
+                    case "close":
+                        if (aktiv) {
+                            aktiv = false;
+                            zurueckgeben(Gepoolt.this);
+                        }
+                        return null;
+                    case "isClosed":
+                        return !aktiv || physisch.isClosed();
+                    default:
+                        break;
+                }
+                if (!aktiv) {
+                    throw new SQLException("Verbindung wurde an den Pool zurueckgegeben");
+                }
+                try {
+                    return method.invoke(physisch, args);
+                } catch (InvocationTargetException e) {
+                    throw e.getCause();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package de.htwberlin.dbtech.utils;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Die Klasse enthaelt die Testfaelle fuer den Verbindungspool. Die
+ * physischen Verbindungen sind Attrappen.
+ */
+public class ConnectionPoolTest {
+
+    /** jede Ausleihe erhaelt ein eigenes Verbindungsobjekt, die alte bleibt gesperrt */
+    @org.junit.Test
+    public void testNeuesObjektJeAusleihe() throws Exception {
+        Quelle quelle = new Quelle();
+        try (ConnectionPool pool = new ConnectionPool(quelle, 0, 1)) {
+            Connection erste = pool.getConnection();
+            erste.close();
+            Connection zweite = pool.getConnection();
+            assertNotSame(erste, zweite);
+            assertEquals(1, quelle.geoeffnet.size());
+            assertSame(ConnectionPool.physisch(erste), ConnectionPool.physisch(zweite));
+            assertTrue(erste.isClosed());
+            assertFalse(zweite.isClosed());
+            try {
+                erste.setAutoCommit(false);
+                fail("SQLException erwartet");
+            } catch (SQLException e) {
+                // erwartet
+            }
+            // ein zweites close() der alten Ausleihe gibt die neue nicht zurueck
+            erste.close();
+            assertEquals(1, pool.getAusgeliehen());
+            zweite.close();
+            assertEquals(0, pool.getAusgeliehen());
+        }
+    }
+
+    /** die Rueckgabe rollt offene Transaktionen zurueck */
+    @org.junit.Test
+    public void testRueckgabeSetztZurueck() throws Exception {
+        Quelle quelle = new Quelle();
+        try (ConnectionPool pool = new ConnectionPool(quelle, 1, 1)) {
+            try (Connection c = pool.getConnection()) {
+                c.setAutoCommit(false);
+            }
+            Attrappe a = quelle.geoeffnet.get(0);
+            assertEquals(1, a.rollbacks);
+            assertTrue(a.autoCommit);
+            assertEquals(1, pool.getLeerlauf());
+        }
+        assertTrue(quelle.geoeffnet.get(0).geschlossen);
+    }
+
+    /** alle Ausleihen derselben physischen Verbindung teilen sich einen Cache */
+    @org.junit.Test
+    public void testStatementCacheJePhysischerVerbindung() throws Exception {
+        Quelle quelle = new Quelle();
+        try (ConnectionPool pool = new ConnectionPool(quelle, 0, 1)) {
+            StatementCache erster;
+            try (Connection c = pool.getConnection()) {
+                erster = StatementCache.fuer(c);
+            }
+            try (Connection c = pool.getConnection()) {
+                assertSame(erster, StatementCache.fuer(c));
+            }
+        }
+    }
+
+    @org.junit.Test
+    public void testWartezeit() throws Exception {
+        try (ConnectionPool pool = new ConnectionPool(new Quelle(), 0, 1)) {
+            pool.setWartezeitMillis(50);
+            try (Connection c = pool.getConnection()) {
+                assertFalse(c.isClosed());
+                try {
+                    pool.getConnection();
+                    fail("SQLTimeoutException erwartet");
+                } catch (SQLTimeoutException e) {
+                    // erwartet
+                }
+            }
+            assertEquals(1, pool.getTimeouts());
+        }
+    }
+
+    static final class Quelle implements ConnectionPool.Verbindungsquelle {
+        final List<Attrappe> geoeffnet = new ArrayList<>();
+
+        @Override
+        public synchronized Connection oeffne() {
+            Attrappe a = new Attrappe();
+            geoeffnet.add(a);
+            return a.connection;
+        }
+    }
+
+    static final class Attrappe {
+        boolean autoCommit = true;
+        boolean geschlossen;
+        int rollbacks;
+        int commits;
+        final Connection connection = (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                new Class<?>[]{Connection.class}, (p, m, a) -> {
+                    switch (m.getName()) {
+                        case "getAutoCommit":
+                            return autoCommit;
+                        case "setAutoCommit":
+                            autoCommit = (Boolean) a[0];
+                            return null;
+                        case "rollback":
+                            rollbacks++;
+                            return null;
+                        case "commit":
+                            commits++;
+                            return null;
+                        case "isClosed":
+                            return geschlossen;
+                        case "isValid":
+                            return !geschlossen;
+                        case "close":
+                            geschlossen = true;
+                            return null;
+                        case "hashCode":
+                            return System.identityHashCode(p);
+                        case "equals":
+                            return p == a[0];
+                        default:
+                            return null;
+                    }
+                });
+    }
+}
@@ -0,0 +1,183 @@
+package de.htwberlin.dbtech.utils;
+
+import de.htwberlin.dbtech.exceptions.DataException;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Liest CSV-Dateien im Format des DbUnit-CsvDataSet (siehe test-data)
+ * zeilenweise: erste Zeile mit den Spaltennamen, Felder durch Komma getrennt,
+ * optional in doppelten Anfuehrungszeichen. Fuehrende und abschliessende
+ * Leerzeichen werden entfernt, das Literal null wird zu null.
+ */
+public final class CsvLeser implements AutoCloseable {
+    private final BufferedReader reader;
+    private final String[] kopf;
+    private final Map<String, Integer> spalten = new HashMap<>();
+    private final List<String> felder = new ArrayList<>();
+    private long zeile = 1;
+
+    public CsvLeser(Reader reader) {
+        this.reader = reader instanceof BufferedReader ? (BufferedReader) reader : new BufferedReader(reader, 1 << 16);
+        String[] k = naechsteZeile();
+        if (k == null) {
+            throw new DataException("CSV ohne Kopfzeile");
+        }
+        this.kopf = k;
+        for (int i = 0; i < kopf.length; i++) {
+            spalten.put(kopf[i].toUpperCase(Locale.ROOT), i);
+        }
+    }
+
+    public static CsvLeser oeffne(Path datei) {
+        try {
+            return new CsvLeser(Files.newBufferedReader(datei, StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            throw new DataException("CSV " + datei + " nicht lesbar", e);
+        }
+    }
+
+    /** Spaltennamen in Dateireihenfolge */
+    public String[] getKopf() {
+        return kopf.clone();
+    }
+
+    /**
+     * Liefert die Position der Spalte (Gross-/Kleinschreibung egal).
+     *
+     * @throws DataException falls es die Spalte nicht gibt
+     */
+    public int spalte(String name) {
+        Integer i = spalten.get(name.toUpperCase(Locale.ROOT));
+        if (i == null) {
+            throw new DataException("Spalte " + name + " fehlt, vorhanden: " + String.join(", ", kopf));
+        }
+        return i;
+    }
+
+    /** Nummer der zuletzt gelesenen Zeile, fuer Fehlermeldungen */
+    public long getZeile() {
+        return zeile;
+    }
+
+    /**
+     * Liefert die naechste Zeile oder null am Dateiende. Leere Zeilen werden
+     * uebersprungen.
+     */
+    public String[] naechsteZeile() {
+        try {
+            String z;
+            do {
+                z = reader.readLine();
+                if (z == null) {
+                    return null;
+                }
+                zeile++;
+            } while (z.isBlank());
+            return zerlege(z);
+        } catch (IOException e) {
+            throw new DataException(e);
+        }
+    }
+
+    private String[] zerlege(String z) throws IOException {
+        felder.clear();
+        StringBuilder feld = new StringBuilder();
+        boolean inAnfuehrung = false;
+        boolean angefuehrt = false;
+        for (int i = 0; ; i++) {
+            if (i == z.length()) {
+                if (!inAnfuehrung) {
+                    break;
+                }
+                // Zeilenumbruch innerhalb eines Feldes
+                String weiter = reader.readLine();
+                if (weiter == null) {
+                    throw new DataException("nicht geschlossenes Anfuehrungszeichen in Zeile " + zeile);
+                }
+                zeile++;
+                feld.append('\n');
+                z = weiter;
+                i = -1;
+                continue;
+            }
+            char c = z.charAt(i);
+            if (inAnfuehrung) {
+                if (c == '"' && i + 1 < z.length() && z.charAt(i + 1) == '"') {
+                    feld.append('"');
+                    i++;
+                } else if (c == '"') {
+                    inAnfuehrung = false;
+                } else {
+                    feld.append(c);
+                }
+            } else if (c == ',') {
+                felder.add(wert(feld, angefuehrt));
+                feld.setLength(0);
+                angefuehrt = false;
+            } else if (c == '"' && feld.toString().isBlank()) {
+                feld.setLength(0);
+                inAnfuehrung = true;
+                angefuehrt = true;
+            } else {
+                feld.append(c);
+            }
+        }
+        felder.add(wert(feld, angefuehrt));
+        return felder.toArray(new String[0]);
+    }
+
+    private static String wert(StringBuilder feld, boolean angefuehrt) {
+        if (angefuehrt) {
+            return feld.toString();
+        }
+        String s = feld.toString().strip();
+        return s.equals("null") ? null : s;
+    }
+
+    /**
+     * Liest ein Datum wie 2015-02-18 oder einen Zeitstempel wie
+     * 2015-02-18 10:15:01 als Datum; null bleibt null.
+     */
+    public static LocalDate datum(String wert) {
+        if (wert == null) {
+            return null;
+        }
+        return wert.length() > 10 ? zeitstempel(wert).toLocalDate() : LocalDate.parse(wert);
+    }
+
+    /**
+     * Liest einen Zeitstempel wie 2015-02-18 10:15:01[.123] oder ein Datum
+     * (Mitternacht); null bleibt null.
+     */
+    public static LocalDateTime zeitstempel(String wert) {
+        if (wert == null) {
+            return null;
+        }
+        if (wert.length() <= 10) {
+            return LocalDate.parse(wert).atStartOfDay();
+        }
+        return LocalDateTime.parse(wert.replace(' ', 'T'));
+    }
+
+    @Override
+    public void close() {
+        try {
+            reader.close();
+        } catch (IOException e) {
+            throw new DataException(e);
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package de.htwberlin.dbtech.utils;
+
+import de.htwberlin.dbtech.exceptions.DataException;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+
+/**
+ * Schreibt CSV-Dateien im Format des DbUnit-CsvDataSet, Gegenstueck zu
+ * {@link CsvLeser}. Eine Zeile wird feldweise aufgebaut und mit
+ * {@link #ende()} abgeschlossen; Zahlen werden ohne Boxing geschrieben.
+ * null wird als Literal null geschrieben, Texte mit Komma, Anfuehrungszeichen
+ * oder Zeilenumbruch in Anfuehrungszeichen.
+ */
+public final class CsvSchreiber implements AutoCloseable {
+    private final Writer writer;
+    private final int spalten;
+    private final StringBuilder zeile = new StringBuilder(256);
+    private int feld;
+    private long zeilen;
+
+    public CsvSchreiber(Writer writer, String... kopf) {
+        this.writer = writer instanceof BufferedWriter ? writer : new BufferedWriter(writer, 1 << 20);
+        this.spalten = kopf.length;
+        for (String k : kopf) {
+            text(k);
+        }
+        ende();
+        zeilen = 0;
+    }
+
+    public static CsvSchreiber oeffne(Path datei, String... kopf) {
+        try {
+            return new CsvSchreiber(new BufferedWriter(Files.newBufferedWriter(datei, StandardCharsets.UTF_8), 1 << 20),
+                    kopf);
+        } catch (IOException e) {
+            throw new DataException("CSV " + datei + " nicht schreibbar", e);
+        }
+    }
+
+    private void trenner() {
+        if (feld++ > 0) {
+            zeile.append(',');
+        }
+    }
+
+    public CsvSchreiber zahl(long wert) {
+        trenner();
+        zeile.append(wert);
+        return this;
+    }
+
+    /** Betrag in Cent als Dezimalzahl mit zwei Nachkommastellen */
+    public CsvSchreiber cent(long cent) {
+        trenner();
+        if (cent < 0) {
+            zeile.append('-');
+            cent = -cent;
+        }
+        zeile.append(cent / 100).append('.');
+        long rest = cent % 100;
+        if (rest < 10) {
+            zeile.append('0');
+        }
+        zeile.append(rest);
+        return this;
+    }
+
+    public CsvSchreiber text(String wert) {
+        trenner();
+        if (wert == null) {
+            zeile.append("null");
+        } else if (wert.indexOf(',') >= 0 || wert.indexOf('"') >= 0 || wert.indexOf('\n') >= 0
+                || wert.equals("null") || !wert.equals(wert.strip())) {
+            zeile.append('"').append(wert.replace("\"", "\"\"")).append('"');
+        } else {
+            zeile.append(wert);
+        }
+        return this;
+    }
+
+    public CsvSchreiber datum(LocalDate wert) {
+        return wert == null ? text(null) : text(wert.toString());
+    }
+
+    /** Zeitstempel yyyy-MM-dd HH:mm:ss aus Sekunden seit 1970 (UTC) */
+    public CsvSchreiber zeitstempel(long epochSekunden) {
+        trenner();
+        long tag = Math.floorDiv(epochSekunden, 86400);
+        int sekunde = Math.floorMod(epochSekunden, 86400);
+        zeile.append(LocalDate.ofEpochDay(tag)).append(' ');
+        zweistellig(sekunde / 3600).append(':');
+        zweistellig(sekunde / 60 % 60).append(':');
+        zweistellig(sekunde % 60);
+        return this;
+    }
+
+    private StringBuilder zweistellig(int wert) {
+        if (wert < 10) {
+            zeile.append('0');
+        }
+        return zeile.append(wert);
+    }
+
+    /**
+     * Schliesst die Zeile ab.
+     *
+     * @throws DataException falls die Anzahl Felder nicht zum Kopf passt
+     */
+    public void ende() {
+        if (feld != spalten) {
+            throw new DataException("Zeile mit " + feld + " statt " + spalten + " Feldern: " + zeile);
+        }
+        zeile.append('\n');
+        try {
+            writer.append(zeile);
+        } catch (IOException e) {
+            throw new DataException(e);
+        }
+        zeile.setLength(0);
+        feld = 0;
+        zeilen++;
+    }
+
+    /** geschriebene Zeilen ohne Kopf */
+    public long getZeilen() {
+        return zeilen;
+    }
+
+    @Override
+    public void close() {
+        try {
+            writer.close();
+        } catch (IOException e) {
+            throw new DataException(e);
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package de.htwberlin.dbtech.utils;
+
+import de.htwberlin.dbtech.exceptions.DataException;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Liefert das Ergebnis einer Abfrage als Stream ueber einen offenen Cursor:
+ * Zeilen werden erst beim Verbrauch in Portionen der Fetchsize geholt und
+ * sofort abgebildet, der Speicherbedarf haengt nicht von der Ergebnisgroesse
+ * ab.
+ *
+ * Statement und ResultSet werden am Ende des Cursors, bei einem Fehler und
+ * beim Schliessen des Streams geschlossen. Wird der Stream nicht vollstaendig
+ * verbraucht, muss er geschlossen werden (try-with-resources). Die Verbindung
+ * bleibt offen und darf waehrenddessen nicht anderweitig geschlossen werden.
+ */
+public final class CursorStream {
+
+    /** setzt die Parameter der Abfrage */
+    @FunctionalInterface
+    public interface Parameter {
+        void setze(PreparedStatement ps) throws SQLException;
+    }
+
+    /** bildet die aktuelle Zeile ab */
+    @FunctionalInterface
+    public interface Abbildung<T> {
+        T von(ResultSet rs) throws SQLException;
+    }
+
+    private CursorStream() {
+    }
+
+    public static <T> Stream<T> oeffne(Connection connection, String sql, int fetchSize, Parameter parameter,
+                                       Abbildung<T> abbildung) {
+        PreparedStatement ps = null;
+        try {
+            ps = connection.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            ps.setFetchSize(fetchSize);
+            parameter.setze(ps);
+            ResultSet rs = ps.executeQuery();
+            rs.setFetchSize(fetchSize);
+            Zeilen<T> zeilen = new Zeilen<>(ps, rs, abbildung);
+            return StreamSupport.stream(zeilen, false).onClose(zeilen::schliesse);
+        } catch (SQLException e) {
+            JdbcUtils.closeStatementQuietly(ps);
+            throw new DataException(e);
+        }
+    }
+
+    private static final class Zeilen<T> extends Spliterators.AbstractSpliterator<T> {
+        private final PreparedStatement ps;
+        private final ResultSet rs;
+        private final Abbildung<T> abbildung;
+        private boolean geschlossen;
+
+        Zeilen(PreparedStatement ps, ResultSet rs, Abbildung<T> abbildung) {
+            super(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL);
+            this.ps = ps;
+            this.rs = rs;
+            this.abbildung = abbildung;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super T> aktion) {
+            if (geschlossen) {
+                return false;
+            }
+            T wert;
+            try {
+                if (!rs.next()) {
+                    schliesse();
+                    return false;
+                }
+                wert = abbildung.von(rs);
+            } catch (SQLException e) {
+                schliesse();
+                throw new DataException(e);
+            }
+            aktion.accept(wert);
+            return true;
+        }
+
+        void schliesse() {
+            if (!geschlossen) {
+                geschlossen = true;
+                JdbcUtils.closeResultSetQuietly(rs);
+                JdbcUtils.closeStatementQuietly(ps);
+            }
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package de.htwberlin.dbtech.utils;
+
+import de.htwberlin.dbtech.exceptions.DataException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Vergibt Primaerschluessel nach dem Hi/Lo-Verfahren. Ein Block von
+ * Schluesseln wird ueber die Tabelle ID_BLOCK reserviert und danach ohne
+ * Datenbankzugriff und ohne Sperren aus dem Speicher vergeben. Die Zeile in
+ * ID_BLOCK serialisiert die Reservierung zwischen parallelen Prozessen.
+ *
+ * Bei jeder Reservierung wird der Zaehler mindestens auf MAX(spalte) + 1
+ * gehoben, damit auch Zeilen beruecksichtigt werden, die ohne Allocator
+ * eingefuegt worden sind (z.B. Testdaten).
+ *
+ * Die Reservierung laeuft auf der uebergebenen Verbindung, aber in einer
+ * eigenen autonomen Transaktion, die sofort committet wird. Sie haengt damit
+ * nicht an der Transaktion des Aufrufers: Die Zeile in ID_BLOCK ist nur fuer
+ * die Dauer der Reservierung gesperrt, und nach einem Rollback des Aufrufers
+ * werden die Schluessel des Blocks nicht ein zweites Mal vergeben. Eigene,
+ * noch nicht committete Zeilen des Aufrufers sieht MAX(spalte) dabei nicht.
+ */
+public final class IdAllocator {
+    private static final Logger L = LoggerFactory.getLogger(IdAllocator.class);
+
+    public static final int STANDARD_BLOCKGROESSE = 50;
+
+    private static final Map<String, IdAllocator> ALLOCATORS = new ConcurrentHashMap<>();
+
+    private final String name;
+    private final String tabelle;
+    private final String spalte;
+    private final int blockgroesse;
+
+    private volatile Block block = new Block(0, 0);
+
+    /** nicht registrierter Allocator, z.B. fuer Tests; Namen in Grossbuchstaben */
+    IdAllocator(String tabelle, String spalte, int blockgroesse) {
+        this.name = tabelle + "." + spalte;
+        this.tabelle = tabelle;
+        this.spalte = spalte;
+        this.blockgroesse = blockgroesse;
+    }
+
+    /**
+     * Liefert den gemeinsamen Allocator fuer eine Schluesselspalte.
+     */
+    public static IdAllocator fuer(String tabelle, String spalte) {
+        return fuer(tabelle, spalte, STANDARD_BLOCKGROESSE);
+    }
+
+    /**
+     * Liefert den gemeinsamen Allocator fuer eine Schluesselspalte. Die
+     * Blockgroesse gilt nur beim ersten Aufruf fuer diese Spalte.
+     */
+    public static IdAllocator fuer(String tabelle, String spalte, int blockgroesse) {
+        if (blockgroesse < 1) {
+            throw new IllegalArgumentException("blockgroesse muss positiv sein: " + blockgroesse);
+        }
+        return ALLOCATORS.computeIfAbsent((tabelle + "." + spalte).toUpperCase(),
+                k -> new IdAllocator(tabelle.toUpperCase(), spalte.toUpperCase(), blockgroesse));
+    }
+
+    /**
+     * Liefert den naechsten freien Schluessel. Nur wenn der aktuelle Block
+     * erschoepft ist, wird ueber die Verbindung ein neuer reserviert.
+     */
+    public long naechsteId(Connection connection) {
+        while (true) {
+            Block b = block;
+            long id = b.naechste.getAndIncrement();
+            if (id < b.ende) {
+                return id;
+            }
+            reserviereBlock(connection, b);
+        }
+    }
+
+    private synchronized void reserviereBlock(Connection connection, Block erschoepft) {
+        if (block != erschoepft) {
+            // ein anderer Thread hat bereits neu reserviert
+            return;
+        }
+        long ende = erhoeheZaehler(connection);
+        block = new Block(ende - blockgroesse, ende);
+        L.debug("Block [{}, {}) fuer {} reserviert", ende - blockgroesse, ende, name);
+    }
+
+    /**
+     * Erhoeht den Zaehler in ID_BLOCK in einer autonomen Transaktion, die
+     * sofort committet wird: Die Zeile ist nie bis zum Commit des Aufrufers
+     * gesperrt, und ein Rollback des Aufrufers gibt den Block nicht frei.
+     */
+    private long erhoeheZaehler(Connection connection) {
+        String maxWert = "(SELECT COALESCE(MAX(" + spalte + "), 0) + 1 FROM " + tabelle + ")";
+        String update = "UPDATE ID_BLOCK SET NAECHSTER_WERT = GREATEST(NAECHSTER_WERT, " + maxWert + ") + v_anzahl "
+                + "WHERE NAME = v_name RETURNING NAECHSTER_WERT INTO v_wert; ";
+        String block = "DECLARE "
+                + "PRAGMA AUTONOMOUS_TRANSACTION; "
+                + "v_name VARCHAR2(61) := ?; "
+                + "v_anzahl NUMBER := ?; "
+                + "v_wert NUMBER; "
+                + "BEGIN "
+                + update
+                + "IF SQL%ROWCOUNT = 0 THEN "
+                + "BEGIN "
+                + "INSERT INTO ID_BLOCK (NAME, NAECHSTER_WERT) VALUES (v_name, " + maxWert + " + v_anzahl) "
+                + "RETURNING NAECHSTER_WERT INTO v_wert; "
+                + "EXCEPTION WHEN DUP_VAL_ON_INDEX THEN "
+                // paralleler Prozess hat die Zeile angelegt
+                + update
+                + "END; "
+                + "END IF; "
+                + "COMMIT; "
+                + "? := v_wert; "
+                + "END;";
+
+        try (CallableStatement c = connection.prepareCall(block)) {
+            c.setString(1, name);
+            c.setInt(2, blockgroesse);
+            c.registerOutParameter(3, Types.NUMERIC);
+            c.execute();
+            return c.getLong(3);
+        } catch (SQLException e) {
+            L.error("Fehler beim Reservieren eines Schluesselblocks fuer {}", name, e);
+            throw new DataException(e);
+        }
+    }
+
+    /** Halboffenes Intervall [naechste, ende) freier Schluessel. */
+    private static final class Block {
+        final AtomicLong naechste;
+        final long ende;
+
+        Block(long anfang, long ende) {
+            this.naechste = new AtomicLong(anfang);
+            this.ende = ende;
+        }
+    }
+}
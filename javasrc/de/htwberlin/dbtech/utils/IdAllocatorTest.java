@@ -0,0 +1,135 @@
+package de.htwberlin.dbtech.utils;
+
+import org.dbunit.IDatabaseTester;
+import org.dbunit.JdbcDatabaseTester;
+import org.dbunit.database.DatabaseConfig;
+import org.dbunit.database.IDatabaseConnection;
+import org.dbunit.dataset.IDataSet;
+import org.dbunit.dataset.csv.CsvDataSet;
+import org.dbunit.ext.oracle.OracleDataTypeFactory;
+import org.dbunit.operation.DatabaseOperation;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Die Klasse enthaelt die Testfaelle fuer die Reservierung von
+ * Schluesselbloecken ueber ID_BLOCK.
+ */
+public class IdAllocatorTest {
+    private static IDatabaseConnection dbTesterCon = null;
+
+    @BeforeClass
+    public static void setUp() {
+        try {
+            IDatabaseTester dbTester = new JdbcDatabaseTester(DbCred.driverClass, DbCred.url, DbCred.user,
+                    DbCred.password, DbCred.schema);
+            dbTesterCon = dbTester.getConnection();
+            dbTesterCon.getConfig().setProperty(DatabaseConfig.PROPERTY_DATATYPE_FACTORY, new OracleDataTypeFactory());
+            IDataSet pre = new CsvDataSet(new File("test-data/ue03-04"));
+            dbTester.setDataSet(pre);
+            DatabaseOperation.CLEAN_INSERT.execute(dbTesterCon, pre);
+        } catch (Exception e) {
+            DbUnitUtils.closeDbUnitConnectionQuietly(dbTesterCon);
+            throw new RuntimeException(e);
+        }
+    }
+
+    @AfterClass
+    public static void tearDown() {
+        DbUnitUtils.closeDbUnitConnectionQuietly(dbTesterCon);
+    }
+
+    /**
+     * Der Testfall testet die Reservierung zweier Verbindungen, deren
+     * Transaktionen offen bleiben. Die zweite Reservierung darf nicht auf
+     * den Commit der ersten warten.
+     */
+    @org.junit.Test
+    public void testReservierungOhneCommit() throws Exception {
+        IdAllocator a = new IdAllocator("MAUTERHEBUNG", "MAUT_ID", 1);
+        IdAllocator b = new IdAllocator("MAUTERHEBUNG", "MAUT_ID", 1);
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        try (Connection ca = verbindung(); Connection cb = verbindung()) {
+            long ida = a.naechsteId(ca);
+            Future<Long> idb = pool.submit(() -> b.naechsteId(cb));
+            assertTrue(idb.get(10, TimeUnit.SECONDS) > ida);
+            ca.rollback();
+            cb.rollback();
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Der Testfall testet, dass ein Rollback des Aufrufers die Reservierung
+     * nicht zuruecknimmt: Ein anderer Allocator vergibt danach nur hoehere
+     * Schluessel, der erste vergibt seinen Block weiter.
+     */
+    @org.junit.Test
+    public void testReservierungUeberstehtRollback() throws Exception {
+        IdAllocator a = new IdAllocator("MAUTERHEBUNG", "MAUT_ID", 10);
+        IdAllocator b = new IdAllocator("MAUTERHEBUNG", "MAUT_ID", 10);
+        try (Connection c = verbindung()) {
+            long erste = a.naechsteId(c);
+            c.rollback();
+            long zweite = a.naechsteId(c);
+            assertEquals(erste + 1, zweite);
+            assertTrue(b.naechsteId(c) >= erste + 10);
+            c.rollback();
+        }
+    }
+
+    /**
+     * Der Testfall testet parallele Threads mit je einer eigenen Verbindung
+     * ohne Commit: alle Schluessel sind verschieden, kein Thread haengt.
+     */
+    @org.junit.Test
+    public void testParalleleReservierung() throws Exception {
+        IdAllocator gemeinsam = new IdAllocator("MAUTERHEBUNG", "MAUT_ID", 5);
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<List<Long>>> f = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                IdAllocator allocator = t % 2 == 0 ? gemeinsam : new IdAllocator("MAUTERHEBUNG", "MAUT_ID", 5);
+                f.add(pool.submit(() -> {
+                    List<Long> ids = new ArrayList<>();
+                    try (Connection c = verbindung()) {
+                        for (int i = 0; i < 100; i++) {
+                            ids.add(allocator.naechsteId(c));
+                        }
+                        c.rollback();
+                    }
+                    return ids;
+                }));
+            }
+            Set<Long> alle = new HashSet<>();
+            for (Future<List<Long>> x : f) {
+                alle.addAll(x.get(60, TimeUnit.SECONDS));
+            }
+            assertEquals(400, alle.size());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private static Connection verbindung() throws Exception {
+        Connection c = DriverManager.getConnection(DbCred.url, DbCred.user, DbCred.password);
+        c.setAutoCommit(false);
+        return c;
+    }
+}
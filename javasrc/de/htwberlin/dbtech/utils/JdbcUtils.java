@@ -1,5 +1,6 @@
 package de.htwberlin.dbtech.utils;
 
+import de.htwberlin.dbtech.exceptions.DataException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -7,11 +8,27 @@ import javax.sql.DataSource;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.function.Supplier;
 
 public class JdbcUtils {
     private static final Logger L = LoggerFactory.getLogger(JdbcUtils.class);
 
+    /**
+     * Maximale Anzahl an Werten in einer IN-Liste (Oracle: ORA-01795).
+     */
+    public static final int MAX_IN_LIST = 1000;
+
+    /** Aktionen je Verbindung, die nach dem Ende der laufenden Transaktion laufen */
+    private static final Map<Connection, List<Runnable>> NACH_ABSCHLUSS =
+            Collections.synchronizedMap(new WeakHashMap<>());
+
     public static void loadDriver(final String driver) {
         try {
             Class.forName(driver);
@@ -41,6 +58,17 @@ public class JdbcUtils {
         }
     }
 
+    /**
+     * Legt einen Verbindungspool ueber den DriverManager an. Die Verbindungen
+     * des Pools werden mit closeConnection() zurueckgegeben.
+     */
+    public static ConnectionPool createConnectionPool(final String url, final String user, final String passwd,
+                                                      final int min, final int max) {
+        ConnectionPool pool = ConnectionPool.fuer(url, user, passwd, min, max);
+        L.info("Verbindungspool angelegt");
+        return pool;
+    }
+
     public static void closeConnection(final Connection connection) {
         try {
             if (connection != null) {
@@ -101,4 +129,126 @@ public class JdbcUtils {
         }
     }
 
+    /**
+     * Fuehrt die Arbeit als eine Transaktion aus. Ist autoCommit eingeschaltet,
+     * wird danach committet, bei einer Exception zurueckgerollt und autoCommit
+     * wieder eingeschaltet. Ist es aus, gehoert die Transaktion dem Aufrufer
+     * und die Arbeit laeuft in ihr.
+     */
+    public static <T> T inTransaction(final Connection connection, final Supplier<T> work) {
+        boolean autoCommit;
+        try {
+            autoCommit = connection.getAutoCommit();
+            if (!autoCommit) {
+                return work.get();
+            }
+            connection.setAutoCommit(false);
+        } catch (SQLException e) {
+            throw new DataException(e);
+        }
+        try {
+            T result = work.get();
+            commit(connection);
+            return result;
+        } catch (SQLException | RuntimeException e) {
+            try {
+                rollback(connection);
+            } catch (SQLException r) {
+                e.addSuppressed(r);
+            }
+            throw e instanceof RuntimeException ? (RuntimeException) e : new DataException(e);
+        } finally {
+            try {
+                connection.setAutoCommit(true);
+            } catch (SQLException e) {
+                L.warn("autoCommit nicht wieder eingeschaltet: {}", e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Fuehrt die Aktion aus, sobald die laufende Transaktion der Verbindung
+     * beendet ist, z.B. das Invalidieren eines Caches oder das Freigeben
+     * einer {@link StreifenSperre}. Bei eingeschaltetem autoCommit ist das
+     * sofort der Fall, sonst beim naechsten {@link #commit(Connection)} oder
+     * {@link #rollback(Connection)} im selben Thread. {@link #inTransaction}
+     * und die {@link ServiceFabrik} beenden Transaktionen darueber; ein
+     * direktes connection.commit() loest die Aktion nicht aus.
+     */
+    public static void nachAbschluss(final Connection connection, final Runnable aktion) {
+        try {
+            if (connection.getAutoCommit()) {
+                aktion.run();
+                return;
+            }
+        } catch (SQLException e) {
+            throw new DataException(e);
+        }
+        NACH_ABSCHLUSS.computeIfAbsent(connection, c -> new ArrayList<>()).add(aktion);
+    }
+
+    /**
+     * Committet die Transaktion und fuehrt danach die mit
+     * {@link #nachAbschluss(Connection, Runnable)} vorgemerkten Aktionen aus.
+     * Scheitert der Commit, bleiben sie fuer den folgenden Rollback stehen.
+     */
+    public static void commit(final Connection connection) throws SQLException {
+        connection.commit();
+        schliesseAb(connection);
+    }
+
+    /**
+     * Rollt die Transaktion zurueck und fuehrt danach, auch wenn der Rollback
+     * scheitert, die vorgemerkten Aktionen aus.
+     */
+    public static void rollback(final Connection connection) throws SQLException {
+        try {
+            connection.rollback();
+        } finally {
+            schliesseAb(connection);
+        }
+    }
+
+    private static void schliesseAb(final Connection connection) {
+        List<Runnable> aktionen = NACH_ABSCHLUSS.remove(connection);
+        if (aktionen != null) {
+            aktionen.forEach(Runnable::run);
+        }
+    }
+
+    /**
+     * Wertet die Zeilenzahlen eines executeBatch() aus: je Anweisung true,
+     * falls sie mindestens eine Zeile geaendert hat.
+     *
+     * @throws DataException falls der Treiber die Zeilenzahl nicht liefert
+     */
+    public static boolean[] geaendert(final int[] zeilen) {
+        boolean[] result = new boolean[zeilen.length];
+        for (int i = 0; i < zeilen.length; i++) {
+            if (zeilen[i] == Statement.SUCCESS_NO_INFO) {
+                throw new DataException("Zeilenzahl im Batch unbekannt");
+            }
+            result[i] = zeilen[i] > 0;
+        }
+        return result;
+    }
+
+    /**
+     * Liefert eine Platzhalterliste "?, ?, ..." fuer eine IN-Bedingung.
+     */
+    public static String placeholders(final int count) {
+        return String.join(", ", Collections.nCopies(count, "?"));
+    }
+
+    /**
+     * Zerlegt eine Liste in Teillisten mit hoechstens size Elementen.
+     */
+    public static <T> List<List<T>> partition(final List<T> list, final int size) {
+        List<List<T>> result = new ArrayList<>();
+        for (int i = 0; i < list.size(); i += size) {
+            result.add(list.subList(i, Math.min(i + size, list.size())));
+        }
+        return result;
+    }
+
 }
@@ -0,0 +1,157 @@
+package de.htwberlin.dbtech.utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Hashtabelle mit long-Schluesseln ohne Boxing (offene Adressierung mit
+ * linearem Sondieren). Fuer grosse Tabellen mit numerischem Primaerschluessel,
+ * bei denen eine HashMap je Eintrag ein Long- und ein Node-Objekt anlegt.
+ *
+ * Nicht threadsicher.
+ */
+public final class LongHashMap<V> {
+    private static final float FUELLGRAD = 0.6f;
+
+    private long[] schluessel;
+    private Object[] werte;
+    private int anzahl;
+    private int grenze;
+
+    public LongHashMap() {
+        this(16);
+    }
+
+    public LongHashMap(int erwarteteAnzahl) {
+        int kapazitaet = Integer.highestOneBit(Math.max(4, (int) (erwarteteAnzahl / FUELLGRAD)) - 1) << 1;
+        anlegen(kapazitaet);
+    }
+
+    private void anlegen(int kapazitaet) {
+        schluessel = new long[kapazitaet];
+        werte = new Object[kapazitaet];
+        grenze = (int) (kapazitaet * FUELLGRAD);
+    }
+
+    private static int streue(long k) {
+        long h = k * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    private int suche(long k) {
+        int maske = werte.length - 1;
+        int i = streue(k) & maske;
+        while (werte[i] != null && schluessel[i] != k) {
+            i = (i + 1) & maske;
+        }
+        return i;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(long k) {
+        return (V) werte[suche(k)];
+    }
+
+    public boolean containsKey(long k) {
+        return werte[suche(k)] != null;
+    }
+
+    /**
+     * Setzt den Wert zum Schluessel und liefert den bisherigen oder null.
+     */
+    @SuppressWarnings("unchecked")
+    public V put(long k, V wert) {
+        if (wert == null) {
+            throw new IllegalArgumentException("null-Werte werden nicht unterstuetzt");
+        }
+        int i = suche(k);
+        V alt = (V) werte[i];
+        if (alt == null) {
+            if (anzahl >= grenze) {
+                vergroessern();
+                i = suche(k);
+            }
+            schluessel[i] = k;
+            anzahl++;
+        }
+        werte[i] = wert;
+        return alt;
+    }
+
+    /**
+     * Entfernt den Schluessel und liefert den bisherigen Wert oder null.
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(long k) {
+        int i = suche(k);
+        V alt = (V) werte[i];
+        if (alt == null) {
+            return null;
+        }
+        // nachfolgende Eintraege der Sondierkette nachruecken lassen
+        int maske = werte.length - 1;
+        int luecke = i;
+        int j = (i + 1) & maske;
+        while (werte[j] != null) {
+            int ziel = streue(schluessel[j]) & maske;
+            if (((j - ziel) & maske) >= ((j - luecke) & maske)) {
+                schluessel[luecke] = schluessel[j];
+                werte[luecke] = werte[j];
+                luecke = j;
+            }
+            j = (j + 1) & maske;
+        }
+        werte[luecke] = null;
+        anzahl--;
+        return alt;
+    }
+
+    public int size() {
+        return anzahl;
+    }
+
+    public boolean isEmpty() {
+        return anzahl == 0;
+    }
+
+    public void clear() {
+        Arrays.fill(werte, null);
+        anzahl = 0;
+    }
+
+    /**
+     * Uebergibt alle Werte in Tabellenreihenfolge.
+     */
+    @SuppressWarnings("unchecked")
+    public void forEachValue(Consumer<? super V> aktion) {
+        for (Object w : werte) {
+            if (w != null) {
+                aktion.accept((V) w);
+            }
+        }
+    }
+
+    /**
+     * Liefert alle Werte als neue Liste.
+     */
+    public List<V> values() {
+        List<V> result = new ArrayList<>(anzahl);
+        forEachValue(result::add);
+        return result;
+    }
+
+    private void vergroessern() {
+        long[] alteSchluessel = schluessel;
+        Object[] alteWerte = werte;
+        anlegen(alteWerte.length * 2);
+        for (int i = 0; i < alteWerte.length; i++) {
+            if (alteWerte[i] != null) {
+                int j = suche(alteSchluessel[i]);
+                schluessel[j] = alteSchluessel[i];
+                werte[j] = alteWerte[i];
+            }
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package de.htwberlin.dbtech.utils;
+
+import de.htwberlin.dbtech.exceptions.DataException;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Stellt Services mit Verbindungen aus einer {@link DataSource} (in der Regel
+ * einem {@link ConnectionPool}) bereit, ohne dass die Aufrufer setConnection
+ * aufrufen muessen.
+ *
+ * Jeder Thread erhaelt eine eigene Serviceinstanz. Fuer die Dauer eines
+ * Aufrufs wird eine Verbindung ausgeliehen, an die Instanz gebunden, danach
+ * mit null wieder geloest und zurueckgegeben. Der verbinder muss null
+ * akzeptieren.
+ *
+ * Jeder Aufruf laeuft in einer eigenen Transaktion: autoCommit ist aus, nach
+ * Erfolg wird committet, bei einer Exception zurueckgerollt. Mehrere
+ * Anweisungen eines Aufrufs, z.B. die Mauterhebung und die Buchung des
+ * offenen Saldos, werden damit gemeinsam oder gar nicht sichtbar. Beispiel:
+ *
+ * <pre>
+ * ServiceFabrik&lt;IMautService&gt; fabrik = new ServiceFabrik&lt;&gt;(IMautService.class, pool,
+ *         MautServiceImpl::new, IMautService::setConnection);
+ * IMautService service = fabrik.service(); // von allen Threads nutzbar
+ * </pre>
+ */
+public final class ServiceFabrik<S> {
+    private final Class<S> typ;
+    private final DataSource quelle;
+    private final BiConsumer<? super S, Connection> verbinder;
+    private final ThreadLocal<S> instanzen;
+    private final S service;
+
+    /**
+     * @param typ       Schnittstelle des Services
+     * @param quelle    liefert die Verbindungen
+     * @param erzeuger  legt eine neue Serviceinstanz an
+     * @param verbinder bindet eine Verbindung an eine Instanz, z.B. IMautService::setConnection
+     */
+    public ServiceFabrik(Class<S> typ, DataSource quelle, Supplier<? extends S> erzeuger,
+                         BiConsumer<? super S, Connection> verbinder) {
+        if (!typ.isInterface()) {
+            throw new IllegalArgumentException(typ + " ist keine Schnittstelle");
+        }
+        this.typ = typ;
+        this.quelle = quelle;
+        this.verbinder = verbinder;
+        this.instanzen = ThreadLocal.withInitial(erzeuger);
+        this.service = typ.cast(Proxy.newProxyInstance(typ.getClassLoader(), new Class<?>[]{typ}, new Aufruf()));
+    }
+
+    /**
+     * Liefert einen threadsicheren Service. Jeder Methodenaufruf laeuft auf
+     * der Instanz des aufrufenden Threads mit einer eigenen Verbindung;
+     * setConnection wird nicht unterstuetzt.
+     */
+    public S service() {
+        return service;
+    }
+
+    /**
+     * Fuehrt mehrere Aufrufe mit derselben Verbindung in einer gemeinsamen
+     * Transaktion aus.
+     */
+    public <R> R mit(Function<? super S, R> aufgabe) {
+        try (Connection connection = quelle.getConnection()) {
+            S s = instanzen.get();
+            try {
+                connection.setAutoCommit(false);
+                verbinder.accept(s, connection);
+                R ergebnis = aufgabe.apply(s);
+                JdbcUtils.commit(connection);
+                return ergebnis;
+            } catch (SQLException e) {
+                zurueckrollen(connection, e);
+                throw e;
+            } catch (RuntimeException | Error e) {
+                zurueckrollen(connection, e);
+                throw e;
+            } finally {
+                verbinder.accept(s, null);
+                autoCommitEin(connection);
+            }
+        } catch (SQLException e) {
+            throw new DataException(e);
+        }
+    }
+
+    private static void zurueckrollen(Connection connection, Throwable fehler) {
+        try {
+            JdbcUtils.rollback(connection);
+        } catch (SQLException r) {
+            fehler.addSuppressed(r);
+        }
+    }
+
+    private static void autoCommitEin(Connection connection) {
+        try {
+            connection.setAutoCommit(true);
+        } catch (SQLException e) {
+            // der Pool setzt die Verbindung bei der Rueckgabe zurueck
+        }
+    }
+
+    private final class Aufruf implements InvocationHandler {
+        @Override
+        public Object invoke(Object p, Method method, Object[] args) throws Throwable {
+            if (method.getDeclaringClass() == Object.class) {
+                switch (method.getName()) {
+                    case "equals":
+                        return p == args[0];
+                    case "hashCode":
+                        return System.identityHashCode(p);
+                    default:
+                        return "ServiceFabrik[" + typ.getSimpleName() + "]";
+                }
+            }
+            if (method.getName().equals("setConnection")) {
+                throw new UnsupportedOperationException("Verbindungen werden von der ServiceFabrik vergeben");
+            }
+            Connection connection;
+            try {
+                connection = quelle.getConnection();
+            } catch (SQLException e) {
+                throw new DataException(e);
+            }
+            try {
+                S s = instanzen.get();
+                Object ergebnis;
+                try {
+                    connection.setAutoCommit(false);
+                    verbinder.accept(s, connection);
+                    ergebnis = method.invoke(s, args);
+                    JdbcUtils.commit(connection);
+                } catch (InvocationTargetException e) {
+                    zurueckrollen(connection, e.getCause());
+                    throw e.getCause();
+                } catch (SQLException e) {
+                    zurueckrollen(connection, e);
+                    throw new DataException(e);
+                } finally {
+                    verbinder.accept(s, null);
+                    autoCommitEin(connection);
+                }
+                return ergebnis;
+            } finally {
+                // gibt die Verbindung an den Pool zurueck
+                connection.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package de.htwberlin.dbtech.utils;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Die Klasse enthaelt die Testfaelle fuer die ServiceFabrik mit einem
+ * Verbindungspool aus Attrappen.
+ */
+public class ServiceFabrikTest {
+
+    public interface Dienst {
+        boolean verbunden();
+
+        boolean autoCommit();
+
+        void scheitern();
+
+        void setConnection(Connection connection);
+    }
+
+    static final class Instanz implements Dienst {
+        final List<Connection> gebunden = new ArrayList<>();
+        Connection connection;
+
+        @Override
+        public boolean verbunden() {
+            return connection != null;
+        }
+
+        @Override
+        public boolean autoCommit() {
+            try {
+                return connection.getAutoCommit();
+            } catch (SQLException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        @Override
+        public void scheitern() {
+            throw new IllegalStateException("Fehler");
+        }
+
+        @Override
+        public void setConnection(Connection connection) {
+            this.connection = connection;
+            gebunden.add(connection);
+        }
+    }
+
+    /** die Verbindung ist nur waehrend des Aufrufs gebunden */
+    @org.junit.Test
+    public void testBindenUndLoesen() throws Exception {
+        Instanz instanz = new Instanz();
+        try (ConnectionPool pool = new ConnectionPool(new ConnectionPoolTest.Quelle(), 0, 1)) {
+            ServiceFabrik<Dienst> fabrik = new ServiceFabrik<>(Dienst.class, pool, () -> instanz,
+                    Dienst::setConnection);
+            assertTrue(fabrik.service().verbunden());
+            assertNull(instanz.connection);
+            assertEquals(0, pool.getAusgeliehen());
+
+            assertTrue(fabrik.mit(d -> {
+                assertEquals(1, pool.getAusgeliehen());
+                return d.verbunden();
+            }));
+            assertNull(instanz.connection);
+            assertEquals(0, pool.getAusgeliehen());
+            assertEquals(4, instanz.gebunden.size());
+            assertNotNull(instanz.gebunden.get(0));
+            assertNull(instanz.gebunden.get(1));
+        }
+    }
+
+    /** auch nach einer Exception wird geloest und zurueckgegeben */
+    @org.junit.Test
+    public void testLoesenNachException() throws Exception {
+        Instanz instanz = new Instanz();
+        try (ConnectionPool pool = new ConnectionPool(new ConnectionPoolTest.Quelle(), 0, 1)) {
+            ServiceFabrik<Dienst> fabrik = new ServiceFabrik<>(Dienst.class, pool, () -> instanz,
+                    Dienst::setConnection);
+            try {
+                fabrik.mit(d -> {
+                    throw new IllegalStateException("Fehler");
+                });
+            } catch (IllegalStateException e) {
+                // erwartet
+            }
+            assertNull(instanz.connection);
+            assertFalse(instanz.gebunden.isEmpty());
+            assertEquals(0, pool.getAusgeliehen());
+        }
+    }
+
+    /** jeder Aufruf laeuft in einer Transaktion, die committet oder zurueckgerollt wird */
+    @org.junit.Test
+    public void testTransaktionJeAufruf() throws Exception {
+        ConnectionPoolTest.Quelle quelle = new ConnectionPoolTest.Quelle();
+        try (ConnectionPool pool = new ConnectionPool(quelle, 0, 1)) {
+            ServiceFabrik<Dienst> fabrik = new ServiceFabrik<>(Dienst.class, pool, Instanz::new,
+                    Dienst::setConnection);
+            assertFalse(fabrik.service().autoCommit());
+            ConnectionPoolTest.Attrappe a = quelle.geoeffnet.get(0);
+            assertEquals(1, a.commits);
+            assertEquals(0, a.rollbacks);
+            assertTrue(a.autoCommit);
+
+            try {
+                fabrik.service().scheitern();
+                fail("IllegalStateException erwartet");
+            } catch (IllegalStateException e) {
+                // erwartet
+            }
+            assertEquals(1, a.commits);
+            assertEquals(1, a.rollbacks);
+            assertTrue(a.autoCommit);
+
+            assertFalse(fabrik.mit(Dienst::autoCommit));
+            assertEquals(2, a.commits);
+        }
+    }
+
+    /** vorgemerkte Aktionen laufen erst nach dem Commit oder Rollback */
+    @org.junit.Test
+    public void testNachAbschluss() throws Exception {
+        Instanz instanz = new Instanz();
+        AtomicInteger gelaufen = new AtomicInteger();
+        try (ConnectionPool pool = new ConnectionPool(new ConnectionPoolTest.Quelle(), 0, 1)) {
+            ServiceFabrik<Dienst> fabrik = new ServiceFabrik<>(Dienst.class, pool, () -> instanz,
+                    Dienst::setConnection);
+            fabrik.mit(d -> {
+                JdbcUtils.nachAbschluss(instanz.connection, gelaufen::incrementAndGet);
+                assertEquals(0, gelaufen.get());
+                return null;
+            });
+            assertEquals(1, gelaufen.get());
+
+            try {
+                fabrik.mit(d -> {
+                    JdbcUtils.nachAbschluss(instanz.connection, gelaufen::incrementAndGet);
+                    d.scheitern();
+                    return null;
+                });
+                fail("IllegalStateException erwartet");
+            } catch (IllegalStateException e) {
+                // erwartet
+            }
+            assertEquals(2, gelaufen.get());
+        }
+    }
+
+    @org.junit.Test(expected = UnsupportedOperationException.class)
+    public void testSetConnectionNichtUnterstuetzt() throws Exception {
+        try (ConnectionPool pool = new ConnectionPool(new ConnectionPoolTest.Quelle(), 0, 1)) {
+            new ServiceFabrik<>(Dienst.class, pool, Instanz::new, Dienst::setConnection).service()
+                    .setConnection(null);
+        }
+    }
+}
@@ -0,0 +1,288 @@
+package de.htwberlin.dbtech.utils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Begrenzter LRU-Cache fuer PreparedStatements einer Verbindung, Schluessel
+ * ist der SQL-Text. Alle Klassen, die dieselbe Verbindung nutzen, teilen sich
+ * ueber {@link #fuer(Connection)} denselben Cache.
+ *
+ * Die gelieferten Statements koennen wie gewohnt in try-with-resources
+ * verwendet werden: close() gibt das Statement an den Cache zurueck, statt es
+ * zu schliessen. Wird ein SQL-Text angefordert, dessen Statement gerade in
+ * Benutzung ist, wird ein ungecachtes Statement geliefert.
+ *
+ * SQL mit variabler Platzhalteranzahl (IN-Listen) sollte nicht ueber den
+ * Cache laufen, da jede Laenge einen eigenen Eintrag belegt.
+ *
+ * Die Caches werden nach der Identitaet der physischen Verbindung gefuehrt;
+ * fuer Verbindungen eines {@link ConnectionPool} teilen sich alle Ausleihen
+ * derselben physischen Verbindung einen Cache. Da die
+ * Statements ihre Verbindung erreichbar halten, wird ein Cache nicht von der
+ * Garbage Collection entfernt: Er wird mit {@link #verwerfen(Connection)}
+ * geschlossen oder spaetestens beim Anlegen eines neuen Caches, wenn seine
+ * Verbindung bis dahin geschlossen worden ist.
+ */
+public final class StatementCache {
+    private static final Logger L = LoggerFactory.getLogger(StatementCache.class);
+
+    public static final int STANDARD_GROESSE = 32;
+
+    private static final Map<Connection, StatementCache> CACHES = new IdentityHashMap<>();
+
+    private final Connection connection;
+    private final int groesse;
+    private final LinkedHashMap<String, Eintrag> eintraege;
+
+    private long treffer;
+    private long fehlschlaege;
+    private long verdraengungen;
+
+    private StatementCache(Connection connection, int groesse) {
+        this.connection = connection;
+        this.groesse = groesse;
+        this.eintraege = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Eintrag> eldest) {
+                if (size() <= StatementCache.this.groesse) {
+                    return false;
+                }
+                verdraengungen++;
+                eldest.getValue().verdraengen();
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Liefert den Cache der Verbindung und legt ihn bei Bedarf an.
+     */
+    public static StatementCache fuer(Connection connection) {
+        return fuer(connection, STANDARD_GROESSE);
+    }
+
+    /**
+     * Liefert den Cache der Verbindung und legt ihn bei Bedarf an. Die Groesse
+     * gilt nur beim Anlegen.
+     */
+    public static StatementCache fuer(Connection connection, int groesse) {
+        if (connection == null) {
+            throw new IllegalArgumentException("connection ist null");
+        }
+        connection = ConnectionPool.physisch(connection);
+        synchronized (CACHES) {
+            StatementCache cache = CACHES.get(connection);
+            if (cache == null) {
+                aufraeumen();
+                cache = new StatementCache(connection, groesse);
+                CACHES.put(connection, cache);
+            }
+            return cache;
+        }
+    }
+
+    /** Schliesst die Caches bereits geschlossener Verbindungen. */
+    private static void aufraeumen() {
+        List<StatementCache> verwaist = new ArrayList<>();
+        for (StatementCache cache : CACHES.values()) {
+            try {
+                if (cache.connection.isClosed()) {
+                    verwaist.add(cache);
+                }
+            } catch (SQLException e) {
+                verwaist.add(cache);
+            }
+        }
+        for (StatementCache cache : verwaist) {
+            CACHES.remove(cache.connection);
+            cache.schliessen();
+        }
+    }
+
+    /** Anzahl der Verbindungen mit Cache */
+    static int getCaches() {
+        synchronized (CACHES) {
+            return CACHES.size();
+        }
+    }
+
+    /**
+     * Schliesst den Cache der Verbindung, falls es einen gibt. Fuer Verbindungen,
+     * die endgueltig geschlossen werden.
+     */
+    public static void verwerfen(Connection connection) {
+        StatementCache cache;
+        synchronized (CACHES) {
+            cache = CACHES.get(ConnectionPool.physisch(connection));
+        }
+        if (cache != null) {
+            cache.schliessen();
+        }
+    }
+
+    /**
+     * Liefert ein vorbereitetes Statement fuer den SQL-Text, aus dem Cache oder neu.
+     */
+    public synchronized PreparedStatement prepareStatement(String sql) throws SQLException {
+        Eintrag e = eintraege.get(sql);
+        if (e != null && !e.inBenutzung) {
+            treffer++;
+            e.inBenutzung = true;
+            return e.proxy;
+        }
+        fehlschlaege++;
+        PreparedStatement statement = connection.prepareStatement(sql);
+        if (e != null) {
+            // paralleler Gebrauch desselben SQL-Texts, nicht cachen
+            return statement;
+        }
+        e = new Eintrag(sql, statement);
+        e.inBenutzung = true;
+        eintraege.put(sql, e);
+        return e.proxy;
+    }
+
+    public synchronized long getTreffer() {
+        return treffer;
+    }
+
+    public synchronized long getFehlschlaege() {
+        return fehlschlaege;
+    }
+
+    public synchronized long getVerdraengungen() {
+        return verdraengungen;
+    }
+
+    public synchronized int getAnzahl() {
+        return eintraege.size();
+    }
+
+    /**
+     * Schliesst alle gecachten Statements und entfernt den Cache von der Verbindung.
+     */
+    public void schliessen() {
+        synchronized (CACHES) {
+            if (CACHES.get(connection) == this) {
+                CACHES.remove(connection);
+            }
+        }
+        List<Eintrag> alle;
+        synchronized (this) {
+            alle = new ArrayList<>(eintraege.values());
+            eintraege.clear();
+        }
+        for (Eintrag e : alle) {
+            e.verdraengen();
+        }
+        L.debug("Cache der Verbindung geschlossen: {}", this);
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "StatementCache[anzahl=" + eintraege.size() + ", treffer=" + treffer
+                + ", fehlschlaege=" + fehlschlaege + ", verdraengungen=" + verdraengungen + "]";
+    }
+
+    private final class Eintrag implements InvocationHandler {
+        final String sql;
+        final PreparedStatement statement;
+        final PreparedStatement proxy;
+        boolean inBenutzung;
+        boolean verdraengt;
+
+        Eintrag(String sql, PreparedStatement statement) {
+            this.sql = sql;
+            this.statement = statement;
+            this.proxy = (PreparedStatement) Proxy.newProxyInstance(
+                    PreparedStatement.class.getClassLoader(), new Class<?>[]{PreparedStatement.class}, this);
+        }
+
+        void verdraengen() {
+            synchronized (StatementCache.this) {
+                verdraengt = true;
+                if (inBenutzung) {
+                    // wird beim Zurueckgeben geschlossen
+                    return;
+                }
+            }
+            JdbcUtils.closeStatementQuietly(statement);
+        }
+
+        /**
+         * Setzt das Statement fuer die naechste Verwendung zurueck: offene
+         * Ergebnismenge, Batch und Parameter. Schlaegt das fehl, wird das
+         * Statement aus dem Cache entfernt und geschlossen.
+         */
+        private void zurueckgeben() throws SQLException {
+            boolean schliessen;
+            synchronized (StatementCache.this) {
+                schliessen = verdraengt;
+            }
+            if (!schliessen) {
+                try {
+                    ResultSet rs = statement.getResultSet();
+                    if (rs != null) {
+                        rs.close();
+                    }
+                    statement.clearBatch();
+                    statement.clearParameters();
+                } catch (SQLException e) {
+                    synchronized (StatementCache.this) {
+                        eintraege.remove(sql, this);
+                        verdraengt = true;
+                        inBenutzung = false;
+                    }
+                    JdbcUtils.closeStatementQuietly(statement);
+                    throw e;
+                }
+            }
+            synchronized (StatementCache.this) {
+                inBenutzung = false;
+                schliessen = verdraengt;
+            }
+            if (schliessen) {
+                statement.close();
+            }
+        }
+
+        @Override
+        public Object invoke(Object p, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (args == null) {
+                        zurueckgeben();
+                        return null;
+                    }
+                    break;
+                case "isClosed":
+                    if (args == null) {
+                        return !inBenutzung || statement.isClosed();
+                    }
+                    break;
+                default:
+                    break;
+            }
+            try {
+                return method.invoke(statement, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+}
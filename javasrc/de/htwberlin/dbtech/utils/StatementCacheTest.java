@@ -0,0 +1,158 @@
+package de.htwberlin.dbtech.utils;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Die Klasse enthaelt die Testfaelle fuer den Cache der PreparedStatements.
+ * Verbindung und Statements sind Attrappen, die ihre Aufrufe protokollieren.
+ */
+public class StatementCacheTest {
+
+    /** close() gibt das Statement zurueck, der naechste Aufruf trifft den Cache */
+    @org.junit.Test
+    public void testTrefferNachRueckgabe() throws Exception {
+        Attrappe c = new Attrappe();
+        StatementCache cache = StatementCache.fuer(c.connection);
+        PreparedStatement erstes;
+        try (PreparedStatement ps = cache.prepareStatement("SELECT 1 FROM DUAL")) {
+            erstes = ps;
+            assertFalse(ps.isClosed());
+        }
+        assertTrue(erstes.isClosed());
+        try (PreparedStatement ps = cache.prepareStatement("SELECT 1 FROM DUAL")) {
+            assertSame(erstes, ps);
+            // paralleler Gebrauch: ungecachtes Statement
+            try (PreparedStatement parallel = cache.prepareStatement("SELECT 1 FROM DUAL")) {
+                assertNotSame(ps, parallel);
+            }
+        }
+        assertEquals(1, cache.getTreffer());
+        assertEquals(2, cache.getFehlschlaege());
+        assertEquals(2, c.statements.size());
+        assertFalse(c.statements.get(0).geschlossen);
+        assertTrue(c.statements.get(1).geschlossen);
+        StatementCache.verwerfen(c.connection);
+    }
+
+    /** die Rueckgabe schliesst die Ergebnismenge und leert Batch und Parameter */
+    @org.junit.Test
+    public void testRueckgabeSetztZurueck() throws Exception {
+        Attrappe c = new Attrappe();
+        StatementCache cache = StatementCache.fuer(c.connection);
+        try (PreparedStatement ps = cache.prepareStatement("UPDATE T SET A = ?")) {
+            ps.setInt(1, 1);
+            ps.addBatch();
+            ps.executeQuery();
+        }
+        StatementAttrappe s = c.statements.get(0);
+        assertTrue(s.ergebnisGeschlossen);
+        assertTrue(s.aufrufe.contains("clearBatch"));
+        assertTrue(s.aufrufe.contains("clearParameters"));
+        assertFalse(s.geschlossen);
+        StatementCache.verwerfen(c.connection);
+        assertTrue(s.geschlossen);
+    }
+
+    /** verdraengte Statements werden geschlossen, in Benutzung erst bei der Rueckgabe */
+    @org.junit.Test
+    public void testVerdraengung() throws Exception {
+        Attrappe c = new Attrappe();
+        StatementCache cache = StatementCache.fuer(c.connection, 2);
+        PreparedStatement offen = cache.prepareStatement("SELECT 1 FROM DUAL");
+        cache.prepareStatement("SELECT 2 FROM DUAL").close();
+        cache.prepareStatement("SELECT 3 FROM DUAL").close();
+        assertEquals(2, cache.getAnzahl());
+        assertEquals(1, cache.getVerdraengungen());
+        assertFalse(c.statements.get(0).geschlossen);
+        offen.close();
+        assertTrue(c.statements.get(0).geschlossen);
+        StatementCache.verwerfen(c.connection);
+    }
+
+    /** Caches geschlossener Verbindungen werden beim Anlegen eines neuen entfernt */
+    @org.junit.Test
+    public void testGeschlosseneVerbindungen() throws Exception {
+        List<Attrappe> alt = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            Attrappe c = new Attrappe();
+            StatementCache.fuer(c.connection).prepareStatement("SELECT 1 FROM DUAL").close();
+            c.connection.close();
+            alt.add(c);
+        }
+        Attrappe neu = new Attrappe();
+        StatementCache.fuer(neu.connection);
+        for (Attrappe c : alt) {
+            assertTrue(c.statements.get(0).geschlossen);
+        }
+        int anzahl = StatementCache.getCaches();
+        StatementCache.verwerfen(neu.connection);
+        assertEquals(anzahl - 1, StatementCache.getCaches());
+    }
+
+    static final class Attrappe {
+        final List<StatementAttrappe> statements = new ArrayList<>();
+        boolean geschlossen;
+        final Connection connection = (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                new Class<?>[]{Connection.class}, (p, m, a) -> {
+                    switch (m.getName()) {
+                        case "prepareStatement":
+                            StatementAttrappe s = new StatementAttrappe();
+                            statements.add(s);
+                            return s.statement;
+                        case "isClosed":
+                            return geschlossen;
+                        case "close":
+                            geschlossen = true;
+                            return null;
+                        case "hashCode":
+                            return System.identityHashCode(p);
+                        case "equals":
+                            return p == a[0];
+                        default:
+                            return null;
+                    }
+                });
+    }
+
+    static final class StatementAttrappe {
+        final List<String> aufrufe = new ArrayList<>();
+        boolean geschlossen;
+        boolean ergebnisGeschlossen;
+        ResultSet ergebnis;
+        final PreparedStatement statement = (PreparedStatement) Proxy.newProxyInstance(
+                PreparedStatement.class.getClassLoader(), new Class<?>[]{PreparedStatement.class}, (p, m, a) -> {
+                    aufrufe.add(m.getName());
+                    switch (m.getName()) {
+                        case "executeQuery":
+                            ergebnis = (ResultSet) Proxy.newProxyInstance(ResultSet.class.getClassLoader(),
+                                    new Class<?>[]{ResultSet.class}, (rp, rm, ra) -> {
+                                        if (rm.getName().equals("close")) {
+                                            ergebnisGeschlossen = true;
+                                        }
+                                        return null;
+                                    });
+                            return ergebnis;
+                        case "getResultSet":
+                            return ergebnis;
+                        case "close":
+                            geschlossen = true;
+                            return null;
+                        case "isClosed":
+                            return geschlossen;
+                        default:
+                            return null;
+                    }
+                });
+    }
+}
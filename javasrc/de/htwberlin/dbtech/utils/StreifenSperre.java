@@ -0,0 +1,221 @@
+package de.htwberlin.dbtech.utils;
+
+import de.htwberlin.dbtech.exceptions.DataException;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Sperre je Schluessel ueber eine feste Anzahl von Streifen: Schluessel mit
+ * gleichem Streifen werden nacheinander bearbeitet, alle anderen parallel.
+ * Verschiedene Schluessel koennen sich einen Streifen teilen; mit 1024
+ * Streifen und wenigen Dutzend Threads ist das selten.
+ *
+ * Gezaehlt werden Sperrungen und die davon umkaempften (der Streifen war
+ * belegt), die Wartezeit umkaempfter Sperrungen und die Haltezeit aller
+ * Sperrungen. Ohne Konkurrenz kostet eine Sperrung ein tryLock, zwei
+ * nanoTime-Aufrufe und einige atomare Additionen.
+ */
+public final class StreifenSperre {
+    private static final StreifenSperre INSTANZ = new StreifenSperre(1024);
+
+    private final ReentrantLock[] streifen;
+    private final int maske;
+    private final LongAdder sperrungen = new LongAdder();
+    private final LongAdder umkaempft = new LongAdder();
+    private final LatenzHistogramm warten = new LatenzHistogramm();
+    private final LatenzHistogramm halten = new LatenzHistogramm();
+
+    /**
+     * @param anzahl Anzahl der Streifen, wird auf eine Zweierpotenz aufgerundet
+     */
+    public StreifenSperre(int anzahl) {
+        if (anzahl < 1 || anzahl > 1 << 20) {
+            throw new IllegalArgumentException("anzahl muss zwischen 1 und 2^20 liegen: " + anzahl);
+        }
+        int n = anzahl == 1 ? 1 : Integer.highestOneBit(anzahl - 1) << 1;
+        this.streifen = new ReentrantLock[n];
+        for (int i = 0; i < n; i++) {
+            streifen[i] = new ReentrantLock();
+        }
+        this.maske = n - 1;
+    }
+
+    /**
+     * Liefert die prozessweit gemeinsame Sperre, z.B. fuer die
+     * normalisierten Kennzeichen der Mautberechnung.
+     */
+    public static StreifenSperre get() {
+        return INSTANZ;
+    }
+
+    /** Streifen eines Schluessels; null liegt auf Streifen 0 */
+    int streifen(String schluessel) {
+        if (schluessel == null) {
+            return 0;
+        }
+        int h = schluessel.hashCode();
+        return (h ^ (h >>> 16)) & maske;
+    }
+
+    public int getStreifen() {
+        return streifen.length;
+    }
+
+    /**
+     * Sperrt den Streifen des Schluessels; freigegeben wird mit
+     * {@link Halt#close()}.
+     */
+    public Halt sperre(String schluessel) {
+        int i = streifen(schluessel);
+        sperre(streifen[i]);
+        return new Halt(new int[]{i});
+    }
+
+    /**
+     * Sperrt die Streifen aller Schluessel in aufsteigender Reihenfolge, so
+     * dass sich gleichzeitige Sperrungen mehrerer Schluessel nicht
+     * gegenseitig blockieren.
+     */
+    public Halt sperreAlle(Collection<String> schluessel) {
+        int[] indizes = new int[schluessel.size()];
+        int n = 0;
+        for (String s : schluessel) {
+            indizes[n++] = streifen(s);
+        }
+        Arrays.sort(indizes);
+        int m = 0;
+        for (int i = 0; i < n; i++) {
+            if (m == 0 || indizes[m - 1] != indizes[i]) {
+                indizes[m++] = indizes[i];
+            }
+        }
+        indizes = Arrays.copyOf(indizes, m);
+        for (int i : indizes) {
+            sperre(streifen[i]);
+        }
+        return new Halt(indizes);
+    }
+
+    /**
+     * Sperrt die Streifen aller Schluessel und gibt sie erst nach dem Ende
+     * der Transaktion frei, in der die Arbeit laeuft; erst dann sehen andere
+     * Verbindungen deren Aenderungen. Ist autoCommit eingeschaltet, laeuft
+     * die Arbeit in einer eigenen Transaktion ({@link JdbcUtils#inTransaction}).
+     * Sonst gehoert die Transaktion dem Aufrufer, die Freigabe folgt mit
+     * {@link JdbcUtils#nachAbschluss} auf dessen Commit oder Rollback ueber
+     * JdbcUtils, z.B. in der {@link ServiceFabrik}. Ohne Verbindung (null)
+     * wird nur fuer die Dauer der Arbeit gesperrt.
+     *
+     * Mehrere solche Aufrufe in einer Transaktion halten ihre Streifen bis
+     * zu deren Ende; wer so mehrere Schluessel nacheinander sperrt, muss die
+     * Reihenfolge selbst einhalten.
+     */
+    public <T> T inTransaction(Collection<String> schluessel, Connection connection, Supplier<T> arbeit) {
+        Halt halt = sperreAlle(schluessel);
+        boolean freigeben = true;
+        try {
+            if (connection == null) {
+                return arbeit.get();
+            }
+            if (connection.getAutoCommit()) {
+                return JdbcUtils.inTransaction(connection, arbeit);
+            }
+            JdbcUtils.nachAbschluss(connection, halt::close);
+            freigeben = false;
+            return arbeit.get();
+        } catch (SQLException e) {
+            throw new DataException(e);
+        } finally {
+            if (freigeben) {
+                halt.close();
+            }
+        }
+    }
+
+    private void sperre(ReentrantLock l) {
+        sperrungen.increment();
+        if (!l.tryLock()) {
+            umkaempft.increment();
+            long start = System.nanoTime();
+            l.lock();
+            warten.erfasse(System.nanoTime() - start);
+        }
+    }
+
+    public long getSperrungen() {
+        return sperrungen.sum();
+    }
+
+    /** Sperrungen, bei denen der Streifen belegt war */
+    public long getUmkaempft() {
+        return umkaempft.sum();
+    }
+
+    /** Wartezeiten umkaempfter Sperrungen in Nanosekunden */
+    public LatenzHistogramm.Verteilung getWartezeiten() {
+        return warten.schnappschuss();
+    }
+
+    /** Haltezeiten aller Sperrungen in Nanosekunden */
+    public LatenzHistogramm.Verteilung getHaltezeiten() {
+        return halten.schnappschuss();
+    }
+
+    /**
+     * Setzt alle Zaehler zurueck.
+     */
+    public void zuruecksetzen() {
+        sperrungen.reset();
+        umkaempft.reset();
+        warten.zuruecksetzen();
+        halten.zuruecksetzen();
+    }
+
+    /**
+     * Sperrungen, Anteil umkaempfter und Warte- sowie Haltezeiten (p50, p99,
+     * max) in Mikrosekunden.
+     */
+    @Override
+    public String toString() {
+        long n = getSperrungen();
+        long u = getUmkaempft();
+        LatenzHistogramm.Verteilung w = getWartezeiten();
+        LatenzHistogramm.Verteilung h = getHaltezeiten();
+        return String.format("StreifenSperre[streifen=%d, sperrungen=%d, umkaempft=%d (%.2f %%), "
+                        + "warten=%.1f/%.1f/%.1f us, halten=%.1f/%.1f/%.1f us]", streifen.length, n, u,
+                n == 0 ? 0.0 : 100.0 * u / n, w.perzentil(0.5) / 1e3, w.perzentil(0.99) / 1e3, w.getMax() / 1e3,
+                h.perzentil(0.5) / 1e3, h.perzentil(0.99) / 1e3, h.getMax() / 1e3);
+    }
+
+    /**
+     * Gehaltene Streifen; close() gibt sie frei und erfasst die Haltezeit.
+     * Muss im sperrenden Thread geschlossen werden.
+     */
+    public final class Halt implements AutoCloseable {
+        private final int[] indizes;
+        private final long seit = System.nanoTime();
+        private boolean frei;
+
+        private Halt(int[] indizes) {
+            this.indizes = indizes;
+        }
+
+        @Override
+        public void close() {
+            if (frei) {
+                return;
+            }
+            frei = true;
+            halten.erfasse(System.nanoTime() - seit);
+            for (int i = indizes.length - 1; i >= 0; i--) {
+                streifen[indizes[i]].unlock();
+            }
+        }
+    }
+}
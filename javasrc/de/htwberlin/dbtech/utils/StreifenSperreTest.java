@@ -0,0 +1,167 @@
+package de.htwberlin.dbtech.utils;
+
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Die Klasse enthaelt die Testfaelle fuer die Sperre je Schluessel.
+ */
+public class StreifenSperreTest {
+
+    @org.junit.Test
+    public void testStreifenZweierpotenz() {
+        assertEquals(1, new StreifenSperre(1).getStreifen());
+        assertEquals(4, new StreifenSperre(3).getStreifen());
+        assertEquals(1024, new StreifenSperre(1024).getStreifen());
+    }
+
+    /** Check-then-act je Schluessel ohne verlorene Aktualisierungen */
+    @org.junit.Test
+    public void testGleicherSchluesselNacheinander() throws Exception {
+        StreifenSperre sperre = new StreifenSperre(64);
+        int[] stand = new int[4];
+        AtomicInteger gleichzeitig = new AtomicInteger();
+        AtomicInteger maxGleichzeitig = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> f = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                f.add(pool.submit(() -> {
+                    for (int i = 0; i < 10_000; i++) {
+                        StreifenSperre.Halt h = sperre.sperre("B AB " + (i % 4));
+                        try {
+                            if (i % 4 == 0) {
+                                maxGleichzeitig.accumulateAndGet(gleichzeitig.incrementAndGet(), Math::max);
+                            }
+                            int v = stand[i % 4];
+                            Thread.yield();
+                            stand[i % 4] = v + 1;
+                            if (i % 4 == 0) {
+                                gleichzeitig.decrementAndGet();
+                            }
+                        } finally {
+                            h.close();
+                        }
+                    }
+                }));
+            }
+            for (Future<?> x : f) {
+                x.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        for (int v : stand) {
+            assertEquals(20_000, v);
+        }
+        assertEquals(1, maxGleichzeitig.get());
+        assertEquals(80_000, sperre.getSperrungen());
+        assertTrue(sperre.getUmkaempft() > 0);
+        assertEquals(sperre.getUmkaempft(), sperre.getWartezeiten().getAnzahl());
+        assertEquals(80_000, sperre.getHaltezeiten().getAnzahl());
+    }
+
+    @org.junit.Test
+    public void testVerschiedeneStreifenParallel() throws Exception {
+        StreifenSperre sperre = new StreifenSperre(1024);
+        String a = "B AB 1";
+        String b = "B AB 2";
+        assertTrue(sperre.streifen(a) != sperre.streifen(b));
+        CountDownLatch gesperrt = new CountDownLatch(1);
+        CountDownLatch fertig = new CountDownLatch(1);
+        StreifenSperre.Halt h = sperre.sperre(a);
+        try {
+            Thread t = new Thread(() -> {
+                StreifenSperre.Halt h2 = sperre.sperre(b);
+                gesperrt.countDown();
+                h2.close();
+                StreifenSperre.Halt h3 = sperre.sperre(a);
+                fertig.countDown();
+                h3.close();
+            });
+            t.start();
+            assertTrue(gesperrt.await(5, TimeUnit.SECONDS));
+            assertFalse(fertig.await(100, TimeUnit.MILLISECONDS));
+        } finally {
+            h.close();
+        }
+        assertTrue(fertig.await(5, TimeUnit.SECONDS));
+        assertEquals(1, sperre.getUmkaempft());
+    }
+
+    /** mehrere Schluessel in verschiedener Reihenfolge ohne Verklemmung */
+    @org.junit.Test
+    public void testSperreAlleOhneVerklemmung() throws Exception {
+        StreifenSperre sperre = new StreifenSperre(16);
+        List<String> vor = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            vor.add("K " + i);
+        }
+        List<String> rueck = new ArrayList<>(vor);
+        Collections.reverse(rueck);
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> f = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                List<String> schluessel = t % 2 == 0 ? vor : rueck;
+                f.add(pool.submit(() -> {
+                    for (int i = 0; i < 2_000; i++) {
+                        StreifenSperre.Halt h = sperre.sperreAlle(schluessel);
+                        Thread.yield();
+                        h.close();
+                    }
+                }));
+            }
+            for (Future<?> x : f) {
+                x.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        assertEquals(8_000, sperre.getHaltezeiten().getAnzahl());
+    }
+
+    /** die Streifen bleiben bis zum Ende der Transaktion gesperrt */
+    @org.junit.Test
+    public void testFreigabeNachTransaktion() throws Exception {
+        StreifenSperre sperre = new StreifenSperre(16);
+        try (ConnectionPool pool = new ConnectionPool(new ConnectionPoolTest.Quelle(), 0, 1)) {
+            try (Connection c = pool.getConnection()) {
+                c.setAutoCommit(false);
+                assertEquals(Integer.valueOf(1), sperre.inTransaction(List.of("B AB 1"), c, () -> 1));
+                CountDownLatch fertig = sperreImAnderenThread(sperre, "B AB 1");
+                assertFalse(fertig.await(100, TimeUnit.MILLISECONDS));
+                JdbcUtils.commit(c);
+                assertTrue(fertig.await(5, TimeUnit.SECONDS));
+
+                // mit autoCommit eine eigene Transaktion, danach frei
+                c.setAutoCommit(true);
+                sperre.inTransaction(List.of("B AB 1"), c, () -> null);
+                assertTrue(c.getAutoCommit());
+                assertTrue(sperreImAnderenThread(sperre, "B AB 1").await(5, TimeUnit.SECONDS));
+            }
+        }
+        assertEquals(1, sperre.getUmkaempft());
+    }
+
+    private static CountDownLatch sperreImAnderenThread(StreifenSperre sperre, String schluessel) {
+        CountDownLatch fertig = new CountDownLatch(1);
+        new Thread(() -> {
+            sperre.sperre(schluessel).close();
+            fertig.countDown();
+        }).start();
+        return fertig;
+    }
+}